@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import aQute.bnd.annotation.ProviderType;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * <p>Defines a non blocking client for accessing the CoreOS etcd service through the REST API version 2.0.</p>
+ *
+ * <p>The operations mirror the ones of {@link EtcdClient}. Each operation returns immediately
+ * with a {@link Future} completed once the response has been received. The optional callback
+ * is invoked from the client I/O thread and thus must not block.</p>
+ *
+ * <p>I/O failures and unexpected response status are reported as {@link java.io.IOException}
+ * via {@link FutureCallback#failed} and the {@link java.util.concurrent.ExecutionException}
+ * thrown by {@link Future#get()}.</p>
+ *
+ * @see <a href="https://coreos.com/docs/distributed-configuration/etcd-api">etcd-api</a>
+ */
+@ProviderType
+public interface AsyncEtcdClient extends Closeable {
+
+    /**
+     * Execute a HTTP GET request against the etcd key API.
+     *
+     * @param key the key to be fetched.
+     * @param parameters the parameters to be added to the request uri.
+     * @param callback the optional callback notified upon completion.
+     * @return the future {@link KeyResponse} etcd response object.
+     */
+    @Nonnull
+    Future<KeyResponse> getKey(@Nonnull String key,
+                               @Nonnull Map<String, String> parameters,
+                               @Nullable FutureCallback<KeyResponse> callback);
+
+    /**
+     * Execute a HTTP PUT request against the etcd key API.
+     *
+     * @param key the key to be set.
+     * @param value the value to be stored at the given key.
+     * @param parameters the parameters to be added to the request uri.
+     * @param callback the optional callback notified upon completion.
+     * @return the future {@link KeyResponse} etcd response object.
+     */
+    @Nonnull
+    Future<KeyResponse> putKey(@Nonnull String key,
+                               @Nullable String value,
+                               @Nonnull Map<String, String> parameters,
+                               @Nullable FutureCallback<KeyResponse> callback);
+
+    /**
+     * Execute a HTTP POST request against the etcd key API.
+     *
+     * @param key the key of the folder in which the in-order key is created.
+     * @param value the value to be stored at the created key.
+     * @param parameters the parameters to be added to the request uri.
+     * @param callback the optional callback notified upon completion.
+     * @return the future {@link KeyResponse} etcd response object.
+     */
+    @Nonnull
+    Future<KeyResponse> postKey(@Nonnull String key,
+                                @Nullable String value,
+                                @Nonnull Map<String, String> parameters,
+                                @Nullable FutureCallback<KeyResponse> callback);
+
+    /**
+     * Execute a HTTP DELETE request against the etcd key API.
+     *
+     * @param key the key to be deleted.
+     * @param parameters the parameters to be added to the request uri.
+     * @param callback the optional callback notified upon completion.
+     * @return the future {@link KeyResponse} etcd response object.
+     */
+    @Nonnull
+    Future<KeyResponse> deleteKey(@Nonnull String key,
+                                  @Nonnull Map<String, String> parameters,
+                                  @Nullable FutureCallback<KeyResponse> callback);
+
+    /**
+     * Get the list of members in the etcd cluster.
+     *
+     * @param callback the optional callback notified upon completion.
+     * @return the future {@link MembersResponse} etcd response object.
+     */
+    @Nonnull
+    Future<MembersResponse> getMembers(@Nullable FutureCallback<MembersResponse> callback);
+
+    /**
+     * Get the leader statistics from the given leader peer endpoint.
+     *
+     * @param leaderPeerEndpoint the endpoint of the etcd leader peer.
+     * @param callback the optional callback notified upon completion.
+     * @return the future {@link LeaderStatsResponse} etcd response object.
+     */
+    @Nonnull
+    Future<LeaderStatsResponse> getLeaderStats(@Nonnull URI leaderPeerEndpoint,
+                                               @Nullable FutureCallback<LeaderStatsResponse> callback);
+
+    /**
+     * Get the statistics of the given etcd peer.
+     *
+     * @param peerEndpoint the endpoint of the etcd peer.
+     * @param callback the optional callback notified upon completion.
+     * @return the future {@link MemberStatsResponse} etcd response object.
+     */
+    @Nonnull
+    Future<MemberStatsResponse> getMemberStats(@Nonnull URI peerEndpoint,
+                                               @Nullable FutureCallback<MemberStatsResponse> callback);
+
+    /**
+     * Get the version of the given etcd peer.
+     *
+     * @param peerEndpoint the endpoint of the etcd peer.
+     * @param callback the optional callback notified upon completion.
+     * @return the future {@link VersionResponse} etcd response object.
+     */
+    @Nonnull
+    Future<VersionResponse> getVersion(@Nonnull URI peerEndpoint,
+                                       @Nullable FutureCallback<VersionResponse> callback);
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import aQute.bnd.annotation.ProviderType;
+
+/**
+ * An {@link EtcdNode} which value has been decoded with a {@link ValueDecoder}.
+ * The raw value is not retained, {@link #value()} returns {@code null}.
+ *
+ * @param <T> the type of the decoded value.
+ */
+@ProviderType
+public interface DecodedNode<T> extends EtcdNode {
+
+    /**
+     * @return the decoded value ; or {@code null} if the node has no value or the value could not be decoded.
+     */
+    @Nullable
+    T decodedValue();
+
+    /**
+     * @return the list of child nodes, with their values decoded.
+     */
+    @Nonnull
+    List<DecodedNode<T>> decodedNodes();
+
+}
@@ -39,6 +39,7 @@ public interface EtcdClient {
     /**
      * Execute a HTTP GET request against the etcd key API.
      * GET operations allow to get the value of a key, list keys in a hierarchy or wait for changes of a key.
+     * The requests waiting for changes ({@code wait=true}) apply the request configuration of the watches.
      *
      * @param key the key to be fetched.
      * @param parameters the parameters to be added to the request uri.
@@ -50,6 +51,45 @@ public interface EtcdClient {
                         @Nonnull Map<String, String> parameters)
             throws IOException;
 
+    /**
+     * Execute a HTTP GET request against the etcd key API and decode the node values
+     * with the given decoder, while decoding the response.
+     * The nodes of the returned response are {@link DecodedNode} instances.
+     * The values which can not be decoded are logged and left undecoded.
+     * The requests waiting for changes ({@code wait=true}) apply the request configuration of the watches.
+     *
+     * @param key the key to be fetched.
+     * @param parameters the parameters to be added to the request uri.
+     * @param decoder the decoder for the node values.
+     * @param <T> the type of the decoded values.
+     * @return a {@link KeyResponse} etcd response object.
+     * @throws IOException if an IO exception occurred.
+     */
+    @Nonnull
+    <T> KeyResponse getKey(@Nonnull String key,
+                           @Nonnull Map<String, String> parameters,
+                           @Nonnull ValueDecoder<T> decoder)
+            throws IOException;
+
+    /**
+     * List the nodes under a folder without holding them in memory.
+     * The nodes are handed to the visitor as they are read from the connection,
+     * the listing may be stopped early by the visitor.
+     *
+     * @param key the folder to be listed.
+     * @param recursive {@code true} in order to list the nodes of the sub folders as well.
+     * @param visitor the visitor receiving the nodes.
+     * @return a {@link KeyResponse} etcd response object. The node of the action is the listed folder,
+     *         without its children. If the listing has been stopped, the folder properties following
+     *         the children in the response may be undefined.
+     * @throws IOException if an IO exception occurred.
+     */
+    @Nonnull
+    KeyResponse list(@Nonnull String key,
+                     boolean recursive,
+                     @Nonnull NodeVisitor visitor)
+            throws IOException;
+
     /**
      * Execute a HTTP PUT request against the etcd key API.
      * PUT operations allow to set the value and update the ttl of a key,
@@ -129,6 +169,24 @@ public interface EtcdClient {
                            @Nonnull Map<String, String> parameters)
             throws IOException;
 
+    /**
+     * Watch a key for changes.
+     * The watch runs in its own thread and long polls the key with the timeouts dedicated to watches.
+     * The watch resumes from the {@code modifiedIndex} + 1 of the last change delivered to the listener.
+     *
+     * @param key the key to be watched.
+     * @param recursive {@code true} in order to watch the children of the key as well.
+     * @param fromIndex the etcd index (inclusive) from which to watch ;
+     *                  or {@code null} to watch from the next change.
+     * @param listener the listener receiving the changes.
+     * @return the {@link EtcdWatch} allowing to cancel the watch.
+     */
+    @Nonnull
+    EtcdWatch watch(@Nonnull String key,
+                    boolean recursive,
+                    @Nullable Long fromIndex,
+                    @Nonnull WatchListener listener);
+
     /**
      * Execute a GET request against the etcd members API.
      * GET operation return the coordinates for each peers in the etcd cluster.
@@ -19,10 +19,14 @@
 package org.apache.sling.etcd.client;
 
 import java.net.URI;
+import java.util.List;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
 
 import aQute.bnd.annotation.ProviderType;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.CloseableHttpClient;
 
 /**
@@ -46,4 +50,67 @@ public interface EtcdClientFactory {
     @Nonnull
     EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull URI endpoint);
 
+    /**
+     * Creates a new instance of {@link EtcdClient} with dedicated request configuration for the watches.
+     *
+     * @param httpClient the HTTP client used for communicating with the etcd peers.
+     * @param endpoint the etcd endpoint to communicate with the etcd peers.
+     * @param watchConfig the request configuration (timeouts) applied to the watch long poll requests.
+     * @return the new {@link EtcdClient} instance.
+     */
+    @Nonnull
+    EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull URI endpoint, @Nonnull RequestConfig watchConfig);
+
+    /**
+     * Creates a new instance of {@link EtcdClient} communicating directly with the members of an etcd cluster,
+     * see {@link #create(CloseableHttpClient, List, RequestConfig)}.
+     *
+     * @param httpClient the HTTP client used for communicating with the etcd peers.
+     * @param seeds the endpoints of some etcd members, used for discovering all the members.
+     * @return the new {@link EtcdClient} instance.
+     */
+    @Nonnull
+    EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull List<URI> seeds);
+
+    /**
+     * <p>Creates a new instance of {@link EtcdClient} communicating directly with the members of an etcd cluster.</p>
+     *
+     * <p>The client discovers the members from the seed endpoints and routes each request to the fastest
+     * healthy member, failing over to the other members upon I/O errors.</p>
+     *
+     * @param httpClient the HTTP client used for communicating with the etcd peers.
+     * @param seeds the endpoints of some etcd members, used for discovering all the members.
+     * @param watchConfig the request configuration (timeouts) applied to the watch long poll requests.
+     * @return the new {@link EtcdClient} instance.
+     */
+    @Nonnull
+    EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull List<URI> seeds, @Nonnull RequestConfig watchConfig);
+
+    /**
+     * <p>Creates a new instance of {@link EtcdClient} sharing the routing state (the endpoints, the discovered
+     * members and the leader) of a client created by this factory, and sending its requests through another
+     * HTTP client.</p>
+     *
+     * <p>This allows to isolate the connections of some requests without discovering the members twice.</p>
+     *
+     * @param httpClient the HTTP client used for communicating with the etcd peers.
+     * @param client a client created by this factory, whose routing state is shared.
+     * @return the new {@link EtcdClient} instance.
+     * @throws IllegalArgumentException if the client has not been created by this factory.
+     */
+    @Nonnull
+    EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull EtcdClient client);
+
+    /**
+     * Creates a new instance of {@link AsyncEtcdClient}. The client owns its I/O resources
+     * which are released when the client is closed.
+     *
+     * @param endpoint the etcd endpoint to communicate with the etcd peers.
+     * @param config the request configuration, only the connect and socket timeouts are considered.
+     * @param sslContext the SSL context used for the {@code https} endpoints ; or {@code null} to use the default one.
+     * @return the new {@link AsyncEtcdClient} instance.
+     */
+    @Nonnull
+    AsyncEtcdClient createAsync(@Nonnull URI endpoint, @Nonnull RequestConfig config, @Nullable SSLContext sslContext);
+
 }
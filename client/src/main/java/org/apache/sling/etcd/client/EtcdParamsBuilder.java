@@ -69,6 +69,20 @@ public final class EtcdParamsBuilder {
         return this;
     }
 
+    /**
+     * Refresh the ttl of an existing key without changing its value.
+     * The refresh must be combined with a ttl and sent without value.
+     * Refreshes do not notify watchers.
+     *
+     * @param refresh {@code true} to only refresh the ttl ; {@code false} otherwise.
+     * @return {@code this}
+     */
+    @Nonnull
+    public EtcdParamsBuilder refresh(boolean refresh) {
+        params.put("refresh", String.valueOf(refresh));
+        return this;
+    }
+
     /**
      * Previous value matches condition.
      *
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client;
+
+import javax.annotation.Nullable;
+
+import aQute.bnd.annotation.ProviderType;
+
+/**
+ * Represent a watch on an etcd key, started via {@link EtcdClient#watch}.
+ * The watch keeps long polling the key until cancelled.
+ */
+@ProviderType
+public interface EtcdWatch {
+
+    /**
+     * @return the etcd index from which the watch resumes ; or {@code null} if the watch waits for the next change.
+     */
+    @Nullable
+    Long waitIndex();
+
+    /**
+     * @return {@code true} if the watch has been cancelled ; {@code false} otherwise.
+     */
+    boolean isCancelled();
+
+    /**
+     * Cancel the watch. The pending long poll request is aborted and
+     * no change is delivered to the listener after this method returned.
+     */
+    void cancel();
+
+}
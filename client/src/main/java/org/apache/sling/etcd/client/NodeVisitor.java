@@ -16,23 +16,27 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package org.apache.sling.discovery.etcd;
+package org.apache.sling.etcd.client;
 
-import java.util.Collections;
+import javax.annotation.Nonnull;
 
-import junit.framework.Assert;
-import org.junit.Test;
+import aQute.bnd.annotation.ConsumerType;
 
-public class PropertiesMapTest {
+/**
+ * Receives the nodes of a listing, see {@link EtcdClient#list(String, boolean, NodeVisitor)}.
+ * The methods are invoked sequentially from the thread executing the listing.
+ */
+@ConsumerType
+public interface NodeVisitor {
+
+    /**
+     * Invoked for each node, as soon as it is read from the response.
+     * The node does not hold its children, they are visited separately.
+     * A folder is visited once complete, after its children.
+     *
+     * @param node the node.
+     * @return {@code true} in order to continue the listing ; {@code false} in order to stop it.
+     */
+    boolean visit(@Nonnull EtcdNode node);
 
-    @Test
-    public void testGet() throws Exception {
-        PropertiesMap map = new PropertiesMap("sling-id");
-        Assert.assertEquals(0, map.getLocal().size());
-        map.setLocal(Collections.singletonMap("k1", "v1"));
-        map.setRemote(Collections.singletonMap("remote-1", Collections.singletonMap("k2", "v2")));
-        Assert.assertEquals(1, map.getLocal().size());
-        Assert.assertEquals(1, map.getRemote().size());
-        Assert.assertEquals(2, map.getAll().size());
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import aQute.bnd.annotation.ConsumerType;
+
+/**
+ * Decodes the json values stored in etcd keys into typed objects.
+ * The decoder is invoked while the etcd response is decoded, once per node holding a value,
+ * and reads the value without it being materialised as a {@code String} first.
+ *
+ * @param <T> the type of the decoded values.
+ */
+@ConsumerType
+public interface ValueDecoder<T> {
+
+    /**
+     * @param value the reader positioned at the beginning of the value.
+     *              The part of the value not read by the decoder is skipped.
+     * @return the decoded value.
+     * @throws IOException if the value could not be read or decoded.
+     */
+    @Nonnull
+    T decode(@Nonnull ValueReader value) throws IOException;
+
+}
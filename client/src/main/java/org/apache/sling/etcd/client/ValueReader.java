@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import aQute.bnd.annotation.ProviderType;
+
+/**
+ * Pull reader over a key value which is itself a json document.
+ * The reader is handed to a {@link ValueDecoder} and reads the value straight from the
+ * response stream, while the response is being decoded.
+ */
+@ProviderType
+public interface ValueReader {
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /**
+     * @return the type of the next token, without consuming it.
+     * @throws IOException if the value could not be read or is not valid json.
+     */
+    @Nonnull
+    Token peek() throws IOException;
+
+    /**
+     * @return {@code true} if the current object or array has more elements ; {@code false} otherwise.
+     * @throws IOException if the value could not be read or is not valid json.
+     */
+    boolean hasNext() throws IOException;
+
+    void beginObject() throws IOException;
+
+    void endObject() throws IOException;
+
+    void beginArray() throws IOException;
+
+    void endArray() throws IOException;
+
+    /**
+     * @return the next property name.
+     * @throws IOException if the value could not be read or is not valid json.
+     */
+    @Nonnull
+    String nextName() throws IOException;
+
+    /**
+     * Read the next property name without allocating it.
+     *
+     * @param names the candidate names.
+     * @return the index of the matching candidate ; or {@code -1} if the name matches no candidate.
+     * @throws IOException if the value could not be read or is not valid json.
+     */
+    int nextName(@Nonnull String[] names) throws IOException;
+
+    /**
+     * @return the next string (or number as string) ; or {@code null} if the next value is {@code null}.
+     * @throws IOException if the value could not be read or is not valid json.
+     */
+    @Nullable
+    String nextString() throws IOException;
+
+    long nextLong() throws IOException;
+
+    boolean nextBoolean() throws IOException;
+
+    void nextNull() throws IOException;
+
+    /**
+     * Skip the next value, including the nested objects and arrays.
+     *
+     * @throws IOException if the value could not be read or is not valid json.
+     */
+    void skipValue() throws IOException;
+
+}
@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.etcd.client.impl.Check;
+
+/**
+ * <p>The {@code WatchHub} multiplexes the watches under a root key over a single recursive
+ * {@link EtcdWatch}. Subscribers register a {@link WatchListener} on a prefix (the root key
+ * or any key below it) and receive the changes applied to the prefix or its children.</p>
+ *
+ * <p>The subscribers are kept in a prefix trie indexed by the key segments, subscribers on the
+ * same prefix share the same trie node. Dispatching a change walks the trie along the changed key,
+ * thus the cost does not depend on the number of subscribers watching unrelated prefixes.
+ * Deleting or expiring a folder is dispatched to the subscribers below the folder as well.</p>
+ *
+ * <p>The recursive watch is started with the first subscription and cancelled with the last one,
+ * such that the hub holds at most one long poll thread and connection. A subscription replaying
+ * the changes from an index older than the recursive watch gets a watch of its own.</p>
+ *
+ * <p>The subscribers are invoked from the watch thread without holding the hub lock, thus
+ * subscriptions may be cancelled from any thread while a subscriber is being invoked.
+ * A cancelled subscription is not invoked anymore, see {@link WatchListener}.</p>
+ */
+public final class WatchHub {
+
+    private final EtcdClient etcdClient;
+
+    private final String rootKey;
+
+    private final Object lock = new Object();
+
+    private final TrieNode root = new TrieNode();
+
+    private final Dispatcher dispatcher = new Dispatcher();
+
+    private EtcdWatch watch;
+
+    private int subscriptions;
+
+    /**
+     * The subscriptions replaying the changes with a watch of their own.
+     */
+    private final List<Subscription> replays = new ArrayList<Subscription>();
+
+    /**
+     * @param etcdClient the etcd client used to watch the root key.
+     * @param rootKey the key to be watched recursively.
+     */
+    public WatchHub(@Nonnull EtcdClient etcdClient, @Nonnull String rootKey) {
+        this.etcdClient = Check.nonNull(etcdClient, "etcdClient");
+        this.rootKey = normalize(Check.nonNull(rootKey, "rootKey"));
+    }
+
+    /**
+     * Subscribe to the changes applied to a prefix or its children.
+     *
+     * @param prefix the watched prefix, must be the root key or a key below it.
+     * @param listener the listener receiving the changes.
+     * @return the {@link EtcdWatch} allowing to cancel the subscription.
+     * @throws IllegalArgumentException if the prefix is not below the root key.
+     */
+    @Nonnull
+    public EtcdWatch subscribe(@Nonnull String prefix, @Nonnull WatchListener listener) {
+        return subscribe(prefix, null, listener);
+    }
+
+    /**
+     * Subscribe to the changes applied to a prefix or its children, from a given etcd index.
+     * The changes are replayed from the index with the recursive watch if it has not moved past the index,
+     * otherwise the subscription gets a watch of its own.
+     *
+     * @param prefix the watched prefix, must be the root key or a key below it.
+     * @param fromIndex the etcd index (inclusive) from which to receive the changes ;
+     *                  or {@code null} to receive the changes from the next change.
+     * @param listener the listener receiving the changes.
+     * @return the {@link EtcdWatch} allowing to cancel the subscription.
+     * @throws IllegalArgumentException if the prefix is not below the root key.
+     */
+    @Nonnull
+    public EtcdWatch subscribe(@Nonnull String prefix, @Nullable Long fromIndex, @Nonnull WatchListener listener) {
+        Check.nonNull(prefix, "prefix");
+        Check.nonNull(listener, "listener");
+        String normalized = normalize(prefix);
+        List<String> segments = relativeSegments(normalized);
+        if (segments == null) {
+            throw new IllegalArgumentException(String.format("prefix %s is not below the root key %s", prefix, rootKey));
+        }
+        synchronized (lock) {
+            if (fromIndex != null && watch != null) {
+                Long waitIndex = watch.waitIndex();
+                if (waitIndex == null || fromIndex < waitIndex) {
+                    // the recursive watch moved past the index (or its index is unknown), replay with a watch of its own
+                    Subscription subscription = new Subscription(null, fromIndex, listener);
+                    subscription.own = etcdClient.watch(normalized, true, fromIndex, new Replay(subscription));
+                    replays.add(subscription);
+                    return subscription;
+                }
+            }
+            TrieNode node = root;
+            for (String segment : segments) {
+                node = node.child(segment, true);
+            }
+            Subscription subscription = new Subscription(node, fromIndex, listener);
+            node.subscriptions.add(subscription);
+            if (subscriptions++ == 0) {
+                watch = etcdClient.watch(rootKey, true, fromIndex, dispatcher);
+            }
+            return subscription;
+        }
+    }
+
+    /**
+     * @return the number of active subscriptions.
+     */
+    public int subscriptions() {
+        synchronized (lock) {
+            return subscriptions + replays.size();
+        }
+    }
+
+    /**
+     * Cancel all the subscriptions and the recursive watch.
+     */
+    public void close() {
+        List<EtcdWatch> stopped = new ArrayList<EtcdWatch>();
+        synchronized (lock) {
+            for (Subscription subscription : root.subtree(new ArrayList<Subscription>())) {
+                subscription.cancelled = true;
+            }
+            root.children.clear();
+            root.subscriptions.clear();
+            subscriptions = 0;
+            for (Subscription replay : replays) {
+                replay.cancelled = true;
+                stopped.add(replay.own);
+            }
+            replays.clear();
+            stopped.add(detachWatch());
+        }
+        for (EtcdWatch detached : stopped) {
+            stopWatch(detached);
+        }
+    }
+
+    //
+
+    private void unsubscribe(@Nonnull Subscription subscription) {
+        EtcdWatch stopped = null;
+        synchronized (lock) {
+            if (! subscription.cancelled && subscription.node == null) {
+                subscription.cancelled = true;
+                replays.remove(subscription);
+                stopped = subscription.own;
+            } else if (! subscription.cancelled) {
+                subscription.cancelled = true;
+                subscription.node.subscriptions.remove(subscription);
+                subscription.node.prune();
+                if (--subscriptions == 0) {
+                    stopped = detachWatch();
+                }
+            }
+        }
+        stopWatch(stopped);
+    }
+
+    /**
+     * Detach the recursive watch from the hub, must be invoked while holding the hub lock.
+     *
+     * @return the detached watch to be stopped once the hub lock is released ; or {@code null}.
+     */
+    @Nullable
+    private EtcdWatch detachWatch() {
+        EtcdWatch detached = watch;
+        watch = null;
+        return detached;
+    }
+
+    /**
+     * Stop a detached watch, must be invoked without holding the hub lock.
+     */
+    private static void stopWatch(@Nullable EtcdWatch stopped) {
+        if (stopped != null) {
+            stopped.cancel();
+        }
+    }
+
+    /**
+     * @return a copy of all the subscriptions.
+     */
+    @Nonnull
+    private List<Subscription> allSubscriptions() {
+        synchronized (lock) {
+            return root.subtree(new ArrayList<Subscription>());
+        }
+    }
+
+    /**
+     * @return the key segments relative to the root key ; or {@code null} if the key is not below the root key.
+     */
+    @Nullable
+    private List<String> relativeSegments(@Nonnull String key) {
+        String relative;
+        if (key.equals(rootKey)) {
+            relative = "";
+        } else if (rootKey.length() == 0 || key.startsWith(rootKey + "/")) {
+            relative = key.substring(rootKey.length());
+        } else {
+            return null;
+        }
+        List<String> segments = new ArrayList<String>();
+        for (String segment : relative.split("/")) {
+            if (segment.length() > 0) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    @Nonnull
+    private static String normalize(@Nonnull String key) {
+        String normalized = key.trim();
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    /**
+     * Dispatch the changes received from the recursive watch to the subscribers.
+     */
+    private final class Dispatcher implements WatchListener {
+
+        public void onAction(@Nonnull KeyAction action) {
+            EtcdNode node = action.node();
+            List<String> segments = relativeSegments(normalize(node.key()));
+            if (segments == null) {
+                return;
+            }
+            List<Subscription> matching = new ArrayList<Subscription>();
+            synchronized (lock) {
+                TrieNode current = root;
+                matching.addAll(current.subscriptions);
+                for (String segment : segments) {
+                    current = current.child(segment, false);
+                    if (current == null) {
+                        break;
+                    }
+                    matching.addAll(current.subscriptions);
+                }
+                if (current != null && node.dir()) {
+                    // the subscribers below a changed folder are concerned as well
+                    for (TrieNode child : current.children.values()) {
+                        child.subtree(matching);
+                    }
+                }
+            }
+            for (Subscription subscription : matching) {
+                if (! subscription.cancelled && subscription.accept(node)) {
+                    subscription.listener.onAction(action);
+                }
+            }
+        }
+
+        public void onResync(@Nonnull KeyError error) {
+            for (Subscription subscription : allSubscriptions()) {
+                if (! subscription.cancelled) {
+                    subscription.listener.onResync(error);
+                }
+            }
+        }
+
+        public void onError(@Nonnull Exception e) {
+            for (Subscription subscription : allSubscriptions()) {
+                if (! subscription.cancelled) {
+                    subscription.listener.onError(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deliver the changes of the watch owned by a replaying subscription.
+     */
+    private static final class Replay implements WatchListener {
+
+        private final Subscription subscription;
+
+        private Replay(@Nonnull Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onAction(@Nonnull KeyAction action) {
+            if (! subscription.cancelled) {
+                subscription.listener.onAction(action);
+            }
+        }
+
+        public void onResync(@Nonnull KeyError error) {
+            if (! subscription.cancelled) {
+                subscription.listener.onResync(error);
+            }
+        }
+
+        public void onError(@Nonnull Exception e) {
+            if (! subscription.cancelled) {
+                subscription.listener.onError(e);
+            }
+        }
+    }
+
+    private final class Subscription implements EtcdWatch {
+
+        /**
+         * The trie node of the subscription ; or {@code null} if the subscription owns its watch.
+         */
+        private final TrieNode node;
+
+        private final Long fromIndex;
+
+        private final WatchListener listener;
+
+        /**
+         * The watch owned by a replaying subscription.
+         */
+        private EtcdWatch own;
+
+        private volatile boolean cancelled;
+
+        private Subscription(@Nullable TrieNode node, @Nullable Long fromIndex, @Nonnull WatchListener listener) {
+            this.node = node;
+            this.fromIndex = fromIndex;
+            this.listener = listener;
+        }
+
+        /**
+         * @return {@code true} if the changed node is not older than the index the subscription started from.
+         */
+        private boolean accept(@Nonnull EtcdNode changed) {
+            return fromIndex == null || changed.modifiedIndex() >= fromIndex;
+        }
+
+        @Nullable
+        public Long waitIndex() {
+            synchronized (lock) {
+                EtcdWatch current = (node != null) ? watch : own;
+                return (current != null) ? current.waitIndex() : null;
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            unsubscribe(this);
+        }
+    }
+
+    private static final class TrieNode {
+
+        private final TrieNode parent;
+
+        private final String segment;
+
+        private final Map<String, TrieNode> children = new HashMap<String, TrieNode>();
+
+        private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+        private TrieNode() {
+            this(null, null);
+        }
+
+        private TrieNode(@Nullable TrieNode parent, @Nullable String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        @Nullable
+        private TrieNode child(@Nonnull String segment, boolean create) {
+            TrieNode child = children.get(segment);
+            if (child == null && create) {
+                child = new TrieNode(this, segment);
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        /**
+         * Add the subscriptions of this node and its descendants to the given list.
+         */
+        @Nonnull
+        private List<Subscription> subtree(@Nonnull List<Subscription> collected) {
+            collected.addAll(subscriptions);
+            for (TrieNode child : children.values()) {
+                child.subtree(collected);
+            }
+            return collected;
+        }
+
+        /**
+         * Remove this node and its empty ancestors from the trie.
+         */
+        private void prune() {
+            TrieNode node = this;
+            while (node.parent != null && node.subscriptions.isEmpty() && node.children.isEmpty()) {
+                node.parent.children.remove(node.segment);
+                node = node.parent;
+            }
+        }
+    }
+
+}
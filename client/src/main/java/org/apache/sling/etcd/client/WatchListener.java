@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client;
+
+import javax.annotation.Nonnull;
+
+import aQute.bnd.annotation.ConsumerType;
+
+/**
+ * Receives the changes observed by an {@link EtcdWatch}.
+ * The methods are invoked sequentially from the thread running the watch, without holding any lock
+ * of the watch. The cancellation is checked before each invocation, such that no invocation starts
+ * once {@link EtcdWatch#cancel()} returned. An invocation which passed the check when the watch is
+ * cancelled is allowed to complete, {@link EtcdWatch#cancel()} does not wait for it.
+ * The methods may cancel the watch.
+ */
+@ConsumerType
+public interface WatchListener {
+
+    /**
+     * Invoked for each change, in the etcd index order.
+     *
+     * @param action the action applied to the watched key or one of its children.
+     */
+    void onAction(@Nonnull KeyAction action);
+
+    /**
+     * Invoked when the changes from the watched index are no longer kept in the etcd history
+     * (etcd error {@code 401} "event index cleared"). The listener must read the watched keys again
+     * in order to resynchronise its state. The watch resumes from the index following the
+     * {@link KeyError#index()}.
+     *
+     * @param error the etcd error.
+     */
+    void onResync(@Nonnull KeyError error);
+
+    /**
+     * Invoked when an I/O error or an unexpected etcd error occurred.
+     * The watch is retried from the same index after a delay.
+     *
+     * @param e the error.
+     */
+    void onError(@Nonnull Exception e);
+
+}
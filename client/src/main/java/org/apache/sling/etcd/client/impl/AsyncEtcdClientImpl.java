@@ -0,0 +1,441 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.impl.nio.DefaultHttpClientIODispatch;
+import org.apache.http.impl.nio.pool.BasicNIOConnFactory;
+import org.apache.http.impl.nio.pool.BasicNIOConnPool;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.entity.NStringEntity;
+import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestExecutor;
+import org.apache.http.nio.protocol.HttpAsyncRequester;
+import org.apache.http.nio.reactor.IOEventDispatch;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.RequestConnControl;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestTargetHost;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.etcd.client.AsyncEtcdClient;
+import org.apache.sling.etcd.client.EtcdException;
+import org.apache.sling.etcd.client.KeyResponse;
+import org.apache.sling.etcd.client.LeaderStatsResponse;
+import org.apache.sling.etcd.client.MemberStatsResponse;
+import org.apache.sling.etcd.client.MembersResponse;
+import org.apache.sling.etcd.client.VersionResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.API_KEYS_FORMAT;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.FORM_URLENCODED;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.PATH_LEADER_STATS;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.PATH_MEMBERS;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.PATH_SELF_STATS;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.PATH_VERSION;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.UTF8;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.buildUri;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.checkStatus;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.extractHeaders;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.formatStatusLine;
+import static org.apache.sling.etcd.client.impl.EtcdClientImpl.toJson;
+
+/**
+ * <p>The {@code AsyncEtcdClient} implementation is built on top of the HttpCore NIO
+ * components. A single I/O reactor multiplexes the requests over a pool of persistent
+ * connections, thus any number of requests can be in flight without holding a thread each.</p>
+ *
+ * <p>Like {@link EtcdClientImpl}, the client requires a single etcd endpoint. The redirects
+ * returned by the etcd peers are followed by the client.</p>
+ */
+public class AsyncEtcdClientImpl implements AsyncEtcdClient {
+
+    /**
+     * Maximum number of redirects followed for a single request.
+     */
+    private static final int MAX_REDIRECTS = 5;
+
+    /**
+     * Maximum number of connections, per route and in total.
+     */
+    private static final int MAX_CONNECTIONS = 20;
+
+    /**
+     * Time (in ms) granted to the I/O reactor to gracefully shutdown.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 1000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncEtcdClientImpl.class);
+
+    private final URI endpoint;
+
+    private final DefaultConnectingIOReactor ioReactor;
+
+    private final BasicNIOConnPool pool;
+
+    private final HttpAsyncRequester requester;
+
+    /**
+     * @param endpoint The uri to access the etcd peers (e.g. http://localhost:4001)
+     * @param config The request configuration, the connect and socket timeouts are applied to all requests.
+     * @param sslContext The SSL context used for the {@code https} endpoints ; or {@code null} to use the default one.
+     */
+    public AsyncEtcdClientImpl(@Nonnull URI endpoint, @Nonnull RequestConfig config, @Nullable SSLContext sslContext) {
+        this.endpoint = Check.nonNull(endpoint, "endpoint");
+        Check.nonNull(config, "config");
+        int connectTimeout = Math.max(config.getConnectTimeout(), 0);
+        try {
+            ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                    .setConnectTimeout(connectTimeout)
+                    .setSoTimeout(Math.max(config.getSocketTimeout(), 0))
+                    .build());
+        } catch (IOReactorException e) {
+            throw new EtcdException(e.getMessage(), e);
+        }
+        pool = new BasicNIOConnPool(ioReactor,
+                new BasicNIOConnFactory(sslContext, null, ConnectionConfig.DEFAULT), connectTimeout);
+        pool.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        pool.setMaxTotal(MAX_CONNECTIONS);
+        requester = new HttpAsyncRequester(HttpProcessorBuilder.create()
+                .add(new RequestContent())
+                .add(new RequestTargetHost())
+                .add(new RequestConnControl())
+                .build());
+        final IOEventDispatch dispatch = new DefaultHttpClientIODispatch(
+                new HttpAsyncRequestExecutor(), ConnectionConfig.DEFAULT);
+        Thread ioThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    ioReactor.execute(dispatch);
+                } catch (IOException e) {
+                    LOG.error("I/O reactor terminated: {}", e.getMessage(), e);
+                }
+            }
+        }, String.format("etcd async client %s", endpoint));
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public Future<KeyResponse> getKey(@Nonnull String key,
+                                      @Nonnull Map<String, String> parameters,
+                                      @Nullable FutureCallback<KeyResponse> callback) {
+        return execKey("GET", key, null, parameters, callback);
+    }
+
+    /**
+     * The request is sent with {@code application/x-www-form-urlencoded} content type.
+     * The "value" is sent in the request body, the other parameters are sent as query parameters.
+     */
+    @Nonnull
+    public Future<KeyResponse> putKey(@Nonnull String key,
+                                      @Nullable String value,
+                                      @Nonnull Map<String, String> parameters,
+                                      @Nullable FutureCallback<KeyResponse> callback) {
+        return execKey("PUT", key, value, parameters, callback);
+    }
+
+    /**
+     * The request is sent with {@code application/x-www-form-urlencoded} content type.
+     * The "value" is sent in the request body, the other parameters are sent as query parameters.
+     */
+    @Nonnull
+    public Future<KeyResponse> postKey(@Nonnull String key,
+                                       @Nullable String value,
+                                       @Nonnull Map<String, String> parameters,
+                                       @Nullable FutureCallback<KeyResponse> callback) {
+        return execKey("POST", key, value, parameters, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public Future<KeyResponse> deleteKey(@Nonnull String key,
+                                         @Nonnull Map<String, String> parameters,
+                                         @Nullable FutureCallback<KeyResponse> callback) {
+        return execKey("DELETE", key, null, parameters, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public Future<MembersResponse> getMembers(@Nullable FutureCallback<MembersResponse> callback) {
+        return exec(new Exchange<MembersResponse>("GET", buildUri(endpoint, PATH_MEMBERS,
+                Collections.<String, String>emptyMap()), null, callback, 200) {
+            @Nonnull
+            @Override
+            MembersResponse parse(@Nonnull StatusLine status, @Nonnull Map<String, List<String>> headers, @Nonnull String body)
+                    throws IOException {
+                return new MembersResponseImpl(status.getStatusCode(), status.getReasonPhrase(), headers, toJson(body));
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public Future<LeaderStatsResponse> getLeaderStats(@Nonnull URI leaderPeerEndpoint,
+                                                      @Nullable FutureCallback<LeaderStatsResponse> callback) {
+        Check.nonNull(leaderPeerEndpoint, "leaderPeerEndpoint");
+        return exec(new Exchange<LeaderStatsResponse>("GET", buildUri(leaderPeerEndpoint, PATH_LEADER_STATS,
+                Collections.<String, String>emptyMap()), null, callback, 200) {
+            @Nonnull
+            @Override
+            LeaderStatsResponse parse(@Nonnull StatusLine status, @Nonnull Map<String, List<String>> headers, @Nonnull String body)
+                    throws IOException {
+                return new LeaderStatsResponseImpl(status.getStatusCode(), status.getReasonPhrase(), headers, toJson(body));
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public Future<MemberStatsResponse> getMemberStats(@Nonnull URI peerEndpoint,
+                                                      @Nullable FutureCallback<MemberStatsResponse> callback) {
+        Check.nonNull(peerEndpoint, "peerEndpoint");
+        return exec(new Exchange<MemberStatsResponse>("GET", buildUri(peerEndpoint, PATH_SELF_STATS,
+                Collections.<String, String>emptyMap()), null, callback, 200) {
+            @Nonnull
+            @Override
+            MemberStatsResponse parse(@Nonnull StatusLine status, @Nonnull Map<String, List<String>> headers, @Nonnull String body)
+                    throws IOException {
+                return new MemberStatsResponseImpl(status.getStatusCode(), status.getReasonPhrase(), headers, toJson(body));
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public Future<VersionResponse> getVersion(@Nonnull URI peerEndpoint,
+                                              @Nullable FutureCallback<VersionResponse> callback) {
+        Check.nonNull(peerEndpoint, "peerEndpoint");
+        return exec(new Exchange<VersionResponse>("GET", buildUri(peerEndpoint, PATH_VERSION,
+                Collections.<String, String>emptyMap()), null, callback, 200) {
+            @Nonnull
+            @Override
+            VersionResponse parse(@Nonnull StatusLine status, @Nonnull Map<String, List<String>> headers, @Nonnull String body) {
+                return new VersionResponseImpl(status.getStatusCode(), status.getReasonPhrase(), headers, body);
+            }
+        });
+    }
+
+    /**
+     * Shutdown the I/O reactor and close the pooled connections.
+     * The pending requests are failed.
+     */
+    public void close() throws IOException {
+        pool.shutdown(SHUTDOWN_TIMEOUT);
+    }
+
+    //
+
+    @Nonnull
+    private Future<KeyResponse> execKey(@Nonnull String method,
+                                        @Nonnull String key,
+                                        @Nullable String value,
+                                        @Nonnull Map<String, String> parameters,
+                                        @Nullable FutureCallback<KeyResponse> callback) {
+        Check.nonNull(parameters, "parameters");
+        Check.nonNull(key, "key");
+        return exec(new Exchange<KeyResponse>(method, buildUri(endpoint, String.format(API_KEYS_FORMAT, key), parameters),
+                value, callback, 200, 201, 400, 403, 404, 412) {
+            @Nonnull
+            @Override
+            KeyResponse parse(@Nonnull StatusLine status, @Nonnull Map<String, List<String>> headers, @Nonnull String body)
+                    throws IOException {
+                return new KeyResponseImpl(status.getStatusCode(), status.getReasonPhrase(), headers, toJson(body));
+            }
+        });
+    }
+
+    @Nonnull
+    private <T> Future<T> exec(@Nonnull Exchange<T> exchange) {
+        exchange.send();
+        return exchange;
+    }
+
+    /**
+     * Track a single request, including the redirects, until the response is parsed.
+     */
+    private abstract class Exchange<T> extends BasicFuture<T> {
+
+        private final String method;
+
+        private final String value;
+
+        private final int[] expected;
+
+        private volatile URI uri;
+
+        private volatile Future<HttpResponse> pending;
+
+        private int redirects;
+
+        private final FutureCallback<HttpResponse> handler = new FutureCallback<HttpResponse>() {
+
+            public void completed(HttpResponse response) {
+                handle(response);
+            }
+
+            public void failed(Exception e) {
+                Exchange.this.failed(e);
+            }
+
+            public void cancelled() {
+                Exchange.this.cancel();
+            }
+        };
+
+        Exchange(@Nonnull String method, @Nonnull URI uri, @Nullable String value,
+                 @Nullable FutureCallback<T> callback, int... expected) {
+            super(callback);
+            this.method = method;
+            this.uri = uri;
+            this.value = value;
+            this.expected = expected;
+        }
+
+        @Nonnull
+        abstract T parse(@Nonnull StatusLine status, @Nonnull Map<String, List<String>> headers, @Nonnull String body)
+                throws IOException;
+
+        void send() {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Execute {} request for uri {}", new Object[]{method, uri});
+            }
+            HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+            try {
+                pending = requester.execute(new BasicAsyncRequestProducer(target, request()),
+                        new BasicAsyncResponseConsumer(), pool, new BasicHttpContext(), handler);
+            } catch (IllegalStateException e) {
+                // the connection pool has been shutdown
+                failed(new IOException(String.format("Client closed: %s", e.getMessage())));
+            }
+        }
+
+        private void handle(@Nonnull HttpResponse response) {
+            try {
+                StatusLine statusLine = response.getStatusLine();
+                URI location = redirect(response);
+                if (location != null) {
+                    uri = location;
+                    send();
+                    return;
+                }
+                Map<String, List<String>> headers = extractHeaders(response.getAllHeaders());
+                String body = (response.getEntity() != null)
+                        ? EntityUtils.toString(response.getEntity(), UTF8)
+                        : null;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Response status: {} body: {} headers: {}", new Object[]{formatStatusLine(statusLine), body, headers});
+                }
+                checkStatus(statusLine, expected);
+                if (body == null) {
+                    throw new IOException(String.format("No entity found in response %s", formatStatusLine(statusLine)));
+                }
+                completed(parse(statusLine, headers, body));
+            } catch (IOException e) {
+                failed(e);
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            Future<HttpResponse> request = pending;
+            if (request != null) {
+                request.cancel(true);
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Nonnull
+        private HttpRequest request() {
+            String path = (uri.getRawQuery() != null)
+                    ? String.format("%s?%s", uri.getRawPath(), uri.getRawQuery())
+                    : uri.getRawPath();
+            if (value != null) {
+                BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest(method, path);
+                request.setEntity(new NStringEntity(URLEncodedUtils.format(
+                        Collections.singletonList(new BasicNameValuePair("value", value)), UTF8), FORM_URLENCODED));
+                return request;
+            }
+            return new BasicHttpRequest(method, path);
+        }
+
+        /**
+         * @return the redirect location ; or {@code null} if the response is not a redirect.
+         */
+        @Nullable
+        private URI redirect(@Nonnull HttpResponse response) throws IOException {
+            int status = response.getStatusLine().getStatusCode();
+            Header location = response.getFirstHeader("Location");
+            if (location == null || status < 301 || status > 308 || status == 304 || status == 305 || status == 306) {
+                return null;
+            }
+            if (++redirects > MAX_REDIRECTS) {
+                throw new IOException(String.format("Maximum redirects (%s) exceeded", MAX_REDIRECTS));
+            }
+            EntityUtils.consume(response.getEntity());
+            try {
+                return uri.resolve(location.getValue());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(String.format("Invalid redirect location: %s", location.getValue()));
+            }
+        }
+    }
+}
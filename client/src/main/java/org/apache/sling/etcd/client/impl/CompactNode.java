@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.etcd.client.DecodedNode;
+import org.apache.sling.etcd.client.EtcdException;
+import org.apache.sling.etcd.client.EtcdNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable {@link EtcdNode} holding the decoded node properties, see {@link KeyResponseDecoder}.
+ * When decoded with a {@link org.apache.sling.etcd.client.ValueDecoder}, the node holds the decoded
+ * value instead of the raw value.
+ *
+ * @param <T> the type of the decoded value.
+ */
+public final class CompactNode<T> implements DecodedNode<T> {
+
+    private static final String MISSING_PROPERTY = "Missing or invalid property '%s'";
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactNode.class);
+
+    private final String key;
+
+    private final String value;
+
+    private final T decodedValue;
+
+    private final boolean dir;
+
+    private final Long ttl;
+
+    private final String expiration;
+
+    private final long createdIndex;
+
+    private final long modifiedIndex;
+
+    private final List<DecodedNode<T>> decodedNodes;
+
+    private final List<EtcdNode> nodes;
+
+    public CompactNode(@Nullable String key, @Nullable String value, boolean dir, @Nullable Long ttl,
+                       @Nullable String expiration, long createdIndex, long modifiedIndex, @Nonnull List<DecodedNode<T>> nodes) {
+        this(key, value, null, dir, ttl, expiration, createdIndex, modifiedIndex, nodes);
+    }
+
+    public CompactNode(@Nullable String key, @Nullable String value, @Nullable T decodedValue, boolean dir, @Nullable Long ttl,
+                       @Nullable String expiration, long createdIndex, long modifiedIndex, @Nonnull List<DecodedNode<T>> nodes) {
+        this.key = key;
+        this.value = value;
+        this.decodedValue = decodedValue;
+        this.dir = dir;
+        this.ttl = ttl;
+        this.expiration = expiration;
+        this.createdIndex = createdIndex;
+        this.modifiedIndex = modifiedIndex;
+        this.decodedNodes = nodes.isEmpty()
+                ? Collections.<DecodedNode<T>>emptyList()
+                : Collections.unmodifiableList(nodes);
+        this.nodes = Collections.<EtcdNode>unmodifiableList(decodedNodes);
+    }
+
+    public long createdIndex() {
+        return createdIndex;
+    }
+
+    @Nonnull
+    public String key() {
+        if (key == null) {
+            throw new EtcdException(String.format(MISSING_PROPERTY, "key"));
+        }
+        return key;
+    }
+
+    public long modifiedIndex() {
+        return modifiedIndex;
+    }
+
+    @Nullable
+    public String value() {
+        return value;
+    }
+
+    @Nullable
+    public T decodedValue() {
+        return decodedValue;
+    }
+
+    @Nullable
+    public Long ttl() {
+        return ttl;
+    }
+
+    @Nullable
+    public Calendar expiration() {
+        if (expiration != null) {
+            try {
+                return DateUtil.parseDate(expiration);
+            } catch (ParseException e) {
+                LOG.warn(e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    public boolean dir() {
+        return dir;
+    }
+
+    @Nonnull
+    public List<EtcdNode> nodes() {
+        return nodes;
+    }
+
+    @Nonnull
+    public List<DecodedNode<T>> decodedNodes() {
+        return decodedNodes;
+    }
+
+    /**
+     * The json is rebuilt from the decoded properties.
+     */
+    @Nonnull
+    public String toJson() {
+        try {
+            return json().toString();
+        } catch (JSONException e) {
+            throw new EtcdException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompactNode{" +
+                "key='" + key + '\'' +
+                ", value='" + value + '\'' +
+                ", decodedValue=" + decodedValue +
+                ", dir=" + dir +
+                ", ttl=" + ttl +
+                ", modifiedIndex=" + modifiedIndex +
+                ", nodes=" + nodes.size() +
+                '}';
+    }
+
+    @Nonnull
+    private JSONObject json() throws JSONException {
+        JSONObject data = new JSONObject();
+        data.putOpt("key", key);
+        data.putOpt("value", value);
+        if (dir) {
+            data.put("dir", true);
+        }
+        data.putOpt("ttl", ttl);
+        data.putOpt("expiration", expiration);
+        if (createdIndex >= 0) {
+            data.put("createdIndex", createdIndex);
+        }
+        if (modifiedIndex >= 0) {
+            data.put("modifiedIndex", modifiedIndex);
+        }
+        if (! nodes.isEmpty()) {
+            JSONArray children = new JSONArray();
+            for (EtcdNode node : nodes) {
+                children.put((node instanceof CompactNode)
+                        ? ((CompactNode<?>) node).json()
+                        : new JSONObject(node.toJson()));
+            }
+            data.put("nodes", children);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.etcd.client.EtcdException;
+
+/**
+ * <p>The {@code EndpointRouter} keeps track of the etcd member endpoints and orders them
+ * for routing the client requests.</p>
+ *
+ * <p>Each endpoint is tracked with an exponentially weighted moving average (EWMA) of its
+ * latency and of its error rate. The healthy endpoints come first, ordered by increasing latency.
+ * The unhealthy endpoints come last and are tried again after a quarantine period.
+ * The seed endpoints are always kept as a last resort.</p>
+ *
+ * <p>The write requests are routed to the etcd leader first, when known. The leader is
+ * forgotten as soon as a request to it fails.</p>
+ */
+public class EndpointRouter {
+
+    /**
+     * Weight of the latest sample in the latency moving average.
+     */
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    /**
+     * Weight of the latest sample in the error rate moving average.
+     */
+    private static final double ERROR_WEIGHT = 0.5;
+
+    /**
+     * Error rate from which an endpoint is considered unhealthy.
+     */
+    private static final double MAX_ERROR_RATE = 0.5;
+
+    /**
+     * Time (in ms) an unhealthy endpoint is avoided since its last failure.
+     */
+    private static final long QUARANTINE = 5000;
+
+    private final List<URI> seeds;
+
+    private final long refreshInterval;
+
+    private final ConcurrentMap<URI, Stats> stats = new ConcurrentHashMap<URI, Stats>();
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile List<URI> members;
+
+    private volatile long refreshedAt;
+
+    private volatile URI leader;
+
+    /**
+     * @param seeds the initial etcd endpoints.
+     * @param refreshInterval the interval (in ms) between two refreshes of the members ; or {@code 0} to never refresh them.
+     */
+    public EndpointRouter(@Nonnull List<URI> seeds, long refreshInterval) {
+        Check.nonNull(seeds, "seeds");
+        if (seeds.isEmpty()) {
+            throw new IllegalArgumentException("seeds must not be empty");
+        }
+        this.seeds = normalize(seeds);
+        this.members = this.seeds;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * @return the endpoints ordered by preference, never empty.
+     */
+    @Nonnull
+    public List<URI> route() {
+        final long now = System.currentTimeMillis();
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (URI member : members) {
+            Stats s = stats.get(member);
+            candidates.add((s != null) ? s.candidate(member, now) : new Candidate(member, true, 0));
+        }
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            public int compare(Candidate c1, Candidate c2) {
+                if (c1.healthy != c2.healthy) {
+                    return c1.healthy ? -1 : 1;
+                }
+                return Double.compare(c1.latency, c2.latency);
+            }
+        });
+        Set<URI> route = new LinkedHashSet<URI>();
+        for (Candidate candidate : candidates) {
+            route.add(candidate.endpoint);
+        }
+        route.addAll(seeds);
+        return new ArrayList<URI>(route);
+    }
+
+    /**
+     * @return the endpoints ordered by preference for a write request, never empty.
+     */
+    @Nonnull
+    public List<URI> routeWrite() {
+        List<URI> route = route();
+        URI l = leader;
+        if (l != null) {
+            route.remove(l);
+            route.add(0, l);
+        }
+        return route;
+    }
+
+    /**
+     * @return the endpoint of the etcd leader ; or {@code null} if the leader is unknown.
+     */
+    @Nullable
+    public URI leader() {
+        return leader;
+    }
+
+    /**
+     * @param endpoint the endpoint of the etcd leader ; or {@code null} to forget the leader.
+     */
+    public void leader(@Nullable URI endpoint) {
+        leader = (endpoint != null) ? endpointOf(endpoint) : null;
+    }
+
+    /**
+     * @return the preferred endpoint.
+     */
+    @Nonnull
+    public URI primary() {
+        return route().get(0);
+    }
+
+    /**
+     * Record a successful request.
+     *
+     * @param endpoint the endpoint which served the request.
+     * @param latency the request latency in ms.
+     */
+    public void success(@Nonnull URI endpoint, long latency) {
+        stats(endpoint).success(latency);
+    }
+
+    /**
+     * Record a successful request whose duration does not reflect the endpoint latency (long poll).
+     *
+     * @param endpoint the endpoint which served the request.
+     */
+    public void success(@Nonnull URI endpoint) {
+        stats(endpoint).success();
+    }
+
+    /**
+     * Record a failed request.
+     *
+     * @param endpoint the endpoint which failed to serve the request.
+     */
+    public void failure(@Nonnull URI endpoint) {
+        URI key = endpointOf(endpoint);
+        if (key.equals(leader)) {
+            leader = null;
+        }
+        stats(key).failure(System.currentTimeMillis());
+    }
+
+    /**
+     * @return {@code true} if the caller must refresh the members and invoke {@link #endRefresh} ;
+     *         {@code false} if no refresh is due or another caller is refreshing the members.
+     */
+    public boolean beginRefresh() {
+        return refreshInterval > 0
+                && System.currentTimeMillis() - refreshedAt >= refreshInterval
+                && refreshing.compareAndSet(false, true);
+    }
+
+    /**
+     * @param clientUrls the client urls of the current members ; or {@code null} if they could not be obtained.
+     */
+    public void endRefresh(@Nullable List<URI> clientUrls) {
+        if (clientUrls != null && ! clientUrls.isEmpty()) {
+            members = normalize(clientUrls);
+            stats.keySet().retainAll(members);
+        }
+        refreshedAt = System.currentTimeMillis();
+        refreshing.set(false);
+    }
+
+    /**
+     * @param uri any uri.
+     * @return the endpoint (scheme, host and port) of the given uri ; or the uri itself if it does not define a host.
+     */
+    @Nonnull
+    public static URI endpointOf(@Nonnull URI uri) {
+        if (uri.getHost() == null) {
+            return uri;
+        }
+        try {
+            return new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), null, null, null);
+        } catch (URISyntaxException e) {
+            throw new EtcdException(e.getMessage(), e);
+        }
+    }
+
+    //
+
+    @Nonnull
+    private Stats stats(@Nonnull URI endpoint) {
+        URI key = endpointOf(endpoint);
+        Stats s = stats.get(key);
+        if (s == null) {
+            Stats created = new Stats();
+            s = stats.putIfAbsent(key, created);
+            if (s == null) {
+                s = created;
+            }
+        }
+        return s;
+    }
+
+    @Nonnull
+    private static List<URI> normalize(@Nonnull List<URI> uris) {
+        Set<URI> endpoints = new LinkedHashSet<URI>();
+        for (URI uri : uris) {
+            endpoints.add(endpointOf(uri));
+        }
+        return Collections.unmodifiableList(new ArrayList<URI>(endpoints));
+    }
+
+    private static final class Stats {
+
+        private double latency = -1;
+
+        private double errorRate;
+
+        private long failedAt;
+
+        synchronized void success(long sample) {
+            latency = (latency < 0) ? sample : LATENCY_WEIGHT * sample + (1 - LATENCY_WEIGHT) * latency;
+            errorRate = (1 - ERROR_WEIGHT) * errorRate;
+        }
+
+        synchronized void success() {
+            errorRate = (1 - ERROR_WEIGHT) * errorRate;
+        }
+
+        synchronized void failure(long now) {
+            errorRate = ERROR_WEIGHT + (1 - ERROR_WEIGHT) * errorRate;
+            failedAt = now;
+        }
+
+        @Nonnull
+        synchronized Candidate candidate(@Nonnull URI endpoint, long now) {
+            boolean healthy = errorRate < MAX_ERROR_RATE || now - failedAt >= QUARANTINE;
+            return new Candidate(endpoint, healthy, Math.max(latency, 0));
+        }
+    }
+
+    private static final class Candidate {
+
+        final URI endpoint;
+
+        final boolean healthy;
+
+        final double latency;
+
+        Candidate(@Nonnull URI endpoint, boolean healthy, double latency) {
+            this.endpoint = endpoint;
+            this.healthy = healthy;
+            this.latency = latency;
+        }
+    }
+}
@@ -19,13 +19,18 @@
 package org.apache.sling.etcd.client.impl;
 
 import java.net.URI;
+import java.util.List;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
 
+import org.apache.sling.etcd.client.AsyncEtcdClient;
 import org.apache.sling.etcd.client.EtcdClient;
 import org.apache.sling.etcd.client.EtcdClientFactory;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Service;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.CloseableHttpClient;
 
 @Component
@@ -39,4 +44,47 @@ public class EtcdClientFactoryImpl implements EtcdClientFactory {
     public EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull URI endpoint) {
         return new EtcdClientImpl(httpClient, endpoint);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull URI endpoint, @Nonnull RequestConfig watchConfig) {
+        return new EtcdClientImpl(httpClient, endpoint, watchConfig);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull List<URI> seeds) {
+        return new EtcdClientImpl(httpClient, seeds, EtcdClientImpl.defaultWatchConfig());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull List<URI> seeds, @Nonnull RequestConfig watchConfig) {
+        return new EtcdClientImpl(httpClient, seeds, watchConfig);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public EtcdClient create(@Nonnull CloseableHttpClient httpClient, @Nonnull EtcdClient client) {
+        if (! (client instanceof EtcdClientImpl)) {
+            throw new IllegalArgumentException(String.format("Unsupported client: %s", client));
+        }
+        return ((EtcdClientImpl) client).share(httpClient);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public AsyncEtcdClient createAsync(@Nonnull URI endpoint, @Nonnull RequestConfig config, @Nullable SSLContext sslContext) {
+        return new AsyncEtcdClientImpl(endpoint, config, sslContext);
+    }
 }
@@ -20,9 +20,12 @@ package org.apache.sling.etcd.client.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -33,10 +36,18 @@ import javax.annotation.Nullable;
 
 import org.apache.sling.etcd.client.EtcdException;
 import org.apache.sling.etcd.client.EtcdClient;
+import org.apache.sling.etcd.client.EtcdWatch;
+import org.apache.sling.etcd.client.EtcdNode;
+import org.apache.sling.etcd.client.EtcdParams;
 import org.apache.sling.etcd.client.KeyResponse;
+import org.apache.sling.etcd.client.WatchListener;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NameValuePair;
 import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.EntityBuilder;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
@@ -44,8 +55,11 @@ import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -54,56 +68,80 @@ import org.apache.http.util.EntityUtils;
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.JSONObject;
 import org.apache.sling.etcd.client.LeaderStatsResponse;
-import org.apache.sling.etcd.client.MembersResponse;
+import org.apache.sling.etcd.client.Member;
 import org.apache.sling.etcd.client.MemberStatsResponse;
+import org.apache.sling.etcd.client.MembersResponse;
+import org.apache.sling.etcd.client.NodeVisitor;
+import org.apache.sling.etcd.client.ValueDecoder;
 import org.apache.sling.etcd.client.VersionResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * <p>The current {@code EtcdClient} implementation requires a single etcd endpoint.</p>
+ * <p>The {@code EtcdClient} implementation either uses a single etcd endpoint or a list of seed endpoints.</p>
  *
- * <p>If the client is communicating with an etcd cluster, then the endpoint should reference
+ * <p>With a single endpoint communicating with an etcd cluster, the endpoint should reference
  * an etcd instance running in readwrite
- * <a href="https://github.com/coreos/etcd/blob/release-2.0/Documentation/proxy.md">proxy mode</a>.</p>
+ * <a href="https://github.com/coreos/etcd/blob/release-2.0/Documentation/proxy.md">proxy mode</a>.
+ * The etcd proxy is aware of the etcd peers in a cluster and takes care of dispatching the requests
+ * to the most relevant etcd peer.</p>
  *
  * <p>If the client is communicating with a single etcd node (no cluster), the endpoint could
  * reference it directly.</p>
  *
- * <p>The etcd proxy is aware of the etcd peers in a cluster and takes care of dispatching the requests
- * to the most relevant etcd peer.</p>
- */
-/*
- * The implementation may be extended in order to avoid the use of an etcd proxy.
- * In this case, the client should figure out the members in the etcd cluster and
- * based on failures, RTT or other characteristics select the most relevant endpoint.
+ * <p>With a list of seed endpoints, the client periodically refreshes the client urls of the etcd members
+ * via the <a href="https://github.com/coreos/etcd/blob/master/Documentation/other_apis.md#list-members">
+ * list-member API</a> and routes the requests to the fastest healthy member (see {@link EndpointRouter}).
+ * The requests fail over to the next member upon I/O errors, as long as they can not have been applied
+ * (GET requests or connection failures).</p>
  *
- * In order to know the list of etcd peer members, the client could either require a
- * fixed list of etcd endpoints URIs or leverage the list-member API
- * https://github.com/coreos/etcd/blob/master/Documentation/other_apis.md#list-members.
+ * <p>The write requests are sent to the etcd leader directly once it is known, which avoids
+ * following a redirect for each write. The leader is learnt from the redirects of the write requests
+ * (followed by the client) and from the member statistics (when refreshing the members).</p>
  */
 public class EtcdClientImpl implements EtcdClient {
 
-    private static final String API_KEYS_FORMAT = "/v2/keys%s";
+    static final String API_KEYS_FORMAT = "/v2/keys%s";
 
-    private static final String PATH_VERSION = "/version";
+    static final String PATH_VERSION = "/version";
 
-    private static final String PATH_LEADER_STATS = "/v2/stats/leader";
+    static final String PATH_LEADER_STATS = "/v2/stats/leader";
 
-    private static final String PATH_MEMBERS = "/v2/members";
+    static final String PATH_MEMBERS = "/v2/members";
 
-    private static final String PATH_SELF_STATS = "/v2/stats/self";
+    static final String PATH_SELF_STATS = "/v2/stats/self";
 
-    private static final String UTF8 = "UTF-8";
+    static final String UTF8 = "UTF-8";
 
     protected static final ContentType FORM_URLENCODED = ContentType.create(
             "application/x-www-form-urlencoded", UTF8);
 
+    /**
+     * Default socket timeout (in ms) of the watch long poll requests.
+     */
+    private static final int DEFAULT_WATCH_TIMEOUT = 60000;
+
+    /**
+     * Default interval (in ms) between two refreshes of the etcd members.
+     */
+    private static final long DEFAULT_MEMBERS_REFRESH_INTERVAL = 30000;
+
+    /**
+     * Maximum number of redirects followed for a single write request.
+     */
+    private static final int MAX_REDIRECTS = 5;
+
+    private static final int TEMPORARY_REDIRECT = 307;
+
+    private static final int PERMANENT_REDIRECT = 308;
+
     private static final Logger LOG = LoggerFactory.getLogger(EtcdClientImpl.class);
 
     private final CloseableHttpClient httpClient;
 
-    private final URI endpoint;
+    private final EndpointRouter router;
+
+    private final RequestConfig watchConfig;
 
     /**
      * @param httpClient The client used for communicating with etcd.
@@ -111,8 +149,53 @@ public class EtcdClientImpl implements EtcdClient {
      * @param endpoint The uri to access the etcd peers (e.g. http://localhost:4001)
      */
     public EtcdClientImpl(@Nonnull CloseableHttpClient httpClient, @Nonnull URI endpoint) {
+        this(httpClient, endpoint, defaultWatchConfig());
+    }
+
+    /**
+     * @param httpClient The client used for communicating with etcd.
+     *                   The client must enable redirect handling (default).
+     * @param endpoint The uri to access the etcd peers (e.g. http://localhost:4001)
+     * @param watchConfig The request configuration applied to the watch long poll requests.
+     *                    The socket timeout bounds the duration of each long poll request.
+     */
+    public EtcdClientImpl(@Nonnull CloseableHttpClient httpClient, @Nonnull URI endpoint, @Nonnull RequestConfig watchConfig) {
+        this(httpClient, new EndpointRouter(Collections.singletonList(
+                Check.nonNull(endpoint, "endpoint")), 0), watchConfig);
+    }
+
+    /**
+     * @param httpClient The client used for communicating with etcd.
+     *                   The client must enable redirect handling (default).
+     * @param seeds The uris of some etcd members (e.g. http://localhost:4001) used for discovering all members.
+     * @param watchConfig The request configuration applied to the watch long poll requests.
+     */
+    public EtcdClientImpl(@Nonnull CloseableHttpClient httpClient, @Nonnull List<URI> seeds, @Nonnull RequestConfig watchConfig) {
+        this(httpClient, new EndpointRouter(seeds, DEFAULT_MEMBERS_REFRESH_INTERVAL), watchConfig);
+    }
+
+    EtcdClientImpl(@Nonnull CloseableHttpClient httpClient, @Nonnull EndpointRouter router, @Nonnull RequestConfig watchConfig) {
         this.httpClient = Check.nonNull(httpClient, "httpClient");
-        this.endpoint = Check.nonNull(endpoint, "endpoint");
+        this.router = Check.nonNull(router, "router");
+        this.watchConfig = Check.nonNull(watchConfig, "watchConfig");
+    }
+
+    /**
+     * @param httpClient The client used for communicating with etcd.
+     * @return a new client sending its requests through the given client, and sharing the routing state
+     *         (endpoints, members and leader) of this client.
+     */
+    @Nonnull
+    EtcdClientImpl share(@Nonnull CloseableHttpClient httpClient) {
+        return new EtcdClientImpl(httpClient, router, watchConfig);
+    }
+
+    @Nonnull
+    static RequestConfig defaultWatchConfig() {
+        return RequestConfig.custom()
+                .setSocketTimeout(DEFAULT_WATCH_TIMEOUT)
+                .setRedirectsEnabled(true)
+                .build();
     }
 
     /**
@@ -129,6 +212,39 @@ public class EtcdClientImpl implements EtcdClient {
                         key), parameters)));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    public <T> KeyResponse getKey(@Nonnull String key,
+                                  @Nonnull Map<String, String> parameters,
+                                  @Nonnull ValueDecoder<T> decoder)
+            throws IOException {
+        Check.nonNull(parameters, "parameters");
+        Check.nonNull(key, "key");
+        Check.nonNull(decoder, "decoder");
+        return execKey(new HttpGet(
+                buildUri(String.format(API_KEYS_FORMAT,
+                        key), parameters)), new KeyDecoder(decoder));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Once the visitor stopped the listing, the request is aborted rather than reading the rest of the response.
+     * The listing is not failed over to another endpoint once a node has been visited.
+     */
+    @Nonnull
+    public KeyResponse list(@Nonnull String key,
+                            boolean recursive,
+                            @Nonnull NodeVisitor visitor)
+            throws IOException {
+        Check.nonNull(key, "key");
+        Check.nonNull(visitor, "visitor");
+        HttpGet method = new HttpGet(buildUri(String.format(API_KEYS_FORMAT, key),
+                EtcdParams.builder().recursive(recursive).build()));
+        return execKey(method, new ListDecoder(method, visitor));
+    }
+
     /**
      * The request is sent with {@code application/x-www-form-urlencoded} content type.
      * The "value" is sent in the request body, the other parameters are sent as query parameters.
@@ -209,14 +325,30 @@ public class EtcdClientImpl implements EtcdClient {
                         key), parameters)));
     }
 
+    /**
+     * The watch runs in a dedicated daemon thread until cancelled.
+     */
+    @Nonnull
+    public EtcdWatch watch(@Nonnull String key,
+                           boolean recursive,
+                           @Nullable Long fromIndex,
+                           @Nonnull WatchListener listener) {
+        Check.nonNull(listener, "listener");
+        Check.nonNull(key, "key");
+        EtcdWatchImpl watch = new EtcdWatchImpl(this, key, recursive, fromIndex, listener);
+        Thread thread = new Thread(watch, String.format("etcd watch %s", key));
+        thread.setDaemon(true);
+        thread.start();
+        return watch;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Nonnull
     public MembersResponse getMembers() throws IOException {
-        Response res = exec(new HttpGet(
-                buildUri(endpoint,
-                        PATH_MEMBERS, Collections.<String, String>emptyMap())), 200);
+        Response res = execRouted(new HttpGet(
+                buildUri(PATH_MEMBERS, Collections.<String, String>emptyMap())), STRING_DECODER, 200);
         return new MembersResponseImpl(res.status, res.reasonPhrase, res.headers, toJson(res.body));
     }
 
@@ -231,7 +363,7 @@ public class EtcdClientImpl implements EtcdClient {
     public LeaderStatsResponse getLeaderStats(@Nonnull URI leaderPeerEndpoint) throws IOException {
         Response res = exec(new HttpGet(
                 buildUri(leaderPeerEndpoint,
-                        PATH_LEADER_STATS, Collections.<String, String>emptyMap())), 200);
+                        PATH_LEADER_STATS, Collections.<String, String>emptyMap())), STRING_DECODER, 200);
         return new LeaderStatsResponseImpl(res.status, res.reasonPhrase, res.headers, toJson(res.body));
     }
 
@@ -243,7 +375,7 @@ public class EtcdClientImpl implements EtcdClient {
         Check.nonNull(peerEndpoint, "peerEndpoint");
         Response res = exec(new HttpGet(
                 buildUri(peerEndpoint,
-                        PATH_SELF_STATS, Collections.<String, String>emptyMap())), 200);
+                        PATH_SELF_STATS, Collections.<String, String>emptyMap())), STRING_DECODER, 200);
         return new MemberStatsResponseImpl(res.status, res.reasonPhrase, res.headers, toJson(res.body));
     }
 
@@ -254,33 +386,191 @@ public class EtcdClientImpl implements EtcdClient {
     public VersionResponse getVersion(@Nonnull URI peerEndpoint) throws IOException {
         Check.nonNull(peerEndpoint, "peerEndpoint");
         Response res = exec(new HttpGet(buildUri(
-                peerEndpoint, PATH_VERSION, Collections.<String, String>emptyMap())), 200);
+                peerEndpoint, PATH_VERSION, Collections.<String, String>emptyMap())), STRING_DECODER, 200);
         return new VersionResponseImpl(res.status, res.reasonPhrase, res.headers, res.body);
     }
 
     //
 
     @Nonnull
-    private KeyResponse execKey(@Nonnull HttpUriRequest method) throws IOException {
-        Response res = exec(method, 200, 201, 400, 404);
-        return new KeyResponseImpl(res.status, res.reasonPhrase, res.headers, toJson(res.body));
+    HttpGet watchRequest(@Nonnull String key, @Nonnull Map<String, String> parameters) {
+        refreshMembers();
+        HttpGet method = new HttpGet(buildUri(String.format(API_KEYS_FORMAT, key), parameters));
+        method.setConfig(watchConfig);
+        return method;
+    }
+
+    /**
+     * @return the response ; or {@code null} if the long poll request ended without change (empty body).
+     */
+    @Nullable
+    KeyResponse execWatch(@Nonnull HttpGet method) throws IOException {
+        try {
+            return exec(method, KEY_DECODER, 200, 400, 404);
+        } catch (SocketTimeoutException e) {
+            throw e;
+        } catch (IOException e) {
+            if (! method.isAborted()) {
+                router.failure(method.getURI());
+            }
+            throw e;
+        }
+    }
+
+    @Nonnull
+    private KeyResponse execKey(@Nonnull HttpRequestBase method) throws IOException {
+        return execKey(method, KEY_DECODER);
+    }
+
+    @Nonnull
+    private KeyResponse execKey(@Nonnull HttpRequestBase method, @Nonnull Decoder<KeyResponse> decoder) throws IOException {
+        KeyResponse response = execRouted(method, decoder, 200, 201, 400, 403, 404, 412);
+        if (response == null) {
+            throw new IOException("No json response: empty body");
+        }
+        return response;
+    }
+
+    /**
+     * Execute the request against the preferred endpoint and fail over to the next endpoints.
+     * A long poll request ending with a socket timeout (no change) is neither recorded as a failure nor failed over.
+     */
+    @Nonnull
+    private <T> T execRouted(@Nonnull HttpRequestBase method, @Nonnull Decoder<T> decoder, int ... expected) throws IOException {
+        refreshMembers();
+        boolean write = ! "GET".equals(method.getMethod());
+        boolean longPoll = ! write && isLongPoll(method);
+        if (longPoll && method.getConfig() == null) {
+            method.setConfig(watchConfig);
+        }
+        IOException failure = null;
+        for (URI endpoint : write ? router.routeWrite() : router.route()) {
+            method.setURI(rebase(method.getURI(), endpoint));
+            try {
+                return write ? execWrite(method, decoder, expected) : execRead(method, decoder, longPoll, expected);
+            } catch (IOException e) {
+                if (longPoll && e instanceof SocketTimeoutException) {
+                    throw e;
+                }
+                router.failure(method.getURI());
+                failure = e;
+                if (! canFailOver(method, decoder, e)) {
+                    break;
+                }
+                LOG.debug("Request to endpoint: {} failed: {}, failing over", new Object[]{endpoint, e.getMessage()});
+                method.reset();
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * @param longPoll {@code true} if the request duration depends on the changes rather than on the endpoint,
+     *                 the duration is then not recorded as the endpoint latency.
+     */
+    @Nonnull
+    private <T> T execRead(@Nonnull HttpRequestBase method, @Nonnull Decoder<T> decoder, boolean longPoll, int ... expected) throws IOException {
+        long start = System.currentTimeMillis();
+        T response = exec(method, decoder, expected);
+        if (longPoll) {
+            router.success(method.getURI());
+        } else {
+            router.success(method.getURI(), System.currentTimeMillis() - start);
+        }
+        return response;
     }
 
+    /**
+     * Execute a write request and follow the redirects to the etcd leader, which is remembered
+     * for the next write requests. The HTTP client does not follow the redirects of write requests.
+     */
     @Nonnull
-    private Response exec(@Nonnull HttpUriRequest method, int ... expected) throws IOException {
+    private <T> T execWrite(@Nonnull HttpRequestBase method, @Nonnull Decoder<T> decoder, int ... expected) throws IOException {
+        int[] accepted = Arrays.copyOf(expected, expected.length + 2);
+        accepted[expected.length] = TEMPORARY_REDIRECT;
+        accepted[expected.length + 1] = PERMANENT_REDIRECT;
+        for (int redirects = 0 ; ; redirects++) {
+            RedirectDecoder<T> redirect = new RedirectDecoder<T>(decoder);
+            long start = System.currentTimeMillis();
+            T response = exec(method, redirect, accepted);
+            router.success(method.getURI(), System.currentTimeMillis() - start);
+            if (redirect.location == null) {
+                return response;
+            }
+            if (redirects >= MAX_REDIRECTS) {
+                throw new IOException(String.format("Maximum redirects (%s) exceeded", MAX_REDIRECTS));
+            }
+            URI leader = method.getURI().resolve(redirect.location);
+            LOG.debug("Write redirected from: {} to leader: {}", new Object[]{method.getURI(), leader});
+            router.leader(leader);
+            method.reset();
+            method.setURI(leader);
+        }
+    }
+
+    /**
+     * Refresh the client urls of the etcd members, if due.
+     */
+    private void refreshMembers() {
+        if (router.beginRefresh()) {
+            List<URI> clientUrls = null;
+            try {
+                List<Member> members = getMembers().members();
+                List<URI> urls = new ArrayList<URI>();
+                for (Member member : members) {
+                    urls.addAll(member.clientUrls());
+                }
+                LOG.debug("Refreshed the etcd members client urls: {}", urls);
+                clientUrls = urls;
+                refreshLeader(members);
+            } catch (IOException e) {
+                LOG.info("Failed to refresh the etcd members: {}", e.getMessage());
+            } catch (EtcdException e) {
+                LOG.info("Failed to refresh the etcd members: {}", e.getMessage());
+            } finally {
+                router.endRefresh(clientUrls);
+            }
+        }
+    }
+
+    /**
+     * Learn the etcd leader from the statistics of the preferred member.
+     */
+    private void refreshLeader(@Nonnull List<Member> members) {
+        try {
+            MemberStatsResponse stats = getMemberStats(router.primary());
+            for (Member member : members) {
+                if (member.id().equals(stats.leaderId()) && ! member.clientUrls().isEmpty()) {
+                    LOG.debug("The etcd leader is: {}", member.name());
+                    router.leader(member.clientUrls().get(0));
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Failed to get the etcd leader: {}", e.getMessage());
+        } catch (EtcdException e) {
+            LOG.debug("Failed to get the etcd leader: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Execute the request and decode the response body straight from the entity stream.
+     */
+    private <T> T exec(@Nonnull HttpUriRequest method, @Nonnull Decoder<T> decoder, int ... expected) throws IOException {
         CloseableHttpResponse response = httpClient.execute(logMethod(method));
         try {
             StatusLine statusLine = response.getStatusLine();
             Map<String, List<String>> headers = extractHeaders(response.getAllHeaders());
-            String body = (response.getEntity() != null)
-                    ? EntityUtils.toString(response.getEntity(), UTF8)
-                    : null;
-            logResponse(statusLine, body, headers);
-            checkStatus(statusLine, expected);
-            if (body == null) {
-                throw new IOException(String.format("No entity found in response %s", formatStatusLine(response.getStatusLine())));
+            HttpEntity entity = response.getEntity();
+            try {
+                checkStatus(statusLine, expected);
+            } catch (IOException e) {
+                logResponse(statusLine, (entity != null) ? EntityUtils.toString(entity, UTF8) : null, headers);
+                throw e;
             }
-            return new Response(statusLine.getStatusCode(), statusLine.getReasonPhrase(), headers, body);
+            T decoded = decoder.decode(statusLine, headers, (entity != null) ? entity.getContent() : null);
+            logResponse(statusLine, decoded, headers);
+            return decoded;
         } finally {
             IOUtils.closeQuietly(response);
         }
@@ -288,11 +578,55 @@ public class EtcdClientImpl implements EtcdClient {
 
     @Nonnull
     private URI buildUri(@Nonnull String path, @Nonnull Map<String, String> parameters) {
-        return buildUri(endpoint, path, parameters);
+        return buildUri(router.primary(), path, parameters);
+    }
+
+    @Nonnull
+    private URI rebase(@Nonnull URI uri, @Nonnull URI endpoint) {
+        try {
+            return new URIBuilder(uri)
+                    .setScheme(endpoint.getScheme())
+                    .setHost(endpoint.getHost())
+                    .setPort(endpoint.getPort())
+                    .build();
+        } catch (URISyntaxException e) {
+            throw new EtcdException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return {@code true} if the request waits for a change ({@code wait=true}).
+     */
+    private static boolean isLongPoll(@Nonnull HttpRequestBase method) {
+        for (NameValuePair param : URLEncodedUtils.parse(method.getURI(), "UTF-8")) {
+            if ("wait".equals(param.getName()) && "true".equals(param.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the request can be sent to another endpoint without risking to apply it twice.
+     */
+    private boolean canFailOver(@Nonnull HttpRequestBase method, @Nonnull Decoder<?> decoder, @Nonnull IOException e) {
+        if (decoder instanceof ListDecoder && ((ListDecoder) decoder).visited) {
+            // replaying the listing would visit the same nodes again
+            return false;
+        }
+        if (method instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) method).getEntity();
+            if (entity != null && ! entity.isRepeatable()) {
+                return false;
+            }
+        }
+        return "GET".equals(method.getMethod())
+                || e instanceof ConnectException
+                || e instanceof ConnectTimeoutException;
     }
 
     @Nonnull
-    private URI buildUri(@Nonnull URI endpoint, @Nonnull String path, @Nonnull Map<String, String> parameters) {
+    static URI buildUri(@Nonnull URI endpoint, @Nonnull String path, @Nonnull Map<String, String> parameters) {
         try {
             URIBuilder builder = new URIBuilder();
             for (Map.Entry<String, String> p : parameters.entrySet()) {
@@ -309,7 +643,7 @@ public class EtcdClientImpl implements EtcdClient {
     }
 
     @Nonnull
-    private HttpUriRequest entity(@Nonnull HttpEntityEnclosingRequestBase method, @Nullable String value) {
+    private HttpRequestBase entity(@Nonnull HttpEntityEnclosingRequestBase method, @Nullable String value) {
         if (value != null) {
             method.setEntity(EntityBuilder
                     .create()
@@ -321,7 +655,7 @@ public class EtcdClientImpl implements EtcdClient {
     }
 
     @Nonnull
-    private HttpUriRequest entity(@Nonnull HttpEntityEnclosingRequestBase method, @Nonnull InputStream value) {
+    private HttpRequestBase entity(@Nonnull HttpEntityEnclosingRequestBase method, @Nonnull InputStream value) {
         method.setEntity(MultipartEntityBuilder
                 .create()
                 .addBinaryBody("value", value)
@@ -330,7 +664,7 @@ public class EtcdClientImpl implements EtcdClient {
     }
 
     @Nonnull
-    private Map<String, List<String>> extractHeaders(@Nonnull Header[] headers) {
+    static Map<String, List<String>> extractHeaders(@Nonnull Header[] headers) {
         final Map<String, List<String>> all = new HashMap<String, List<String>>();
         for (Header header : headers) {
             List<String> values = all.get(header.getName());
@@ -343,13 +677,13 @@ public class EtcdClientImpl implements EtcdClient {
         return all;
     }
 
-    private void logResponse(@Nonnull StatusLine statusLine, @Nullable String body, @Nonnull Map<String, List<String>> headers) {
+    private void logResponse(@Nonnull StatusLine statusLine, @Nullable Object body, @Nonnull Map<String, List<String>> headers) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Response status: {} body: {} headers: {}", new Object[]{formatStatusLine(statusLine), body, headers});
         }
     }
 
-    private void checkStatus(StatusLine statusLine, int... expected) throws IOException {
+    static void checkStatus(@Nonnull StatusLine statusLine, int... expected) throws IOException {
         int status = statusLine.getStatusCode();
         for (int exp : expected) {
             if (exp == status) {
@@ -368,12 +702,12 @@ public class EtcdClientImpl implements EtcdClient {
     }
 
     @Nonnull
-    private String formatStatusLine(@Nonnull StatusLine line) {
+    static String formatStatusLine(@Nonnull StatusLine line) {
         return String.format("code: %s reason: %s", line.getStatusCode(), line.getReasonPhrase());
     }
 
     @Nonnull
-    private JSONObject toJson(@Nonnull String data) throws IOException {
+    static JSONObject toJson(@Nonnull String data) throws IOException {
         try {
             return new JSONObject(data);
         } catch (JSONException e) {
@@ -381,6 +715,130 @@ public class EtcdClientImpl implements EtcdClient {
         }
     }
 
+    /**
+     * Decode a response body.
+     */
+    private interface Decoder<T> {
+
+        /**
+         * @param body the response body ; or {@code null} if the response has no entity.
+         */
+        T decode(@Nonnull StatusLine statusLine, @Nonnull Map<String, List<String>> headers, @Nullable InputStream body)
+                throws IOException;
+    }
+
+    /**
+     * Decode the body of the key API responses, see {@link KeyResponseDecoder}.
+     * Returns {@code null} for an empty body.
+     */
+    private static final Decoder<KeyResponse> KEY_DECODER = new KeyDecoder(null);
+
+    /**
+     * Decode the body of the key API responses along with the node values.
+     */
+    private static final class KeyDecoder implements Decoder<KeyResponse> {
+
+        private final ValueDecoder<?> valueDecoder;
+
+        private KeyDecoder(@Nullable ValueDecoder<?> valueDecoder) {
+            this.valueDecoder = valueDecoder;
+        }
+
+        public KeyResponse decode(@Nonnull StatusLine statusLine, @Nonnull Map<String, List<String>> headers, @Nullable InputStream body)
+                throws IOException {
+            return KeyResponseDecoder.decode(statusLine.getStatusCode(), statusLine.getReasonPhrase(), headers, entity(statusLine, body), valueDecoder);
+        }
+    }
+
+    /**
+     * Decode the body of a listing, handing the nodes to the visitor.
+     */
+    private static final class ListDecoder implements Decoder<KeyResponse> {
+
+        private final HttpRequestBase method;
+
+        private final NodeVisitor visitor;
+
+        /**
+         * {@code true} once a node has been passed to the visitor.
+         */
+        private boolean visited;
+
+        private ListDecoder(@Nonnull HttpRequestBase method, @Nonnull NodeVisitor visitor) {
+            this.method = method;
+            this.visitor = visitor;
+        }
+
+        public KeyResponse decode(@Nonnull StatusLine statusLine, @Nonnull Map<String, List<String>> headers, @Nullable InputStream body)
+                throws IOException {
+            return KeyResponseDecoder.list(statusLine.getStatusCode(), statusLine.getReasonPhrase(), headers, entity(statusLine, body), new NodeVisitor() {
+                public boolean visit(@Nonnull EtcdNode node) {
+                    visited = true;
+                    boolean more = visitor.visit(node);
+                    if (! more) {
+                        // release the connection without reading the rest of the listing
+                        method.abort();
+                    }
+                    return more;
+                }
+            });
+        }
+    }
+
+    /**
+     * Read the body as a {@code String}.
+     */
+    private static final Decoder<Response> STRING_DECODER = new Decoder<Response>() {
+        public Response decode(@Nonnull StatusLine statusLine, @Nonnull Map<String, List<String>> headers, @Nullable InputStream body)
+                throws IOException {
+            InputStream entity = entity(statusLine, body);
+            try {
+                return new Response(statusLine.getStatusCode(), statusLine.getReasonPhrase(), headers, IOUtils.toString(entity, UTF8));
+            } finally {
+                entity.close();
+            }
+        }
+    };
+
+    @Nonnull
+    private static InputStream entity(@Nonnull StatusLine statusLine, @Nullable InputStream body) throws IOException {
+        if (body == null) {
+            throw new IOException(String.format("No entity found in response %s", formatStatusLine(statusLine)));
+        }
+        return body;
+    }
+
+    /**
+     * Capture the location of the redirect responses, delegates the decoding of the other responses.
+     */
+    private static final class RedirectDecoder<T> implements Decoder<T> {
+
+        private final Decoder<T> decoder;
+
+        private String location;
+
+        private RedirectDecoder(@Nonnull Decoder<T> decoder) {
+            this.decoder = decoder;
+        }
+
+        public T decode(@Nonnull StatusLine statusLine, @Nonnull Map<String, List<String>> headers, @Nullable InputStream body)
+                throws IOException {
+            int status = statusLine.getStatusCode();
+            if (status != TEMPORARY_REDIRECT && status != PERMANENT_REDIRECT) {
+                return decoder.decode(statusLine, headers, body);
+            }
+            if (body != null) {
+                body.close();
+            }
+            List<String> locations = headers.get("Location");
+            if (locations == null || locations.isEmpty()) {
+                throw new IOException(String.format("No location found in redirect response %s", formatStatusLine(statusLine)));
+            }
+            location = locations.get(0);
+            return null;
+        }
+    }
+
     private static class Response {
 
         final String reasonPhrase;
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.sling.etcd.client.EtcdException;
+import org.apache.sling.etcd.client.EtcdParams;
+import org.apache.sling.etcd.client.EtcdParamsBuilder;
+import org.apache.sling.etcd.client.EtcdWatch;
+import org.apache.sling.etcd.client.KeyAction;
+import org.apache.sling.etcd.client.KeyError;
+import org.apache.sling.etcd.client.KeyResponse;
+import org.apache.sling.etcd.client.WatchListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code EtcdWatchImpl} long polls a key until cancelled and delivers the changes to a {@link WatchListener}.
+ * The watch tracks the index from which to resume, such that no change is missed between two long poll requests.
+ * The listener is invoked without holding any lock, the cancellation flag is checked before each invocation.
+ */
+public class EtcdWatchImpl implements EtcdWatch, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EtcdWatchImpl.class);
+
+    /**
+     * Delay (in ms) before retrying a watch which failed.
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * etcd error code returned when the changes from the requested index have been cleared from the history.
+     */
+    private static final int EVENT_INDEX_CLEARED = 401;
+
+    private final EtcdClientImpl etcdClient;
+
+    private final String key;
+
+    private final boolean recursive;
+
+    private final WatchListener listener;
+
+    /**
+     * Guards the pending request and the retry delay.
+     * The lock must never be held while invoking the listener.
+     */
+    private final Object lock = new Object();
+
+    private volatile Long waitIndex;
+
+    private volatile boolean cancelled;
+
+    private HttpGet request;
+
+    public EtcdWatchImpl(@Nonnull EtcdClientImpl etcdClient, @Nonnull String key, boolean recursive,
+                         @Nullable Long fromIndex, @Nonnull WatchListener listener) {
+        this.etcdClient = Check.nonNull(etcdClient, "etcdClient");
+        this.key = Check.nonNull(key, "key");
+        this.listener = Check.nonNull(listener, "listener");
+        this.recursive = recursive;
+        this.waitIndex = fromIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    public Long waitIndex() {
+        return waitIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void cancel() {
+        synchronized (lock) {
+            cancelled = true;
+            if (request != null) {
+                request.abort();
+            }
+            lock.notifyAll();
+        }
+        LOG.debug("Cancelled watch on key: {}", key);
+    }
+
+    public void run() {
+        LOG.debug("Start watching key: {} from index: {}", new Object[]{key, waitIndex});
+        for ( ; ! cancelled ; ) {
+            HttpGet get = etcdClient.watchRequest(key, params());
+            synchronized (lock) {
+                if (cancelled) {
+                    break;
+                }
+                request = get;
+            }
+            try {
+                KeyResponse response = etcdClient.execWatch(get);
+                if (response != null) {
+                    handle(response);
+                } else {
+                    LOG.debug("Watch on key: {} ended without change", key);
+                }
+            } catch (SocketTimeoutException e) {
+                // no change within the watch socket timeout, not an error.
+                LOG.debug("No change on key: {} from index: {}", new Object[]{key, waitIndex});
+            } catch (IOException e) {
+                if (! cancelled) {
+                    LOG.debug("Watch on key: {} failed with I/O error: {}", new Object[]{key, e.getMessage()});
+                    notifyError(e);
+                }
+            } finally {
+                synchronized (lock) {
+                    request = null;
+                }
+            }
+        }
+        LOG.debug("Stopped watching key: {}", key);
+    }
+
+    //
+
+    private void handle(@Nonnull KeyResponse response) {
+        if (response.isAction()) {
+            KeyAction action = response.action();
+            waitIndex = action.node().modifiedIndex() + 1;
+            if (! cancelled) {
+                listener.onAction(action);
+            }
+        } else {
+            KeyError error = response.error();
+            if (error.errorCode() == EVENT_INDEX_CLEARED) {
+                LOG.debug("Changes on key: {} from index: {} have been cleared", new Object[]{key, waitIndex});
+                waitIndex = error.index() + 1;
+                if (! cancelled) {
+                    listener.onResync(error);
+                }
+            } else {
+                notifyError(new EtcdException(String.format("Watch on key: %s failed with etcd error: %s %s",
+                        key, error.errorCode(), error.message())));
+            }
+        }
+    }
+
+    private void notifyError(@Nonnull Exception e) {
+        if (! cancelled) {
+            listener.onError(e);
+        }
+        synchronized (lock) {
+            if (! cancelled) {
+                try {
+                    lock.wait(RETRY_DELAY);
+                } catch (InterruptedException ignore) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    private Map<String, String> params() {
+        EtcdParamsBuilder builder = EtcdParams.builder()
+                .wait(true)
+                .recursive(recursive);
+        Long index = waitIndex;
+        if (index != null) {
+            builder.waitIndex(index);
+        }
+        return builder.build();
+    }
+
+}
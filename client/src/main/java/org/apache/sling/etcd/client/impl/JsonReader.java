@@ -0,0 +1,673 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.etcd.client.ValueDecoder;
+import org.apache.sling.etcd.client.ValueReader;
+
+/**
+ * <p>The {@code JsonReader} is a minimal streaming (pull) JSON reader which decodes the UTF-8 bytes
+ * of a stream in a single pass, without building an intermediate {@code String} or tree.</p>
+ *
+ * <p>The reader is meant for reading etcd responses and is lenient regarding the separators
+ * ({@code ','} are skipped as whitespaces). Like the Sling json parser, names and strings
+ * starting with a letter may be unquoted. The read buffers are pooled and returned to the pool
+ * when the reader is closed.</p>
+ *
+ * <p>String values which embed a json document can be decoded in the same pass with
+ * {@link #nextValue(ValueDecoder)}.</p>
+ */
+public final class JsonReader implements ValueReader, Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Maximum number of read buffers kept in the pool.
+     */
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<byte[]>();
+
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private final InputStream in;
+
+    private byte[] buffer;
+
+    private int pos;
+
+    private int limit;
+
+    /**
+     * Scratch space holding the characters of the last string or number read.
+     */
+    private char[] chars = new char[128];
+
+    private int length;
+
+    /**
+     * {@code true} if the scratch space holds an unquoted word which has not been consumed yet.
+     */
+    private boolean word;
+
+    public JsonReader(@Nonnull InputStream in) {
+        this.in = Check.nonNull(in, "in");
+        this.buffer = acquire();
+    }
+
+    @Nonnull
+    public Token peek() throws IOException {
+        if (word) {
+            return wordToken();
+        }
+        int c = peekNonWhitespace();
+        switch (c) {
+            case -1: return Token.END_DOCUMENT;
+            case '{': return Token.BEGIN_OBJECT;
+            case '}': return Token.END_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case ']': return Token.END_ARRAY;
+            case '"': return Token.STRING;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$') {
+                    readWord();
+                    return wordToken();
+                }
+                throw syntaxError(String.format("Unexpected character '%s'", (char) c));
+        }
+    }
+
+    /**
+     * @return {@code true} if the current object or array has more elements ; {@code false} otherwise.
+     */
+    public boolean hasNext() throws IOException {
+        if (word) {
+            return true;
+        }
+        int c = peekNonWhitespace();
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    public void beginObject() throws IOException {
+        consume('{');
+    }
+
+    public void endObject() throws IOException {
+        consume('}');
+    }
+
+    public void beginArray() throws IOException {
+        consume('[');
+    }
+
+    public void endArray() throws IOException {
+        consume(']');
+    }
+
+    /**
+     * @return the next property name.
+     */
+    @Nonnull
+    public String nextName() throws IOException {
+        readName();
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Read the next property name without allocating it.
+     *
+     * @param names the candidate names.
+     * @return the index of the matching candidate ; or {@code -1} if the name matches no candidate.
+     */
+    public int nextName(@Nonnull String[] names) throws IOException {
+        readName();
+        for (int i = 0 ; i < names.length ; i++) {
+            if (matches(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the next string (or number as string) ; or {@code null} if the next value is {@code null}.
+     */
+    @Nullable
+    public String nextString() throws IOException {
+        switch (peek()) {
+            case STRING:
+                readString();
+                break;
+            case NUMBER:
+                readNumber();
+                break;
+            case NULL:
+                nextNull();
+                return null;
+            default:
+                throw syntaxError("Expected a string");
+        }
+        return new String(chars, 0, length);
+    }
+
+    public long nextLong() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            readString();
+        } else if (token == Token.NUMBER) {
+            readNumber();
+        } else {
+            throw syntaxError("Expected a number");
+        }
+        return parseLong();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        if (peek() != Token.BOOLEAN) {
+            throw syntaxError("Expected a boolean");
+        }
+        word = false;
+        return matches("true");
+    }
+
+    public void nextNull() throws IOException {
+        if (peek() != Token.NULL) {
+            throw syntaxError("Expected null");
+        }
+        word = false;
+    }
+
+    /**
+     * Decode the json document embedded in the next string, without reading the string first.
+     * The escaped characters are unescaped as the decoder reads the document.
+     *
+     * @param decoder the decoder for the embedded document.
+     * @return the decoded value ; or {@code null} if the next value is {@code null}.
+     * @throws InvalidValueException if the decoder failed, the reader is left after the value.
+     * @throws IOException if the enclosing document could not be read.
+     */
+    @Nullable
+    public <T> T nextValue(@Nonnull ValueDecoder<T> decoder) throws IOException {
+        Token token = peek();
+        if (token == Token.NULL) {
+            nextNull();
+            return null;
+        } else if (token != Token.STRING || word) {
+            throw syntaxError("Expected a quoted string");
+        }
+        pos++;
+        EmbeddedStream stream = new EmbeddedStream();
+        JsonReader value = new JsonReader(stream);
+        try {
+            return decoder.decode(value);
+        } catch (IOException e) {
+            if (stream.failed) {
+                throw e;
+            }
+            throw new InvalidValueException(e);
+        } catch (RuntimeException e) {
+            // e.g. NumberFormatException or ClassCastException thrown by the decoder
+            throw new InvalidValueException(e);
+        } finally {
+            // skips the part of the value not read by the decoder
+            value.close();
+        }
+    }
+
+    /**
+     * Skip the next value, including the nested objects and arrays.
+     */
+    public void skipValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    readName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case STRING:
+                readString();
+                break;
+            case NUMBER:
+                readNumber();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            default:
+                throw syntaxError("Expected a value");
+        }
+    }
+
+    /**
+     * Release the read buffer and close the underlying stream.
+     */
+    public void close() throws IOException {
+        if (buffer != null) {
+            release(buffer);
+            buffer = null;
+        }
+        in.close();
+    }
+
+    //
+
+    private void readName() throws IOException {
+        if (peek() != Token.STRING) {
+            throw syntaxError("Expected a name");
+        }
+        readString();
+        consume(':');
+    }
+
+    private boolean matches(@Nonnull String name) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0 ; i < length ; i++) {
+            if (name.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the string at the current position (opening quote) into the scratch space.
+     */
+    private void readString() throws IOException {
+        if (word) {
+            // already read
+            word = false;
+            return;
+        }
+        pos++;
+        length = 0;
+        for (;;) {
+            int b = nextByte();
+            if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                append(readEscape());
+            } else {
+                appendUtf8(b);
+            }
+        }
+    }
+
+    /**
+     * Read the unquoted word at the current position into the scratch space.
+     */
+    private void readWord() throws IOException {
+        length = 0;
+        for (;;) {
+            if (pos >= limit && ! fill()) {
+                break;
+            }
+            int b = buffer[pos] & 0xFF;
+            if (b <= ' ' || b == ',' || b == ':' || b == '"' || b == '{' || b == '}' || b == '[' || b == ']') {
+                break;
+            }
+            pos++;
+            appendUtf8(b);
+        }
+        word = true;
+    }
+
+    @Nonnull
+    private Token wordToken() {
+        if (matches("true") || matches("false")) {
+            return Token.BOOLEAN;
+        } else if (matches("null")) {
+            return Token.NULL;
+        }
+        return Token.STRING;
+    }
+
+    /**
+     * Append the character starting with the given byte, reading the continuation bytes.
+     */
+    private void appendUtf8(int b) throws IOException {
+        if (b < 0x80) {
+            append((char) b);
+        } else if ((b & 0xE0) == 0xC0) {
+            append((char) (((b & 0x1F) << 6) | continuation()));
+        } else if ((b & 0xF0) == 0xE0) {
+            append((char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation()));
+        } else if ((b & 0xF8) == 0xF0) {
+            int cp = (((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation()) - 0x10000;
+            append((char) (0xD800 + (cp >> 10)));
+            append((char) (0xDC00 + (cp & 0x3FF)));
+        } else {
+            append('\uFFFD');
+        }
+    }
+
+    private int continuation() throws IOException {
+        return nextByte() & 0x3F;
+    }
+
+    private char readEscape() throws IOException {
+        int b = nextByte();
+        switch (b) {
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u': return readUnicode();
+            default:
+                return (char) b;
+        }
+    }
+
+    /**
+     * Read the four hexadecimal digits of a unicode escape.
+     */
+    private char readUnicode() throws IOException {
+        int value = 0;
+        for (int i = 0 ; i < 4 ; i++) {
+            value = (value << 4) | Character.digit(nextByte(), 16);
+        }
+        if (value < 0) {
+            throw syntaxError("Invalid unicode escape");
+        }
+        return (char) value;
+    }
+
+    /**
+     * Read the number at the current position into the scratch space.
+     */
+    private void readNumber() throws IOException {
+        length = 0;
+        for (;;) {
+            if (pos >= limit && ! fill()) {
+                return;
+            }
+            int c = buffer[pos] & 0xFF;
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                append((char) c);
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private long parseLong() throws IOException {
+        boolean negative = length > 0 && chars[0] == '-';
+        long value = 0;
+        for (int i = negative ? 1 : 0 ; i < length ; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                try {
+                    return (long) Double.parseDouble(new String(chars, 0, length));
+                } catch (NumberFormatException e) {
+                    throw syntaxError(String.format("Invalid number '%s'", new String(chars, 0, length)));
+                }
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? - value : value;
+    }
+
+    private void consume(char expected) throws IOException {
+        if (word || peekNonWhitespace() != expected) {
+            throw syntaxError(String.format("Expected '%s'", expected));
+        }
+        pos++;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        for (;;) {
+            if (pos >= limit && ! fill()) {
+                return -1;
+            }
+            int c = buffer[pos] & 0xFF;
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',') {
+                pos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if (pos >= limit && ! fill()) {
+            throw new EOFException("Unexpected end of the json stream");
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (buffer == null) {
+            throw new IOException("The json reader is closed");
+        }
+        pos = 0;
+        limit = 0;
+        int read = in.read(buffer, 0, buffer.length);
+        if (read > 0) {
+            limit = read;
+            return true;
+        }
+        return false;
+    }
+
+    private void append(char c) {
+        if (length == chars.length) {
+            char[] grown = new char[chars.length * 2];
+            System.arraycopy(chars, 0, grown, 0, length);
+            chars = grown;
+        }
+        chars[length++] = c;
+    }
+
+    @Nonnull
+    private IOException syntaxError(@Nonnull String message) {
+        return new IOException(String.format("No json response: %s", message));
+    }
+
+    @Nonnull
+    private static byte[] acquire() {
+        byte[] pooled = POOL.poll();
+        if (pooled != null) {
+            POOLED.decrementAndGet();
+            return pooled;
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    private static void release(@Nonnull byte[] buffer) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            POOL.offer(buffer);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stream the UTF-8 bytes of the string at the current position (after the opening quote),
+     * unescaped, until the closing quote.
+     */
+    private final class EmbeddedStream extends InputStream {
+
+        private final byte[] pending = new byte[4];
+
+        private int pendingPos;
+
+        private int pendingLength;
+
+        private boolean end;
+
+        /**
+         * {@code true} if reading the enclosing document failed.
+         */
+        private boolean failed;
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return readUnescaped();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        private int readUnescaped() throws IOException {
+            if (pendingPos < pendingLength) {
+                return pending[pendingPos++] & 0xFF;
+            }
+            if (end) {
+                return -1;
+            }
+            int b = nextByte();
+            if (b == '"') {
+                end = true;
+                return -1;
+            } else if (b != '\\') {
+                return b;
+            }
+            int e = nextByte();
+            switch (e) {
+                case 'b': return '\b';
+                case 'f': return '\f';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 't': return '\t';
+                case 'u':
+                    encode(readCodePoint());
+                    return pending[pendingPos++] & 0xFF;
+                default:
+                    return e;
+            }
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+            int n = 0;
+            while (n < len) {
+                if (pendingPos >= pendingLength && ! end && pos < limit) {
+                    // copy the unescaped bytes straight from the read buffer
+                    int c = buffer[pos] & 0xFF;
+                    if (c != '"' && c != '\\') {
+                        b[off + n++] = buffer[pos++];
+                        continue;
+                    }
+                } else if (n > 0 && pendingPos >= pendingLength) {
+                    // do not block with bytes available
+                    break;
+                }
+                int c = read();
+                if (c == -1) {
+                    break;
+                }
+                b[off + n++] = (byte) c;
+            }
+            return (n == 0 && len > 0) ? -1 : n;
+        }
+
+        /**
+         * Skip the remaining bytes, the enclosing reader is left after the closing quote.
+         */
+        @Override
+        public void close() throws IOException {
+            while (read() != -1) {
+                pendingPos = pendingLength;
+            }
+        }
+
+        private int readCodePoint() throws IOException {
+            char c = readUnicode();
+            if (Character.isHighSurrogate(c)) {
+                if (nextByte() != '\\' || nextByte() != 'u') {
+                    throw syntaxError("Invalid surrogate pair");
+                }
+                char low = readUnicode();
+                if (! Character.isLowSurrogate(low)) {
+                    throw syntaxError("Invalid surrogate pair");
+                }
+                return Character.toCodePoint(c, low);
+            }
+            return c;
+        }
+
+        private void encode(int cp) {
+            pendingPos = 0;
+            if (cp < 0x80) {
+                pending[0] = (byte) cp;
+                pendingLength = 1;
+            } else if (cp < 0x800) {
+                pending[0] = (byte) (0xC0 | (cp >> 6));
+                pending[1] = (byte) (0x80 | (cp & 0x3F));
+                pendingLength = 2;
+            } else if (cp < 0x10000) {
+                pending[0] = (byte) (0xE0 | (cp >> 12));
+                pending[1] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                pending[2] = (byte) (0x80 | (cp & 0x3F));
+                pendingLength = 3;
+            } else {
+                pending[0] = (byte) (0xF0 | (cp >> 18));
+                pending[1] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                pending[2] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                pending[3] = (byte) (0x80 | (cp & 0x3F));
+                pendingLength = 4;
+            }
+        }
+    }
+
+    /**
+     * Signal that a {@link ValueDecoder} failed to decode an embedded value
+     * while the enclosing document remains readable.
+     */
+    static final class InvalidValueException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        InvalidValueException(@Nonnull Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.etcd.client.DecodedNode;
+import org.apache.sling.etcd.client.EtcdException;
+import org.apache.sling.etcd.client.EtcdNode;
+import org.apache.sling.etcd.client.KeyAction;
+import org.apache.sling.etcd.client.KeyError;
+import org.apache.sling.etcd.client.KeyResponse;
+import org.apache.sling.etcd.client.NodeVisitor;
+import org.apache.sling.etcd.client.ValueDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>The {@code KeyResponseDecoder} decodes the etcd key API responses straight from the
+ * (possibly decompressed) entity stream into immutable objects, in a single pass.</p>
+ *
+ * <p>Contrary to the {@link KeyResponseImpl}, the responses do not hold the json tree and
+ * the nodes are decoded once instead of being wrapped at each access.</p>
+ */
+public final class KeyResponseDecoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeyResponseDecoder.class);
+
+    private static final String MISSING_PROPERTY = "Missing or invalid property '%s'";
+
+    private static final String[] RESPONSE_PROPERTIES = {
+            "action", "node", "prevNode", "errorCode", "message", "cause", "index"};
+
+    private static final String[] NODE_PROPERTIES = {
+            "key", "value", "dir", "ttl", "expiration", "createdIndex", "modifiedIndex", "nodes"};
+
+    private KeyResponseDecoder() {
+    }
+
+    /**
+     * @param status the response status code.
+     * @param reasonPhrase the response reason phrase.
+     * @param headers the response headers.
+     * @param body the response body, closed once decoded.
+     * @return the decoded response ; or {@code null} if the body is empty.
+     * @throws IOException if the body could not be read or is not a json object.
+     */
+    @Nullable
+    public static KeyResponse decode(int status, @Nonnull String reasonPhrase,
+                                     @Nonnull Map<String, List<String>> headers, @Nonnull InputStream body)
+            throws IOException {
+        return decode(status, reasonPhrase, headers, body, null);
+    }
+
+    /**
+     * @param status the response status code.
+     * @param reasonPhrase the response reason phrase.
+     * @param headers the response headers.
+     * @param body the response body, closed once decoded.
+     * @param valueDecoder the decoder for the node values ; or {@code null} to keep the raw values.
+     *                     The values which can not be decoded are logged and left undecoded.
+     * @return the decoded response ; or {@code null} if the body is empty.
+     * @throws IOException if the body could not be read or is not a json object.
+     */
+    @Nullable
+    public static <T> KeyResponse decode(int status, @Nonnull String reasonPhrase,
+                                         @Nonnull Map<String, List<String>> headers, @Nonnull InputStream body,
+                                         @Nullable ValueDecoder<T> valueDecoder)
+            throws IOException {
+        return new Decoding<T>(new JsonReader(body), valueDecoder, null)
+                .decode(status, reasonPhrase, headers);
+    }
+
+    /**
+     * Decode the response and hand the child nodes of the response node to the visitor,
+     * as they are read from the body. The child nodes are not retained.
+     *
+     * @param status the response status code.
+     * @param reasonPhrase the response reason phrase.
+     * @param headers the response headers.
+     * @param body the response body, closed once decoded. Once the visitor stopped,
+     *             the rest of the body is not read.
+     * @param visitor the visitor for the child nodes.
+     * @return the decoded response, the response node holds no child ; or {@code null} if the body is empty.
+     * @throws IOException if the body could not be read or is not a json object.
+     */
+    @Nullable
+    public static KeyResponse list(int status, @Nonnull String reasonPhrase,
+                                   @Nonnull Map<String, List<String>> headers, @Nonnull InputStream body,
+                                   @Nonnull NodeVisitor visitor)
+            throws IOException {
+        return new Decoding<Object>(new JsonReader(body), null, visitor)
+                .decode(status, reasonPhrase, headers);
+    }
+
+    //
+
+    /**
+     * Holds the state of the decoding of one response.
+     */
+    private static final class Decoding<T> {
+
+        private final JsonReader reader;
+
+        private final ValueDecoder<T> valueDecoder;
+
+        private final NodeVisitor visitor;
+
+        /**
+         * {@code true} once the visitor stopped the listing.
+         */
+        private boolean stopped;
+
+        private Decoding(@Nonnull JsonReader reader, @Nullable ValueDecoder<T> valueDecoder, @Nullable NodeVisitor visitor) {
+            this.reader = reader;
+            this.valueDecoder = valueDecoder;
+            this.visitor = visitor;
+        }
+
+        @Nullable
+        private KeyResponse decode(int status, @Nonnull String reasonPhrase, @Nonnull Map<String, List<String>> headers)
+                throws IOException {
+            try {
+                if (reader.peek() == JsonReader.Token.END_DOCUMENT) {
+                    return null;
+                }
+                return decodeResponse(status, reasonPhrase, headers);
+            } finally {
+                reader.close();
+            }
+        }
+
+        @Nonnull
+        private KeyResponse decodeResponse(int status, @Nonnull String reasonPhrase, @Nonnull Map<String, List<String>> headers)
+                throws IOException {
+            String action = null;
+            EtcdNode node = null;
+            EtcdNode prevNode = null;
+            Integer errorCode = null;
+            String message = null;
+            String cause = null;
+            Long index = null;
+            reader.beginObject();
+            while (! stopped && reader.hasNext()) {
+                switch (reader.nextName(RESPONSE_PROPERTIES)) {
+                    case 0: action = reader.nextString(); break;
+                    case 1: node = decodeNode(visitor != null); break;
+                    case 2: prevNode = decodeNode(false); break;
+                    case 3: errorCode = (int) reader.nextLong(); break;
+                    case 4: message = reader.nextString(); break;
+                    case 5: cause = reader.nextString(); break;
+                    case 6: index = reader.nextLong(); break;
+                    default: reader.skipValue();
+                }
+            }
+            if (! stopped) {
+                reader.endObject();
+            }
+            return (errorCode != null)
+                    ? new Response(status, reasonPhrase, headers, null, new Error(errorCode, message, cause, index))
+                    : new Response(status, reasonPhrase, headers, new Action(action, node, prevNode), null);
+        }
+
+        /**
+         * @param visit {@code true} in order to hand the child nodes to the visitor instead of retaining them.
+         */
+        @Nullable
+        private DecodedNode<T> decodeNode(boolean visit) throws IOException {
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            String key = null;
+            String value = null;
+            T decodedValue = null;
+            boolean dir = false;
+            Long ttl = null;
+            String expiration = null;
+            long createdIndex = -1;
+            long modifiedIndex = -1;
+            List<DecodedNode<T>> nodes = Collections.emptyList();
+            reader.beginObject();
+            while (! stopped && reader.hasNext()) {
+                switch (reader.nextName(NODE_PROPERTIES)) {
+                    case 0: key = reader.nextString(); break;
+                    case 1:
+                        if (valueDecoder != null) {
+                            try {
+                                decodedValue = reader.nextValue(valueDecoder);
+                            } catch (JsonReader.InvalidValueException e) {
+                                LOG.warn("Failed to decode the value of the key: {}, {}", key, e.getMessage());
+                            }
+                        } else {
+                            value = reader.nextString();
+                        }
+                        break;
+                    case 2: dir = reader.nextBoolean(); break;
+                    case 3: ttl = reader.nextLong(); break;
+                    case 4: expiration = reader.nextString(); break;
+                    case 5: createdIndex = reader.nextLong(); break;
+                    case 6: modifiedIndex = reader.nextLong(); break;
+                    case 7:
+                        if (visit) {
+                            visitNodes();
+                        } else {
+                            nodes = decodeNodes();
+                        }
+                        break;
+                    default: reader.skipValue();
+                }
+            }
+            if (! stopped) {
+                reader.endObject();
+            }
+            return new CompactNode<T>(key, value, decodedValue, dir, ttl, expiration, createdIndex, modifiedIndex, nodes);
+        }
+
+        @Nonnull
+        private List<DecodedNode<T>> decodeNodes() throws IOException {
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                return Collections.emptyList();
+            }
+            List<DecodedNode<T>> nodes = new ArrayList<DecodedNode<T>>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                DecodedNode<T> node = decodeNode(false);
+                if (node != null) {
+                    nodes.add(node);
+                }
+            }
+            reader.endArray();
+            return nodes;
+        }
+
+        /**
+         * Hand the nodes to the visitor as they are decoded, the folders after their children.
+         */
+        private void visitNodes() throws IOException {
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                return;
+            }
+            reader.beginArray();
+            while (! stopped && reader.hasNext()) {
+                DecodedNode<T> node = decodeNode(true);
+                if (node != null && ! stopped) {
+                    stopped = ! visitor.visit(node);
+                }
+            }
+            if (! stopped) {
+                reader.endArray();
+            }
+        }
+    }
+
+    private static final class Response extends BaseResponse implements KeyResponse {
+
+        private final KeyAction action;
+
+        private final KeyError error;
+
+        Response(int status, @Nonnull String reasonPhrase, @Nonnull Map<String, List<String>> headers,
+                 @Nullable KeyAction action, @Nullable KeyError error) {
+            super(status, reasonPhrase, headers);
+            this.action = action;
+            this.error = error;
+        }
+
+        public boolean isAction() {
+            return action != null;
+        }
+
+        @Nullable
+        public KeyError error() {
+            return error;
+        }
+
+        @Nullable
+        public KeyAction action() {
+            return action;
+        }
+
+        @Override
+        public String toString() {
+            return "KeyResponse{" +
+                    "action=" + action +
+                    ", error=" + error +
+                    '}';
+        }
+    }
+
+    private static final class Action implements KeyAction {
+
+        private final String action;
+
+        private final EtcdNode node;
+
+        private final EtcdNode prevNode;
+
+        Action(@Nullable String action, @Nullable EtcdNode node, @Nullable EtcdNode prevNode) {
+            this.action = action;
+            this.node = node;
+            this.prevNode = prevNode;
+        }
+
+        @Nonnull
+        public String action() {
+            if (action == null) {
+                throw new EtcdException(String.format(MISSING_PROPERTY, "action"));
+            }
+            return action;
+        }
+
+        @Nonnull
+        public EtcdNode node() {
+            if (node == null) {
+                throw new EtcdException(String.format(MISSING_PROPERTY, "node"));
+            }
+            return node;
+        }
+
+        @Nullable
+        public EtcdNode prevNode() {
+            return prevNode;
+        }
+
+        @Override
+        public String toString() {
+            return "KeyAction{" +
+                    "action='" + action + '\'' +
+                    ", node=" + node +
+                    ", prevNode=" + prevNode +
+                    '}';
+        }
+    }
+
+    private static final class Error implements KeyError {
+
+        private final int errorCode;
+
+        private final String message;
+
+        private final String cause;
+
+        private final Long index;
+
+        Error(int errorCode, @Nullable String message, @Nullable String cause, @Nullable Long index) {
+            this.errorCode = errorCode;
+            this.message = message;
+            this.cause = cause;
+            this.index = index;
+        }
+
+        @Nonnull
+        public String cause() {
+            if (cause == null) {
+                throw new EtcdException(String.format(MISSING_PROPERTY, "cause"));
+            }
+            return cause;
+        }
+
+        public int errorCode() {
+            return errorCode;
+        }
+
+        public long index() {
+            if (index == null) {
+                throw new EtcdException(String.format(MISSING_PROPERTY, "index"));
+            }
+            return index;
+        }
+
+        @Nonnull
+        public String message() {
+            if (message == null) {
+                throw new EtcdException(String.format(MISSING_PROPERTY, "message"));
+            }
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "KeyError{" +
+                    "errorCode=" + errorCode +
+                    ", message='" + message + '\'' +
+                    ", cause='" + cause + '\'' +
+                    ", index=" + index +
+                    '}';
+        }
+    }
+}
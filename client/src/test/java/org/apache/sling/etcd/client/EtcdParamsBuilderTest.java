@@ -35,6 +35,7 @@ public class EtcdParamsBuilderTest {
                 .prevValue("some value")
                 .quorum(true)
                 .recursive(true)
+                .refresh(true)
                 .ttl(20)
                 .wait(true)
                 .waitIndex(30)
@@ -46,6 +47,7 @@ public class EtcdParamsBuilderTest {
         Assert.assertEquals("some value", params.get("prevValue"));
         Assert.assertEquals("true", params.get("quorum"));
         Assert.assertEquals("true", params.get("recursive"));
+        Assert.assertEquals("true", params.get("refresh"));
         Assert.assertEquals("20", params.get("ttl"));
         Assert.assertEquals("true", params.get("wait"));
         Assert.assertEquals("30", params.get("waitIndex"));
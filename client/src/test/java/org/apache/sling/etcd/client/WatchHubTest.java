@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WatchHubTest {
+
+    private EtcdClient etcdClient;
+
+    private EtcdWatch rootWatch;
+
+    private WatchHub hub;
+
+    @Before
+    public void setUp() throws Exception {
+        etcdClient = mock(EtcdClient.class);
+        rootWatch = mock(EtcdWatch.class);
+        when(rootWatch.waitIndex()).thenReturn(42L);
+        when(etcdClient.watch(anyString(), anyBoolean(), any(Long.class), any(WatchListener.class))).thenReturn(rootWatch);
+        hub = new WatchHub(etcdClient, "/discovery/");
+    }
+
+    @Test
+    public void testSingleRecursiveWatch() throws Exception {
+        hub.subscribe("/discovery/announces", new RecordingListener());
+        hub.subscribe("/discovery/properties", new RecordingListener());
+        hub.subscribe("/discovery/announces", new RecordingListener());
+        verify(etcdClient, times(1)).watch(Mockito.eq("/discovery"), Mockito.eq(true), any(Long.class), any(WatchListener.class));
+        Assert.assertEquals(3, hub.subscriptions());
+    }
+
+    @Test
+    public void testDispatchByPrefix() throws Exception {
+        RecordingListener rootListener = new RecordingListener();
+        RecordingListener announcesListener = new RecordingListener();
+        RecordingListener propertiesListener = new RecordingListener();
+        hub.subscribe("/discovery", rootListener);
+        hub.subscribe("/discovery/announces", announcesListener);
+        hub.subscribe("/discovery/properties", propertiesListener);
+        WatchListener dispatcher = dispatcher();
+
+        dispatcher.onAction(action("set", "/discovery/announces/12", false));
+        Assert.assertEquals(1, rootListener.actions.size());
+        Assert.assertEquals(1, announcesListener.actions.size());
+        Assert.assertEquals(0, propertiesListener.actions.size());
+
+        // similar prefix, but different segment
+        dispatcher.onAction(action("set", "/discovery/announces-old/1", false));
+        Assert.assertEquals(2, rootListener.actions.size());
+        Assert.assertEquals(1, announcesListener.actions.size());
+    }
+
+    @Test
+    public void testDispatchFolderRemovalToSubtree() throws Exception {
+        RecordingListener announcesListener = new RecordingListener();
+        hub.subscribe("/discovery/announces/12", announcesListener);
+        dispatcher().onAction(action("delete", "/discovery/announces", true));
+        Assert.assertEquals(1, announcesListener.actions.size());
+        dispatcher().onAction(action("delete", "/discovery/announces/13", false));
+        Assert.assertEquals(1, announcesListener.actions.size());
+    }
+
+    @Test
+    public void testResyncAndErrorsDispatchedToAll() throws Exception {
+        RecordingListener l1 = new RecordingListener();
+        RecordingListener l2 = new RecordingListener();
+        hub.subscribe("/discovery/announces", l1);
+        hub.subscribe("/discovery/properties/a", l2);
+        dispatcher().onResync(mock(KeyError.class));
+        dispatcher().onError(new Exception());
+        Assert.assertEquals(1, l1.resyncs);
+        Assert.assertEquals(1, l2.resyncs);
+        Assert.assertEquals(1, l1.errors);
+        Assert.assertEquals(1, l2.errors);
+    }
+
+    @Test
+    public void testCancelLastSubscriptionStopsWatch() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        EtcdWatch s1 = hub.subscribe("/discovery/announces", listener);
+        EtcdWatch s2 = hub.subscribe("/discovery/announces", new RecordingListener());
+        Assert.assertEquals(Long.valueOf(42), s1.waitIndex());
+        WatchListener dispatcher = dispatcher();
+        s1.cancel();
+        Assert.assertTrue(s1.isCancelled());
+        verify(rootWatch, times(0)).cancel();
+        dispatcher.onAction(action("set", "/discovery/announces/1", false));
+        Assert.assertEquals(0, listener.actions.size());
+        s2.cancel();
+        verify(rootWatch, times(1)).cancel();
+        Assert.assertEquals(0, hub.subscriptions());
+        // a new subscription starts a new watch
+        hub.subscribe("/discovery/announces", listener);
+        verify(etcdClient, times(2)).watch(anyString(), anyBoolean(), any(Long.class), any(WatchListener.class));
+    }
+
+    @Test
+    public void testCancelLastSubscriptionWhileListenerBlocked() throws Exception {
+        final CountDownLatch inListener = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EtcdWatch subscription = hub.subscribe("/discovery/announces", new RecordingListener() {
+            @Override
+            public void onAction(@Nonnull KeyAction action) {
+                inListener.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        });
+        final WatchListener dispatcher = dispatcher();
+        Thread watchThread = new Thread(new Runnable() {
+            public void run() {
+                dispatcher.onAction(action("set", "/discovery/announces/1", false));
+            }
+        });
+        watchThread.start();
+        try {
+            Assert.assertTrue(inListener.await(5, TimeUnit.SECONDS));
+            Thread canceller = new Thread(new Runnable() {
+                public void run() {
+                    subscription.cancel();
+                }
+            });
+            canceller.start();
+            canceller.join(2000);
+            Assert.assertFalse(canceller.isAlive());
+            Assert.assertTrue(subscription.isCancelled());
+            verify(rootWatch, times(1)).cancel();
+            Assert.assertEquals(0, hub.subscriptions());
+        } finally {
+            release.countDown();
+            watchThread.join(5000);
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        EtcdWatch s1 = hub.subscribe("/discovery/announces", new RecordingListener());
+        hub.close();
+        Assert.assertTrue(s1.isCancelled());
+        Assert.assertEquals(0, hub.subscriptions());
+        verify(rootWatch, times(1)).cancel();
+    }
+
+    @Test
+    public void testFirstSubscriptionFromIndex() throws Exception {
+        hub.subscribe("/discovery/announces", 10L, new RecordingListener());
+        verify(etcdClient, times(1)).watch(Mockito.eq("/discovery"), Mockito.eq(true), Mockito.eq(10L), any(WatchListener.class));
+    }
+
+    @Test
+    public void testSubscribeFromIndexSharesWatch() throws Exception {
+        hub.subscribe("/discovery", new RecordingListener());
+        RecordingListener listener = new RecordingListener();
+        hub.subscribe("/discovery/announces", 50L, listener);
+        verify(etcdClient, times(1)).watch(anyString(), anyBoolean(), any(Long.class), any(WatchListener.class));
+        WatchListener dispatcher = dispatcher();
+        dispatcher.onAction(action("set", "/discovery/announces/1", false, 45));
+        Assert.assertEquals(0, listener.actions.size());
+        dispatcher.onAction(action("set", "/discovery/announces/1", false, 50));
+        Assert.assertEquals(1, listener.actions.size());
+    }
+
+    @Test
+    public void testSubscribeFromOlderIndexStartsOwnWatch() throws Exception {
+        EtcdWatch ownWatch = mock(EtcdWatch.class);
+        when(ownWatch.waitIndex()).thenReturn(11L);
+        when(etcdClient.watch(Mockito.eq("/discovery/announces"), Mockito.eq(true), Mockito.eq(10L), any(WatchListener.class)))
+                .thenReturn(ownWatch);
+        hub.subscribe("/discovery", new RecordingListener());
+        WatchListener dispatcher = dispatcher();
+        RecordingListener listener = new RecordingListener();
+        EtcdWatch subscription = hub.subscribe("/discovery/announces/", 10L, listener);
+        ArgumentCaptor<WatchListener> captor = ArgumentCaptor.forClass(WatchListener.class);
+        verify(etcdClient, times(1)).watch(Mockito.eq("/discovery/announces"), Mockito.eq(true), Mockito.eq(10L), captor.capture());
+        Assert.assertEquals(2, hub.subscriptions());
+        Assert.assertEquals(Long.valueOf(11), subscription.waitIndex());
+        // the replayed changes are delivered by the own watch only
+        captor.getValue().onAction(action("set", "/discovery/announces/1", false, 10));
+        Assert.assertEquals(1, listener.actions.size());
+        dispatcher.onAction(action("set", "/discovery/announces/2", false, 42));
+        Assert.assertEquals(1, listener.actions.size());
+        subscription.cancel();
+        verify(ownWatch, times(1)).cancel();
+        verify(rootWatch, times(0)).cancel();
+        Assert.assertEquals(1, hub.subscriptions());
+        captor.getValue().onAction(action("set", "/discovery/announces/3", false, 43));
+        Assert.assertEquals(1, listener.actions.size());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testSubscribeNullListener() throws Exception {
+        hub.subscribe("/discovery/announces", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubscribeOutsideRootKey() throws Exception {
+        hub.subscribe("/other", new RecordingListener());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubscribeSiblingOfRootKey() throws Exception {
+        hub.subscribe("/discovery-other", new RecordingListener());
+    }
+
+    private WatchListener dispatcher() {
+        ArgumentCaptor<WatchListener> captor = ArgumentCaptor.forClass(WatchListener.class);
+        verify(etcdClient, Mockito.atLeastOnce()).watch(anyString(), anyBoolean(), any(Long.class), captor.capture());
+        return captor.getValue();
+    }
+
+    private KeyAction action(String type, String key, boolean dir) {
+        return action(type, key, dir, 0);
+    }
+
+    private KeyAction action(String type, String key, boolean dir, long modifiedIndex) {
+        EtcdNode node = mock(EtcdNode.class);
+        when(node.key()).thenReturn(key);
+        when(node.dir()).thenReturn(dir);
+        when(node.modifiedIndex()).thenReturn(modifiedIndex);
+        KeyAction action = mock(KeyAction.class);
+        when(action.action()).thenReturn(type);
+        when(action.node()).thenReturn(node);
+        return action;
+    }
+
+    private static class RecordingListener implements WatchListener {
+
+        final List<KeyAction> actions = new ArrayList<KeyAction>();
+
+        int resyncs;
+
+        int errors;
+
+        public void onAction(@Nonnull KeyAction action) {
+            actions.add(action);
+        }
+
+        public void onResync(@Nonnull KeyError error) {
+            resyncs++;
+        }
+
+        public void onError(@Nonnull Exception e) {
+            errors++;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.sling.etcd.client.AsyncEtcdClient;
+import org.apache.sling.etcd.client.EtcdParams;
+import org.apache.sling.etcd.client.KeyAction;
+import org.apache.sling.etcd.client.KeyError;
+import org.apache.sling.etcd.client.KeyResponse;
+import org.apache.sling.etcd.client.Member;
+import org.apache.sling.etcd.client.MembersResponse;
+import org.apache.sling.etcd.client.VersionResponse;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncEtcdClientImplTest {
+
+    private static final RequestConfig CONFIG = RequestConfig.custom()
+            .setConnectTimeout(1000)
+            .setSocketTimeout(5000)
+            .build();
+
+    private Server server1;
+
+    private Server server2;
+
+    private AsyncEtcdClient etcdClient;
+
+    @After
+    public void tearDown() throws Exception {
+        IOUtils.closeQuietly(etcdClient);
+        if(server1 != null) {
+            server1.stop();
+        }
+        if(server2 != null) {
+            server2.stop();
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNoEndPoint() throws Exception {
+        new AsyncEtcdClientImpl(null, CONFIG, null);
+    }
+
+    @Test
+    public void testGetVersion() throws Exception {
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                res.setStatus(200);
+                res.getWriter().write("etcd 2.0.6");
+            }
+        };
+        server1 = startServer(servlet, "/version");
+        int port = serverPort(server1);
+        buildEtcdClient(port);
+        VersionResponse version = etcdClient.getVersion(new URI("http://localhost:" + port), null).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("etcd 2.0.6", version.version());
+    }
+
+    @Test
+    public void testGetExistingKey() throws Exception {
+        server1 = startServer(new StaticHandler(200, "/action-2.json"), "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.getKey("/test", EtcdParams.noParams(), null).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(response.isAction());
+        KeyAction action = response.action();
+        Assert.assertEquals("get", action.action());
+        Assert.assertEquals("/test", action.node().key());
+    }
+
+    @Test
+    public void testGetMissingKey() throws Exception {
+        server1 = startServer(new StaticHandler(404, "/error-4.json"), "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.getKey("/test", EtcdParams.noParams(), null).get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(response.isAction());
+        KeyError error = response.error();
+        Assert.assertNotNull(error);
+        Assert.assertEquals(100, error.errorCode());
+    }
+
+    @Test
+    public void testGetExistingKeyThroughProxyAndNoPeerAvailable() throws Exception {
+        server1 = startServer(new ProxyNoServiceAvailable(), "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        Future<KeyResponse> future = etcdClient.getKey("/test", EtcdParams.noParams(), null);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testGetRedirect() throws Exception {
+        server2 = startServer(new StaticHandler(200, "/action-2.json"), "/v2/keys/redi");
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                res.setHeader("Location", "http://localhost:" + (serverPort(server2)) + "/v2/keys/redi");
+                res.setStatus(307);
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.getKey("/test", EtcdParams.noParams(), null).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(response.isAction());
+        Assert.assertEquals("/test", response.action().node().key());
+    }
+
+    @Test
+    public void testPutRequestFormat() throws Exception {
+        HttpServlet servlet = new HttpServlet(){
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                ContentType contentType = ContentType.parse(req.getContentType());
+                if (! contentType.getMimeType().equals(EtcdClientImpl.FORM_URLENCODED.getMimeType())) {
+                    throw new IllegalArgumentException("wrong mime type");
+                }
+                if (! "test data".equals(req.getParameter("value"))) {
+                    throw new IllegalArgumentException("missing value parameter");
+                }
+                if (! "10".equals(req.getParameter("ttl"))) {
+                    throw new IllegalArgumentException("missing ttl parameter");
+                }
+                res.setStatus(201);
+                res.getWriter().write(IOUtils.toString(
+                        getClass().getResourceAsStream(
+                                "/action-3.json")));
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/post/test");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.putKey("/post/test", "test data", Collections.singletonMap("ttl", "10"), null)
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(response.isAction());
+    }
+
+    @Test
+    public void testPostKeyCallback() throws Exception {
+        server1 = startServer(new StaticHandler(201, "/action-3.json"), "/v2/keys/post/test");
+        buildEtcdClient(serverPort(server1));
+        final AtomicReference<KeyResponse> completed = new AtomicReference<KeyResponse>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        etcdClient.postKey("/post/test", "test-data", EtcdParams.noParams(), new FutureCallback<KeyResponse>() {
+            public void completed(KeyResponse result) {
+                completed.set(result);
+                latch.countDown();
+            }
+
+            public void failed(Exception ex) {
+                latch.countDown();
+            }
+
+            public void cancelled() {
+                latch.countDown();
+            }
+        });
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(completed.get());
+        Assert.assertEquals("/post/test/221", completed.get().action().node().key());
+    }
+
+    @Test
+    public void testPutKeyCompareFailed() throws Exception {
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                res.setStatus(412);
+                res.getWriter().write("{\"errorCode\":101,\"message\":\"Compare failed\",\"cause\":\"[token-2 != token-1]\",\"index\":8}");
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.putKey("/test", "token-1", EtcdParams.builder().prevValue("token-2").build(), null)
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(response.isAction());
+        KeyError error = response.error();
+        Assert.assertNotNull(error);
+        Assert.assertEquals(101, error.errorCode());
+    }
+
+    @Test
+    public void testDeleteKey() throws Exception {
+        server1 = startServer(new StaticHandler(200, "/action-4.json"), "/v2/keys/post/test");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.deleteKey("/post/test", EtcdParams.noParams(), null).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(response.isAction());
+        Assert.assertEquals("/post/test/221", response.action().node().key());
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        server1 = startServer(new StaticHandler(200, "/action-2.json"), "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        List<Future<KeyResponse>> futures = new ArrayList<Future<KeyResponse>>();
+        for (int i = 0 ; i < 50 ; i++) {
+            futures.add(etcdClient.getKey("/test", EtcdParams.noParams(), null));
+        }
+        for (Future<KeyResponse> future : futures) {
+            Assert.assertTrue(future.get(5, TimeUnit.SECONDS).isAction());
+        }
+    }
+
+    @Test
+    public void testGetMembers() throws Exception {
+        server1 = startServer(new StaticHandler(200, "/members.json"), "/v2/members");
+        buildEtcdClient(serverPort(server1));
+        MembersResponse response = etcdClient.getMembers(null).get(5, TimeUnit.SECONDS);
+        List<Member> members = response.members();
+        Assert.assertEquals(3, members.size());
+    }
+
+    @Test
+    public void testRequestFailsAfterClose() throws Exception {
+        server1 = startServer(new StaticHandler(200, "/members.json"), "/v2/members");
+        buildEtcdClient(serverPort(server1));
+        etcdClient.close();
+        Future<MembersResponse> future = etcdClient.getMembers(null);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+
+    private void buildEtcdClient(int port) throws Exception {
+        etcdClient = new AsyncEtcdClientImpl(new URI("http://localhost:" + port), CONFIG, null);
+    }
+
+    private static Server startServer(HttpServlet servlet, String pathSpec)
+            throws Exception {
+        Server server = new Server();
+        server.setConnectors(new Connector[]{new SelectChannelConnector()});
+        ServletContextHandler sch = new ServletContextHandler(null, "/", false, false);
+        sch.addServlet(new ServletHolder(servlet), pathSpec);
+        server.setHandler(sch);
+        server.start();
+        return server;
+    }
+
+    private static int serverPort(Server server) {
+        return server.getConnectors()[0].getLocalPort();
+    }
+
+    private class StaticHandler extends HttpServlet {
+
+        final int status;
+
+        final String resourcePath;
+
+        StaticHandler(int status, String resourcePath) {
+            this.resourcePath = resourcePath;
+            this.status = status;
+        }
+
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse res)
+                throws ServletException, IOException {
+            res.setStatus(status);
+            res.getWriter().write(IOUtils.toString(
+                    getClass().getResourceAsStream(
+                            resourcePath)));
+        }
+    }
+
+    private class ProxyNoServiceAvailable extends HttpServlet {
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse res)
+                throws ServletException, IOException {
+            res.setStatus(503);
+            res.getWriter().write("{\"message\":\"proxy: zero endpoints currently available\"}");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class EndpointRouterTest {
+
+    private static final URI A = URI.create("http://a:4001");
+
+    private static final URI B = URI.create("http://b:4001");
+
+    private static final URI C = URI.create("http://c:4001");
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSeed() throws Exception {
+        new EndpointRouter(Collections.<URI>emptyList(), 0);
+    }
+
+    @Test
+    public void testSeedsOrder() throws Exception {
+        EndpointRouter router = new EndpointRouter(Arrays.asList(A, B), 0);
+        Assert.assertEquals(Arrays.asList(A, B), router.route());
+        Assert.assertEquals(A, router.primary());
+    }
+
+    @Test
+    public void testFastestFirst() throws Exception {
+        EndpointRouter router = new EndpointRouter(Arrays.asList(A, B), 0);
+        router.success(A, 100);
+        router.success(B, 10);
+        Assert.assertEquals(Arrays.asList(B, A), router.route());
+    }
+
+    @Test
+    public void testUnhealthyLast() throws Exception {
+        EndpointRouter router = new EndpointRouter(Arrays.asList(A, B), 0);
+        router.success(A, 100);
+        router.success(B, 10);
+        router.failure(B);
+        Assert.assertEquals(Arrays.asList(A, B), router.route());
+    }
+
+    @Test
+    public void testRecoveredEndpoint() throws Exception {
+        EndpointRouter router = new EndpointRouter(Arrays.asList(A, B), 0);
+        router.success(A, 100);
+        router.failure(B);
+        router.success(B, 10);
+        Assert.assertEquals(Arrays.asList(B, A), router.route());
+    }
+
+    @Test
+    public void testWriteRoutedToLeaderFirst() throws Exception {
+        EndpointRouter router = new EndpointRouter(Arrays.asList(A, B), 0);
+        router.success(A, 10);
+        router.success(B, 100);
+        router.leader(URI.create("http://b:4001/v2/keys/test"));
+        Assert.assertEquals(B, router.leader());
+        Assert.assertEquals(Arrays.asList(B, A), router.routeWrite());
+        Assert.assertEquals(Arrays.asList(A, B), router.route());
+    }
+
+    @Test
+    public void testLeaderForgottenUponFailure() throws Exception {
+        EndpointRouter router = new EndpointRouter(Arrays.asList(A, B), 0);
+        router.leader(B);
+        router.failure(B);
+        Assert.assertNull(router.leader());
+        Assert.assertEquals(Arrays.asList(A, B), router.routeWrite());
+    }
+
+    @Test
+    public void testRefreshKeepsSeedsLast() throws Exception {
+        EndpointRouter router = new EndpointRouter(Collections.singletonList(A), 60000);
+        Assert.assertTrue(router.beginRefresh());
+        router.endRefresh(Arrays.asList(URI.create("http://b:4001/"), C));
+        List<URI> route = router.route();
+        Assert.assertEquals(Arrays.asList(B, C, A), route);
+        Assert.assertFalse(router.beginRefresh());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsMembers() throws Exception {
+        EndpointRouter router = new EndpointRouter(Arrays.asList(A, B), 60000);
+        Assert.assertTrue(router.beginRefresh());
+        router.endRefresh(null);
+        Assert.assertEquals(Arrays.asList(A, B), router.route());
+    }
+
+    @Test
+    public void testSingleRefresher() throws Exception {
+        EndpointRouter router = new EndpointRouter(Collections.singletonList(A), 1);
+        Assert.assertTrue(router.beginRefresh());
+        Assert.assertFalse(router.beginRefresh());
+    }
+
+    @Test
+    public void testRefreshDisabled() throws Exception {
+        EndpointRouter router = new EndpointRouter(Collections.singletonList(A), 0);
+        Assert.assertFalse(router.beginRefresh());
+    }
+
+    @Test
+    public void testEndpointOf() throws Exception {
+        Assert.assertEquals(A, EndpointRouter.endpointOf(URI.create("http://a:4001/v2/keys/test?wait=true")));
+    }
+}
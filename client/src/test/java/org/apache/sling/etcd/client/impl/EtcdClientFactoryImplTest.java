@@ -36,4 +36,20 @@ public class EtcdClientFactoryImplTest {
         EtcdClient client = factory.create(httpClient, new URI("localhost:4001"));
         Assert.assertNotNull(client);
     }
+
+    @Test
+    public void testCreateSharing() throws Exception {
+        CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+        EtcdClientFactory factory = new EtcdClientFactoryImpl();
+        EtcdClient client = factory.create(httpClient, new URI("localhost:4001"));
+        EtcdClient shared = factory.create(Mockito.mock(CloseableHttpClient.class), client);
+        Assert.assertNotNull(shared);
+        Assert.assertNotSame(client, shared);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateSharingUnsupportedClient() throws Exception {
+        EtcdClientFactory factory = new EtcdClientFactoryImpl();
+        factory.create(Mockito.mock(CloseableHttpClient.class), Mockito.mock(EtcdClient.class));
+    }
 }
\ No newline at end of file
@@ -20,10 +20,20 @@ package org.apache.sling.etcd.client.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.security.KeyStore;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -38,8 +48,11 @@ import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.sling.etcd.client.DecodedNode;
+import org.apache.sling.etcd.client.EtcdNode;
 import org.apache.sling.etcd.client.KeyAction;
 import org.apache.sling.etcd.client.EtcdClient;
+import org.apache.sling.etcd.client.EtcdWatch;
 import org.apache.sling.etcd.client.KeyError;
 import org.apache.sling.etcd.client.EtcdParams;
 import org.apache.sling.etcd.client.KeyResponse;
@@ -52,9 +65,13 @@ import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.sling.etcd.client.LeaderStatsResponse;
 import org.apache.sling.etcd.client.MembersResponse;
+import org.apache.sling.etcd.client.NodeVisitor;
 import org.apache.sling.etcd.client.Member;
 import org.apache.sling.etcd.client.MemberStatsResponse;
+import org.apache.sling.etcd.client.ValueDecoder;
+import org.apache.sling.etcd.client.ValueReader;
 import org.apache.sling.etcd.client.VersionResponse;
+import org.apache.sling.etcd.client.WatchListener;
 
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Server;
@@ -151,6 +168,102 @@ public class EtcdClientImplTest {
         Assert.assertEquals("/test", action.node().key());
     }
 
+    @Test
+    public void testGetKeyWithValueDecoder() throws Exception {
+        server1 = startServer(new StaticHandler(200, "/action-6.json"), "/v2/keys/props");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.getKey("/props", EtcdParams.builder().recursive(true).build(), new ValueDecoder<Long>() {
+            @Nonnull
+            public Long decode(@Nonnull ValueReader value) throws IOException {
+                value.beginObject();
+                value.nextName();
+                value.skipValue();
+                value.nextName();
+                return value.nextLong();
+            }
+        });
+        Assert.assertTrue(response.isAction());
+        List<EtcdNode> nodes = response.action().node().nodes();
+        Assert.assertEquals(2, nodes.size());
+        Assert.assertEquals(1L, ((DecodedNode<?>) nodes.get(0)).decodedValue());
+        Assert.assertEquals(2L, ((DecodedNode<?>) nodes.get(1)).decodedValue());
+    }
+
+    @Test
+    public void testList() throws Exception {
+        server1 = startServer(new ListingHandler(10000), "/v2/keys/large");
+        buildEtcdClient(serverPort(server1));
+        final AtomicInteger visited = new AtomicInteger();
+        KeyResponse response = etcdClient.list("/large", true, new NodeVisitor() {
+            public boolean visit(@Nonnull EtcdNode node) {
+                Assert.assertEquals("/large/" + visited.getAndIncrement(), node.key());
+                return true;
+            }
+        });
+        Assert.assertTrue(response.isAction());
+        Assert.assertEquals("/large", response.action().node().key());
+        Assert.assertTrue(response.action().node().nodes().isEmpty());
+        Assert.assertEquals(10000, visited.get());
+    }
+
+    @Test
+    public void testListStopsEarly() throws Exception {
+        ListingHandler handler = new ListingHandler(Integer.MAX_VALUE);
+        server1 = startServer(handler, "/v2/keys/large");
+        buildEtcdClient(serverPort(server1));
+        final AtomicInteger visited = new AtomicInteger();
+        KeyResponse response = etcdClient.list("/large", false, new NodeVisitor() {
+            public boolean visit(@Nonnull EtcdNode node) {
+                return visited.incrementAndGet() < 10;
+            }
+        });
+        Assert.assertTrue(response.isAction());
+        Assert.assertEquals(10, visited.get());
+        // the client remains usable
+        visited.set(0);
+        etcdClient.list("/large", false, new NodeVisitor() {
+            public boolean visit(@Nonnull EtcdNode node) {
+                return visited.incrementAndGet() < 5;
+            }
+        });
+        Assert.assertEquals(5, visited.get());
+    }
+
+    @Test
+    public void testListFailingMidStreamIsNotFailedOver() throws Exception {
+        server1 = startServer(new ListingHandler(10, 1000), "/v2/keys/large");
+        server2 = startServer(new ListingHandler(10), "/v2/keys/large");
+        URI endpoint1 = new URI("http://localhost:" + serverPort(server1));
+        EndpointRouter router = new EndpointRouter(Arrays.asList(
+                endpoint1, new URI("http://localhost:" + serverPort(server2))), 0);
+        buildEtcdClient(router, RequestConfig.custom().setSocketTimeout(300).build(), EtcdClientImpl.defaultWatchConfig());
+        final Set<String> keys = new HashSet<String>();
+        try {
+            etcdClient.list("/large", true, new NodeVisitor() {
+                public boolean visit(@Nonnull EtcdNode node) {
+                    Assert.assertTrue("Visited twice: " + node.key(), keys.add(node.key()));
+                    return true;
+                }
+            });
+            Assert.fail("Expected the listing to fail");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+        Assert.assertEquals(10, keys.size());
+    }
+
+    @Test
+    public void testListMissingFolder() throws Exception {
+        server1 = startServer(new StaticHandler(404, "/error-4.json"), "/v2/keys/missing");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.list("/missing", true, new NodeVisitor() {
+            public boolean visit(@Nonnull EtcdNode node) {
+                return true;
+            }
+        });
+        Assert.assertFalse(response.isAction());
+    }
+
     @Test(expected = IOException.class)
     public void testGetExistingKeyThroughProxyAndNoPeerAvailable() throws Exception {
         server1 = startServer(new ProxyNoServiceAvailable(), "/v2/keys/test");
@@ -212,6 +325,17 @@ public class EtcdClientImplTest {
         Assert.assertEquals("/test", action.node().key());
     }
 
+    @Test
+    public void testPutKeyPreconditionFailed() throws Exception {
+        server1 = startServer(new StaticHandler(412, "/error-1.json"), "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        KeyResponse response = etcdClient.putKey("/test", "test-data", EtcdParams.builder().prevExist(false).build());
+        Assert.assertFalse(response.isAction());
+        KeyError error = response.error();
+        Assert.assertNotNull(error);
+        Assert.assertEquals(105, error.errorCode());
+    }
+
     @Test
     public void testPutKeyWithParameter() throws Exception {
         HttpServlet servlet = new HttpServlet(){
@@ -234,6 +358,398 @@ public class EtcdClientImplTest {
         Assert.assertNotNull(action);
     }
 
+    @Test
+    public void testGetFailsOverToHealthyMember() throws Exception {
+        server2 = startServer(new StaticHandler(503, "/action-2.json"), "/v2/keys/test");
+        server1 = startServer(new StaticHandler(200, "/action-2.json"), "/v2/keys/test");
+        buildEtcdClient(new EndpointRouter(Arrays.asList(
+                new URI("http://localhost:" + serverPort(server2)),
+                new URI("http://localhost:" + serverPort(server1))), 0));
+        KeyResponse response = etcdClient.getKey("/test", EtcdParams.noParams());
+        Assert.assertTrue(response.isAction());
+        Assert.assertEquals("/test", response.action().node().key());
+    }
+
+    @Test(expected = IOException.class)
+    public void testPostDoesNotFailOverOnceSent() throws Exception {
+        server2 = startServer(new StaticHandler(503, "/action-3.json"), "/v2/keys/post/test");
+        server1 = startServer(new StaticHandler(201, "/action-3.json"), "/v2/keys/post/test");
+        buildEtcdClient(new EndpointRouter(Arrays.asList(
+                new URI("http://localhost:" + serverPort(server2)),
+                new URI("http://localhost:" + serverPort(server1))), 0));
+        etcdClient.postKey("/post/test", "test-data", EtcdParams.noParams());
+    }
+
+    @Test
+    public void testRoutesToRefreshedMembers() throws Exception {
+        server2 = startServer(new StaticHandler(200, "/action-2.json"), "/v2/keys/test");
+        HttpServlet members = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                res.setStatus(200);
+                res.getWriter().write("{\"members\":[{\"id\":\"324473db0474a678\",\"name\":\"c2\"," +
+                        "\"peerURLs\":[\"http://localhost:2382\"]," +
+                        "\"clientURLs\":[\"http://localhost:" + serverPort(server2) + "\"]}]}");
+            }
+        };
+        server1 = startServer(members, "/v2/members");
+        buildEtcdClient(new EndpointRouter(Collections.singletonList(
+                new URI("http://localhost:" + serverPort(server1))), 60000));
+        KeyResponse response = etcdClient.getKey("/test", EtcdParams.noParams());
+        Assert.assertTrue(response.isAction());
+        Assert.assertEquals("/test", response.action().node().key());
+    }
+
+    @Test
+    public void testIdleLongPollDoesNotFailOver() throws Exception {
+        final AtomicInteger otherRequests = new AtomicInteger();
+        server1 = startServer(new DelayedHandler(1500, "/action-2.json"), "/v2/keys/test");
+        HttpServlet other = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                otherRequests.incrementAndGet();
+                res.setStatus(200);
+                res.getWriter().write(IOUtils.toString(getClass().getResourceAsStream("/action-2.json")));
+            }
+        };
+        server2 = startServer(other, "/v2/keys/test");
+        URI endpoint1 = new URI("http://localhost:" + serverPort(server1));
+        EndpointRouter router = new EndpointRouter(Arrays.asList(
+                endpoint1, new URI("http://localhost:" + serverPort(server2))), 0);
+        router.leader(endpoint1);
+        buildEtcdClient(router, RequestConfig.DEFAULT, RequestConfig.custom().setSocketTimeout(500).build());
+        try {
+            etcdClient.getKey("/test", EtcdParams.builder().wait(true).build());
+            Assert.fail("Expected the long poll to time out");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+        // the idle long poll is neither failed over nor recorded as a failure
+        Assert.assertEquals(0, otherRequests.get());
+        Assert.assertEquals(endpoint1, router.leader());
+        Assert.assertEquals(endpoint1, router.primary());
+    }
+
+    @Test
+    public void testLongPollAppliesWatchConfig() throws Exception {
+        server1 = startServer(new DelayedHandler(1000, "/action-2.json"), "/v2/keys/test");
+        buildEtcdClient(new EndpointRouter(Collections.singletonList(
+                new URI("http://localhost:" + serverPort(server1))), 0),
+                RequestConfig.custom().setSocketTimeout(300).build(),
+                RequestConfig.custom().setSocketTimeout(5000).build());
+        // the long poll stays idle longer than the socket timeout of the other requests
+        KeyResponse response = etcdClient.getKey("/test", EtcdParams.builder().wait(true).build());
+        Assert.assertTrue(response.isAction());
+        try {
+            etcdClient.getKey("/test", EtcdParams.noParams());
+            Assert.fail("Expected the request to time out");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLongPollDurationNotRecordedAsLatency() throws Exception {
+        server1 = startServer(new DelayedHandler(300, "/action-2.json"), "/v2/keys/test");
+        server2 = startServer(new StaticHandler(200, "/action-2.json"), "/v2/keys/test");
+        URI endpoint1 = new URI("http://localhost:" + serverPort(server1));
+        EndpointRouter router = new EndpointRouter(Arrays.asList(
+                endpoint1, new URI("http://localhost:" + serverPort(server2))), 0);
+        buildEtcdClient(router);
+        KeyResponse response = etcdClient.getKey("/test", EtcdParams.builder().wait(true).build());
+        Assert.assertTrue(response.isAction());
+        Assert.assertEquals(endpoint1, router.primary());
+    }
+
+    @Test
+    public void testSharedClientReusesMembers() throws Exception {
+        final AtomicInteger membersRequests = new AtomicInteger();
+        server2 = startServer(new StaticHandler(200, "/action-2.json"), "/v2/keys/test");
+        HttpServlet members = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                membersRequests.incrementAndGet();
+                res.setStatus(200);
+                res.getWriter().write("{\"members\":[{\"id\":\"324473db0474a678\",\"name\":\"c2\"," +
+                        "\"peerURLs\":[\"http://localhost:2382\"]," +
+                        "\"clientURLs\":[\"http://localhost:" + serverPort(server2) + "\"]}]}");
+            }
+        };
+        server1 = startServer(members, "/v2/members");
+        buildEtcdClient(new EndpointRouter(Collections.singletonList(
+                new URI("http://localhost:" + serverPort(server1))), 60000));
+        CloseableHttpClient otherHttpClient = HttpClients.createDefault();
+        try {
+            EtcdClient shared = ((EtcdClientImpl) etcdClient).share(otherHttpClient);
+            Assert.assertTrue(etcdClient.getKey("/test", EtcdParams.noParams()).isAction());
+            // the shared client routes to the members discovered by the first client
+            Assert.assertTrue(shared.getKey("/test", EtcdParams.noParams()).isAction());
+            Assert.assertEquals(1, membersRequests.get());
+        } finally {
+            IOUtils.closeQuietly(otherHttpClient);
+        }
+    }
+
+    @Test
+    public void testWriteSentToCachedLeader() throws Exception {
+        final AtomicInteger followerWrites = new AtomicInteger();
+        server2 = startServer(new StaticHandler(201, "/action-1.json"), "/v2/keys/test");
+        HttpServlet follower = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                followerWrites.incrementAndGet();
+                res.setHeader("Location", "http://localhost:" + (serverPort(server2)) + "/v2/keys/test");
+                res.setStatus(307);
+            }
+        };
+        server1 = startServer(follower, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        for (int i = 0 ; i < 3 ; i++) {
+            KeyResponse response = etcdClient.putKey("/test", "test-data", EtcdParams.noParams());
+            Assert.assertTrue(response.isAction());
+        }
+        Assert.assertEquals(1, followerWrites.get());
+    }
+
+    @Test
+    public void testWriteSentToLeaderFromMemberStats() throws Exception {
+        final AtomicInteger leaderWrites = new AtomicInteger();
+        HttpServlet leader = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                leaderWrites.incrementAndGet();
+                res.setStatus(201);
+                res.getWriter().write(IOUtils.toString(getClass().getResourceAsStream("/action-1.json")));
+            }
+        };
+        server2 = startServer(leader, "/v2/keys/test");
+        HttpServlet follower = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                res.setStatus(200);
+                if ("/v2/members".equals(req.getRequestURI())) {
+                    // the leader id in peer-follower-stats.json is 324473db0474a678
+                    res.getWriter().write("{\"members\":[" +
+                            "{\"id\":\"7e3bd17c66e004e8\",\"name\":\"c2\",\"peerURLs\":[\"http://localhost:2382\"]," +
+                            "\"clientURLs\":[\"http://localhost:" + serverPort(server1) + "\"]}," +
+                            "{\"id\":\"324473db0474a678\",\"name\":\"c3\",\"peerURLs\":[\"http://localhost:2383\"]," +
+                            "\"clientURLs\":[\"http://localhost:" + serverPort(server2) + "\"]}]}");
+                } else if ("/v2/stats/self".equals(req.getRequestURI())) {
+                    res.getWriter().write(IOUtils.toString(getClass().getResourceAsStream("/peer-follower-stats.json")));
+                } else {
+                    throw new IllegalArgumentException("unexpected request to the follower");
+                }
+            }
+        };
+        server1 = startServer(follower, "/v2/*");
+        buildEtcdClient(new EndpointRouter(Collections.singletonList(
+                new URI("http://localhost:" + serverPort(server1))), 60000));
+        KeyResponse response = etcdClient.putKey("/test", "test-data", EtcdParams.noParams());
+        Assert.assertTrue(response.isAction());
+        Assert.assertEquals(1, leaderWrites.get());
+    }
+
+    @Test
+    public void testWatchResumesFromLastModifiedIndex() throws Exception {
+        final BlockingQueue<String> waitIndexes = new LinkedBlockingQueue<String>();
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                Assert.assertEquals("true", req.getParameter("wait"));
+                Assert.assertEquals("true", req.getParameter("recursive"));
+                String waitIndex = req.getParameter("waitIndex");
+                waitIndexes.add(String.valueOf(waitIndex));
+                long index = (waitIndex != null) ? Long.parseLong(waitIndex) : 220;
+                res.getWriter().write(String.format("{\"action\":\"set\",\"node\":" +
+                        "{\"key\":\"/test/%s\",\"value\":\"\",\"modifiedIndex\":%s,\"createdIndex\":%s}}", index, index, index));
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        QueueListener listener = new QueueListener();
+        EtcdWatch watch = etcdClient.watch("/test", true, 220L, listener);
+        try {
+            KeyAction first = listener.poll();
+            Assert.assertEquals("/test/220", first.node().key());
+            KeyAction second = listener.poll();
+            Assert.assertEquals("/test/221", second.node().key());
+            Assert.assertEquals("220", waitIndexes.poll(5, TimeUnit.SECONDS));
+            Assert.assertEquals("221", waitIndexes.poll(5, TimeUnit.SECONDS));
+        } finally {
+            watch.cancel();
+        }
+        Assert.assertTrue(watch.isCancelled());
+        Assert.assertTrue(listener.errors.isEmpty());
+    }
+
+    @Test
+    public void testWatchIndexCleared() throws Exception {
+        final BlockingQueue<String> waitIndexes = new LinkedBlockingQueue<String>();
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                String waitIndex = req.getParameter("waitIndex");
+                waitIndexes.add(waitIndex);
+                if ("1".equals(waitIndex)) {
+                    res.setStatus(400);
+                    res.getWriter().write("{\"errorCode\":401,\"message\":\"The event in requested index is outdated and cleared\"," +
+                            "\"cause\":\"the requested history has been cleared [1008/1]\",\"index\":2007}");
+                } else {
+                    res.getWriter().write(IOUtils.toString(getClass().getResourceAsStream("/action-1.json")));
+                }
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        QueueListener listener = new QueueListener();
+        EtcdWatch watch = etcdClient.watch("/test", false, 1L, listener);
+        try {
+            KeyError error = listener.resyncs.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(error);
+            Assert.assertEquals(401, error.errorCode());
+            Assert.assertNotNull(listener.poll());
+            Assert.assertEquals("1", waitIndexes.poll(5, TimeUnit.SECONDS));
+            Assert.assertEquals("2008", waitIndexes.poll(5, TimeUnit.SECONDS));
+        } finally {
+            watch.cancel();
+        }
+    }
+
+    @Test
+    public void testWatchSocketTimeoutIsNotAnError() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                if (requests.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                res.getWriter().write(IOUtils.toString(getClass().getResourceAsStream("/action-1.json")));
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1), RequestConfig.custom().setSocketTimeout(200).build());
+        QueueListener listener = new QueueListener();
+        EtcdWatch watch = etcdClient.watch("/test", false, null, listener);
+        try {
+            KeyAction action = listener.poll();
+            Assert.assertEquals(220, action.node().modifiedIndex());
+            Assert.assertEquals(Long.valueOf(221), watch.waitIndex());
+            Assert.assertTrue(requests.get() >= 2);
+        } finally {
+            watch.cancel();
+        }
+        Assert.assertTrue(listener.errors.isEmpty());
+    }
+
+    @Test
+    public void testWatchRetriesAfterError() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                if (requests.incrementAndGet() == 1) {
+                    res.setStatus(503);
+                    res.getWriter().write("{\"message\":\"proxy: zero endpoints currently available\"}");
+                } else {
+                    res.getWriter().write(IOUtils.toString(getClass().getResourceAsStream("/action-1.json")));
+                }
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        QueueListener listener = new QueueListener();
+        EtcdWatch watch = etcdClient.watch("/test", false, null, listener);
+        try {
+            Assert.assertTrue(listener.errors.poll(5, TimeUnit.SECONDS) instanceof IOException);
+            Assert.assertNotNull(listener.poll());
+        } finally {
+            watch.cancel();
+        }
+    }
+
+    @Test
+    public void testCancelWatch() throws Exception {
+        final CountDownLatch pending = new CountDownLatch(1);
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                pending.countDown();
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                res.getWriter().write(IOUtils.toString(getClass().getResourceAsStream("/action-1.json")));
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        QueueListener listener = new QueueListener();
+        EtcdWatch watch = etcdClient.watch("/test", false, null, listener);
+        Assert.assertTrue(pending.await(5, TimeUnit.SECONDS));
+        watch.cancel();
+        Assert.assertTrue(watch.isCancelled());
+        Thread.sleep(2500);
+        Assert.assertTrue(listener.actions.isEmpty());
+        Assert.assertTrue(listener.errors.isEmpty());
+    }
+
+    @Test
+    public void testCancelWatchDoesNotWaitForListener() throws Exception {
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                res.getWriter().write(IOUtils.toString(getClass().getResourceAsStream("/action-1.json")));
+            }
+        };
+        server1 = startServer(servlet, "/v2/keys/test");
+        buildEtcdClient(serverPort(server1));
+        final CountDownLatch inListener = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        WatchListener listener = new QueueListener() {
+            @Override
+            public void onAction(@Nonnull KeyAction action) {
+                calls.incrementAndGet();
+                inListener.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        EtcdWatch watch = etcdClient.watch("/test", false, null, listener);
+        try {
+            Assert.assertTrue(inListener.await(5, TimeUnit.SECONDS));
+            long start = System.currentTimeMillis();
+            watch.cancel();
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+            Assert.assertTrue(watch.isCancelled());
+        } finally {
+            release.countDown();
+        }
+        Thread.sleep(500);
+        Assert.assertEquals(1, calls.get());
+    }
+
     @Test
     public void testMultiValueHeader() throws Exception {
         HttpServlet servlet = new HttpServlet(){
@@ -473,6 +989,10 @@ public class EtcdClientImplTest {
     }
 
     private void buildEtcdClient(int port) throws Exception {
+        buildEtcdClient(port, RequestConfig.custom().setSocketTimeout(10000).build());
+    }
+
+    private void buildEtcdClient(int port, RequestConfig watchConfig) throws Exception {
         connectionManager = new PoolingHttpClientConnectionManager();
         final RequestConfig requestConfig = RequestConfig.custom()
                 .setSocketTimeout(10000)
@@ -485,7 +1005,21 @@ public class EtcdClientImplTest {
                 .setConnectionManager(connectionManager)
                 .setDefaultRequestConfig(requestConfig)
                 .build();
-        etcdClient = new EtcdClientImpl(httpClient, new URI("http://localhost:" + port));
+        etcdClient = new EtcdClientImpl(httpClient, new URI("http://localhost:" + port), watchConfig);
+    }
+
+    private void buildEtcdClient(EndpointRouter router) throws Exception {
+        buildEtcdClient(router, RequestConfig.DEFAULT, EtcdClientImpl.defaultWatchConfig());
+    }
+
+    private void buildEtcdClient(EndpointRouter router, RequestConfig requestConfig, RequestConfig watchConfig) throws Exception {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        httpClient = HttpClients
+                .custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        etcdClient = new EtcdClientImpl(httpClient, router, watchConfig);
     }
 
     private Server startSecureServer(HttpServlet servlet, String pathSpec,
@@ -551,6 +1085,73 @@ public class EtcdClientImplTest {
         }
     }
 
+    /**
+     * Serve a static response after a delay, as a long poll request would.
+     */
+    private class DelayedHandler extends StaticHandler {
+
+        final long delay;
+
+        DelayedHandler(long delay, String resourcePath) {
+            super(200, resourcePath);
+            this.delay = delay;
+        }
+
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse res)
+                throws ServletException, IOException {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.service(req, res);
+        }
+    }
+
+    /**
+     * Stream a folder listing with the given number of keys.
+     */
+    private class ListingHandler extends HttpServlet {
+
+        final int size;
+
+        final long stall;
+
+        ListingHandler(int size) {
+            this(size, 0);
+        }
+
+        /**
+         * @param stall the time in milliseconds to stall after the keys were sent, before completing the listing.
+         */
+        ListingHandler(int size, long stall) {
+            this.size = size;
+            this.stall = stall;
+        }
+
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse res)
+                throws ServletException, IOException {
+            res.setStatus(200);
+            PrintWriter writer = res.getWriter();
+            writer.write("{\"action\":\"get\",\"node\":{\"key\":\"/large\",\"dir\":true,\"nodes\":[");
+            for (int i = 0 ; i < size && ! writer.checkError() ; i++) {
+                writer.write(String.format("%s{\"key\":\"/large/%s\",\"value\":\"value-%s\",\"modifiedIndex\":%s,\"createdIndex\":%s}",
+                        (i > 0) ? "," : "", i, i, i, i));
+            }
+            if (stall > 0) {
+                res.flushBuffer();
+                try {
+                    Thread.sleep(stall);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            writer.write("],\"modifiedIndex\":1,\"createdIndex\":1}}");
+        }
+    }
+
     private class ProxyNoServiceAvailable extends HttpServlet {
         @Override
         protected void service(HttpServletRequest req, HttpServletResponse res)
@@ -560,6 +1161,33 @@ public class EtcdClientImplTest {
         }
     }
 
+    private class QueueListener implements WatchListener {
+
+        final BlockingQueue<KeyAction> actions = new LinkedBlockingQueue<KeyAction>();
+
+        final BlockingQueue<KeyError> resyncs = new LinkedBlockingQueue<KeyError>();
+
+        final BlockingQueue<Exception> errors = new LinkedBlockingQueue<Exception>();
+
+        public void onAction(@Nonnull KeyAction action) {
+            actions.add(action);
+        }
+
+        public void onResync(@Nonnull KeyError error) {
+            resyncs.add(error);
+        }
+
+        public void onError(@Nonnull Exception e) {
+            errors.add(e);
+        }
+
+        KeyAction poll() throws InterruptedException {
+            KeyAction action = actions.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(action);
+            return action;
+        }
+    }
+
     private KeyStore loadKeyStore(String path, char[] pwd)
             throws Exception {
         InputStream keyStoreInputStream = null;
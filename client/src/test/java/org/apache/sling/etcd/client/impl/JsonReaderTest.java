@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import junit.framework.Assert;
+import org.apache.sling.etcd.client.ValueDecoder;
+import org.apache.sling.etcd.client.ValueReader;
+import org.junit.Test;
+
+public class JsonReaderTest {
+
+    @Test
+    public void testObject() throws Exception {
+        JsonReader reader = reader("{ \"a\" : \"b\", \"n\": -42, \"t\": true, \"f\": false, \"z\": null }");
+        reader.beginObject();
+        Assert.assertEquals("a", reader.nextName());
+        Assert.assertEquals("b", reader.nextString());
+        Assert.assertEquals("n", reader.nextName());
+        Assert.assertEquals(-42, reader.nextLong());
+        Assert.assertEquals(0, reader.nextName(new String[]{"t", "f"}));
+        Assert.assertTrue(reader.nextBoolean());
+        Assert.assertEquals(1, reader.nextName(new String[]{"t", "f"}));
+        Assert.assertFalse(reader.nextBoolean());
+        Assert.assertEquals(-1, reader.nextName(new String[]{"t", "f"}));
+        Assert.assertNull(reader.nextString());
+        Assert.assertFalse(reader.hasNext());
+        reader.endObject();
+        Assert.assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+        reader.close();
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        JsonReader reader = reader("[\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u0041\\u00e9\"]");
+        reader.beginArray();
+        Assert.assertEquals("\"\\/\b\f\n\r\tAé", reader.nextString());
+        reader.endArray();
+        reader.close();
+    }
+
+    @Test
+    public void testMultiBytes() throws Exception {
+        String value = "é中😀";
+        JsonReader reader = reader("[\"" + value + "\"]");
+        reader.beginArray();
+        Assert.assertEquals(value, reader.nextString());
+        reader.endArray();
+        reader.close();
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        JsonReader reader = reader("[9223372036854775807, 1.5e2, \"12\"]");
+        reader.beginArray();
+        Assert.assertEquals(Long.MAX_VALUE, reader.nextLong());
+        Assert.assertEquals(150, reader.nextLong());
+        Assert.assertEquals(12, reader.nextLong());
+        reader.endArray();
+        reader.close();
+    }
+
+    @Test
+    public void testSkipValue() throws Exception {
+        JsonReader reader = reader("{\"skip\":{\"a\":[1,{\"b\":[]},\"c\"],\"d\":null},\"keep\":\"k\"}");
+        reader.beginObject();
+        reader.nextName();
+        reader.skipValue();
+        Assert.assertEquals("keep", reader.nextName());
+        Assert.assertEquals("k", reader.nextString());
+        reader.endObject();
+        reader.close();
+    }
+
+    @Test
+    public void testLongStringAcrossBuffers() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0 ; i < 20000 ; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        JsonReader reader = reader("[\"" + value + "\"]");
+        reader.beginArray();
+        Assert.assertEquals(value.toString(), reader.nextString());
+        reader.endArray();
+        reader.close();
+    }
+
+    @Test
+    public void testUnquoted() throws Exception {
+        JsonReader reader = reader("{slingId:sling-id-2,flag:true,none:null,name:nullable}");
+        reader.beginObject();
+        Assert.assertEquals("slingId", reader.nextName());
+        Assert.assertEquals("sling-id-2", reader.nextString());
+        Assert.assertEquals("flag", reader.nextName());
+        Assert.assertTrue(reader.nextBoolean());
+        Assert.assertEquals(0, reader.nextName(new String[]{"none"}));
+        Assert.assertEquals(JsonReader.Token.NULL, reader.peek());
+        reader.nextNull();
+        Assert.assertEquals("name", reader.nextName());
+        Assert.assertEquals("nullable", reader.nextString());
+        reader.endObject();
+        reader.close();
+    }
+
+    @Test
+    public void testEmbeddedValue() throws Exception {
+        JsonReader reader = reader("[\"{\\\"a\\\":\\\"\\u00e9\\ud83d\\ude00\\\"}\", \"next\"]");
+        reader.beginArray();
+        String value = reader.nextValue(new ValueDecoder<String>() {
+            @Nonnull
+            public String decode(@Nonnull ValueReader value) throws IOException {
+                value.beginObject();
+                Assert.assertEquals("a", value.nextName());
+                String decoded = value.nextString();
+                value.endObject();
+                return decoded;
+            }
+        });
+        Assert.assertEquals("\u00e9\ud83d\ude00", value);
+        Assert.assertEquals("next", reader.nextString());
+        reader.endArray();
+        reader.close();
+    }
+
+    @Test
+    public void testEmbeddedValuePartiallyRead() throws Exception {
+        JsonReader reader = reader("{\"value\":\"{\\\"a\\\":1,\\\"b\\\":[\\\"\u00e9\\\\\\\"\\\"]}\",\"next\":2}");
+        reader.beginObject();
+        Assert.assertEquals("value", reader.nextName());
+        long a = reader.nextValue(new ValueDecoder<Long>() {
+            @Nonnull
+            public Long decode(@Nonnull ValueReader value) throws IOException {
+                value.beginObject();
+                value.nextName();
+                return value.nextLong();
+            }
+        });
+        Assert.assertEquals(1, a);
+        Assert.assertEquals("next", reader.nextName());
+        Assert.assertEquals(2, reader.nextLong());
+        reader.endObject();
+        reader.close();
+    }
+
+    @Test
+    public void testEmbeddedValueDecoderRuntimeException() throws Exception {
+        JsonReader reader = reader("[\"{\\\"a\\\":\\\"not-a-number\\\"}\", \"next\"]");
+        reader.beginArray();
+        try {
+            reader.nextValue(new ValueDecoder<Long>() {
+                @Nonnull
+                public Long decode(@Nonnull ValueReader value) throws IOException {
+                    value.beginObject();
+                    value.nextName();
+                    return Long.parseLong(value.nextString());
+                }
+            });
+            Assert.fail("Expected the value to be invalid");
+        } catch (JsonReader.InvalidValueException e) {
+            Assert.assertTrue(e.getCause() instanceof NumberFormatException);
+        }
+        // the reader is left after the invalid value
+        Assert.assertEquals("next", reader.nextString());
+        reader.endArray();
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnexpectedCharacter() throws Exception {
+        reader("<html>").peek();
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnterminatedString() throws Exception {
+        JsonReader reader = reader("[\"abc");
+        reader.beginArray();
+        reader.nextString();
+    }
+
+    private JsonReader reader(String json) throws IOException {
+        return new JsonReader(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+}
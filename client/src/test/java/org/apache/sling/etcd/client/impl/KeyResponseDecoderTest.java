@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.client.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.etcd.client.DecodedNode;
+import org.apache.sling.etcd.client.EtcdNode;
+import org.apache.sling.etcd.client.KeyAction;
+import org.apache.sling.etcd.client.KeyResponse;
+import org.apache.sling.etcd.client.NodeVisitor;
+import org.apache.sling.etcd.client.ValueDecoder;
+import org.apache.sling.etcd.client.ValueReader;
+import org.apache.sling.etcd.common.EtcdHeaders;
+import org.junit.Test;
+
+public class KeyResponseDecoderTest {
+
+    private static final Map<String, List<String>> HEADERS = new HashMap<String, List<String>>(){{
+        put(EtcdHeaders.ETCD_INDEX, Collections.singletonList("35"));
+    }};
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        KeyResponse response = decode(400, "/error-1.json");
+        Assert.assertNotNull(response);
+        Assert.assertFalse(response.isAction());
+        Assert.assertNull(response.action());
+        Assert.assertEquals(105, response.error().errorCode());
+        Assert.assertEquals(39776, response.error().index());
+        Assert.assertEquals("/foo", response.error().cause());
+        Assert.assertEquals("Key already exists", response.error().message());
+        Assert.assertEquals(400, response.status());
+        Assert.assertEquals("35", response.headerFirst(EtcdHeaders.ETCD_INDEX));
+    }
+
+    @Test
+    public void testActionResponse() throws Exception {
+        KeyResponse response = decode(200, "/response-2.json");
+        Assert.assertNotNull(response);
+        Assert.assertTrue(response.isAction());
+        Assert.assertNull(response.error());
+        KeyAction action = response.action();
+        Assert.assertEquals("compareAndSwap", action.action());
+        Assert.assertEquals("/foo", action.node().key());
+        Assert.assertEquals("two", action.node().value());
+        Assert.assertEquals(8, action.node().createdIndex());
+        Assert.assertEquals(9, action.node().modifiedIndex());
+        Assert.assertEquals("one", action.prevNode().value());
+    }
+
+    @Test
+    public void testTtlAndExpiration() throws Exception {
+        KeyResponse response = decode(200, "/action-5.json");
+        Assert.assertNotNull(response);
+        EtcdNode node = response.action().node();
+        Assert.assertEquals(Long.valueOf(10), node.ttl());
+        Assert.assertNotNull(node.expiration());
+        Assert.assertNull(response.action().prevNode().ttl());
+    }
+
+    @Test
+    public void testRecursiveNodes() throws Exception {
+        String json = "{\"action\":\"get\",\"node\":{\"key\":\"/a\",\"dir\":true,\"nodes\":[" +
+                "{\"key\":\"/a/b\",\"dir\":true,\"nodes\":[{\"key\":\"/a/b/c\",\"value\":\"v\\u00e9\\n\"}]}," +
+                "{\"key\":\"/a/d\",\"value\":\"é中\",\"unknown\":{\"x\":[1,2.5e3,null,false]}}]}}";
+        KeyResponse response = KeyResponseDecoder.decode(200, "OK", HEADERS, new ByteArrayInputStream(json.getBytes("UTF-8")));
+        Assert.assertNotNull(response);
+        EtcdNode root = response.action().node();
+        Assert.assertTrue(root.dir());
+        Assert.assertEquals(2, root.nodes().size());
+        EtcdNode b = root.nodes().get(0);
+        Assert.assertEquals("/a/b", b.key());
+        Assert.assertEquals("vé\n", b.nodes().get(0).value());
+        Assert.assertEquals("é中", root.nodes().get(1).value());
+        Assert.assertEquals(-1, root.nodes().get(1).modifiedIndex());
+        Assert.assertTrue(root.nodes().get(1).nodes().isEmpty());
+    }
+
+    @Test
+    public void testToJson() throws Exception {
+        KeyResponse response = decode(200, "/action-2.json");
+        Assert.assertNotNull(response);
+        JSONObject expected = new JSONObject(IOUtils.toString(
+                getClass().getResourceAsStream("/action-2.json"))).getJSONObject("node");
+        JSONObject actual = new JSONObject(response.action().node().toJson());
+        Assert.assertEquals(expected.getString("key"), actual.getString("key"));
+        Assert.assertEquals(expected.getLong("modifiedIndex"), actual.getLong("modifiedIndex"));
+    }
+
+    @Test
+    public void testValueDecoder() throws Exception {
+        KeyResponse response = KeyResponseDecoder.decode(200, "OK", HEADERS,
+                getClass().getResourceAsStream("/action-6.json"), NAME_DECODER);
+        Assert.assertNotNull(response);
+        DecodedNode<?> folder = (DecodedNode<?>) response.action().node();
+        Assert.assertNull(folder.decodedValue());
+        Assert.assertEquals(2, folder.decodedNodes().size());
+        DecodedNode<?> a = folder.decodedNodes().get(0);
+        Assert.assertEquals("/props/a", a.key());
+        Assert.assertEquals("a", a.decodedValue());
+        Assert.assertNull(a.value());
+        Assert.assertEquals(221, a.modifiedIndex());
+        Assert.assertEquals("b\u00e9", folder.decodedNodes().get(1).decodedValue());
+    }
+
+    @Test
+    public void testValueDecoderInvalidValue() throws Exception {
+        KeyResponse response = KeyResponseDecoder.decode(200, "OK", HEADERS,
+                getClass().getResourceAsStream("/action-2.json"), NAME_DECODER);
+        Assert.assertNotNull(response);
+        DecodedNode<?> node = (DecodedNode<?>) response.action().node();
+        Assert.assertEquals("/test", node.key());
+        Assert.assertNull(node.decodedValue());
+        Assert.assertEquals(220, node.modifiedIndex());
+    }
+
+    @Test
+    public void testList() throws Exception {
+        final List<String> visited = new ArrayList<String>();
+        KeyResponse response = KeyResponseDecoder.list(200, "OK", HEADERS, new ByteArrayInputStream(LISTING.getBytes("UTF-8")),
+                new NodeVisitor() {
+                    public boolean visit(@Nonnull EtcdNode node) {
+                        Assert.assertTrue(node.nodes().isEmpty());
+                        visited.add(node.key());
+                        return true;
+                    }
+                });
+        Assert.assertNotNull(response);
+        Assert.assertEquals(Arrays.asList("/a/b/c", "/a/b", "/a/d"), visited);
+        EtcdNode folder = response.action().node();
+        Assert.assertEquals("/a", folder.key());
+        Assert.assertTrue(folder.nodes().isEmpty());
+        Assert.assertEquals(7, folder.modifiedIndex());
+    }
+
+    @Test
+    public void testListStopped() throws Exception {
+        final List<String> visited = new ArrayList<String>();
+        KeyResponse response = KeyResponseDecoder.list(200, "OK", HEADERS, new ByteArrayInputStream(LISTING.getBytes("UTF-8")),
+                new NodeVisitor() {
+                    public boolean visit(@Nonnull EtcdNode node) {
+                        visited.add(node.key());
+                        return false;
+                    }
+                });
+        Assert.assertNotNull(response);
+        Assert.assertEquals(Collections.singletonList("/a/b/c"), visited);
+        Assert.assertEquals("/a", response.action().node().key());
+        Assert.assertEquals(-1, response.action().node().modifiedIndex());
+    }
+
+    @Test
+    public void testListError() throws Exception {
+        KeyResponse response = KeyResponseDecoder.list(404, "Not Found", HEADERS, getClass().getResourceAsStream("/error-1.json"),
+                new NodeVisitor() {
+                    public boolean visit(@Nonnull EtcdNode node) {
+                        throw new IllegalStateException();
+                    }
+                });
+        Assert.assertNotNull(response);
+        Assert.assertFalse(response.isAction());
+        Assert.assertEquals(105, response.error().errorCode());
+    }
+
+    @Test
+    public void testEmptyBody() throws Exception {
+        Assert.assertNull(KeyResponseDecoder.decode(200, "OK", HEADERS, new ByteArrayInputStream(" \n".getBytes("UTF-8"))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoJson() throws Exception {
+        KeyResponseDecoder.decode(200, "OK", HEADERS, new ByteArrayInputStream("proxy: no endpoint".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedJson() throws Exception {
+        KeyResponseDecoder.decode(200, "OK", HEADERS, new ByteArrayInputStream("{\"action\":\"get\",\"node\":{\"key\":\"/a".getBytes("UTF-8")));
+    }
+
+    private static final String LISTING = "{\"action\":\"get\",\"node\":{\"key\":\"/a\",\"dir\":true,\"nodes\":[" +
+            "{\"key\":\"/a/b\",\"dir\":true,\"nodes\":[{\"key\":\"/a/b/c\",\"value\":\"1\"}],\"modifiedIndex\":5}," +
+            "{\"key\":\"/a/d\",\"value\":\"2\",\"modifiedIndex\":6}],\"modifiedIndex\":7}}";
+
+    private static final ValueDecoder<String> NAME_DECODER = new ValueDecoder<String>() {
+        @Nonnull
+        public String decode(@Nonnull ValueReader value) throws IOException {
+            String name = null;
+            value.beginObject();
+            while (value.hasNext()) {
+                if (value.nextName(new String[]{"name"}) == 0) {
+                    name = value.nextString();
+                } else {
+                    value.skipValue();
+                }
+            }
+            value.endObject();
+            return String.valueOf(name);
+        }
+    };
+
+    private KeyResponse decode(int status, String resource) throws IOException {
+        return KeyResponseDecoder.decode(status, "reason", HEADERS, getClass().getResourceAsStream(resource));
+    }
+}
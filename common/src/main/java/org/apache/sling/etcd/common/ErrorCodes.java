@@ -87,6 +87,16 @@ public final class ErrorCodes {
      */
     public static final int INVALID_FORM = 210;
 
+    /**
+     * Value provided on refresh
+     */
+    public static final int REFRESH_VALUE = 211;
+
+    /**
+     * A TTL must be provided on refresh
+     */
+    public static final int REFRESH_TTL_REQUIRED = 212;
+
     // Raft Related Error
 
     /**
@@ -109,6 +109,16 @@ public class Announce implements Comparable<Announce> {
         return ttl;
     }
 
+    /**
+     * Unlike {@link #equals(Object)}, the comparison includes the cluster identifier which is part of the topology.
+     *
+     * @param that the announce to compare with
+     * @return {@code true} if the announces are equal and belong to the same cluster ; {@code false} otherwise.
+     */
+    public boolean sameAs(@Nonnull Announce that) {
+        return equals(that) && data.clusterId().equals(that.data.clusterId());
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
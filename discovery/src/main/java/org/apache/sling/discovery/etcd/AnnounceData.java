@@ -18,14 +18,17 @@
  */
 package org.apache.sling.discovery.etcd;
 
+import java.io.IOException;
+
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.etcd.client.ValueDecoder;
+import org.apache.sling.etcd.client.ValueReader;
 
 /**
- * The {@code AnnounceData} wraps an instance announce in json format.
+ * The {@code AnnounceData} holds an instance announce, stored in json format in etcd.
  */
 public class AnnounceData {
 
@@ -37,10 +40,40 @@ public class AnnounceData {
 
     protected static final String CLUSTER_ID = "clusterId";
 
+    private static final String[] PROPERTIES = {SLING_ID, SERVER_INFO, PROPERTIES_MODIFIED_INDEX, CLUSTER_ID};
+
     /**
-     * holds the announce properties in json format
+     * Decode the announces from the etcd responses, without parsing the announce json string separately.
      */
-    private final JSONObject data;
+    public static final ValueDecoder<AnnounceData> DECODER = new ValueDecoder<AnnounceData>() {
+        @Nonnull
+        public AnnounceData decode(@Nonnull ValueReader value) throws IOException {
+            String slingId = "";
+            String serverInfo = "";
+            long modifiedIndex = -1;
+            String clusterId = "";
+            value.beginObject();
+            while (value.hasNext()) {
+                switch (value.nextName(PROPERTIES)) {
+                    case 0: slingId = orEmpty(value.nextString()); break;
+                    case 1: serverInfo = orEmpty(value.nextString()); break;
+                    case 2: modifiedIndex = value.nextLong(); break;
+                    case 3: clusterId = orEmpty(value.nextString()); break;
+                    default: value.skipValue();
+                }
+            }
+            value.endObject();
+            return new AnnounceData(slingId, serverInfo, clusterId, modifiedIndex);
+        }
+    };
+
+    private final String slingId;
+
+    private final String serverInfo;
+
+    private final String clusterId;
+
+    private final long propertiesModifiedIndex;
 
     /**
      * @param slingId the Sling identifier of the instance associated to the announce
@@ -49,29 +82,28 @@ public class AnnounceData {
      * @param modifiedIndex the properties last modified index of the instance associated to the announce
      */
     public AnnounceData(@Nonnull String slingId, @Nonnull String serverInfo, @Nonnull String clusterId, long modifiedIndex) {
-        data = new JSONObject();
-        try {
-            data.put(SLING_ID, slingId);
-            data.put(SERVER_INFO, serverInfo);
-            data.put(PROPERTIES_MODIFIED_INDEX, modifiedIndex);
-            data.put(CLUSTER_ID, clusterId);
-        } catch (JSONException e) {
-            throw new EtcdDiscoveryRuntimeException("Failed to build announce message", e);
-        }
+        this.slingId = slingId;
+        this.serverInfo = serverInfo;
+        this.clusterId = clusterId;
+        this.propertiesModifiedIndex = modifiedIndex;
     }
 
     /**
      * @param json the announce in json format
      */
     public AnnounceData(@Nonnull String json) {
-        data = parse(json);
+        JSONObject data = parse(json);
+        slingId = data.optString(SLING_ID, "");
+        serverInfo = data.optString(SERVER_INFO, "");
+        clusterId = data.optString(CLUSTER_ID, "");
+        propertiesModifiedIndex = data.optLong(PROPERTIES_MODIFIED_INDEX, -1);
     }
 
     /**
      * @return the last modified index for the instance properties
      */
     public long propertiesModifiedIndex() {
-        return data.optLong(PROPERTIES_MODIFIED_INDEX, -1);
+        return propertiesModifiedIndex;
     }
 
     /**
@@ -79,7 +111,7 @@ public class AnnounceData {
      */
     @Nonnull
     public String slingId() {
-        return data.optString(SLING_ID, "");
+        return slingId;
     }
 
     /**
@@ -87,7 +119,7 @@ public class AnnounceData {
      */
     @Nonnull
     public String serverInfo() {
-        return data.optString(SERVER_INFO, "");
+        return serverInfo;
     }
 
     /**
@@ -95,7 +127,7 @@ public class AnnounceData {
      */
     @Nonnull
     public String clusterId() {
-        return data.optString(CLUSTER_ID, "");
+        return clusterId;
     }
 
     /**
@@ -103,6 +135,15 @@ public class AnnounceData {
      */
     @Nonnull
     public JSONObject json() {
+        JSONObject data = new JSONObject();
+        try {
+            data.put(SLING_ID, slingId);
+            data.put(SERVER_INFO, serverInfo);
+            data.put(PROPERTIES_MODIFIED_INDEX, propertiesModifiedIndex);
+            data.put(CLUSTER_ID, clusterId);
+        } catch (JSONException e) {
+            throw new EtcdDiscoveryRuntimeException("Failed to build announce message", e);
+        }
         return data;
     }
 
@@ -111,10 +152,10 @@ public class AnnounceData {
      */
     @Nonnull
     public String toString() {
-        return data.toString();
+        return json().toString();
     }
 
-    @Nullable
+    @Nonnull
     private JSONObject parse(@Nonnull String json) {
         try {
             return new JSONObject(json);
@@ -124,23 +165,28 @@ public class AnnounceData {
         }
     }
 
+    @Nonnull
+    private static String orEmpty(String value) {
+        return value != null ? value : "";
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         AnnounceData that = (AnnounceData) o;
-        if (propertiesModifiedIndex() != that.propertiesModifiedIndex()) return false;
-        if (!serverInfo().equals(that.serverInfo())) return false;
-        if (!slingId().equals(that.slingId())) return false;
+        if (propertiesModifiedIndex != that.propertiesModifiedIndex) return false;
+        if (!serverInfo.equals(that.serverInfo)) return false;
+        if (!slingId.equals(that.slingId)) return false;
 
         return true;
     }
 
     @Override
     public int hashCode() {
-        int result = slingId().hashCode();
-        result = 31 * result + serverInfo().hashCode();
-        result = 31 * result + (int) (propertiesModifiedIndex() ^ (propertiesModifiedIndex() >>> 32));
+        int result = slingId.hashCode();
+        result = 31 * result + serverInfo.hashCode();
+        result = 31 * result + (int) (propertiesModifiedIndex ^ (propertiesModifiedIndex >>> 32));
         return result;
     }
 }
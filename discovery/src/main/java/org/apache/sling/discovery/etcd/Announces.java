@@ -31,6 +31,7 @@ import java.util.Set;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.apache.sling.etcd.client.DecodedNode;
 import org.apache.sling.etcd.client.EtcdNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -185,12 +186,12 @@ public class Announces {
     private static List<Announce> buildAnnounces(@Nonnull List<EtcdNode> nodes, boolean filterOutElapsedTtl) {
         List<Announce> announces = new ArrayList<Announce>(nodes.size());
         for (EtcdNode node : nodes) {
-            String data = node.value();
+            AnnounceData data = announceData(node);
             if (data != null) {
                 Long ttl = node.ttl();
                 if (ttl != null) {
                     if (! filterOutElapsedTtl || (ttl > 0L)) {
-                        Announce announce = new Announce(new AnnounceData(data), node.key(), ttl);
+                        Announce announce = new Announce(data, node.key(), ttl);
                         announces.add(announce);
                     } else {
                         LOG.debug("Discard announce node with elapsed ttl: {}", node);
@@ -203,6 +204,41 @@ public class Announces {
         return announces;
     }
 
+    /**
+     * @param node the announce node, possibly decoded with the {@link AnnounceData#DECODER}.
+     * @return the announce data ; or {@code null} if the node holds no value.
+     */
+    @Nullable
+    private static AnnounceData announceData(@Nonnull EtcdNode node) {
+        if (node instanceof DecodedNode) {
+            Object decoded = ((DecodedNode<?>) node).decodedValue();
+            if (decoded instanceof AnnounceData) {
+                return (AnnounceData) decoded;
+            }
+        }
+        String value = node.value();
+        return (value != null) ? new AnnounceData(value) : null;
+    }
+
+    /**
+     * Unlike {@link #equals(Object)}, the comparison includes the cluster identifiers.
+     *
+     * @param that the announces to compare with
+     * @return {@code true} if the announces are the same ; {@code false} otherwise.
+     * @see Announce#sameAs(Announce)
+     */
+    public boolean sameAs(@Nonnull Announces that) {
+        if (announces.size() != that.announces.size()) {
+            return false;
+        }
+        for (int i = 0 ; i < announces.size() ; i++) {
+            if (! announces.get(i).sameAs(that.announces.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * The {@code ConnectionPool} is a pool of HTTP connections to the etcd endpoints
+ * which keeps track of the time spent waiting for leasing a connection and of the pool saturation.
+ * A lease is considered saturated when all the connections to the route were leased at the time
+ * the connection was requested.
+ */
+public class ConnectionPool extends PoolingHttpClientConnectionManager {
+
+    private final String name;
+
+    private long leases;
+
+    private long saturatedLeases;
+
+    private long leaseTimeouts;
+
+    private long totalLeaseWait;
+
+    private long maxLeaseWait;
+
+    /**
+     * @param name the name of the pool.
+     * @param registry the connection socket factories.
+     * @param maxConnections the maximum number of connections per route.
+     */
+    public ConnectionPool(@Nonnull String name, @Nonnull Registry<ConnectionSocketFactory> registry, int maxConnections) {
+        super(registry);
+        this.name = name;
+        setDefaultMaxPerRoute(maxConnections);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+        PoolStats stats = getStats(route);
+        final boolean saturated = stats.getLeased() >= stats.getMax();
+        final ConnectionRequest request = super.requestConnection(route, state);
+        return new ConnectionRequest() {
+
+            public HttpClientConnection get(long timeout, TimeUnit tunit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.currentTimeMillis();
+                try {
+                    HttpClientConnection connection = request.get(timeout, tunit);
+                    leased(System.currentTimeMillis() - start, saturated);
+                    return connection;
+                } catch (ConnectionPoolTimeoutException e) {
+                    timedOut();
+                    throw e;
+                }
+            }
+
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the maximum number of connections per route.
+     */
+    public int getMaxConnections() {
+        return getDefaultMaxPerRoute();
+    }
+
+    /**
+     * @return the number of connections currently leased.
+     */
+    public int getLeased() {
+        return getTotalStats().getLeased();
+    }
+
+    /**
+     * @return the number of idle connections.
+     */
+    public int getAvailable() {
+        return getTotalStats().getAvailable();
+    }
+
+    /**
+     * @return the number of connection requests currently waiting for a connection.
+     */
+    public int getPending() {
+        return getTotalStats().getPending();
+    }
+
+    /**
+     * @return the number of connections leased since the pool was created.
+     */
+    public synchronized long getLeases() {
+        return leases;
+    }
+
+    /**
+     * @return the number of connections leased while the pool was saturated.
+     */
+    public synchronized long getSaturatedLeases() {
+        return saturatedLeases;
+    }
+
+    /**
+     * @return the number of connection requests which timed out waiting for a connection.
+     */
+    public synchronized long getLeaseTimeouts() {
+        return leaseTimeouts;
+    }
+
+    /**
+     * @return the average time (in ms) spent waiting for leasing a connection.
+     */
+    public synchronized long getAverageLeaseWait() {
+        return (leases > 0) ? totalLeaseWait / leases : 0;
+    }
+
+    /**
+     * @return the maximum time (in ms) spent waiting for leasing a connection.
+     */
+    public synchronized long getMaxLeaseWait() {
+        return maxLeaseWait;
+    }
+
+    private synchronized void leased(long wait, boolean saturated) {
+        leases++;
+        if (saturated) {
+            saturatedLeases++;
+        }
+        totalLeaseWait += wait;
+        maxLeaseWait = Math.max(maxLeaseWait, wait);
+    }
+
+    private synchronized void timedOut() {
+        leaseTimeouts++;
+    }
+}
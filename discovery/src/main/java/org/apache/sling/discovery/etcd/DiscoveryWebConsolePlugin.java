@@ -318,6 +318,106 @@ public class DiscoveryWebConsolePlugin extends AbstractWebConsolePlugin {
         } else {
             pw.println("<p>etcd statistics not yet available</p>");
         }
+
+        renderListenerStatistics(pw, etcdDiscoveryService.getListenerQueues());
+        pw.println("<p>Events suppressed by the topology stabilization: " + etcdDiscoveryService.getSuppressedEvents() + "</p>");
+        renderErrorStatistics(pw, etcdDiscoveryService.getErrStats());
+        renderConnectionPoolStatistics(pw, etcdDiscoveryService.getConnectionPools());
+    }
+
+    private void renderErrorStatistics(@Nonnull PrintWriter pw, @Nonnull Map<String, EtcdServiceStats> errStats) {
+        pw.println("<p class=\"statline ui-state-highlight\">etcd errors</p>");
+        pw.println("<table class=\"adapters nicetable ui-widget tablesorter\">");
+        pw.println("<thead>");
+        pw.println("<tr>");
+        pw.println("<th class=\"header ui-widget-header\">Client</th>");
+        pw.println("<th class=\"header ui-widget-header\">Consecutive I/O errors</th>");
+        pw.println("<th class=\"header ui-widget-header\">Consecutive etcd errors</th>");
+        pw.println("<th class=\"header ui-widget-header\">Consecutive Raft errors</th>");
+        pw.println("</tr>");
+        pw.println("</thead>");
+        pw.println("<tbody>");
+        for (Map.Entry<String, EtcdServiceStats> entry : errStats.entrySet()) {
+            EtcdServiceStats stats = entry.getValue();
+            pw.println("<tr>");
+            pw.println("<td>" + entry.getKey() + "</td>");
+            pw.println("<td>" + stats.consecutiveIoError() + "</td>");
+            pw.println("<td>" + stats.consecutiveEtcdError(0, Integer.MAX_VALUE) + "</td>");
+            pw.println("<td>" + stats.consecutiveEtcdError(300, 400) + "</td>");
+            pw.println("</tr>");
+        }
+        pw.println("</tbody>");
+        pw.println("</table>");
+    }
+
+    private void renderConnectionPoolStatistics(@Nonnull PrintWriter pw, @Nonnull List<ConnectionPool> pools) {
+        pw.println("<p class=\"statline ui-state-highlight\">etcd connection pools</p>");
+        pw.println("<table class=\"adapters nicetable ui-widget tablesorter\">");
+        pw.println("<thead>");
+        pw.println("<tr>");
+        pw.println("<th class=\"header ui-widget-header\">Pool</th>");
+        pw.println("<th class=\"header ui-widget-header\">Max connections</th>");
+        pw.println("<th class=\"header ui-widget-header\">Leased</th>");
+        pw.println("<th class=\"header ui-widget-header\">Available</th>");
+        pw.println("<th class=\"header ui-widget-header\">Pending</th>");
+        pw.println("<th class=\"header ui-widget-header\">Leases</th>");
+        pw.println("<th class=\"header ui-widget-header\">Saturated leases</th>");
+        pw.println("<th class=\"header ui-widget-header\">Lease timeouts</th>");
+        pw.println("<th class=\"header ui-widget-header\">Lease wait Avg [ms]</th>");
+        pw.println("<th class=\"header ui-widget-header\">Lease wait Max [ms]</th>");
+        pw.println("</tr>");
+        pw.println("</thead>");
+        pw.println("<tbody>");
+        for (ConnectionPool pool : pools) {
+            pw.println("<tr>");
+            pw.println("<td>" + pool.getName() + "</td>");
+            pw.println("<td>" + pool.getMaxConnections() + "</td>");
+            pw.println("<td>" + pool.getLeased() + "</td>");
+            pw.println("<td>" + pool.getAvailable() + "</td>");
+            pw.println("<td>" + pool.getPending() + "</td>");
+            pw.println("<td>" + pool.getLeases() + "</td>");
+            pw.println("<td>" + pool.getSaturatedLeases() + "</td>");
+            pw.println("<td>" + pool.getLeaseTimeouts() + "</td>");
+            pw.println("<td>" + pool.getAverageLeaseWait() + "</td>");
+            pw.println("<td>" + pool.getMaxLeaseWait() + "</td>");
+            pw.println("</tr>");
+        }
+        pw.println("</tbody>");
+        pw.println("</table>");
+    }
+
+    private void renderListenerStatistics(@Nonnull PrintWriter pw, @Nonnull List<ListenerQueue> queues) {
+        pw.println("<p class=\"statline ui-state-highlight\">Topology listeners</p>");
+        pw.println("<table class=\"adapters nicetable ui-widget tablesorter\">");
+        pw.println("<thead>");
+        pw.println("<tr>");
+        pw.println("<th class=\"header ui-widget-header\">Listener</th>");
+        pw.println("<th class=\"header ui-widget-header\">Pending events</th>");
+        pw.println("<th class=\"header ui-widget-header\">Max pending events</th>");
+        pw.println("<th class=\"header ui-widget-header\">Delivered events</th>");
+        pw.println("<th class=\"header ui-widget-header\">Coalesced events</th>");
+        pw.println("<th class=\"header ui-widget-header\">Filtered events</th>");
+        pw.println("<th class=\"header ui-widget-header\">Latency Avg [ms]</th>");
+        pw.println("<th class=\"header ui-widget-header\">Latency Max [ms]</th>");
+        pw.println("<th class=\"header ui-widget-header\">Slow</th>");
+        pw.println("</tr>");
+        pw.println("</thead>");
+        pw.println("<tbody>");
+        for (ListenerQueue queue : queues) {
+            pw.println("<tr>");
+            pw.println("<td>" + queue.getListener().getClass().getName() + "</td>");
+            pw.println("<td>" + queue.getSize() + "</td>");
+            pw.println("<td>" + queue.getMaxSize() + "</td>");
+            pw.println("<td>" + queue.getDispatched() + "</td>");
+            pw.println("<td>" + queue.getCoalesced() + "</td>");
+            pw.println("<td>" + queue.getFiltered() + "</td>");
+            pw.println("<td>" + queue.getAverageLatency() + "</td>");
+            pw.println("<td>" + queue.getMaxLatency() + "</td>");
+            pw.println("<td>" + queue.isSlow() + "</td>");
+            pw.println("</tr>");
+        }
+        pw.println("</tbody>");
+        pw.println("</table>");
     }
 
     private void renderMemberStat(@Nonnull PrintWriter pw, @Nonnull List<Member> members, @Nonnull Map<String, MemberStatsResponse> membersStats, @Nonnull String statName, @Nonnull MemberExtractor extractor) {
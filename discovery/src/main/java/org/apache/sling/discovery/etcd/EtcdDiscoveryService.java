@@ -33,10 +33,14 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -49,7 +53,6 @@ import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContextBuilder;
 import org.apache.http.conn.ssl.SSLContexts;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.sling.discovery.etcd.backoff.BackOff;
 import org.apache.sling.discovery.etcd.backoff.ConstantBackOff;
 import org.apache.sling.discovery.etcd.backoff.SquareBackOff;
@@ -64,6 +67,8 @@ import org.apache.sling.discovery.etcd.gzip.GzipRequestInterceptor;
 import org.apache.sling.discovery.etcd.gzip.GzipResponseInterceptor;
 import org.apache.sling.discovery.etcd.run.Announcer;
 import org.apache.sling.discovery.etcd.run.LocalUpdater;
+import org.apache.sling.discovery.etcd.run.PropertiesPoller;
+import org.apache.sling.discovery.etcd.fsm.Ownership;
 import org.apache.sling.discovery.etcd.fsm.States;
 import org.apache.sling.discovery.etcd.run.RemoteUpdater;
 import org.apache.sling.etcd.client.EtcdClient;
@@ -82,7 +87,6 @@ import org.apache.felix.scr.annotations.Service;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.commons.threads.ThreadPool;
@@ -144,12 +148,14 @@ public class EtcdDiscoveryService implements DiscoveryService {
     private static final String DEFAULT_ENDPOINT = "http://127.0.0.1:4001";
 
     /**
-     * The etcd endpoint to access the etcd peers.
+     * The etcd endpoint(s) to access the etcd peers.
      */
     @Property(label = "etcd endpoint", description = "The endpoint uri to access the etcd peers (e.g. 'http://127.0.0.1:4001'). " +
             "If the client is communicating with an etcd cluster, then the endpoint should reference a readwrite etcd proxy node. " +
-            "If the client is communicating with a single etcd node, the endpoint could reference it directly.",
-            value = DEFAULT_ENDPOINT)
+            "If the client is communicating with a single etcd node, the endpoint could reference it directly. " +
+            "If more than one endpoint is configured, the endpoints are used as seeds for discovering the etcd members " +
+            "and the client routes the requests to the fastest healthy member directly, without proxy.",
+            value = DEFAULT_ENDPOINT, cardinality = Integer.MAX_VALUE)
     protected static final String ENDPOINT = "endpoint";
 
     private static final int DEFAULT_SOCKET_TIMEOUT = 5000;
@@ -164,6 +170,14 @@ public class EtcdDiscoveryService implements DiscoveryService {
             intValue = DEFAULT_SOCKET_TIMEOUT)
     protected static final String SOCKET_TIMEOUT = "socketTimeout";
 
+    private static final int DEFAULT_WATCH_TIMEOUT = 60000;
+
+    @Property(label = "Watch Timeout", description = "The socket timeout (SO_TIMEOUT) in milliseconds applied to " +
+            "the requests waiting for announce changes. The timeout should be larger than the socket timeout, " +
+            "in order to keep the watch connection open while the topology is idle.",
+            intValue = DEFAULT_WATCH_TIMEOUT)
+    protected static final String WATCH_TIMEOUT = "watchTimeout";
+
     private static final int DEFAULT_CONNECTION_TIMEOUT = 2500;
 
     /**
@@ -176,6 +190,47 @@ public class EtcdDiscoveryService implements DiscoveryService {
             intValue = DEFAULT_CONNECTION_TIMEOUT)
     protected static final String CONNECTION_TIMEOUT = "connectionTimeout";
 
+    private static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    /**
+     * The maximum number of connections to the etcd endpoint.
+     * The remote updater holds one connection when watching the announces.
+     */
+    @Property(label = "Max Connections", description = "The maximum number of connections per etcd endpoint " +
+            "shared by the topology updates, the statistics and the state transitions. The remote updater holds " +
+            "one connection when watching the announces.",
+            intValue = DEFAULT_MAX_CONNECTIONS)
+    protected static final String MAX_CONNECTIONS = "maxConnections";
+
+    private static final int DEFAULT_HEARTBEAT_MAX_CONNECTIONS = 2;
+
+    @Property(label = "Heartbeat Max Connections", description = "The maximum number of connections per etcd endpoint " +
+            "reserved to the announce renewals. The reserved connections are not shared with the other etcd requests, " +
+            "so that large reads can't delay the announce renewals.",
+            intValue = DEFAULT_HEARTBEAT_MAX_CONNECTIONS)
+    protected static final String HEARTBEAT_MAX_CONNECTIONS = "heartbeatMaxConnections";
+
+    private static final int DEFAULT_HEARTBEAT_SOCKET_TIMEOUT = 2000;
+
+    @Property(label = "Heartbeat Socket Timeout", description = "The socket timeout (SO_TIMEOUT) in milliseconds " +
+            "applied to the announce renewals.",
+            intValue = DEFAULT_HEARTBEAT_SOCKET_TIMEOUT)
+    protected static final String HEARTBEAT_SOCKET_TIMEOUT = "heartbeatSocketTimeout";
+
+    private static final int DEFAULT_HEARTBEAT_CONNECTION_TIMEOUT = 1000;
+
+    @Property(label = "Heartbeat Connection Timeout", description = "The timeout in milliseconds until a connection " +
+            "is established, applied to the announce renewals.",
+            intValue = DEFAULT_HEARTBEAT_CONNECTION_TIMEOUT)
+    protected static final String HEARTBEAT_CONNECTION_TIMEOUT = "heartbeatConnectionTimeout";
+
+    private static final int DEFAULT_HEARTBEAT_LEASE_TIMEOUT = 1000;
+
+    @Property(label = "Heartbeat Lease Timeout", description = "The maximum time in milliseconds an announce renewal " +
+            "waits for a reserved connection to be available.",
+            intValue = DEFAULT_HEARTBEAT_LEASE_TIMEOUT)
+    protected static final String HEARTBEAT_LEASE_TIMEOUT = "heartbeatLeaseTimeout";
+
     private static final String DEFAULT_ANNOUNCE_RENEWAL_PERIOD = "20000";
 
     @Property(label = "Announce Renewal Period", description = "The parameters of the mathematical function used to compute the time " +
@@ -194,6 +249,66 @@ public class EtcdDiscoveryService implements DiscoveryService {
             value = DEFAULT_TOPOLOGY_UPDATE_PERIOD)
     protected static final String TOPOLOGY_UPDATE_PERIOD = "topologyUpdatePeriod";
 
+    private static final boolean DEFAULT_WATCH_ANNOUNCES = true;
+
+    @Property(label = "Watch Remote Announces", description = "Watch the announces for changes rather than fetching " +
+            "them every remote topology update period. In watch mode, the announces are fetched once and the subsequent " +
+            "changes are applied incrementally as soon as etcd notifies them. The announces are fetched again whenever " +
+            "the watch can't be resumed. The remote topology update period then only applies between failed attempts.",
+            boolValue = DEFAULT_WATCH_ANNOUNCES)
+    protected static final String WATCH_ANNOUNCES = "watchAnnounces";
+
+    private static final boolean DEFAULT_REFRESH_ANNOUNCE_TTL = true;
+
+    @Property(label = "Refresh Announce TTL", description = "Renew the local announce by only extending its ttl, " +
+            "without resending its content, as long as the content did not change. TTL refreshes do not notify " +
+            "the etcd watchers. The announce is written in full whenever its content changed or the etcd " +
+            "version does not support TTL refreshes (prior to 2.3).",
+            boolValue = DEFAULT_REFRESH_ANNOUNCE_TTL)
+    protected static final String REFRESH_ANNOUNCE_TTL = "refreshAnnounceTtl";
+
+    private static final long DEFAULT_STABILIZATION_WINDOW = 0;
+
+    @Property(label = "Topology Stabilization Window", description = "The time in milliseconds the topology must " +
+            "remain unchanged before a TOPOLOGY_CHANGED event is sent. The listeners get the TOPOLOGY_CHANGING " +
+            "event as soon as the change is detected, the intermediate views are collapsed into a single " +
+            "TOPOLOGY_CHANGED event. A value of zero sends the TOPOLOGY_CHANGED event immediately.",
+            longValue = DEFAULT_STABILIZATION_WINDOW)
+    protected static final String STABILIZATION_WINDOW = "stabilizationWindow";
+
+    private static final long DEFAULT_MAX_STABILIZATION_DELAY = 30000;
+
+    @Property(label = "Topology Maximum Stabilization Delay", description = "The maximum time in milliseconds " +
+            "the TOPOLOGY_CHANGED event may be delayed by the stabilization window when the topology keeps changing.",
+            longValue = DEFAULT_MAX_STABILIZATION_DELAY)
+    protected static final String MAX_STABILIZATION_DELAY = "maxStabilizationDelay";
+
+    private static final String OWNERSHIP_FILE = "ownership.properties";
+
+    private static final long DEFAULT_REMOVE_ANNOUNCE_TIMEOUT = 2000;
+
+    @Property(label = "Remove Announce Timeout", description = "The maximum time in milliseconds spent removing " +
+            "the local announce from etcd when the service is deactivated, so that the other instances see the " +
+            "instance leaving without waiting for the announce ttl to elapse. Each removal request is bounded by " +
+            "the heartbeat timeouts. A value of zero leaves the announce to elapse.",
+            longValue = DEFAULT_REMOVE_ANNOUNCE_TIMEOUT)
+    protected static final String REMOVE_ANNOUNCE_TIMEOUT = "removeAnnounceTimeout";
+
+    private static final boolean DEFAULT_REMOVE_PROPERTIES = false;
+
+    @Property(label = "Remove Properties", description = "Remove the local instance properties from etcd along " +
+            "with the local announce when the service is deactivated.",
+            boolValue = DEFAULT_REMOVE_PROPERTIES)
+    protected static final String REMOVE_PROPERTIES = "removeProperties";
+
+    private static final long DEFAULT_PROPERTIES_MAX_AGE = PropertiesService.DEFAULT_MAX_AGE;
+
+    @Property(label = "Properties Maximum Age", description = "The maximum time in milliseconds the properties " +
+            "loaded from a property provider are cached. The polling providers are invoked once per maximum age, " +
+            "the versioned providers whenever their version moved.",
+            longValue = DEFAULT_PROPERTIES_MAX_AGE)
+    protected static final String PROPERTIES_MAX_AGE = "propertiesMaxAge";
+
     private static final String DEFAULT_VIEW_UPDATE_PERIOD = "2000";
 
     @Property(label = "Topology View Update Period", description = "The period in seconds between two updates of the" +
@@ -292,25 +407,76 @@ public class EtcdDiscoveryService implements DiscoveryService {
 
     private ThreadPool etcdThreadPool;
 
+    /**
+     * The thread pool delivering the topology events,
+     * the events are delivered in the calling thread while no pool is available.
+     */
+    private volatile ThreadPool listenerThreadPool;
+
+    /**
+     * The thread pool polling the property providers.
+     */
+    private ThreadPool propertiesThreadPool;
+
     private Announcer announcer;
 
     private RemoteUpdater remoteUpdater;
 
     private LocalUpdater localUpdater;
 
+    private PropertiesPoller propertiesPoller;
+
     private CloseableHttpClient httpClient;
 
-    private EtcdService etcdService;
+    private CloseableHttpClient heartbeatHttpClient;
+
+    private volatile EtcdService etcdService;
+
+    /**
+     * The service renewing and removing the local announce through the heartbeat client.
+     */
+    private volatile EtcdService heartbeatEtcdService;
+
+    private TopologyStateHolder topologyState;
+
+    private long removeAnnounceTimeout;
+
+    private boolean removeProperties;
 
     private int socketTimeout;
 
+    private int watchTimeout;
+
+    private RequestConfig watchConfig;
+
     private int connectionTimeout;
 
+    private int maxConnections;
+
+    private int heartbeatSocketTimeout;
+
+    private int heartbeatConnectionTimeout;
+
+    private int heartbeatLeaseTimeout;
+
+    private int heartbeatMaxConnections;
+
     private Context context;
 
-    private PoolingHttpClientConnectionManager connectionManager;
+    private volatile ConnectionPool connectionPool;
 
-    private final ViewManager viewManager = new ViewManager();
+    private volatile ConnectionPool heartbeatConnectionPool;
+
+    private final ViewManager viewManager = new ViewManager(new Executor() {
+        public void execute(@Nonnull Runnable command) {
+            ThreadPool pool = listenerThreadPool;
+            if (pool != null) {
+                pool.execute(command);
+            } else {
+                command.run();
+            }
+        }
+    }, ViewManager.DEFAULT_QUEUE_CAPACITY, ViewManager.DEFAULT_SLOW_LISTENER_THRESHOLD);
 
     private final PropertiesService propertiesService = new PropertiesService();
 
@@ -345,18 +511,39 @@ public class EtcdDiscoveryService implements DiscoveryService {
         socketTimeout = PropertiesUtil.toInteger(
                 props.get(SOCKET_TIMEOUT),
                 DEFAULT_SOCKET_TIMEOUT);
+        watchTimeout = PropertiesUtil.toInteger(props.get(WATCH_TIMEOUT), DEFAULT_WATCH_TIMEOUT);
         connectionTimeout = PropertiesUtil.toInteger(
                 props.get(CONNECTION_TIMEOUT),
                 DEFAULT_SOCKET_TIMEOUT);
+        maxConnections = PropertiesUtil.toInteger(props.get(MAX_CONNECTIONS), DEFAULT_MAX_CONNECTIONS);
+        heartbeatSocketTimeout = PropertiesUtil.toInteger(props.get(HEARTBEAT_SOCKET_TIMEOUT), DEFAULT_HEARTBEAT_SOCKET_TIMEOUT);
+        heartbeatConnectionTimeout = PropertiesUtil.toInteger(props.get(HEARTBEAT_CONNECTION_TIMEOUT), DEFAULT_HEARTBEAT_CONNECTION_TIMEOUT);
+        heartbeatLeaseTimeout = PropertiesUtil.toInteger(props.get(HEARTBEAT_LEASE_TIMEOUT), DEFAULT_HEARTBEAT_LEASE_TIMEOUT);
+        heartbeatMaxConnections = PropertiesUtil.toInteger(props.get(HEARTBEAT_MAX_CONNECTIONS), DEFAULT_HEARTBEAT_MAX_CONNECTIONS);
+        LOG.debug("max connections: {}, heartbeat max connections: {}", maxConnections, heartbeatMaxConnections);
         String slingId = slingSettingsService.getSlingId();
         String serverInfo = getServerInfo(cc);
         LOG.debug("slingId: {} serverInfo: {}", new String[]{slingId, serverInfo});
         BackOff announceRenewalPeriod = build(PropertiesUtil.toString(props.get(ANNOUNCE_RENEWAL_PERIOD),
                 DEFAULT_ANNOUNCE_RENEWAL_PERIOD), DEFAULT_ANNOUNCE_RENEWAL_PERIOD);
         LOG.debug("announce renewal period: {}", announceRenewalPeriod);
+        boolean refreshAnnounceTtl = PropertiesUtil.toBoolean(props.get(REFRESH_ANNOUNCE_TTL), DEFAULT_REFRESH_ANNOUNCE_TTL);
+        LOG.debug("refresh announce ttl: {}", refreshAnnounceTtl);
+        long stabilizationWindow = PropertiesUtil.toLong(props.get(STABILIZATION_WINDOW), DEFAULT_STABILIZATION_WINDOW);
+        long maxStabilizationDelay = PropertiesUtil.toLong(props.get(MAX_STABILIZATION_DELAY), DEFAULT_MAX_STABILIZATION_DELAY);
+        LOG.debug("stabilization window: {}, max stabilization delay: {}", stabilizationWindow, maxStabilizationDelay);
+        viewManager.setStabilization(stabilizationWindow, maxStabilizationDelay);
+        long propertiesMaxAge = PropertiesUtil.toLong(props.get(PROPERTIES_MAX_AGE), DEFAULT_PROPERTIES_MAX_AGE);
+        LOG.debug("properties max age: {}", propertiesMaxAge);
+        propertiesService.setMaxAge(propertiesMaxAge);
+        removeAnnounceTimeout = PropertiesUtil.toLong(props.get(REMOVE_ANNOUNCE_TIMEOUT), DEFAULT_REMOVE_ANNOUNCE_TIMEOUT);
+        removeProperties = PropertiesUtil.toBoolean(props.get(REMOVE_PROPERTIES), DEFAULT_REMOVE_PROPERTIES);
+        LOG.debug("remove announce timeout: {}, remove properties: {}", removeAnnounceTimeout, removeProperties);
         BackOff topologyUpdatePeriod = build(PropertiesUtil.toString(props.get(TOPOLOGY_UPDATE_PERIOD),
                 DEFAULT_TOPOLOGY_UPDATE_PERIOD), DEFAULT_TOPOLOGY_UPDATE_PERIOD);
         LOG.debug("topology update period: {}", topologyUpdatePeriod);
+        boolean watchAnnounces = PropertiesUtil.toBoolean(props.get(WATCH_ANNOUNCES), DEFAULT_WATCH_ANNOUNCES);
+        LOG.debug("watch announces: {}", watchAnnounces);
         BackOff viewUpdatePeriod = build(PropertiesUtil.toString(props.get(VIEW_UPDATE_PERIOD),
                 DEFAULT_VIEW_UPDATE_PERIOD), DEFAULT_VIEW_UPDATE_PERIOD);
         LOG.debug("view update period: {}", viewUpdatePeriod);
@@ -403,58 +590,71 @@ public class EtcdDiscoveryService implements DiscoveryService {
             clustering = buildConfigClustering(clusterId);
         }
 
-        buildHttpClient(PropertiesUtil.toString(props.get(KEYSTORE_FILE_PATH), "").trim(),
+        buildHttpClients(PropertiesUtil.toString(props.get(KEYSTORE_FILE_PATH), "").trim(),
                 PropertiesUtil.toString(props.get(KEYSTORE_PWD_FILE_PATH), "").trim());
-        URI endpoint = parseEndpoint(PropertiesUtil.toString(
+        List<URI> endpoints = parseEndpoints(PropertiesUtil.toStringArray(
                 props.get(ENDPOINT),
-                DEFAULT_ENDPOINT));
-        EtcdClient etcdClient = etcdClientFactory.create(httpClient, endpoint);
+                new String[]{DEFAULT_ENDPOINT}));
+        EtcdClient etcdClient = (endpoints.size() > 1)
+                ? etcdClientFactory.create(httpClient, endpoints, watchConfig)
+                : etcdClientFactory.create(httpClient, endpoints.get(0), watchConfig);
+        // the heartbeat client only uses dedicated connections, the endpoints, members and leader are shared
+        EtcdClient heartbeatEtcdClient = etcdClientFactory.create(heartbeatHttpClient, etcdClient);
         etcdStats = new EtcdStats(etcdClient);
-        PropertiesMap propertiesMap = new PropertiesMap(slingId);
         Announce initAnnounce = buildInitAnnounce(slingId, serverInfo);
-        AnnouncesMap announcesMap = new AnnouncesMap(initAnnounce);
+        topologyState = new TopologyStateHolder(new TopologyState(slingId, initAnnounce));
+        listenerThreadPool = threadPoolManager.get("etcd discovery topology listeners");
         viewManager.updateView(buildInitView(initAnnounce, slingId)); // must happen before starting the LocalUpdater thread.
         etcdService = new EtcdService(etcdClient, rootKey);
-        RunnerFactory factory = new RunnerFactoryImpl(etcdService, announcesMap, clustering, etcdBackOff, ioErrorBackOff, slingId, serverInfo, maxAnnounceTtl);
+        RunnerFactory factory = new RunnerFactoryImpl(etcdService, topologyState, clustering, etcdBackOff, ioErrorBackOff, slingId, serverInfo, maxAnnounceTtl);
         etcdThreadPool = threadPoolManager.get("CoreOS etcd client threads");
-        context = new Context(States.GET_CLUSTER, factory, etcdThreadPool);
+        context = new Context(States.GET_CLUSTER, factory, etcdThreadPool, loadOwnership(cc));
         context.init(States.GET_CLUSTER);
+        heartbeatEtcdService = new EtcdService(heartbeatEtcdClient, rootKey);
         announcer = new Announcer(context,
-                etcdService,
-                announcesMap,
-                propertiesMap,
+                heartbeatEtcdService,
+                topologyState,
                 slingId,
                 serverInfo,
-                announceRenewalPeriod);
+                announceRenewalPeriod,
+                refreshAnnounceTtl);
         etcdThreadPool.execute(announcer);
         remoteUpdater = new RemoteUpdater(context,
                 etcdService,
                 topologyUpdatePeriod,
-                announcesMap,
-                propertiesMap,
-                slingId);
+                topologyState,
+                slingId,
+                watchAnnounces);
         etcdThreadPool.execute(remoteUpdater);
         localUpdater = new LocalUpdater(context,
                 propertiesService,
                 viewManager,
                 viewUpdatePeriod,
-                announcesMap,
-                propertiesMap,
+                topologyState,
                 slingId,
                 serverInfo);
+        final LocalUpdater updater = localUpdater;
+        Runnable signal = new Runnable() {
+            public void run() {
+                updater.signal();
+            }
+        };
+        topologyState.setChangeListener(signal);
+        propertiesService.setChangeListener(signal);
         etcdThreadPool.execute(localUpdater);
+        propertiesPoller = new PropertiesPoller(propertiesService);
+        propertiesThreadPool = threadPoolManager.get("etcd discovery property providers");
+        propertiesThreadPool.execute(propertiesPoller);
         LOG.info("Activated etcd discovery service for slingId: {}, serverInfo: {}, rootKey: {}", new Object[]{slingId, serverInfo, rootKey});
     }
 
     @Deactivate
     protected void deactivate() {
+        boolean announced = false;
         if (context != null) {
+            announced = context.is(States.RUNNING);
             context.next(Event.STOPPED);
         }
-        IOUtils.closeQuietly(httpClient);
-        if (connectionManager != null) {
-            IOUtils.closeQuietly(connectionManager);
-        }
         if (announcer != null) {
             announcer.stop();
         }
@@ -464,13 +664,41 @@ public class EtcdDiscoveryService implements DiscoveryService {
         if (localUpdater != null) {
             localUpdater.stop();
         }
+        if (propertiesPoller != null) {
+            propertiesPoller.stop();
+        }
+        if (announced && removeAnnounceTimeout > 0) {
+            removeLocalAnnounce();
+        }
+        IOUtils.closeQuietly(httpClient);
+        IOUtils.closeQuietly(heartbeatHttpClient);
+        if (connectionPool != null) {
+            IOUtils.closeQuietly(connectionPool);
+        }
+        if (heartbeatConnectionPool != null) {
+            IOUtils.closeQuietly(heartbeatConnectionPool);
+        }
+        propertiesService.setChangeListener(null);
         if (etcdThreadPool != null) {
             threadPoolManager.release(etcdThreadPool);
             etcdThreadPool = null;
         }
+        if (propertiesThreadPool != null) {
+            threadPoolManager.release(propertiesThreadPool);
+            propertiesThreadPool = null;
+        }
+        ThreadPool pool = listenerThreadPool;
+        if (pool != null) {
+            listenerThreadPool = null;
+            threadPoolManager.release(pool);
+        }
         httpClient = null;
-        connectionManager = null;
+        heartbeatHttpClient = null;
+        connectionPool = null;
+        heartbeatConnectionPool = null;
         etcdService = null;
+        heartbeatEtcdService = null;
+        topologyState = null;
         LOG.info("Deactivated etcd discovery service");
     }
 
@@ -492,21 +720,51 @@ public class EtcdDiscoveryService implements DiscoveryService {
         return etcdStats;
     }
 
-    private void buildHttpClient(@Nonnull String keystoreFilePath, @Nonnull String keystorePwdFilePath) {
+    @Nonnull
+    protected List<ListenerQueue> getListenerQueues() {
+        return viewManager.getListenerQueues();
+    }
 
-        boolean hasKeyStore = ! isEmpty(keystoreFilePath);
+    protected long getSuppressedEvents() {
+        return viewManager.getSuppressedEvents();
+    }
 
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setSocketTimeout(socketTimeout)
-                .setConnectTimeout(connectionTimeout)
-                .setRedirectsEnabled(true)
-                .setStaleConnectionCheckEnabled(true)
-                .build();
+    /**
+     * @return the error statistics of the services communicating with etcd, by name.
+     */
+    @Nonnull
+    protected Map<String, EtcdServiceStats> getErrStats() {
+        Map<String, EtcdServiceStats> stats = new LinkedHashMap<String, EtcdServiceStats>();
+        EtcdService service = etcdService;
+        if (service != null) {
+            stats.put("etcd", service.getErrStats());
+        }
+        service = heartbeatEtcdService;
+        if (service != null) {
+            stats.put("heartbeat", service.getErrStats());
+        }
+        return stats;
+    }
 
-        HttpClientBuilder builder = HttpClients.custom()
-                .setDefaultRequestConfig(requestConfig)
-                .addInterceptorFirst(new GzipRequestInterceptor())
-                .addInterceptorFirst(new GzipResponseInterceptor());
+    @Nonnull
+    protected List<ConnectionPool> getConnectionPools() {
+        List<ConnectionPool> pools = new ArrayList<ConnectionPool>();
+        ConnectionPool pool = connectionPool;
+        if (pool != null) {
+            pools.add(pool);
+        }
+        pool = heartbeatConnectionPool;
+        if (pool != null) {
+            pools.add(pool);
+        }
+        return pools;
+    }
+
+    private void buildHttpClients(@Nonnull String keystoreFilePath, @Nonnull String keystorePwdFilePath) {
+
+        boolean hasKeyStore = ! isEmpty(keystoreFilePath);
+
+        final SSLConnectionSocketFactory sslConnectionSocketFactory;
 
         if (hasKeyStore) {
 
@@ -519,17 +777,7 @@ public class EtcdDiscoveryService implements DiscoveryService {
                 sslContextBuilder.loadTrustMaterial(keystore);
                 sslContextBuilder.loadKeyMaterial(keystore, pwd);
                 LOG.info("Setup custom SSL context");
-                SSLConnectionSocketFactory sslConnectionSocketFactory =
-                        new SSLConnectionSocketFactory(sslContextBuilder.build());
-                Registry<ConnectionSocketFactory> connectionSocketFactory =
-                        RegistryBuilder.<ConnectionSocketFactory> create()
-                                .register("http", PlainConnectionSocketFactory.INSTANCE)
-                                .register("https", sslConnectionSocketFactory).build();
-
-                builder.setSSLSocketFactory(sslConnectionSocketFactory);
-
-                connectionManager = new PoolingHttpClientConnectionManager(connectionSocketFactory);
-
+                sslConnectionSocketFactory = new SSLConnectionSocketFactory(sslContextBuilder.build());
             } catch (UnrecoverableKeyException e) {
                 throw wrap(e);
             } catch (NoSuchAlgorithmException e) {
@@ -543,11 +791,62 @@ public class EtcdDiscoveryService implements DiscoveryService {
             }
 
         } else {
-            connectionManager = new PoolingHttpClientConnectionManager();
+            sslConnectionSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
         }
 
-        builder.setConnectionManager(connectionManager);
-        httpClient = builder.build();
+        Registry<ConnectionSocketFactory> connectionSocketFactory =
+                RegistryBuilder.<ConnectionSocketFactory> create()
+                        .register("http", PlainConnectionSocketFactory.INSTANCE)
+                        .register("https", sslConnectionSocketFactory).build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setSocketTimeout(socketTimeout)
+                .setConnectTimeout(connectionTimeout)
+                .setRedirectsEnabled(true)
+                .setStaleConnectionCheckEnabled(true)
+                .build();
+        connectionPool = new ConnectionPool("etcd", connectionSocketFactory, maxConnections);
+        httpClient = buildHttpClient(requestConfig, connectionPool);
+        // the announce watch stays idle while the topology is stable
+        watchConfig = RequestConfig.copy(requestConfig)
+                .setSocketTimeout(watchTimeout)
+                .build();
+
+        // the announce renewals get their own connections and tighter timeouts
+
+        RequestConfig heartbeatRequestConfig = RequestConfig.custom()
+                .setSocketTimeout(heartbeatSocketTimeout)
+                .setConnectTimeout(heartbeatConnectionTimeout)
+                .setConnectionRequestTimeout(heartbeatLeaseTimeout)
+                .setRedirectsEnabled(true)
+                .setStaleConnectionCheckEnabled(true)
+                .build();
+        heartbeatConnectionPool = new ConnectionPool("heartbeat", connectionSocketFactory, heartbeatMaxConnections);
+        heartbeatHttpClient = buildHttpClient(heartbeatRequestConfig, heartbeatConnectionPool);
+    }
+
+    @Nonnull
+    private CloseableHttpClient buildHttpClient(@Nonnull RequestConfig requestConfig, @Nonnull ConnectionPool pool) {
+        return HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .addInterceptorFirst(new GzipRequestInterceptor())
+                .addInterceptorFirst(new GzipResponseInterceptor())
+                .setConnectionManager(pool)
+                .build();
+    }
+
+    @Nonnull
+    private List<URI> parseEndpoints(@Nonnull String[] eps) {
+        List<URI> endpoints = new ArrayList<URI>();
+        for (String ep : eps) {
+            if (ep.trim().length() > 0) {
+                endpoints.add(parseEndpoint(ep.trim()));
+            }
+        }
+        if (endpoints.isEmpty()) {
+            endpoints.add(parseEndpoint(DEFAULT_ENDPOINT));
+        }
+        return endpoints;
     }
 
     @Nonnull
@@ -564,6 +863,58 @@ public class EtcdDiscoveryService implements DiscoveryService {
         }
     }
 
+    /**
+     * Remove the local announce (and optionally the local properties) from etcd in the calling thread,
+     * through the heartbeat client. The announce is deleted only if it still holds the announce last sent
+     * (compare-and-delete), then the ownership of the local Sling identifier is released if it is still held
+     * with the local token (compare-and-delete), so that the Sling identifier can't be claimed while the
+     * announce remains. The remaining steps are skipped once the remove announce timeout elapsed.
+     */
+    private void removeLocalAnnounce() {
+        String announceKey = announcer.getLastAnnounceKey();
+        String announce = announcer.getLastAnnounceSent();
+        if (announceKey == null || announce == null) {
+            LOG.info("The local announce is not known to be held in etcd, leave the announce to elapse");
+            return;
+        }
+        String slingId = topologyState.get().getSlingId();
+        long deadline = System.currentTimeMillis() + removeAnnounceTimeout;
+        try {
+            if (! heartbeatEtcdService.deleteAnnounce(announceKey, announce)) {
+                LOG.info("The local announce with key: {} changed, leave the announce to elapse", announceKey);
+                return;
+            }
+            LOG.info("Removed the local announce with key: {}", announceKey);
+            if (System.currentTimeMillis() > deadline) {
+                LOG.info("Timed out removing the local announce, leave the ownership of slingId: {} to elapse", slingId);
+                return;
+            }
+            if (! heartbeatEtcdService.releaseOwnership(slingId, context.getOwnerToken())) {
+                LOG.info("The local instance no longer owns the slingId: {}", slingId);
+                return;
+            }
+            if (removeProperties && System.currentTimeMillis() <= deadline) {
+                heartbeatEtcdService.deleteInstanceProperties(slingId);
+            }
+        } catch (Exception e) {
+            LOG.info("Failed to remove the local announce with key: {} {}", new Object[]{announceKey, e.getMessage()});
+        }
+    }
+
+    /**
+     * Load the ownership persisted in the bundle data area (within the Sling home),
+     * allowing a restarting instance to take over the announce of its previous run.
+     */
+    @Nonnull
+    private Ownership loadOwnership(ComponentContext componentContext) {
+        File file = componentContext.getBundleContext().getDataFile(OWNERSHIP_FILE);
+        if (file == null) {
+            LOG.info("No persistent storage for the ownership, the restarts wait for the previous announce to elapse");
+            return Ownership.transientOwnership();
+        }
+        return Ownership.load(file);
+    }
+
     @Nonnull
     private String getServerInfo(ComponentContext componentContext) {
         String servicePort = componentContext.getBundleContext()
@@ -686,11 +1037,11 @@ public class EtcdDiscoveryService implements DiscoveryService {
         return new EtcdDiscoveryRuntimeException(e.getMessage(), e);
     }
 
-    protected void bindTopologyEventListener(TopologyEventListener listener) {
-        viewManager.bind(listener);
+    protected void bindTopologyEventListener(TopologyEventListener listener, Map<String, Object> properties) {
+        viewManager.bind(listener, ListenerFilter.fromProperties(properties));
     }
 
-    protected void unbindTopologyEventListener(TopologyEventListener listener) {
+    protected void unbindTopologyEventListener(TopologyEventListener listener, Map<String, Object> properties) {
         viewManager.unbind(listener);
     }
 
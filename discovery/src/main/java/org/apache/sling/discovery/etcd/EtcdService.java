@@ -19,21 +19,32 @@
 package org.apache.sling.discovery.etcd;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.apache.sling.etcd.client.DecodedNode;
 import org.apache.sling.etcd.client.KeyAction;
 import org.apache.sling.etcd.client.EtcdClient;
 import org.apache.sling.etcd.client.KeyError;
 import org.apache.sling.etcd.common.ErrorCodes;
+import org.apache.sling.etcd.common.EtcdHeaders;
 import org.apache.sling.etcd.client.EtcdNode;
 import org.apache.sling.etcd.client.EtcdParams;
+import org.apache.sling.etcd.client.EtcdParamsBuilder;
 import org.apache.sling.etcd.client.KeyResponse;
+import org.apache.sling.etcd.client.Member;
+import org.apache.sling.etcd.client.ValueDecoder;
+import org.apache.sling.etcd.client.ValueReader;
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.JSONObject;
 import org.slf4j.Logger;
@@ -70,8 +81,39 @@ public class EtcdService {
 
     private static final String KEY_PROPERTIES_FORMAT = FOLDER_PROPERTIES + "/%s";
 
+    private static final String KEY_OWNERS_FORMAT = "/owners/%s";
+
     private static final String UNEXPECTED_ETCD_ERROR_FORMAT = "Unexpected etcd error status: %s %s";
 
+    private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d+)\\.(\\d+)");
+
+    /**
+     * Decode the instance properties from the etcd responses, without parsing the properties json string separately.
+     */
+    private static final ValueDecoder<Map<String, String>> PROPERTIES_DECODER = new ValueDecoder<Map<String, String>>() {
+        @Nonnull
+        public Map<String, String> decode(@Nonnull ValueReader value) throws IOException {
+            Map<String, String> properties = new HashMap<String, String>();
+            value.beginObject();
+            while (value.hasNext()) {
+                String name = value.nextName();
+                ValueReader.Token token = value.peek();
+                if (token == ValueReader.Token.STRING || token == ValueReader.Token.NUMBER) {
+                    properties.put(name, value.nextString());
+                } else if (token == ValueReader.Token.BOOLEAN) {
+                    properties.put(name, String.valueOf(value.nextBoolean()));
+                } else if (token == ValueReader.Token.NULL) {
+                    value.nextNull();
+                    properties.put(name, "null");
+                } else {
+                    value.skipValue();
+                }
+            }
+            value.endObject();
+            return properties;
+        }
+    };
+
     private final EtcdClient etcdClient;
 
     private final String rootKey;
@@ -106,6 +148,270 @@ public class EtcdService {
         return node;
     }
 
+    /**
+     * Claim the ownership of a Sling identifier, by atomically creating the ownership key for the Sling identifier.
+     * The ownership key decides which announce uses the Sling identifier in a single conditional write,
+     * without listing the announces.
+     *
+     * @param slingId the Sling identifier to claim.
+     * @param token the token identifying the owner.
+     * @param ownershipTtl The time to live (validity in second) for the ownership.
+     *                     Unless refreshed, the ownership is released automatically once the ttl provided has elapsed.
+     * @return {@code true} if the ownership has been claimed ;
+     *         {@code false} if the Sling identifier is already owned.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    public boolean claimOwnership(@Nonnull String slingId, @Nonnull String token, int ownershipTtl)
+            throws IOException, EtcdServiceException {
+        KeyResponse response = internalPutOwnership(slingId, token, ownershipTtl, EtcdParams
+                .builder()
+                .prevExist(false));
+        if (response.isAction()) {
+            LOG.debug("Claimed ownership of slingId: {}", slingId);
+            return true;
+        }
+        // expected: node exists (if the Sling identifier is owned)
+        throwIfNoneOf(response.error(), ErrorCodes.NODE_EXITS);
+        return false;
+    }
+
+    /**
+     * Get the ownership key of a Sling identifier.
+     *
+     * @param slingId the Sling identifier.
+     * @return the ownership node, which value is the owner token ; or {@code null} if the Sling identifier is not owned.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    @Nullable
+    public EtcdNode getOwnership(@Nonnull String slingId) throws IOException, EtcdServiceException {
+        String key = mapKey(String.format(KEY_OWNERS_FORMAT, slingId));
+        LOG.debug("Get ownership at key: {}", key);
+        KeyResponse response;
+        try {
+            response = log(etcdClient.getKey(key, EtcdParams.noParams()));
+            errStats.resetIoError();
+        } catch (IOException e) {
+            errStats.increaseIoError();
+            throw e;
+        }
+        if (response.isAction()) {
+            return response.action().node();
+        }
+        // expected: key not found (if the Sling identifier is not owned)
+        throwIfNoneOf(response.error(), ErrorCodes.KEY_NOT_FOUND);
+        return null;
+    }
+
+    /**
+     * Refresh the ttl of the ownership key of a Sling identifier, provided the ownership is held with the given token.
+     *
+     * @param slingId the owned Sling identifier.
+     * @param token the token identifying the owner.
+     * @param ownershipTtl the ownership time to live in seconds.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if any error was returned from etcd, in particular the
+     *         {@code ErrorCodes.TEST_FAILED} error if the ownership is held with another token
+     *         and the {@code ErrorCodes.KEY_NOT_FOUND} error if the ownership has elapsed.
+     */
+    public void refreshOwnership(@Nonnull String slingId, @Nonnull String token, int ownershipTtl)
+            throws IOException, EtcdServiceException {
+        throwIfError(internalPutOwnership(slingId, token, ownershipTtl, EtcdParams
+                .builder()
+                .prevValue(token)));
+    }
+
+    /**
+     * Refresh the ttl of the ownership key of a Sling identifier without resending the token,
+     * provided the ownership is held with the given token. The refresh does not notify the watchers.
+     * etcd versions which do not support refreshing the ttl (prior to 2.3) overwrite
+     * the token with an empty value, callers must check {@link #isTtlRefreshSupported()} first.
+     *
+     * @param slingId the owned Sling identifier.
+     * @param token the token identifying the owner.
+     * @param ownershipTtl the ownership time to live in seconds.
+     * @return the refreshed ownership node.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if any error was returned from etcd, in particular the
+     *         {@code ErrorCodes.TEST_FAILED} error if the ownership is held with another token
+     *         and the {@code ErrorCodes.KEY_NOT_FOUND} error if the ownership has elapsed.
+     */
+    @Nonnull
+    public EtcdNode refreshOwnershipTtl(@Nonnull String slingId, @Nonnull String token, int ownershipTtl)
+            throws IOException, EtcdServiceException {
+        String key = mapKey(String.format(KEY_OWNERS_FORMAT, slingId));
+        LOG.debug("Refresh ownership ttl: {} at key: {}", new Object[]{ownershipTtl, key});
+        Map<String, String> params = EtcdParams
+                .builder()
+                .prevValue(token)
+                .refresh(true)
+                .ttl(ownershipTtl)
+                .build();
+        KeyResponse response;
+        try {
+            response = log(etcdClient.putKey(key, (String) null, params));
+            errStats.resetIoError();
+        } catch (IOException e) {
+            errStats.increaseIoError();
+            throw e;
+        }
+        return throwIfError(response).action().node();
+    }
+
+    /**
+     * Release the ownership of a Sling identifier, by atomically deleting the ownership key
+     * provided it is held with the given token (compare-and-delete).
+     *
+     * @param slingId the owned Sling identifier.
+     * @param token the token identifying the owner.
+     * @return {@code true} if the ownership has been released ;
+     *         {@code false} if the ownership is held with another token or has elapsed.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    public boolean releaseOwnership(@Nonnull String slingId, @Nonnull String token)
+            throws IOException, EtcdServiceException {
+        String key = mapKey(String.format(KEY_OWNERS_FORMAT, slingId));
+        KeyResponse response = internalDelete(key, EtcdParams.builder().prevValue(token).build());
+        if (response.isAction()) {
+            LOG.debug("Released ownership of slingId: {}", slingId);
+            return true;
+        }
+        // expected: test failed (if owned with another token) or key not found (if elapsed)
+        throwIfNoneOf(response.error(), ErrorCodes.TEST_FAILED, ErrorCodes.KEY_NOT_FOUND);
+        return false;
+    }
+
+    /**
+     * Delete an announce key, provided it still holds the given announce (compare-and-delete).
+     *
+     * @param announceKey the key of the announce to delete.
+     * @param announce the announce expected to be held by the key.
+     * @return {@code true} if the announce has been deleted or has elapsed ;
+     *         {@code false} if the key holds another announce.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    public boolean deleteAnnounce(@Nonnull String announceKey, @Nonnull String announce)
+            throws IOException, EtcdServiceException {
+        KeyResponse response = internalDelete(announceKey, EtcdParams.builder().prevValue(announce).build());
+        if (response.isAction()) {
+            return true;
+        }
+        // expected: test failed (if the announce changed) or key not found (if the announce elapsed)
+        KeyError error = response.error();
+        throwIfNoneOf(error, ErrorCodes.TEST_FAILED, ErrorCodes.KEY_NOT_FOUND);
+        return error.errorCode() == ErrorCodes.KEY_NOT_FOUND;
+    }
+
+    /**
+     * Delete the properties key for a given instance.
+     *
+     * @param slingId the identifier of the instance to delete the properties for.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    public void deleteInstanceProperties(@Nonnull String slingId) throws IOException, EtcdServiceException {
+        KeyResponse response = internalDelete(mapKey(String.format(KEY_PROPERTIES_FORMAT, slingId)), EtcdParams.noParams());
+        if (! response.isAction()) {
+            // expected: key not found (if no instance properties exist)
+            throwIfNoneOf(response.error(), ErrorCodes.KEY_NOT_FOUND);
+        }
+    }
+
+    /**
+     * Take over the ownership of a Sling identifier held with the token of a previous run,
+     * by atomically replacing the token (compare-and-swap).
+     *
+     * @param slingId the Sling identifier to take over.
+     * @param previousToken the token held by the previous run.
+     * @param token the token identifying the new owner.
+     * @param ownershipTtl the ownership time to live in seconds.
+     * @return {@code true} if the ownership has been taken over ;
+     *         {@code false} if the ownership is held with another token or has elapsed.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    public boolean takeOverOwnership(@Nonnull String slingId, @Nonnull String previousToken, @Nonnull String token,
+                                     int ownershipTtl)
+            throws IOException, EtcdServiceException {
+        KeyResponse response = internalPutOwnership(slingId, token, ownershipTtl, EtcdParams
+                .builder()
+                .prevValue(previousToken));
+        if (response.isAction()) {
+            LOG.debug("Took over ownership of slingId: {}", slingId);
+            return true;
+        }
+        // expected: test failed (if owned with another token) or key not found (if elapsed)
+        throwIfNoneOf(response.error(), ErrorCodes.TEST_FAILED, ErrorCodes.KEY_NOT_FOUND);
+        return false;
+    }
+
+    /**
+     * Get an announce key.
+     *
+     * @param announceKey the key of the announce to get.
+     * @return the announce node ; or {@code null} if the announce does not exist.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    @Nullable
+    public EtcdNode getAnnounce(@Nonnull String announceKey) throws IOException, EtcdServiceException {
+        LOG.debug("Get announce at key: {}", announceKey);
+        KeyResponse response;
+        try {
+            response = log(etcdClient.getKey(announceKey, EtcdParams.noParams()));
+            errStats.resetIoError();
+        } catch (IOException e) {
+            errStats.increaseIoError();
+            throw e;
+        }
+        if (response.isAction()) {
+            return response.action().node();
+        }
+        // expected: key not found (if the announce elapsed)
+        throwIfNoneOf(response.error(), ErrorCodes.KEY_NOT_FOUND);
+        return null;
+    }
+
+    /**
+     * Take over an existing announce key, by atomically replacing its content provided it was not modified
+     * since the given index (compare-and-swap). The announce keeps its position in the announces order.
+     *
+     * @param announceKey the key of the announce to take over.
+     * @param announce the new announce content.
+     * @param prevIndex the modified index of the announce to take over.
+     * @param announceTtl the announce time to live in seconds.
+     * @return the announce node ; or {@code null} if the announce has been modified or has elapsed.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    @Nullable
+    public EtcdNode takeOverAnnounce(@Nonnull String announceKey, @Nonnull String announce, long prevIndex, int announceTtl)
+            throws IOException, EtcdServiceException {
+        LOG.debug("Take over announce: {} with ttl: {} at key: {}", new Object[]{announce, announceTtl, announceKey});
+        Map<String, String> params = EtcdParams
+                .builder()
+                .prevIndex(prevIndex)
+                .ttl(announceTtl)
+                .build();
+        KeyResponse response;
+        try {
+            response = log(etcdClient.putKey(announceKey, announce, params));
+            errStats.resetIoError();
+        } catch (IOException e) {
+            errStats.increaseIoError();
+            throw e;
+        }
+        if (response.isAction()) {
+            return response.action().node();
+        }
+        // expected: test failed (if modified) or key not found (if elapsed)
+        throwIfNoneOf(response.error(), ErrorCodes.TEST_FAILED, ErrorCodes.KEY_NOT_FOUND);
+        return null;
+    }
+
     /**
      * Update the properties key for a given instance.
      *
@@ -144,6 +450,52 @@ public class EtcdService {
         return Collections.emptyList();
     }
 
+    /**
+     * Get all the announces keys along with the etcd index at which they have been read.
+     *
+     * @return the list (unordered) of announces keys and the etcd index.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    @Nonnull
+    public IndexedNodes getIndexedAnnounces() throws IOException, EtcdServiceException {
+        KeyResponse response = internalGetAnnounces();
+        if (response.isAction()) {
+            EtcdNode folder = response.action().node();
+            List<EtcdNode> announces = folder.nodes();
+            long etcdIndex = etcdIndex(response, maxModifiedIndex(folder));
+            LOG.debug("Found {} announce keys at index: {}", new Object[]{announces.size(), etcdIndex});
+            return new IndexedNodes(announces, etcdIndex);
+        } else {
+            // expected: key not found (if no announce exists)
+            KeyError error = response.error();
+            throwIfNoneOf(error, ErrorCodes.KEY_NOT_FOUND);
+            return new IndexedNodes(Collections.<EtcdNode>emptyList(), etcdIndex(response, error.index()));
+        }
+    }
+
+    /**
+     * Wait for the next change applied to the announces keys.
+     * The method blocks until a change occurs or the watch socket timeout elapses.
+     *
+     * @param waitIndex the etcd index (inclusive) from which to watch for changes.
+     * @return the action applied to an announce key along with the current etcd index ;
+     *         or {@code null} if no change occurred before the watch socket timeout elapsed.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if any error was returned from etcd, in particular
+     *         the {@code ErrorCodes.EVENT_INDEX_CLEARED} error if the changes from
+     *         the #waitIndex are no longer kept in the etcd history
+     */
+    @Nullable
+    public IndexedAction watchAnnounces(long waitIndex) throws IOException, EtcdServiceException {
+        KeyResponse response = internalWatchAnnounces(waitIndex);
+        if (response == null) {
+            return null;
+        }
+        KeyAction action = throwIfError(response).action();
+        return new IndexedAction(action, etcdIndex(response, action.node().modifiedIndex()));
+    }
+
     /**
      * Get the properties key for a given instance.
      *
@@ -157,15 +509,7 @@ public class EtcdService {
     public Map<String, String> getProperties(@Nonnull String slingId) throws IOException, EtcdServiceException {
         KeyResponse response = internalGetProperties(slingId);
         if (response.isAction()) {
-            EtcdNode node = response.action().node();
-            String key = node.key();
-            String value = node.value();
-            try {
-                JSONObject json = new JSONObject(value);
-                return toMap(json);
-            } catch (JSONException e) {
-                throw new EtcdDiscoveryRuntimeException(String.format("Failed to parse properties for instance: %s", key), e);
-            }
+            return properties(response.action().node());
         } else {
             // expected: key not found (if no instance properties exist)
             throwIfNoneOf(response.error(), ErrorCodes.KEY_NOT_FOUND);
@@ -189,14 +533,7 @@ public class EtcdService {
         if (response.isAction()) {
             List<EtcdNode> instances = response.action().node().nodes();
             for (EtcdNode instance : instances) {
-                String key = instance.key();
-                String value = instance.value();
-                try {
-                    JSONObject json = new JSONObject(value);
-                    properties.put(extractSlingId(key), toMap(json));
-                } catch (JSONException e) {
-                    throw new EtcdDiscoveryRuntimeException(String.format("Failed to parse properties for instance: %s", key), e);
-                }
+                properties.put(extractSlingId(instance.key()), properties(instance));
             }
         } else {
             // expected: key not found (if no instance properties exist)
@@ -219,6 +556,51 @@ public class EtcdService {
         throwIfError(internalRefreshAnnounce(announceKey, announce, announceTtl));
     }
 
+    /**
+     * Refresh the ttl of an announce key without resending its content.
+     * The refresh does not notify the watchers of the announces.
+     * etcd versions which do not support refreshing the ttl (prior to 2.3) overwrite
+     * the announce content with an empty value, callers must check {@link #isTtlRefreshSupported()} first.
+     *
+     * @param announceKey the key of the announce to refresh the ttl
+     * @param announceTtl the announce time to live in seconds.
+     * @return the refreshed announce node.
+     * @throws IOException if an I/O error occurred
+     * @throws EtcdServiceException if an unexpected error was returned from etcd
+     */
+    @Nonnull
+    public EtcdNode refreshAnnounceTtl(@Nonnull String announceKey, int announceTtl)
+            throws IOException, EtcdServiceException {
+        return throwIfError(internalRefreshAnnounceTtl(announceKey, announceTtl)).action().node();
+    }
+
+    /**
+     * Check whether all the members of the etcd cluster support refreshing
+     * the ttl of a key without resending its value (etcd 2.3 and later).
+     *
+     * @return {@code true} if the version of each member supports ttl refreshes ;
+     *         {@code false} if any member does not support them or no member version could be found.
+     * @throws IOException if an I/O error occurred
+     */
+    public boolean isTtlRefreshSupported()
+            throws IOException {
+        boolean found = false;
+        for (Member member : etcdClient.getMembers().members()) {
+            List<URI> clientUrls = member.clientUrls();
+            if (clientUrls.isEmpty()) {
+                LOG.debug("No client url defined for member with id: {}", member.id());
+                continue;
+            }
+            String version = etcdClient.getVersion(clientUrls.get(0)).version();
+            LOG.debug("etcd member with id: {} runs version: {}", member.id(), version);
+            if (! isTtlRefreshSupported(version)) {
+                return false;
+            }
+            found = true;
+        }
+        return found;
+    }
+
     //
 
     @Nonnull
@@ -228,6 +610,29 @@ public class EtcdService {
 
     //
 
+    /**
+     * @param version the version string returned by etcd, either plain ({@code etcd 2.0.8})
+     *                or JSON ({@code {"etcdserver":"2.3.0","etcdcluster":"2.3.0"}}) since etcd 2.1.
+     * @return {@code true} if the cluster version (or the server version if the former is missing)
+     *         is 2.3 or later.
+     */
+    static boolean isTtlRefreshSupported(@Nonnull String version) {
+        String number = null;
+        try {
+            JSONObject json = new JSONObject(version);
+            number = json.optString("etcdcluster", json.optString("etcdserver", null));
+        } catch (JSONException e) {
+            // plain version string
+        }
+        Matcher matcher = VERSION_PATTERN.matcher(number != null ? number : version);
+        if (! matcher.find()) {
+            return false;
+        }
+        int major = Integer.parseInt(matcher.group(1));
+        int minor = Integer.parseInt(matcher.group(2));
+        return major > 2 || (major == 2 && minor >= 3);
+    }
+
     @Nonnull
     private KeyResponse internalCreateAnnounce(@Nonnull String announce, int announceTtl)
             throws IOException {
@@ -247,6 +652,22 @@ public class EtcdService {
         }
     }
 
+    @Nonnull
+    private KeyResponse internalPutOwnership(@Nonnull String slingId, @Nonnull String token, int ownershipTtl,
+                                             @Nonnull EtcdParamsBuilder params)
+            throws IOException {
+        String key = mapKey(String.format(KEY_OWNERS_FORMAT, slingId));
+        LOG.debug("Put ownership with ttl: {} at key: {}", new Object[]{ownershipTtl, key});
+        try {
+            KeyResponse response = etcdClient.putKey(key, token, params.ttl(ownershipTtl).build());
+            errStats.resetIoError();
+            return log(response);
+        } catch (IOException e) {
+            errStats.increaseIoError();
+            throw e;
+        }
+    }
+
     @Nonnull
     private KeyResponse internalRefreshAnnounce(@Nonnull String announceKey, @Nonnull String announce, int announceTtl)
             throws IOException {
@@ -266,6 +687,26 @@ public class EtcdService {
         }
     }
 
+    @Nonnull
+    private KeyResponse internalRefreshAnnounceTtl(@Nonnull String announceKey, int announceTtl)
+            throws IOException {
+        LOG.debug("Refresh announce ttl: {} at key: {}", new Object[]{announceTtl, announceKey});
+        Map<String, String> params = EtcdParams
+                .builder()
+                .prevExist(true)
+                .refresh(true)
+                .ttl(announceTtl)
+                .build();
+        try {
+            KeyResponse response = etcdClient.putKey(announceKey, (String) null, params);
+            errStats.resetIoError();
+            return log(response);
+        } catch (IOException e) {
+            errStats.increaseIoError();
+            throw e;
+        }
+    }
+
     /**
      * @return the ordered list of of announce keys.
      * @throws IOException
@@ -280,7 +721,48 @@ public class EtcdService {
                 .recursive(true)
                 .build();
         try {
-            KeyResponse response = etcdClient.getKey(key, params);
+            KeyResponse response = etcdClient.getKey(key, params, AnnounceData.DECODER);
+            errStats.resetIoError();
+            return log(response);
+        } catch (IOException e) {
+            errStats.increaseIoError();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the response or {@code null} if the socket timeout elapsed before any change was received.
+     * @throws IOException
+     */
+    @Nullable
+    private KeyResponse internalWatchAnnounces(long waitIndex) throws IOException {
+        String key = mapKey(KEY_ANNOUNCES);
+        LOG.debug("Watch announces under key: {} from index: {}", new Object[]{key, waitIndex});
+        Map<String, String> params = EtcdParams
+                .builder()
+                .wait(true)
+                .recursive(true)
+                .waitIndex(waitIndex)
+                .build();
+        try {
+            KeyResponse response = etcdClient.getKey(key, params, AnnounceData.DECODER);
+            errStats.resetIoError();
+            return log(response);
+        } catch (SocketTimeoutException e) {
+            // no change within the socket timeout, not an error.
+            LOG.debug("No change on announces from index: {}", waitIndex);
+            return null;
+        } catch (IOException e) {
+            errStats.increaseIoError();
+            throw e;
+        }
+    }
+
+    @Nonnull
+    private KeyResponse internalDelete(@Nonnull String key, @Nonnull Map<String, String> params) throws IOException {
+        LOG.debug("Delete key: {}", key);
+        try {
+            KeyResponse response = etcdClient.deleteKey(key, params);
             errStats.resetIoError();
             return log(response);
         } catch (IOException e) {
@@ -314,7 +796,7 @@ public class EtcdService {
                 .recursive(true)
                 .build();
         try {
-            KeyResponse response = etcdClient.getKey(key, params);
+            KeyResponse response = etcdClient.getKey(key, params, PROPERTIES_DECODER);
             errStats.resetIoError();
             return log(response);
         } catch (IOException e) {
@@ -332,7 +814,7 @@ public class EtcdService {
                 .recursive(true)
                 .build();
         try {
-            KeyResponse response = etcdClient.getKey(key, params);
+            KeyResponse response = etcdClient.getKey(key, params, PROPERTIES_DECODER);
             errStats.resetIoError();
             return log(response);
         } catch (IOException e) {
@@ -392,6 +874,26 @@ public class EtcdService {
         return true;
     }
 
+    /**
+     * @param node the properties node, decoded with the {@link #PROPERTIES_DECODER}.
+     * @return the map of properties.
+     */
+    @Nonnull
+    private static Map<String, String> properties(@Nonnull EtcdNode node) {
+        Object decoded = (node instanceof DecodedNode) ? ((DecodedNode<?>) node).decodedValue() : null;
+        if (decoded instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> properties = (Map<String, String>) decoded;
+            return properties;
+        }
+        String value = node.value();
+        try {
+            return toMap(new JSONObject(value));
+        } catch (JSONException e) {
+            throw new EtcdDiscoveryRuntimeException(String.format("Failed to parse properties for instance: %s", node.key()), e);
+        }
+    }
+
     @Nonnull
     private static Map<String, String> toMap(@Nonnull JSONObject json) {
         Map<String, String> map = new HashMap<String, String>();
@@ -403,6 +905,31 @@ public class EtcdService {
         return map;
     }
 
+    /**
+     * @param response the response to read the etcd index from
+     * @param defaultIndex the index to return if the response does not provide the etcd index
+     * @return the etcd index at which the response was produced
+     */
+    private long etcdIndex(@Nonnull KeyResponse response, long defaultIndex) {
+        String etcdIndex = response.headerFirst(EtcdHeaders.ETCD_INDEX);
+        if (etcdIndex != null) {
+            try {
+                return Long.parseLong(etcdIndex.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid etcd index header: {}", etcdIndex);
+            }
+        }
+        return defaultIndex;
+    }
+
+    private long maxModifiedIndex(@Nonnull EtcdNode folder) {
+        long max = folder.modifiedIndex();
+        for (EtcdNode node : folder.nodes()) {
+            max = Math.max(max, node.modifiedIndex());
+        }
+        return max;
+    }
+
     @Nonnull
     private KeyResponse log(@Nonnull KeyResponse response) {
         LOG.trace("Response: {}", response);
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import javax.annotation.Nonnull;
+
+import org.apache.sling.discovery.TopologyEvent;
+
+/**
+ * The etcd {@code TopologyEvent} extension for the {@code TOPOLOGY_CHANGED} and {@code PROPERTIES_CHANGED} events.
+ * The diff between the old and new views is computed once per event and shared by all listeners,
+ * which may cast the event in order to handle the changes only.
+ */
+public class EtcdTopologyEvent extends TopologyEvent {
+
+    private final TopologyDiff diff;
+
+    /**
+     * @param type the event type
+     * @param oldView the view before the change
+     * @param newView the view after the change
+     */
+    public EtcdTopologyEvent(@Nonnull Type type, @Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyView newView) {
+        super(type, oldView, newView);
+        this.diff = TopologyDiff.compute(oldView, newView);
+    }
+
+    /**
+     * @return the changes from the old view to the new view.
+     */
+    @Nonnull
+    public TopologyDiff getDiff() {
+        return diff;
+    }
+
+}
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.sling.discovery.ClusterView;
 import org.apache.sling.discovery.InstanceDescription;
@@ -36,6 +37,8 @@ import org.apache.sling.discovery.TopologyView;
 /**
  * The etcd {@code TopologyView} implementation.
  * Instances of this class are not immutable (due to "current" state) but thread safe.
+ * The lookups by Sling identifier, cluster identifier and property are served by immutable indexes,
+ * built once per view upon the first lookup.
  */
 public class EtcdTopologyView implements TopologyView {
 
@@ -58,6 +61,18 @@ public class EtcdTopologyView implements TopologyView {
      */
     private final Map<String, Map<String, String>> properties;
 
+    /**
+     * Holds the cluster views by cluster identifier, allowing to reuse them in the next views.
+     */
+    private final Map<String, EtcdClusterView> clusterViews;
+
+    /**
+     * The lazily built indexes. Building an index is idempotent, concurrent lookups may build it more than once.
+     */
+    private volatile Map<String, InstanceDescription> instancesBySlingId;
+
+    private volatile Map<String, Map<String, Set<InstanceDescription>>> instancesByProperty;
+
     /**
      * @param announces The list of announces
      * @param properties The properties for all instances (including local instance). key is the instance slingId,
@@ -66,22 +81,49 @@ public class EtcdTopologyView implements TopologyView {
      * @param current {@code true} if the view is current ; {@code false} otherwise.
      */
     public EtcdTopologyView(@Nonnull Announces announces, @Nonnull Map<String, Map<String, String>> properties, @Nonnull String slingId, boolean current) {
+        this(null, announces, properties, slingId, Collections.<String>emptySet(), current);
+    }
+
+    /**
+     * Build a view from a previous view and the set of changed instances.
+     * The cluster views (and their instance descriptions) which contain none of
+     * the changed instances are reused from the previous view.
+     *
+     * @param previous the previous view or {@code null} to build all cluster views
+     * @param announces The list of announces
+     * @param properties The properties for all instances (including local instance). key is the instance slingId,
+     *                   value is the map of name,value properties.
+     * @param slingId The local instance Sling identifier
+     * @param changedSlingIds the Sling identifiers of the instances added, removed or modified since the previous view.
+     *                        See {@link #changedSlingIds(EtcdTopologyView, Announces, Map, String)}.
+     * @param current {@code true} if the view is current ; {@code false} otherwise.
+     */
+    public EtcdTopologyView(@Nullable EtcdTopologyView previous, @Nonnull Announces announces, @Nonnull Map<String, Map<String, String>> properties,
+                            @Nonnull String slingId, @Nonnull Set<String> changedSlingIds, boolean current) {
         this.current = current;
         this.properties = Collections.unmodifiableMap(properties);
         this.announces = announces;
         this.slingId = slingId;
         int size = announces.size();
         if (size > 0) {
-            // build cluster views and instances
-            Set<EtcdClusterView> clusterViews = new HashSet<EtcdClusterView>();
-            List<InstanceDescription> instances = new ArrayList<InstanceDescription>();
-            Set<String> clusterIds = new HashSet<String>();
-            Map<String, List<EtcdInstanceDescriptionBuilder>> clusters = getClusteredAnnounces(announces.getAnnounces());
+            // reuse the cluster views not affected by the changes
+            Map<String, EtcdClusterView> clusterViews = new HashMap<String, EtcdClusterView>();
+            if (previous != null) {
+                Set<String> affected = affectedClusterIds(previous, changedSlingIds);
+                for (Map.Entry<String, EtcdClusterView> entry : previous.clusterViews.entrySet()) {
+                    if (! affected.contains(entry.getKey())) {
+                        clusterViews.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            // build the other cluster views and instances
+            Map<String, List<EtcdInstanceDescriptionBuilder>> clusters = getClusteredAnnounces(announces.getAnnounces(), clusterViews.keySet());
             for (Map.Entry<String, List<EtcdInstanceDescriptionBuilder>> entry : clusters.entrySet()) {
-                EtcdClusterView clusterView = new EtcdClusterView(entry.getKey(), entry.getValue());
-                clusterViews.add(clusterView);
+                clusterViews.put(entry.getKey(), new EtcdClusterView(entry.getKey(), entry.getValue()));
+            }
+            List<InstanceDescription> instances = new ArrayList<InstanceDescription>(size);
+            for (EtcdClusterView clusterView : clusterViews.values()) {
                 instances.addAll(clusterView.getInstances());
-                clusterIds.add(clusterView.getId());
             }
             // find the local instance and assert
             // that only one instance is local
@@ -100,14 +142,47 @@ public class EtcdTopologyView implements TopologyView {
                 throw new EtcdDiscoveryRuntimeException("No local instance found in the view");
             }
             this.local = local;
-            this.views = Collections.unmodifiableSet(Collections.<ClusterView>unmodifiableSet(clusterViews));
+            this.clusterViews = clusterViews;
+            this.views = Collections.unmodifiableSet(new HashSet<ClusterView>(clusterViews.values()));
             this.instances = Collections.unmodifiableSet(new HashSet<InstanceDescription>(instances));
-            this.clusterIds = Collections.unmodifiableSet(clusterIds);
+            this.clusterIds = Collections.unmodifiableSet(clusterViews.keySet());
         } else {
             throw new EtcdDiscoveryRuntimeException("Can't compute the topology with empty announces");
         }
     }
 
+    /**
+     * Compute the set of instances added, removed or modified (announce, cluster or properties)
+     * between a view and the given announces and properties.
+     * If the view belongs to another local instance, all instances are considered changed.
+     *
+     * @param view the view to compare with
+     * @param announces the new announces
+     * @param properties the new properties
+     * @param slingId the local instance Sling identifier
+     * @return the Sling identifiers of the changed instances
+     */
+    @Nonnull
+    public static Set<String> changedSlingIds(@Nonnull EtcdTopologyView view, @Nonnull Announces announces,
+                                              @Nonnull Map<String, Map<String, String>> properties, @Nonnull String slingId) {
+        Set<String> changed = new HashSet<String>();
+        boolean sameLocal = view.slingId.equals(slingId);
+        for (Announce announce : announces.getAnnounces()) {
+            String id = announce.getData().slingId();
+            Announce old = view.announces.getBySlingId(id);
+            if (! sameLocal || old == null || ! old.sameAs(announce) || ! sameProperties(view.properties.get(id), properties.get(id))) {
+                changed.add(id);
+            }
+        }
+        for (Announce old : view.announces.getAnnounces()) {
+            String id = old.getData().slingId();
+            if (! announces.containsBySlingId(id)) {
+                changed.add(id);
+            }
+        }
+        return changed;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -144,6 +219,51 @@ public class EtcdTopologyView implements TopologyView {
         return match;
     }
 
+    /**
+     * @param slingId the Sling identifier of the instance
+     * @return the instance with the given Sling identifier or {@code null} if the view contains no such instance.
+     */
+    @Nullable
+    public InstanceDescription getInstance(@Nonnull String slingId) {
+        Map<String, InstanceDescription> index = instancesBySlingId;
+        if (index == null) {
+            Map<String, InstanceDescription> built = new HashMap<String, InstanceDescription>(instances.size() * 2);
+            for (InstanceDescription instance : instances) {
+                built.put(instance.getSlingId(), instance);
+            }
+            index = Collections.unmodifiableMap(built);
+            instancesBySlingId = index;
+        }
+        return index.get(slingId);
+    }
+
+    /**
+     * @param clusterId the cluster identifier
+     * @return the instances of the cluster, in the cluster order, or an empty list if the view contains no such cluster.
+     */
+    @Nonnull
+    public List<InstanceDescription> getClusterInstances(@Nonnull String clusterId) {
+        EtcdClusterView clusterView = clusterViews.get(clusterId);
+        return (clusterView != null) ? clusterView.getInstances() : Collections.<InstanceDescription>emptyList();
+    }
+
+    /**
+     * @param name the property name
+     * @param value the property value
+     * @return the instances having the given property value, the returned set is not modifiable.
+     */
+    @Nonnull
+    public Set<InstanceDescription> findInstances(@Nonnull String name, @Nonnull String value) {
+        Map<String, Map<String, Set<InstanceDescription>>> index = instancesByProperty;
+        if (index == null) {
+            index = buildPropertyIndex();
+            instancesByProperty = index;
+        }
+        Map<String, Set<InstanceDescription>> byValue = index.get(name);
+        Set<InstanceDescription> match = (byValue != null) ? byValue.get(value) : null;
+        return (match != null) ? match : Collections.<InstanceDescription>emptySet();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -177,6 +297,14 @@ public class EtcdTopologyView implements TopologyView {
         return properties;
     }
 
+    /**
+     * @return the cluster views by cluster identifier.
+     */
+    @Nonnull
+    Map<String, EtcdClusterView> getClusterViewsById() {
+        return clusterViews;
+    }
+
     /**
      * @return {@code true} if the view was current before setting it to non current ; {@code false} otherwise.
      */
@@ -186,6 +314,57 @@ public class EtcdTopologyView implements TopologyView {
         return old;
     }
 
+    @Nonnull
+    private Map<String, Map<String, Set<InstanceDescription>>> buildPropertyIndex() {
+        Map<String, Map<String, Set<InstanceDescription>>> index = new HashMap<String, Map<String, Set<InstanceDescription>>>();
+        for (InstanceDescription instance : instances) {
+            for (Map.Entry<String, String> property : instance.getProperties().entrySet()) {
+                Map<String, Set<InstanceDescription>> byValue = index.get(property.getKey());
+                if (byValue == null) {
+                    byValue = new HashMap<String, Set<InstanceDescription>>();
+                    index.put(property.getKey(), byValue);
+                }
+                Set<InstanceDescription> match = byValue.get(property.getValue());
+                if (match == null) {
+                    match = new HashSet<InstanceDescription>();
+                    byValue.put(property.getValue(), match);
+                }
+                match.add(instance);
+            }
+        }
+        for (Map<String, Set<InstanceDescription>> byValue : index.values()) {
+            for (Map.Entry<String, Set<InstanceDescription>> entry : byValue.entrySet()) {
+                entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the identifiers of the clusters which contained or contain one of the changed instances.
+     */
+    private Set<String> affectedClusterIds(@Nonnull EtcdTopologyView previous, @Nonnull Set<String> changedSlingIds) {
+        Set<String> affected = new HashSet<String>();
+        if (! previous.slingId.equals(slingId)) {
+            affected.addAll(previous.clusterIds);
+        }
+        for (String id : changedSlingIds) {
+            Announce old = previous.announces.getBySlingId(id);
+            if (old != null) {
+                affected.add(old.getData().clusterId());
+            }
+            Announce announce = announces.getBySlingId(id);
+            if (announce != null) {
+                affected.add(announce.getData().clusterId());
+            }
+        }
+        return affected;
+    }
+
+    private static boolean sameProperties(@Nullable Map<String, String> properties1, @Nullable Map<String, String> properties2) {
+        return properties1 == null ? properties2 == null : properties1.equals(properties2);
+    }
+
     private EtcdInstanceDescriptionBuilder builder(@Nonnull Announce announce, boolean leader) {
         String id = announce.getData().slingId();
         boolean local = id.equals(slingId);
@@ -197,15 +376,18 @@ public class EtcdTopologyView implements TopologyView {
     }
 
     /**
-     * Group the announces per cluster identifier.
+     * Group the announces per cluster identifier, skipping the given clusters.
      * The first announce per cluster is the cluster leader.
      *
      * @return the clustered map of announces
      */
-    private Map<String, List<EtcdInstanceDescriptionBuilder>> getClusteredAnnounces(List<Announce> announces) {
+    private Map<String, List<EtcdInstanceDescriptionBuilder>> getClusteredAnnounces(List<Announce> announces, Set<String> skippedClusterIds) {
         Map<String, List<EtcdInstanceDescriptionBuilder>> clusters = new HashMap<String, List<EtcdInstanceDescriptionBuilder>>();
         for (Announce announce : announces) {
             String clusterId = announce.getData().clusterId();
+            if (skippedClusterIds.contains(clusterId)) {
+                continue;
+            }
             List<EtcdInstanceDescriptionBuilder> cluster = clusters.get(clusterId);
             if (cluster == null) {
                 cluster = new ArrayList<EtcdInstanceDescriptionBuilder>();
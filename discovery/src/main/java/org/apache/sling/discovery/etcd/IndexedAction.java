@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import javax.annotation.Nonnull;
+
+import org.apache.sling.etcd.client.KeyAction;
+
+/**
+ * The {@code IndexedAction} holds an etcd action along with the etcd index at the time the action was returned.
+ * The difference between both indexes tells how far a watcher lags behind the etcd head.
+ */
+public class IndexedAction {
+
+    private final KeyAction action;
+
+    private final long etcdIndex;
+
+    /**
+     * @param action the etcd action
+     * @param etcdIndex the etcd index at the time the action was returned
+     */
+    public IndexedAction(@Nonnull KeyAction action, long etcdIndex) {
+        this.action = action;
+        this.etcdIndex = etcdIndex;
+    }
+
+    /**
+     * @return the etcd action
+     */
+    @Nonnull
+    public KeyAction getAction() {
+        return action;
+    }
+
+    /**
+     * @return the etcd index at the time the action was returned
+     */
+    public long getEtcdIndex() {
+        return etcdIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedAction{" +
+                "action=" + action +
+                ", etcdIndex=" + etcdIndex +
+                '}';
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.apache.sling.etcd.client.EtcdNode;
+
+/**
+ * The {@code IndexedNodes} holds a list of etcd nodes along with the etcd index at which the nodes have been read.
+ * Watching for changes from the next index guarantees that no change applied after the read is missed.
+ */
+public class IndexedNodes {
+
+    private final List<EtcdNode> nodes;
+
+    private final long etcdIndex;
+
+    /**
+     * @param nodes the etcd nodes
+     * @param etcdIndex the etcd index at which the nodes have been read
+     */
+    public IndexedNodes(@Nonnull List<EtcdNode> nodes, long etcdIndex) {
+        this.nodes = nodes;
+        this.etcdIndex = etcdIndex;
+    }
+
+    /**
+     * @return the etcd nodes
+     */
+    @Nonnull
+    public List<EtcdNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the etcd index at which the nodes have been read
+     */
+    public long getEtcdIndex() {
+        return etcdIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedNodes{" +
+                "nodes=" + nodes +
+                ", etcdIndex=" + etcdIndex +
+                '}';
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.commons.osgi.PropertiesUtil;
+
+/**
+ * The {@code ListenerFilter} holds the interest of a topology listener, declared through the
+ * listener service properties. The changes of the current view which match no interest are
+ * not dispatched to the listener (neither the {@code TOPOLOGY_CHANGING} event nor the event
+ * closing the change).
+ * Instances of this class are immutable.
+ */
+public final class ListenerFilter {
+
+    /**
+     * Service property listing the property names (with {@code *} wildcards) of interest.
+     * A property change is dispatched only if one of the changed property names matches.
+     */
+    public static final String PROPERTY_NAMES = "org.apache.sling.discovery.etcd.filter.propertyNames";
+
+    /**
+     * Service property listing the cluster identifiers of interest.
+     * A change is dispatched only if it affects one of the clusters.
+     */
+    public static final String CLUSTER_IDS = "org.apache.sling.discovery.etcd.filter.clusterIds";
+
+    /**
+     * Service property restricting the interest to the cluster of the local instance.
+     */
+    public static final String LOCAL_CLUSTER_ONLY = "org.apache.sling.discovery.etcd.filter.localClusterOnly";
+
+    /**
+     * The filter accepting all changes.
+     */
+    public static final ListenerFilter ALL = new ListenerFilter(Collections.<Pattern>emptyList(), Collections.<String>emptySet(), false);
+
+    private final List<Pattern> propertyNames;
+
+    private final Set<String> clusterIds;
+
+    private final boolean localClusterOnly;
+
+    private ListenerFilter(@Nonnull List<Pattern> propertyNames, @Nonnull Set<String> clusterIds, boolean localClusterOnly) {
+        this.propertyNames = propertyNames;
+        this.clusterIds = clusterIds;
+        this.localClusterOnly = localClusterOnly;
+    }
+
+    /**
+     * Build the filter declared by the listener service properties.
+     *
+     * @param properties the listener service properties or {@code null}
+     * @return the filter
+     */
+    @Nonnull
+    public static ListenerFilter fromProperties(@Nullable Map<String, Object> properties) {
+        if (properties == null) {
+            return ALL;
+        }
+        String[] names = PropertiesUtil.toStringArray(properties.get(PROPERTY_NAMES), new String[0]);
+        String[] clusters = PropertiesUtil.toStringArray(properties.get(CLUSTER_IDS), new String[0]);
+        boolean localClusterOnly = PropertiesUtil.toBoolean(properties.get(LOCAL_CLUSTER_ONLY), false);
+        if (names.length == 0 && clusters.length == 0 && ! localClusterOnly) {
+            return ALL;
+        }
+        List<Pattern> patterns = new ArrayList<Pattern>(names.length);
+        for (String name : names) {
+            patterns.add(toPattern(name));
+        }
+        return new ListenerFilter(Collections.unmodifiableList(patterns),
+                Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(clusters))), localClusterOnly);
+    }
+
+    /**
+     * @param diff the changes from the old view to the new view.
+     * @param oldView the old view
+     * @param newView the new view
+     * @return {@code true} if the changes match the interest ; {@code false} otherwise.
+     */
+    public boolean accept(@Nonnull TopologyDiff diff, @Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyView newView) {
+        if (this == ALL) {
+            return true;
+        }
+        if (! clusterIds.isEmpty() || localClusterOnly) {
+            if (! affectsClusters(diff, oldView, newView)) {
+                return false;
+            }
+        }
+        if (! propertyNames.isEmpty() && ! diff.isTopologyChanged()) {
+            return matchesPropertyNames(diff);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerFilter{" +
+                "propertyNames=" + propertyNames +
+                ", clusterIds=" + clusterIds +
+                ", localClusterOnly=" + localClusterOnly +
+                '}';
+    }
+
+    //
+
+    private boolean affectsClusters(@Nonnull TopologyDiff diff, @Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyView newView) {
+        Set<String> changed = diff.getChangedClusterIds();
+        if (localClusterOnly) {
+            if (changed.contains(oldView.getLocalInstance().getClusterView().getId())
+                    || changed.contains(newView.getLocalInstance().getClusterView().getId())) {
+                return true;
+            }
+        }
+        for (String clusterId : clusterIds) {
+            if (changed.contains(clusterId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesPropertyNames(@Nonnull TopologyDiff diff) {
+        for (Set<String> keys : diff.getChangedPropertyKeys().values()) {
+            for (String key : keys) {
+                for (Pattern pattern : propertyNames) {
+                    if (pattern.matcher(key).matches()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private static Pattern toPattern(@Nonnull String name) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int index = name.indexOf('*') ; index >= 0 ; index = name.indexOf('*', start)) {
+            regex.append(Pattern.quote(name.substring(start, index))).append(".*");
+            start = index + 1;
+        }
+        regex.append(Pattern.quote(name.substring(start)));
+        return Pattern.compile(regex.toString());
+    }
+
+}
@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.discovery.TopologyEvent;
+import org.apache.sling.discovery.TopologyEventListener;
+import org.apache.sling.discovery.TopologyView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code ListenerQueue} holds the topology events pending delivery to a single listener.
+ * The events are delivered in order by at most one task at a time, running on the given executor.
+ * Consecutive pending changes (a {@code TOPOLOGY_CHANGING} event followed by the event closing the change)
+ * are coalesced into a single change, from the view before the first change to the view after the last one.
+ * Once the queue reaches its capacity, the pending events are folded into the shortest
+ * sequence leading the listener to the same view and the listener is flagged as slow.
+ */
+public class ListenerQueue implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListenerQueue.class);
+
+    private final TopologyEventListener listener;
+
+    private final ListenerFilter filter;
+
+    private final Executor executor;
+
+    private final int capacity;
+
+    private final long slowThreshold;
+
+    private LinkedList<TopologyEvent> events = new LinkedList<TopologyEvent>();
+
+    /**
+     * {@code true} while a task delivering the events is scheduled or running.
+     */
+    private boolean scheduled;
+
+    private boolean closed;
+
+    private boolean slow;
+
+    private int maxSize;
+
+    private long dispatched;
+
+    private long coalesced;
+
+    private long filtered;
+
+    private long totalLatency;
+
+    private long maxLatency;
+
+    /**
+     * @param listener the listener receiving the events.
+     * @param executor the executor running the delivery tasks.
+     * @param capacity the number of pending events above which the events are folded.
+     * @param slowThreshold the handling time (ms) above which the listener is flagged as slow.
+     */
+    public ListenerQueue(@Nonnull TopologyEventListener listener, @Nonnull Executor executor, int capacity, long slowThreshold) {
+        this(listener, ListenerFilter.ALL, executor, capacity, slowThreshold);
+    }
+
+    /**
+     * @param listener the listener receiving the events.
+     * @param filter the interest of the listener.
+     * @param executor the executor running the delivery tasks.
+     * @param capacity the number of pending events above which the events are folded.
+     * @param slowThreshold the handling time (ms) above which the listener is flagged as slow.
+     */
+    public ListenerQueue(@Nonnull TopologyEventListener listener, @Nonnull ListenerFilter filter,
+                         @Nonnull Executor executor, int capacity, long slowThreshold) {
+        this.listener = listener;
+        this.filter = filter;
+        this.executor = executor;
+        this.capacity = Math.max(capacity, 1);
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * Queue an event for delivery.
+     *
+     * @param event the event to be delivered.
+     */
+    public void offer(@Nonnull TopologyEvent event) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (events.size() >= capacity) {
+                fold();
+            }
+            coalesced += append(events, event, false);
+            maxSize = Math.max(maxSize, events.size());
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        schedule();
+    }
+
+    /**
+     * Record events not dispatched to the listener because they did not match its filter.
+     *
+     * @param count the number of skipped events.
+     */
+    public synchronized void skip(int count) {
+        filtered += count;
+    }
+
+    /**
+     * Drop the pending events and stop delivering events to the listener.
+     */
+    public synchronized void close() {
+        closed = true;
+        events.clear();
+    }
+
+    public void run() {
+        for (;;) {
+            TopologyEvent event;
+            synchronized (this) {
+                event = events.poll();
+                if (event == null || closed) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            deliver(event);
+        }
+    }
+
+    @Nonnull
+    public TopologyEventListener getListener() {
+        return listener;
+    }
+
+    @Nonnull
+    public ListenerFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return the number of events pending delivery.
+     */
+    public synchronized int getSize() {
+        return events.size();
+    }
+
+    /**
+     * @return the largest number of events ever pending delivery.
+     */
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of events delivered to the listener.
+     */
+    public synchronized long getDispatched() {
+        return dispatched;
+    }
+
+    /**
+     * @return the number of events merged into another pending event.
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return the number of events not dispatched because they did not match the listener filter.
+     */
+    public synchronized long getFiltered() {
+        return filtered;
+    }
+
+    /**
+     * @return the average handling time (ms) of the delivered events.
+     */
+    public synchronized long getAverageLatency() {
+        return (dispatched > 0) ? totalLatency / dispatched : 0;
+    }
+
+    /**
+     * @return the longest handling time (ms) of the delivered events.
+     */
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * @return {@code true} if the listener either took longer than the threshold to handle
+     *         an event or let its queue reach its capacity.
+     */
+    public synchronized boolean isSlow() {
+        return slow;
+    }
+
+    //
+
+    private void schedule() {
+        try {
+            executor.execute(this);
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to schedule the delivery of topology events, delivering in the calling thread", e);
+            run();
+        }
+    }
+
+    private void deliver(@Nonnull TopologyEvent event) {
+        long start = System.currentTimeMillis();
+        try {
+            listener.handleTopologyEvent(event);
+        } catch (Exception e) {
+            LOG.info("Exception when dispatching the topology event", e);
+        }
+        long latency = System.currentTimeMillis() - start;
+        synchronized (this) {
+            dispatched++;
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+            if (latency > slowThreshold) {
+                flagSlow("took " + latency + " ms to handle a " + event.getType() + " event");
+            }
+        }
+    }
+
+    /**
+     * Fold the pending events into the shortest equivalent sequence.
+     */
+    private void fold() {
+        LinkedList<TopologyEvent> folded = new LinkedList<TopologyEvent>();
+        for (TopologyEvent event : events) {
+            coalesced += append(folded, event, true);
+        }
+        events = folded;
+        flagSlow("let " + capacity + " topology events pending");
+    }
+
+    private void flagSlow(@Nonnull String reason) {
+        if (! slow) {
+            LOG.warn("Topology listener {} is slow, it {}", listener, reason);
+        }
+        slow = true;
+    }
+
+    /**
+     * Append an event to a sequence of pending events, merging it with the last pending events when possible.
+     *
+     * @param events the pending events.
+     * @param event the event to be appended.
+     * @param fold {@code true} in order to merge the changes left open as well as the closed changes.
+     * @return the number of events saved by merging the event ; {@code 0} if the event has been appended.
+     */
+    private static int append(@Nonnull LinkedList<TopologyEvent> events, @Nonnull TopologyEvent event, boolean fold) {
+        TopologyEvent last = events.peekLast();
+        TopologyEvent.Type type = event.getType();
+        if (last != null) {
+            TopologyEvent.Type lastType = last.getType();
+            if (isClosing(type) && lastType == TopologyEvent.Type.TOPOLOGY_CHANGING && events.size() > 2) {
+                TopologyEvent closing = events.get(events.size() - 2);
+                if (isClosing(closing.getType())
+                        && events.get(events.size() - 3).getType() == TopologyEvent.Type.TOPOLOGY_CHANGING) {
+                    // the pending change closed by the event follows a pending change, the listener gets a single
+                    // change from the view before the first change to the newest view
+                    boolean properties = closing.getType() == TopologyEvent.Type.PROPERTIES_CHANGED
+                            && type == TopologyEvent.Type.PROPERTIES_CHANGED
+                            && closing.getNewView() == last.getOldView()
+                            && last.getOldView() == event.getOldView();
+                    events.removeLast();
+                    events.removeLast();
+                    events.add(event(properties ? TopologyEvent.Type.PROPERTIES_CHANGED : TopologyEvent.Type.TOPOLOGY_CHANGED,
+                            closing.getOldView(), event.getNewView()));
+                    return 2;
+                }
+            }
+            if (type == TopologyEvent.Type.PROPERTIES_CHANGED) {
+                if (lastType == TopologyEvent.Type.PROPERTIES_CHANGED
+                        || (fold && lastType == TopologyEvent.Type.TOPOLOGY_CHANGED)
+                        || (fold && lastType == TopologyEvent.Type.TOPOLOGY_INIT)) {
+                    // the listener gets the newest view directly
+                    events.removeLast();
+                    events.add(event(lastType, last.getOldView(), event.getNewView()));
+                    return 1;
+                }
+            } else if (fold && type == TopologyEvent.Type.TOPOLOGY_CHANGING) {
+                if (isClosing(lastType) && events.size() > 1
+                        && events.get(events.size() - 2).getType() == TopologyEvent.Type.TOPOLOGY_CHANGING) {
+                    // the listener stays in the changing state
+                    events.removeLast();
+                    return 1;
+                }
+                if (lastType == TopologyEvent.Type.PROPERTIES_CHANGED) {
+                    // the view changing is the last view delivered to the listener
+                    events.removeLast();
+                    events.add(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, last.getOldView(), null));
+                    return 1;
+                }
+            }
+            if (isClosing(type)
+                    && lastType == TopologyEvent.Type.TOPOLOGY_CHANGING
+                    && last.getOldView() != event.getOldView()) {
+                // the changing view differs from the old view of the event, the topology may have changed in between
+                events.add(event(TopologyEvent.Type.TOPOLOGY_CHANGED, last.getOldView(), event.getNewView()));
+                return 0;
+            }
+        }
+        events.add(event);
+        return 0;
+    }
+
+    /**
+     * @return {@code true} if the event type closes a topology change.
+     */
+    private static boolean isClosing(@Nonnull TopologyEvent.Type type) {
+        return type == TopologyEvent.Type.TOPOLOGY_CHANGED || type == TopologyEvent.Type.PROPERTIES_CHANGED;
+    }
+
+    /**
+     * Build a merged event, along with the diff between its views for the etcd views.
+     */
+    @Nonnull
+    private static TopologyEvent event(@Nonnull TopologyEvent.Type type, @Nullable TopologyView oldView, @Nullable TopologyView newView) {
+        if (oldView instanceof EtcdTopologyView && newView instanceof EtcdTopologyView) {
+            return new EtcdTopologyEvent(type, (EtcdTopologyView) oldView, (EtcdTopologyView) newView);
+        }
+        return new TopologyEvent(type, oldView, newView);
+    }
+
+}
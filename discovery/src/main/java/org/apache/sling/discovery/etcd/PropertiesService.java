@@ -19,21 +19,32 @@
 package org.apache.sling.discovery.etcd;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.sling.commons.osgi.ServiceUtil;
 import org.apache.sling.discovery.PropertyProvider;
 
 /**
  * The {@code PropertiesService} manages the {@code PropertyProvider}s instances running on the local instance.
+ * The merged properties are cached until a provider is bound or unbound, a {@link VersionedPropertyProvider}
+ * bumps its version, or a provider properties reach the maximum age.
+ * The polling providers are refreshed by {@link #poll()} on their own schedule, not when loading the properties.
  */
 public class PropertiesService {
 
+    /**
+     * The default maximum age in milliseconds of the properties loaded from a provider.
+     */
+    public static final long DEFAULT_MAX_AGE = 10000;
+
     /**
      * Concurrent sorted map holding the {@link PropertyProvider} references.
      * The providers are stored in natural order according to service ranking (lowest service ranking first).
@@ -41,15 +52,73 @@ public class PropertiesService {
     private final SortedMap<Comparable<Object>, Provider> propertyProviders =
             new ConcurrentSkipListMap<Comparable<Object>, Provider>();
 
+    /**
+     * Counts the changes of the providers bindings and of the providers properties.
+     */
+    private final AtomicLong changes = new AtomicLong();
+
+    private volatile long maxAge = DEFAULT_MAX_AGE;
+
+    private volatile Runnable changeListener;
+
+    /**
+     * The merged properties, guarded by {@code this}.
+     */
+    private Map<String, String> merged = Collections.emptyMap();
+
+    /**
+     * The value of {@link #changes} when the properties were last merged, guarded by {@code this}.
+     */
+    private long mergedChanges = -1;
+
     /**
      * Load the properties for the local instance from all {@link PropertyProvider} providers.
-     * @return A new map instance containing the local properties.
+     * Only the {@link VersionedPropertyProvider} which version moved and the providers which have never been
+     * loaded are invoked, the other providers properties are taken from the cache.
+     *
+     * @return An unmodifiable map containing the local properties. The same instance is returned as long as
+     *         the properties did not change.
      */
     @Nonnull
-    public Map<String, String> load() {
-        Map<String, String> next = new HashMap<String, String>();
+    public synchronized Map<String, String> load() {
         for (Provider provider : getProviders()) {
-            next.putAll(provider.properties());
+            if (provider.refresh(false)) {
+                changes.incrementAndGet();
+            }
+        }
+        long current = changes.get();
+        if (current != mergedChanges) {
+            Map<String, String> next = new HashMap<String, String>();
+            for (Provider provider : getProviders()) {
+                next.putAll(provider.properties());
+            }
+            merged = Collections.unmodifiableMap(next);
+            mergedChanges = current;
+        }
+        return merged;
+    }
+
+    /**
+     * Reload the properties of the providers which reached the maximum age
+     * and notify the change listener if any properties changed.
+     *
+     * @return the time in milliseconds until the next provider reaches the maximum age.
+     */
+    public long poll() {
+        long age = maxAge;
+        long next = age;
+        boolean changed = false;
+        for (Provider provider : getProviders()) {
+            long now = System.currentTimeMillis();
+            if (now - provider.loadTime() >= age) {
+                changed |= provider.refresh(true);
+                now = System.currentTimeMillis();
+            }
+            next = Math.min(next, Math.max(0, provider.loadTime() + age - now));
+        }
+        if (changed) {
+            changes.incrementAndGet();
+            notifyChange();
         }
         return next;
     }
@@ -57,10 +126,35 @@ public class PropertiesService {
     public void bind(PropertyProvider propertyProvider, Map<String, Object> properties) {
         Provider provider = new Provider(properties, propertyProvider);
         propertyProviders.put(ServiceUtil.getComparableForServiceRanking(properties), provider);
+        changes.incrementAndGet();
+        notifyChange();
     }
 
     public void unbind(PropertyProvider propertyProvider, Map<String, Object> properties) {
-        propertyProviders.remove(ServiceUtil.getComparableForServiceRanking(properties));
+        if (propertyProviders.remove(ServiceUtil.getComparableForServiceRanking(properties)) != null) {
+            changes.incrementAndGet();
+            notifyChange();
+        }
+    }
+
+    /**
+     * @param maxAge the maximum age in milliseconds of the properties loaded from a provider.
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Set the listener invoked whenever the providers bindings or the polled properties changed.
+     *
+     * @param changeListener the listener or {@code null} to remove it.
+     */
+    public void setChangeListener(@Nullable Runnable changeListener) {
+        this.changeListener = changeListener;
     }
 
     @Nonnull
@@ -68,8 +162,15 @@ public class PropertiesService {
         return propertyProviders.values();
     }
 
+    private void notifyChange() {
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
     /**
-     * Holds the service properties and properties for a {@link PropertyProvider} instance.
+     * Holds the service properties and the cached properties for a {@link PropertyProvider} instance.
      */
     protected static class Provider {
 
@@ -79,21 +180,73 @@ public class PropertiesService {
 
         final PropertyProvider provider;
 
+        private volatile Map<String, String> properties;
+
+        private volatile long version;
+
+        private volatile long loadTime;
+
         public Provider(@Nonnull Map<String, Object> serviceProperties, @Nonnull PropertyProvider provider) {
             this.serviceProperties = serviceProperties;
             this.provider = provider;
         }
 
+        /**
+         * @return the properties cached at the last refresh.
+         */
         @Nonnull
         public Map<String,String> properties() {
+            Map<String, String> props = properties;
+            return props != null ? props : Collections.<String, String>emptyMap();
+        }
+
+        /**
+         * Reload the properties from the provider if they have never been loaded, if the provider version moved,
+         * or if {@code force} is {@code true}.
+         *
+         * @param force {@code true} in order to reload the properties regardless of the provider version.
+         * @return {@code true} if the cached properties changed ; {@code false} otherwise.
+         */
+        synchronized boolean refresh(boolean force) {
+            long nextVersion = (provider instanceof VersionedPropertyProvider)
+                    ? ((VersionedPropertyProvider) provider).getVersion()
+                    : version;
+            Map<String, String> current = properties;
+            if (! force && current != null && nextVersion == version) {
+                return false;
+            }
+            Map<String, String> next = load();
+            version = nextVersion;
+            loadTime = System.currentTimeMillis();
+            if (next.equals(current)) {
+                return false;
+            }
+            properties = next;
+            return true;
+        }
+
+        long loadTime() {
+            return loadTime;
+        }
+
+        @Nonnull
+        private Map<String, String> load() {
             Map<String, String> props = new HashMap<String, String>();
-            for (String name : names()) {
-                String value = provider.getProperty(name);
-                if (value != null) {
-                    props.put(name, value);
+            if (provider instanceof VersionedPropertyProvider) {
+                for (Map.Entry<String, String> entry : ((VersionedPropertyProvider) provider).getProperties().entrySet()) {
+                    if (entry.getKey() != null && entry.getValue() != null) {
+                        props.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            } else {
+                for (String name : names()) {
+                    String value = provider.getProperty(name);
+                    if (value != null) {
+                        props.put(name, value);
+                    }
                 }
             }
-            return props;
+            return Collections.unmodifiableMap(props);
         }
 
         @Nonnull
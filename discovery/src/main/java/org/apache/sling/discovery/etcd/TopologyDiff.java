@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.discovery.InstanceDescription;
+
+/**
+ * The {@code TopologyDiff} describes the changes between two topology views.
+ * The cluster views shared by both views are skipped, such that the diff of views built
+ * incrementally costs in proportion to the changed clusters rather than the whole topology.
+ * Instances of this class are immutable.
+ */
+public final class TopologyDiff {
+
+    private final Set<String> addedSlingIds;
+
+    private final Set<String> removedSlingIds;
+
+    private final Set<String> movedSlingIds;
+
+    private final Set<String> leaderChangedSlingIds;
+
+    private final Map<String, Set<String>> changedPropertyKeys;
+
+    private final Set<String> addedClusterIds;
+
+    private final Set<String> removedClusterIds;
+
+    private final Set<String> changedClusterIds;
+
+    private TopologyDiff(@Nonnull Set<String> addedSlingIds, @Nonnull Set<String> removedSlingIds,
+                         @Nonnull Set<String> movedSlingIds, @Nonnull Set<String> leaderChangedSlingIds, @Nonnull Map<String, Set<String>> changedPropertyKeys,
+                         @Nonnull Set<String> addedClusterIds, @Nonnull Set<String> removedClusterIds,
+                         @Nonnull Set<String> changedClusterIds) {
+        this.addedSlingIds = Collections.unmodifiableSet(addedSlingIds);
+        this.removedSlingIds = Collections.unmodifiableSet(removedSlingIds);
+        this.movedSlingIds = Collections.unmodifiableSet(movedSlingIds);
+        this.leaderChangedSlingIds = Collections.unmodifiableSet(leaderChangedSlingIds);
+        this.changedPropertyKeys = Collections.unmodifiableMap(changedPropertyKeys);
+        this.addedClusterIds = Collections.unmodifiableSet(addedClusterIds);
+        this.removedClusterIds = Collections.unmodifiableSet(removedClusterIds);
+        this.changedClusterIds = Collections.unmodifiableSet(changedClusterIds);
+    }
+
+    /**
+     * Compute the changes from an old view to a new view.
+     *
+     * @param oldView the old view
+     * @param newView the new view
+     * @return the diff between the two views
+     */
+    @Nonnull
+    public static TopologyDiff compute(@Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyView newView) {
+        Map<String, EtcdClusterView> oldClusters = oldView.getClusterViewsById();
+        Map<String, EtcdClusterView> newClusters = newView.getClusterViewsById();
+        Set<String> addedClusterIds = new HashSet<String>();
+        Set<String> removedClusterIds = new HashSet<String>();
+        Map<String, InstanceDescription> oldInstances = new HashMap<String, InstanceDescription>();
+        Map<String, InstanceDescription> newInstances = new HashMap<String, InstanceDescription>();
+        for (Map.Entry<String, EtcdClusterView> entry : newClusters.entrySet()) {
+            EtcdClusterView oldCluster = oldClusters.get(entry.getKey());
+            if (oldCluster == null) {
+                addedClusterIds.add(entry.getKey());
+            } else if (oldCluster == entry.getValue()) {
+                // cluster view reused from the old view
+                continue;
+            } else {
+                index(oldCluster, oldInstances);
+            }
+            index(entry.getValue(), newInstances);
+        }
+        for (Map.Entry<String, EtcdClusterView> entry : oldClusters.entrySet()) {
+            if (! newClusters.containsKey(entry.getKey())) {
+                removedClusterIds.add(entry.getKey());
+                index(entry.getValue(), oldInstances);
+            }
+        }
+        Set<String> addedSlingIds = new HashSet<String>();
+        Set<String> movedSlingIds = new HashSet<String>();
+        Set<String> leaderChangedSlingIds = new HashSet<String>();
+        Map<String, Set<String>> changedPropertyKeys = new HashMap<String, Set<String>>();
+        Set<String> changedClusterIds = new HashSet<String>(addedClusterIds);
+        changedClusterIds.addAll(removedClusterIds);
+        for (InstanceDescription instance : newInstances.values()) {
+            String slingId = instance.getSlingId();
+            String clusterId = instance.getClusterView().getId();
+            InstanceDescription old = oldInstances.remove(slingId);
+            if (old == null) {
+                addedSlingIds.add(slingId);
+                changedClusterIds.add(clusterId);
+                continue;
+            }
+            String oldClusterId = old.getClusterView().getId();
+            boolean moved = ! oldClusterId.equals(clusterId);
+            boolean changed = moved;
+            if (moved) {
+                movedSlingIds.add(slingId);
+            }
+            if (old.isLeader() != instance.isLeader() || (instance.isLeader() && moved)) {
+                leaderChangedSlingIds.add(slingId);
+                changed = true;
+            }
+            Set<String> keys = changedKeys(old.getProperties(), instance.getProperties());
+            if (! keys.isEmpty()) {
+                changedPropertyKeys.put(slingId, keys);
+                changed = true;
+            }
+            if (changed) {
+                changedClusterIds.add(oldClusterId);
+                changedClusterIds.add(clusterId);
+            }
+        }
+        // the remaining old instances are not in the new view
+        Set<String> removedSlingIds = new HashSet<String>(oldInstances.keySet());
+        for (InstanceDescription old : oldInstances.values()) {
+            changedClusterIds.add(old.getClusterView().getId());
+        }
+        return new TopologyDiff(addedSlingIds, removedSlingIds, movedSlingIds, leaderChangedSlingIds, changedPropertyKeys,
+                addedClusterIds, removedClusterIds, changedClusterIds);
+    }
+
+    /**
+     * @return the Sling identifiers of the instances added to the topology.
+     */
+    @Nonnull
+    public Set<String> getAddedSlingIds() {
+        return addedSlingIds;
+    }
+
+    /**
+     * @return the Sling identifiers of the instances removed from the topology.
+     */
+    @Nonnull
+    public Set<String> getRemovedSlingIds() {
+        return removedSlingIds;
+    }
+
+    /**
+     * @return the Sling identifiers of the instances which moved to another cluster.
+     */
+    @Nonnull
+    public Set<String> getMovedSlingIds() {
+        return movedSlingIds;
+    }
+
+    /**
+     * @return the Sling identifiers of the instances which became or stopped being the leader of their cluster,
+     *         or which lead another cluster.
+     */
+    @Nonnull
+    public Set<String> getLeaderChangedSlingIds() {
+        return leaderChangedSlingIds;
+    }
+
+    /**
+     * @return the names of the added, removed or modified properties, by Sling identifier,
+     *         for the instances present in both views.
+     */
+    @Nonnull
+    public Map<String, Set<String>> getChangedPropertyKeys() {
+        return changedPropertyKeys;
+    }
+
+    /**
+     * @return the identifiers of the cluster views added to the topology.
+     */
+    @Nonnull
+    public Set<String> getAddedClusterIds() {
+        return addedClusterIds;
+    }
+
+    /**
+     * @return the identifiers of the cluster views removed from the topology.
+     */
+    @Nonnull
+    public Set<String> getRemovedClusterIds() {
+        return removedClusterIds;
+    }
+
+    /**
+     * @return the identifiers of the clusters, in either view, which were added, removed
+     *         or contain an added, removed, moved or modified instance.
+     */
+    @Nonnull
+    public Set<String> getChangedClusterIds() {
+        return changedClusterIds;
+    }
+
+    /**
+     * @return {@code true} if the topology changed, beyond the instance properties ; {@code false} otherwise.
+     */
+    public boolean isTopologyChanged() {
+        return ! addedSlingIds.isEmpty() || ! removedSlingIds.isEmpty() || ! movedSlingIds.isEmpty()
+                || ! leaderChangedSlingIds.isEmpty() || ! addedClusterIds.isEmpty() || ! removedClusterIds.isEmpty();
+    }
+
+    /**
+     * @return {@code true} if the diff contains no change ; {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+        return ! isTopologyChanged() && changedPropertyKeys.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TopologyDiff{" +
+                "addedSlingIds=" + addedSlingIds +
+                ", removedSlingIds=" + removedSlingIds +
+                ", movedSlingIds=" + movedSlingIds +
+                ", leaderChangedSlingIds=" + leaderChangedSlingIds +
+                ", changedPropertyKeys=" + changedPropertyKeys +
+                ", addedClusterIds=" + addedClusterIds +
+                ", removedClusterIds=" + removedClusterIds +
+                ", changedClusterIds=" + changedClusterIds +
+                '}';
+    }
+
+    //
+
+    private static void index(@Nonnull EtcdClusterView clusterView, @Nonnull Map<String, InstanceDescription> instances) {
+        for (InstanceDescription instance : clusterView.getInstances()) {
+            instances.put(instance.getSlingId(), instance);
+        }
+    }
+
+    @Nonnull
+    private static Set<String> changedKeys(@Nonnull Map<String, String> oldProperties, @Nonnull Map<String, String> newProperties) {
+        if (oldProperties.equals(newProperties)) {
+            return Collections.emptySet();
+        }
+        Set<String> keys = new HashSet<String>();
+        for (Map.Entry<String, String> entry : newProperties.entrySet()) {
+            String key = entry.getKey();
+            if (! oldProperties.containsKey(key) || ! same(oldProperties.get(key), entry.getValue())) {
+                keys.add(key);
+            }
+        }
+        for (String key : oldProperties.keySet()) {
+            if (! newProperties.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static boolean same(@Nullable String value1, @Nullable String value2) {
+        return (value1 == null) ? value2 == null : value1.equals(value2);
+    }
+
+}
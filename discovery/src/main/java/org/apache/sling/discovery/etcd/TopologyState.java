@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The {@code TopologyState} is an immutable snapshot of the announces and properties
+ * for the local and remote instances, along with the etcd index at which the remote state was read.
+ * The version is incremented whenever the announces or properties change.
+ * Instances of this class are immutable, the {@code with*} methods return a new snapshot,
+ * or the same snapshot if nothing changed.
+ */
+public final class TopologyState {
+
+    private final String slingId;
+
+    private final Announce localAnnounce;
+
+    private final Announces remoteAnnounces;
+
+    private final Map<String, String> localProperties;
+
+    private final Map<String, Map<String, String>> remoteProperties;
+
+    private final long etcdIndex;
+
+    private final long version;
+
+    /**
+     * @param slingId the local instance Sling identifier
+     * @param localAnnounce the initial local instance announce
+     */
+    public TopologyState(@Nonnull String slingId, @Nonnull Announce localAnnounce) {
+        this(slingId, localAnnounce, new Announces(), Collections.<String, String>emptyMap(),
+                Collections.<String, Map<String, String>>emptyMap(), 0, 0);
+    }
+
+    private TopologyState(@Nonnull String slingId, @Nonnull Announce localAnnounce, @Nonnull Announces remoteAnnounces,
+                          @Nonnull Map<String, String> localProperties, @Nonnull Map<String, Map<String, String>> remoteProperties,
+                          long etcdIndex, long version) {
+        this.slingId = slingId;
+        this.localAnnounce = localAnnounce;
+        this.remoteAnnounces = remoteAnnounces;
+        this.localProperties = localProperties;
+        this.remoteProperties = remoteProperties;
+        this.etcdIndex = etcdIndex;
+        this.version = version;
+    }
+
+    /**
+     * @return the local instance Sling identifier
+     */
+    @Nonnull
+    public String getSlingId() {
+        return slingId;
+    }
+
+    /**
+     * @return the local instance announce
+     */
+    @Nonnull
+    public Announce getLocalAnnounce() {
+        return localAnnounce;
+    }
+
+    /**
+     * @return the announces for remote instances
+     */
+    @Nonnull
+    public Announces getRemoteAnnounces() {
+        return remoteAnnounces;
+    }
+
+    /**
+     * @return the announces for local and remote instances
+     */
+    @Nonnull
+    public Announces getAnnounces() {
+        List<Announce> all = new ArrayList<Announce>(remoteAnnounces.size() + 1);
+        all.add(localAnnounce);
+        all.addAll(remoteAnnounces.getAnnounces());
+        return new Announces(all);
+    }
+
+    /**
+     * @return the local instance properties
+     */
+    @Nonnull
+    public Map<String, String> getLocalProperties() {
+        return localProperties;
+    }
+
+    /**
+     * @return the properties for remote instances, keyed by Sling identifier
+     */
+    @Nonnull
+    public Map<String, Map<String, String>> getRemoteProperties() {
+        return remoteProperties;
+    }
+
+    /**
+     * @return the properties for local and remote instances, keyed by Sling identifier
+     */
+    @Nonnull
+    public Map<String, Map<String, String>> getProperties() {
+        Map<String, Map<String, String>> all = new HashMap<String, Map<String, String>>(remoteProperties);
+        all.put(slingId, localProperties);
+        return all;
+    }
+
+    /**
+     * @return the etcd index at which the remote state was read ; {@code 0} if the remote state has not been read yet.
+     */
+    public long getEtcdIndex() {
+        return etcdIndex;
+    }
+
+    /**
+     * @return the version of the state, incremented whenever the announces or properties change.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param announce the local announce
+     * @return the state with the given local announce
+     */
+    @Nonnull
+    public TopologyState withLocalAnnounce(@Nonnull Announce announce) {
+        if (localAnnounce.sameAs(announce)) {
+            return this;
+        }
+        return new TopologyState(slingId, announce, remoteAnnounces, localProperties, remoteProperties, etcdIndex, version + 1);
+    }
+
+    /**
+     * @param properties the local properties
+     * @return the state with the given local properties
+     */
+    @Nonnull
+    public TopologyState withLocalProperties(@Nonnull Map<String, String> properties) {
+        if (localProperties.equals(properties)) {
+            return this;
+        }
+        return new TopologyState(slingId, localAnnounce, remoteAnnounces,
+                Collections.unmodifiableMap(new HashMap<String, String>(properties)), remoteProperties, etcdIndex, version + 1);
+    }
+
+    /**
+     * Replace the remote announces and properties at once.
+     *
+     * @param announces the remote announces
+     * @param properties the remote properties, keyed by Sling identifier
+     * @param etcdIndex the etcd index at which the remote state was read
+     * @return the state with the given remote announces and properties
+     */
+    @Nonnull
+    public TopologyState withRemote(@Nonnull Announces announces, @Nonnull Map<String, Map<String, String>> properties, long etcdIndex) {
+        boolean changed = ! remoteAnnounces.sameAs(announces) || ! remoteProperties.equals(properties);
+        if (! changed && this.etcdIndex == etcdIndex) {
+            return this;
+        }
+        Map<String, Map<String, String>> remote = changed
+                ? Collections.unmodifiableMap(new HashMap<String, Map<String, String>>(properties))
+                : remoteProperties;
+        return new TopologyState(slingId, localAnnounce, changed ? announces : remoteAnnounces,
+                localProperties, remote, etcdIndex, changed ? version + 1 : version);
+    }
+
+    @Override
+    public String toString() {
+        return "TopologyState{" +
+                "slingId='" + slingId + '\'' +
+                ", localAnnounce=" + localAnnounce +
+                ", remoteAnnounces=" + remoteAnnounces +
+                ", localProperties=" + localProperties +
+                ", remoteProperties=" + remoteProperties +
+                ", etcdIndex=" + etcdIndex +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The {@code TopologyStateHolder} publishes the current {@link TopologyState} snapshot.
+ * Readers never block, writers apply copy-on-write updates with compare-and-set.
+ * A change listener is invoked whenever the state version moves.
+ */
+public class TopologyStateHolder {
+
+    private final AtomicReference<TopologyState> state;
+
+    private volatile Runnable changeListener;
+
+    /**
+     * @param initial the initial state
+     */
+    public TopologyStateHolder(@Nonnull TopologyState initial) {
+        state = new AtomicReference<TopologyState>(initial);
+    }
+
+    /**
+     * @return the current state snapshot
+     */
+    @Nonnull
+    public TopologyState get() {
+        return state.get();
+    }
+
+    /**
+     * Set the local announce
+     *
+     * @param announce the local announce
+     */
+    public void setLocalAnnounce(@Nonnull final Announce announce) {
+        update(new Update() {
+            @Nonnull
+            TopologyState apply(@Nonnull TopologyState current) {
+                return current.withLocalAnnounce(announce);
+            }
+        });
+    }
+
+    /**
+     * Set the local properties
+     *
+     * @param properties the local properties
+     */
+    public void setLocalProperties(@Nonnull final Map<String, String> properties) {
+        update(new Update() {
+            @Nonnull
+            TopologyState apply(@Nonnull TopologyState current) {
+                return current.withLocalProperties(properties);
+            }
+        });
+    }
+
+    /**
+     * Set the remote announces and properties at once.
+     *
+     * @param announces the remote announces
+     * @param properties the remote properties, keyed by Sling identifier
+     * @param etcdIndex the etcd index at which the remote state was read
+     */
+    public void setRemote(@Nonnull final Announces announces, @Nonnull final Map<String, Map<String, String>> properties, final long etcdIndex) {
+        update(new Update() {
+            @Nonnull
+            TopologyState apply(@Nonnull TopologyState current) {
+                return current.withRemote(announces, properties, etcdIndex);
+            }
+        });
+    }
+
+    /**
+     * Set the listener invoked, after the state has been published, whenever the state version moves.
+     *
+     * @param changeListener the listener or {@code null} to remove it.
+     */
+    public void setChangeListener(@Nullable Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    @Override
+    public String toString() {
+        return "TopologyStateHolder{" +
+                "state=" + state.get() +
+                '}';
+    }
+
+    private void update(@Nonnull Update update) {
+        for ( ; ; ) {
+            TopologyState current = state.get();
+            TopologyState next = update.apply(current);
+            if (next == current) {
+                return;
+            }
+            if (state.compareAndSet(current, next)) {
+                if (next.getVersion() != current.getVersion()) {
+                    notifyChange();
+                }
+                return;
+            }
+        }
+    }
+
+    private void notifyChange() {
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private abstract static class Update {
+
+        @Nonnull
+        abstract TopologyState apply(@Nonnull TopologyState current);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.apache.sling.discovery.PropertyProvider;
+
+/**
+ * A push-style {@link PropertyProvider} which publishes its properties as a whole.
+ * The provider bumps its version whenever the published properties change.
+ * The properties of a {@code VersionedPropertyProvider} are loaded only when its version moved
+ * or when the properties maximum age elapsed, instead of being polled for each property name.
+ */
+public interface VersionedPropertyProvider extends PropertyProvider {
+
+    /**
+     * @return the version of the published properties. The version must change whenever the properties change.
+     */
+    long getVersion();
+
+    /**
+     * @return the properties published by the provider, keyed by property name.
+     */
+    @Nonnull
+    Map<String, String> getProperties();
+
+}
@@ -18,11 +18,15 @@
  */
 package org.apache.sling.discovery.etcd;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 
@@ -34,11 +38,38 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The {@code ViewManager} manages the current view and sending of events upon view changes.
+ * Each listener gets its events from its own {@link ListenerQueue}, such that a slow listener
+ * neither delays the other listeners nor the discovery threads.
+ * When a stabilization window is configured, a topology change of the current view is held
+ * as a pending view and announced only once the view has been stable for the window,
+ * or the maximum delay has been reached, collapsing the intermediate views into one event.
+ * The listeners bound with a filter get the {@code TOPOLOGY_CHANGING} event of a pending view
+ * only once the view is announced, along with the {@code TOPOLOGY_CHANGED} event and only if
+ * the collapsed change matches their filter.
  */
 public class ViewManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(ViewManager.class);
 
+    /**
+     * The default number of events pending delivery to a listener above which the events are folded.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    /**
+     * The default handling time (ms) above which a listener is flagged as slow.
+     */
+    public static final long DEFAULT_SLOW_LISTENER_THRESHOLD = 5000;
+
+    /**
+     * Executor delivering the events in the calling thread.
+     */
+    private static final Executor CALLER_EXECUTOR = new Executor() {
+        public void execute(@Nonnull Runnable command) {
+            command.run();
+        }
+    };
+
     /**
      * The undefined view is used to comply with the {@code DiscoveryService#getTopology} API which requires never
      * returning a {@code null} view. The minimum defined view (isolated) requires the Sling identifier which is obtained
@@ -65,16 +96,109 @@ public class ViewManager {
      */
     private final Object lock = new Object();
 
+    /**
+     * Holds the queue of each bound listener.
+     */
+    private final Map<TopologyEventListener, ListenerQueue> queues = new HashMap<TopologyEventListener, ListenerQueue>();
+
+    private final Executor executor;
+
+    private final int queueCapacity;
+
+    private final long slowListenerThreshold;
+
     /**
      * The current view.
      */
     private volatile EtcdTopologyView currentView = UNDEFINED_VIEW;
 
+    /**
+     * The time (ms) a pending view must remain unchanged before being announced, {@code 0} to disable.
+     */
+    private long stabilizationWindow;
+
+    /**
+     * The maximum time (ms) a view may remain pending.
+     */
+    private long maxStabilizationDelay;
+
+    /**
+     * The view to be announced once stable, {@code null} if no view is pending.
+     */
+    private EtcdTopologyView pendingView;
+
+    private long pendingSince;
+
+    /**
+     * The filtered listeners which have not been sent the {@code TOPOLOGY_CHANGING} event of the pending view.
+     */
+    private final Set<TopologyEventListener> heldListeners = new HashSet<TopologyEventListener>();
+
+    private long lastPendingChange;
+
+    /**
+     * The number of events suppressed while views were pending.
+     */
+    private long suppressedEvents;
+
+    /**
+     * Build a view manager delivering the events in the thread updating the view.
+     */
+    public ViewManager() {
+        this(CALLER_EXECUTOR, DEFAULT_QUEUE_CAPACITY, DEFAULT_SLOW_LISTENER_THRESHOLD);
+    }
+
+    /**
+     * @param executor the executor delivering the events to the listeners.
+     * @param queueCapacity the number of events pending delivery to a listener above which the events are folded.
+     * @param slowListenerThreshold the handling time (ms) above which a listener is flagged as slow.
+     */
+    public ViewManager(@Nonnull Executor executor, int queueCapacity, long slowListenerThreshold) {
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.slowListenerThreshold = slowListenerThreshold;
+    }
+
     @Nonnull
     public EtcdTopologyView getView() {
         return get();
     }
 
+    /**
+     * Configure the stabilization of the topology changes.
+     *
+     * @param stabilizationWindow the time (ms) a pending view must remain unchanged before being announced,
+     *                            {@code 0} to announce the changes immediately.
+     * @param maxStabilizationDelay the maximum time (ms) a view may remain pending.
+     */
+    public void setStabilization(long stabilizationWindow, long maxStabilizationDelay) {
+        synchronized (lock) {
+            this.stabilizationWindow = Math.max(stabilizationWindow, 0);
+            this.maxStabilizationDelay = Math.max(maxStabilizationDelay, this.stabilizationWindow);
+        }
+    }
+
+    /**
+     * @return the number of events suppressed while views were pending.
+     */
+    public long getSuppressedEvents() {
+        synchronized (lock) {
+            return suppressedEvents;
+        }
+    }
+
+    /**
+     * Announce the pending view if it is stable or has been pending for the maximum delay.
+     *
+     * @return the time (ms) until the pending view is due ; or {@code -1} if no view is pending.
+     */
+    public long publishPendingView() {
+        synchronized (lock) {
+            publishPendingView(System.currentTimeMillis());
+            return pendingDelay(System.currentTimeMillis());
+        }
+    }
+
     /**
      * Update the view and send the required events for each listeners.
      * @param newView the new view to be set.
@@ -87,52 +211,79 @@ public class ViewManager {
      */
     public void updateView(@Nonnull EtcdTopologyView newView) {
 
-        EtcdTopologyView oldView = get();
-        boolean announcesChanged = ! newView.getAnnounces()
-                .equals(oldView.getAnnounces());
-        boolean propertiesChanged = ! newView.getProperties()
-                .equals(oldView.getProperties());
-        boolean clusterChanged = ! newView.getClusterIds()
-                .equals(oldView.getClusterIds());
-        boolean currentChanged = oldView.isCurrent()
-                != newView.isCurrent();
-
+        long now = System.currentTimeMillis();
         synchronized (lock) {
-            if (currentChanged || announcesChanged || propertiesChanged || clusterChanged) {
-                set(newView);
-                boolean oldCurrent = oldView.setNotCurrent();
+            if (pendingView != null) {
                 if (newView.isCurrent()) {
-                    if (oldCurrent) {
-                        send(changingEvent(oldView), listeners);
-                    }
-                    if (announcesChanged || clusterChanged) {
-                        send(changedEvent(oldView, newView), listeners);
-                    } else {
-                        send(propertyChangedEvent(oldView, newView), listeners);
+                    if (changed(pendingView, newView)) {
+                        LOG.debug("Pending view changed, event suppressed");
+                        pendingView = newView;
+                        lastPendingChange = now;
+                        suppressedEvents++;
                     }
-                } else if (oldCurrent) {
-                    send(changingEvent(oldView), listeners);
+                    publishPendingView(now);
+                    return;
                 }
+                // the protocol stopped running, the pending view is dropped
+                // and the held listeners are notified of the change.
+                pendingView = null;
+                send(changingEvent(get()), heldListeners);
+                heldListeners.clear();
             }
 
-            // initialize pending listeners if the view is current
-            EtcdTopologyView currentView = get();
-            if (currentView.isCurrent()) {
-                synchronized (lock) {
-                    if (!nonInitializedListeners.isEmpty()) {
-                        send(initEvent(currentView), nonInitializedListeners);
-                        listeners.addAll(nonInitializedListeners);
-                        nonInitializedListeners.clear();
+            EtcdTopologyView oldView = get();
+            boolean announcesChanged = ! newView.getAnnounces()
+                    .equals(oldView.getAnnounces());
+            boolean clusterChanged = ! newView.getClusterIds()
+                    .equals(oldView.getClusterIds());
+
+            if (changed(oldView, newView)) {
+                boolean oldCurrent = oldView.setNotCurrent();
+                if (newView.isCurrent()) {
+                    if (announcesChanged || clusterChanged) {
+                        if (oldCurrent && stabilizationWindow > 0) {
+                            // the old view remains the (non current) view until the new view is stable
+                            LOG.debug("Topology changed, waiting for the view to be stable");
+                            sendPendingChanging(oldView);
+                            pendingView = newView;
+                            pendingSince = now;
+                            lastPendingChange = now;
+                            return;
+                        }
+                        set(newView);
+                        sendChange(oldView, changedEvent(oldView, newView), oldCurrent);
+                    } else {
+                        set(newView);
+                        sendChange(oldView, propertyChangedEvent(oldView, newView), oldCurrent);
+                    }
+                } else {
+                    set(newView);
+                    if (oldCurrent) {
+                        send(changingEvent(oldView), listeners);
                     }
                 }
             }
+
+            initListeners();
         }
     }
 
     public void bind(TopologyEventListener listener) {
-        LOG.debug("bind TopologyListener: {}", listener);
+        bind(listener, ListenerFilter.ALL);
+    }
+
+    /**
+     * Bind a listener interested in the changes matching the given filter.
+     *
+     * @param listener the listener to be bound.
+     * @param filter the interest of the listener.
+     */
+    public void bind(TopologyEventListener listener, @Nonnull ListenerFilter filter) {
+        LOG.debug("bind TopologyListener: {} with filter: {}", listener, filter);
         synchronized (lock) {
-            nonInitializedListeners.add(listener);
+            if (nonInitializedListeners.add(listener) && ! listeners.contains(listener)) {
+                queues.put(listener, new ListenerQueue(listener, filter, executor, queueCapacity, slowListenerThreshold));
+            }
         }
     }
 
@@ -140,6 +291,10 @@ public class ViewManager {
         boolean removed;
         synchronized (lock) {
              removed = listeners.remove(listener) || nonInitializedListeners.remove(listener);
+             ListenerQueue queue = queues.remove(listener);
+             if (queue != null) {
+                 queue.close();
+             }
         }
         if (removed) {
             LOG.debug("unbind TopologyListener: {}", listener);
@@ -148,8 +303,60 @@ public class ViewManager {
         }
     }
 
+    /**
+     * @return the queues of the bound listeners, holding the delivery statistics.
+     */
+    @Nonnull
+    public List<ListenerQueue> getListenerQueues() {
+        synchronized (lock) {
+            return new ArrayList<ListenerQueue>(queues.values());
+        }
+    }
+
     //
 
+    private boolean changed(@Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyView newView) {
+        return oldView.isCurrent() != newView.isCurrent()
+                || ! newView.getAnnounces().equals(oldView.getAnnounces())
+                || ! newView.getProperties().equals(oldView.getProperties())
+                || ! newView.getClusterIds().equals(oldView.getClusterIds());
+    }
+
+    private void publishPendingView(long now) {
+        EtcdTopologyView newView = pendingView;
+        if (newView == null || pendingDelay(now) > 0) {
+            return;
+        }
+        pendingView = null;
+        EtcdTopologyView oldView = get();
+        set(newView);
+        // TOPOLOGY_CHANGING has been sent when the view became pending, it must be
+        // followed by TOPOLOGY_CHANGED even if the topology changed back meanwhile
+        sendPendingChanged(oldView, changedEvent(oldView, newView));
+        LOG.debug("Published the pending view after {} ms", now - pendingSince);
+        initListeners();
+    }
+
+    private long pendingDelay(long now) {
+        if (pendingView == null) {
+            return -1;
+        }
+        long due = Math.min(lastPendingChange + stabilizationWindow, pendingSince + maxStabilizationDelay);
+        return Math.max(due - now, 0);
+    }
+
+    /**
+     * Initialize the pending listeners if the view is current.
+     */
+    private void initListeners() {
+        EtcdTopologyView currentView = get();
+        if (currentView.isCurrent() && ! nonInitializedListeners.isEmpty()) {
+            send(initEvent(currentView), nonInitializedListeners);
+            listeners.addAll(nonInitializedListeners);
+            nonInitializedListeners.clear();
+        }
+    }
+
     private void set(@Nonnull EtcdTopologyView view) {
         this.currentView = view;
     }
@@ -163,21 +370,93 @@ public class ViewManager {
         send(event, listeners);
     }
 
+    /**
+     * Send a change of the view to the listeners interested in the change.
+     *
+     * @param oldView the view before the change
+     * @param event the event closing the change
+     * @param changing {@code true} to send the {@code TOPOLOGY_CHANGING} event before the event closing the change.
+     */
+    private void sendChange(@Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyEvent event, boolean changing) {
+        if (! changing) {
+            // the listeners got the TOPOLOGY_CHANGING event already and expect the change to be closed
+            send(event, listeners);
+            return;
+        }
+        TopologyEvent changingEvent = changingEvent(oldView);
+        EtcdTopologyView newView = (EtcdTopologyView) event.getNewView();
+        LOG.debug("Send events of type: {}, {}", changingEvent.getType(), event.getType());
+        for (TopologyEventListener listener : listeners) {
+            ListenerQueue queue = queues.get(listener);
+            if (queue == null) {
+                continue;
+            }
+            if (queue.getFilter().accept(event.getDiff(), oldView, newView)) {
+                queue.offer(changingEvent);
+                queue.offer(event);
+            } else {
+                queue.skip(2);
+            }
+        }
+    }
+
+    /**
+     * Send the {@code TOPOLOGY_CHANGING} event of a pending view to the unfiltered listeners.
+     * The filtered listeners are held until the pending view is announced.
+     */
+    private void sendPendingChanging(@Nonnull EtcdTopologyView oldView) {
+        List<TopologyEventListener> unfiltered = new ArrayList<TopologyEventListener>(listeners.size());
+        for (TopologyEventListener listener : listeners) {
+            ListenerQueue queue = queues.get(listener);
+            if (queue != null && queue.getFilter() != ListenerFilter.ALL) {
+                heldListeners.add(listener);
+            } else {
+                unfiltered.add(listener);
+            }
+        }
+        send(changingEvent(oldView), unfiltered);
+    }
+
+    /**
+     * Close the change of a pending view. The held listeners get the {@code TOPOLOGY_CHANGING}
+     * and {@code TOPOLOGY_CHANGED} events only if the collapsed change matches their filter.
+     */
+    private void sendPendingChanged(@Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyEvent event) {
+        TopologyEvent changingEvent = changingEvent(oldView);
+        EtcdTopologyView newView = (EtcdTopologyView) event.getNewView();
+        for (TopologyEventListener listener : listeners) {
+            ListenerQueue queue = queues.get(listener);
+            if (queue == null) {
+                continue;
+            }
+            if (! heldListeners.contains(listener)) {
+                queue.offer(event);
+            } else if (queue.getFilter().accept(event.getDiff(), oldView, newView)) {
+                queue.offer(changingEvent);
+                queue.offer(event);
+            } else {
+                queue.skip(2);
+            }
+        }
+        heldListeners.clear();
+    }
+
     private void send(@Nonnull TopologyEvent event, @Nonnull Collection<TopologyEventListener> listeners) {
         if (! LOG.isTraceEnabled()) {
             LOG.debug("Send event of type: {}", event.getType());
         }
         LOG.trace("Send event: {}", event);
-        for (TopologyEventListener listener : listeners) {
-            send(event, listener);
+        List<ListenerQueue> targets = new ArrayList<ListenerQueue>(listeners.size());
+        synchronized (lock) {
+            for (TopologyEventListener listener : listeners) {
+                ListenerQueue queue = queues.get(listener);
+                if (queue != null) {
+                    targets.add(queue);
+                }
+            }
         }
-    }
-
-    private void send(@Nonnull TopologyEvent event, @Nonnull TopologyEventListener listener) {
-        try {
-            listener.handleTopologyEvent(event);
-        } catch (Exception e) {
-            LOG.info("Exception when dispatching the topology event", e);
+        for (ListenerQueue queue : targets) {
+            queue.offer(event);
         }
     }
 
@@ -192,13 +471,13 @@ public class ViewManager {
     }
 
     @Nonnull
-    private TopologyEvent changedEvent(@Nonnull TopologyView oldView, @Nonnull TopologyView newView) {
-        return new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, oldView, newView);
+    private EtcdTopologyEvent changedEvent(@Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyView newView) {
+        return new EtcdTopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, oldView, newView);
     }
 
     @Nonnull
-    private TopologyEvent propertyChangedEvent(@Nonnull TopologyView oldView, @Nonnull TopologyView newView) {
-        return new TopologyEvent(TopologyEvent.Type.PROPERTIES_CHANGED, oldView, newView);
+    private EtcdTopologyEvent propertyChangedEvent(@Nonnull EtcdTopologyView oldView, @Nonnull EtcdTopologyView newView) {
+        return new EtcdTopologyEvent(TopologyEvent.Type.PROPERTIES_CHANGED, oldView, newView);
     }
 
 }
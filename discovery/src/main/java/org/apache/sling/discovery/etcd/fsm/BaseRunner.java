@@ -30,6 +30,11 @@ public abstract class BaseRunner implements Runner {
      */
     protected boolean running = true;
 
+    /**
+     * Flag whether the runner has been woken up ({@code true}) since it last slept or not ({@code false}).
+     */
+    private boolean wokenUp;
+
     @Override
     public void stop() {
         synchronized (wait) {
@@ -38,17 +43,28 @@ public abstract class BaseRunner implements Runner {
         }
     }
 
+    /**
+     * Interrupt the current sleep, or skip the next one if the runner is not sleeping.
+     */
+    protected void wakeUp() {
+        synchronized (wait) {
+            wokenUp = true;
+            wait.notifyAll();
+        }
+    }
+
     protected void sleep(long ms) {
         synchronized (wait) {
             long timeout = System.currentTimeMillis() + ms;
             long remaining;
-            for ( ; running && (remaining = timeout - System.currentTimeMillis()) > 0 ; ) {
+            for ( ; running && ! wokenUp && (remaining = timeout - System.currentTimeMillis()) > 0 ; ) {
                 try {
                     wait.wait(remaining);
                 } catch (InterruptedException ignore) {
                     // ignore
                 }
             }
+            wokenUp = false;
         }
     }
 }
@@ -59,13 +59,28 @@ public class Context {
      */
     private volatile String clusterId;
 
+    /**
+     * The ownership of the local instance Sling identifier.
+     */
+    private final Ownership ownership;
+
     /**
      * @param state the initial state.
      */
     public Context(@Nonnull State state, @Nonnull RunnerFactory factory, @Nonnull ThreadPool etcdThreadPool) {
+        this(state, factory, etcdThreadPool, Ownership.transientOwnership());
+    }
+
+    /**
+     * @param state the initial state.
+     * @param ownership the ownership of the local instance Sling identifier.
+     */
+    public Context(@Nonnull State state, @Nonnull RunnerFactory factory, @Nonnull ThreadPool etcdThreadPool,
+                   @Nonnull Ownership ownership) {
         this.etcdThreadPool = etcdThreadPool;
         this.state = state;
         this.factory = factory;
+        this.ownership = ownership;
     }
 
     /**
@@ -156,6 +171,22 @@ public class Context {
         return clusterId;
     }
 
+    /**
+     * @return the token identifying the local instance as owner of its Sling identifier.
+     */
+    @Nonnull
+    public String getOwnerToken() {
+        return ownership.getToken();
+    }
+
+    /**
+     * @return the ownership of the local instance Sling identifier.
+     */
+    @Nonnull
+    public Ownership getOwnership() {
+        return ownership;
+    }
+
     private void thread(@Nonnull State state) {
         if (state == States.STOP) {
             LOG.info("Stop the discovery processing. Re-activate the component '{}' in order to start it again.", EtcdDiscoveryService.class);
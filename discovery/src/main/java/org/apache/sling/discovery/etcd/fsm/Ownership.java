@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.fsm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code Ownership} holds the token identifying the local instance as owner of its Sling identifier.
+ * A new token is generated for each run. The token and the announce key of the run which last acquired
+ * the ownership are persisted, so that a restarting instance can prove that the ownership
+ * (and the announce) left over by its previous run are its own and take them over.
+ */
+public class Ownership {
+
+    /**
+     * Default logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(Ownership.class);
+
+    private static final String TOKEN = "token";
+
+    private static final String ANNOUNCE_KEY = "announceKey";
+
+    /**
+     * The file persisting the ownership, {@code null} if the ownership is not persisted.
+     */
+    private final File file;
+
+    /**
+     * The token of the current run.
+     */
+    private final String token;
+
+    /**
+     * The token of the previous run, {@code null} if unknown.
+     */
+    private final String previousToken;
+
+    /**
+     * The announce key of the previous run, {@code null} if unknown.
+     */
+    private final String previousAnnounceKey;
+
+    /**
+     * The announce key of the current run, {@code null} until the ownership is acquired.
+     */
+    private volatile String announceKey;
+
+    private Ownership(@Nullable File file, @Nullable String previousToken, @Nullable String previousAnnounceKey) {
+        this.file = file;
+        this.token = UUID.randomUUID().toString();
+        this.previousToken = previousToken;
+        this.previousAnnounceKey = previousAnnounceKey;
+    }
+
+    /**
+     * @return an ownership which is not persisted.
+     */
+    @Nonnull
+    public static Ownership transientOwnership() {
+        return new Ownership(null, null, null);
+    }
+
+    /**
+     * Load the ownership of the previous run from the given file.
+     *
+     * @param file the file persisting the ownership.
+     * @return the ownership for the current run.
+     */
+    @Nonnull
+    public static Ownership load(@Nonnull File file) {
+        Properties props = new Properties();
+        if (file.isFile()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                props.load(in);
+            } catch (IOException e) {
+                LOG.warn("Failed to load the ownership from file: {} {}", new Object[]{file, e.getMessage()});
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        return new Ownership(file, props.getProperty(TOKEN), props.getProperty(ANNOUNCE_KEY));
+    }
+
+    /**
+     * @return the token of the current run.
+     */
+    @Nonnull
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the token of the previous run ; or {@code null} if unknown.
+     */
+    @Nullable
+    public String getPreviousToken() {
+        return previousToken;
+    }
+
+    /**
+     * @return the announce key of the previous run ; or {@code null} if unknown.
+     */
+    @Nullable
+    public String getPreviousAnnounceKey() {
+        return previousAnnounceKey;
+    }
+
+    /**
+     * @return the announce key of the current run ; or {@code null} if the ownership has not been acquired yet.
+     */
+    @Nullable
+    public String getAnnounceKey() {
+        return announceKey;
+    }
+
+    /**
+     * Persist the token of the current run along with the announce key created with the ownership.
+     *
+     * @param announceKey the announce key of the local instance.
+     */
+    public void acquired(@Nonnull String announceKey) {
+        this.announceKey = announceKey;
+        if (file == null) {
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty(TOKEN, token);
+        props.setProperty(ANNOUNCE_KEY, announceKey);
+        OutputStream out = null;
+        try {
+            File parent = file.getParentFile();
+            if (parent != null && ! parent.isDirectory() && ! parent.mkdirs()) {
+                throw new IOException("Failed to create folder " + parent);
+            }
+            out = new FileOutputStream(file);
+            props.store(out, "etcd discovery ownership");
+        } catch (IOException e) {
+            LOG.warn("Failed to persist the ownership to file: {} {}", new Object[]{file, e.getMessage()});
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+}
@@ -21,7 +21,7 @@ package org.apache.sling.discovery.etcd.fsm;
 
 import javax.annotation.Nonnull;
 
-import org.apache.sling.discovery.etcd.AnnouncesMap;
+import org.apache.sling.discovery.etcd.TopologyStateHolder;
 import org.apache.sling.discovery.etcd.backoff.BackOff;
 import org.apache.sling.discovery.etcd.EtcdService;
 import org.apache.sling.discovery.etcd.cluster.Clustering;
@@ -34,9 +34,9 @@ public class RunnerFactoryImpl implements RunnerFactory {
     private final EtcdService etcdService;
 
     /**
-     * The local and remote announces
+     * The local and remote announces and properties
      */
-    private final AnnouncesMap announcesMap;
+    private final TopologyStateHolder topologyState;
 
     /**
      * The clustering object allowing to define the cluster id the local instance belongs to.
@@ -68,12 +68,12 @@ public class RunnerFactoryImpl implements RunnerFactory {
      */
     private final BackOff etcdBackOff;
 
-    public RunnerFactoryImpl(@Nonnull EtcdService etcdService, @Nonnull AnnouncesMap announcesMap,
+    public RunnerFactoryImpl(@Nonnull EtcdService etcdService, @Nonnull TopologyStateHolder topologyState,
                              @Nonnull Clustering clustering, @Nonnull BackOff etcdBackOff,
                              @Nonnull BackOff ioExceptionBackOff, @Nonnull String slingId,
                              @Nonnull String serverInfo, int maxAnnounceTtl) {
         this.etcdService = etcdService;
-        this.announcesMap = announcesMap;
+        this.topologyState = topologyState;
         this.clustering = clustering;
         this.slingId = slingId;
         this.ioExceptionBackOff = ioExceptionBackOff;
@@ -85,7 +85,7 @@ public class RunnerFactoryImpl implements RunnerFactory {
 
     @Nonnull
     public Runner build(@Nonnull Context context) {
-        return new StateRunner(context, etcdService, announcesMap, clustering, etcdBackOff,
+        return new StateRunner(context, etcdService, topologyState, clustering, etcdBackOff,
                 ioExceptionBackOff, slingId, serverInfo, maxAnnounceTtl);
     }
 }
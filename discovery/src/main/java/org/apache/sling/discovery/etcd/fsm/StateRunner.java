@@ -22,14 +22,14 @@ import java.io.IOException;
 import java.math.BigDecimal;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
-import org.apache.sling.discovery.etcd.AnnouncesMap;
+import org.apache.sling.discovery.etcd.TopologyStateHolder;
 import org.apache.sling.discovery.etcd.backoff.BackOff;
 import org.apache.sling.discovery.etcd.EtcdServiceException;
 import org.apache.sling.discovery.etcd.EtcdServiceStats;
 import org.apache.sling.discovery.etcd.Announce;
 import org.apache.sling.discovery.etcd.AnnounceData;
-import org.apache.sling.discovery.etcd.Announces;
 import org.apache.sling.discovery.etcd.EtcdService;
 import org.apache.sling.discovery.etcd.cluster.Clustering;
 import org.apache.sling.etcd.client.KeyError;
@@ -63,9 +63,9 @@ public class StateRunner extends BaseRunner {
     private final EtcdService etcdService;
 
     /**
-     * The local and remote announces
+     * The local and remote announces and properties
      */
-    private final AnnouncesMap announcesMap;
+    private final TopologyStateHolder topologyState;
 
     /**
      * The local instance Sling identifier.
@@ -104,14 +104,14 @@ public class StateRunner extends BaseRunner {
 
     private static final int ONE_SECOND = 1000;
 
-    public StateRunner(@Nonnull Context context, @Nonnull EtcdService etcdService, @Nonnull AnnouncesMap announcesMap,
+    public StateRunner(@Nonnull Context context, @Nonnull EtcdService etcdService, @Nonnull TopologyStateHolder topologyState,
                        @Nonnull Clustering clustering, @Nonnull BackOff etcdBackOff,
                        @Nonnull BackOff ioExceptionBackOff, @Nonnull String slingId,
                        @Nonnull String serverInfo, int maxAnnounceTtl) {
         super();
         this.context = context;
         this.etcdService = etcdService;
-        this.announcesMap = announcesMap;
+        this.topologyState = topologyState;
         this.clustering = clustering;
         this.slingId = slingId;
         this.serverInfo = serverInfo;
@@ -199,54 +199,61 @@ public class StateRunner extends BaseRunner {
             String clusterId = context.getClusterId();
             if (clusterId != null) {
 
-                // check if there exists an announce for
-                // the same Sling id as the local instance.
-                // For detecting duplicates, we consider all returned announces from etcd,
-                // including those returning a negative ttl.
-                Announces existingAnnounces = new Announces(etcdService.getAnnounces(), false);
-                Announce annWithLocalSlingId = existingAnnounces.getBySlingId(slingId);
-                if (annWithLocalSlingId != null) {
-                    LOG.info("Found an existing announce for the same slingId as the local instance: {} with ttl: {}.", new Object[]{annWithLocalSlingId, annWithLocalSlingId.getTtl()});
-                    // determine the time to wait as the remaining ttl
-                    // set in the existing announce
-                    Long ttl = annWithLocalSlingId.getTtl();
-                    remainingAnnounceTtl = (ttl != null && ttl > 0) ? ttl : maxAnnounceTtl;
-                    context.next(Event.ANNOUNCE_DUPLICATED);
-                } else {
-                    LOG.debug("No announce found for the local slingId: {}", slingId);
-                    // create an announce for the local instance
-                    AnnounceData annData = new AnnounceData(slingId, serverInfo, clusterId, 0);
-                    EtcdNode annNode = etcdService.createAnnounce(annData.toString(), maxAnnounceTtl);
-                    String annKey = annNode.key();
-                    // check if the announce created is the first for the Sling identifier
-                    Announces announces = new Announces(etcdService.getAnnounces(), false);
-                    if (announces.size() > 0) {
-                        Announce local = announces.getBySlingId(slingId);
-                        if (local != null) {
-                            // check for duplicate.
-                            if (local.getAnnounceKey().equals(annKey)) {
-                                // The local instance is the first to announce with
-                                // the local Sling identifier.
-                                LOG.info("Successfully announced the local instance: {} with key: {}", new Object[]{slingId, annKey});
-                                announcesMap.setLocal(local);
-                                context.next(Event.ANNOUNCED);
-                            } else {
-                                LOG.info("Found an earlier announce: {} with ttl: {} and containing the same slingId as the local instance. The announce created by the local instance with key: {} is considered invalid.", new Object[]{local, local.getTtl(), annKey});
-                                // the time to wait correspond to the max announce ttl
-                                // as the announce just created also need to elapse
-                                // before starting again.
-                                remainingAnnounceTtl = maxAnnounceTtl;
-                                context.next(Event.ANNOUNCE_DUPLICATED);
-                            }
-                        } else {
-                            LOG.warn("No announce found for the local instance: {}", slingId);
-                            context.next(Event.ANNOUNCE_LOCAL_INSTANCE_NOT_FOUND);
-                        }
-                    } else {
-                        LOG.warn("No announce found");
+                // claim the ownership of the local Sling identifier.
+                // The ownership key decides duplicates in a single conditional
+                // write, the announces do not need to be listed.
+                Ownership ownership = context.getOwnership();
+                String token = ownership.getToken();
+                EtcdNode previousAnnounce = null;
+                if (! etcdService.claimOwnership(slingId, token, maxAnnounceTtl)) {
+                    EtcdNode owner = etcdService.getOwnership(slingId);
+                    if (owner == null) {
+                        LOG.info("The ownership for the slingId: {} elapsed meanwhile", slingId);
                         context.next(Event.ANNOUNCE_LOCAL_INSTANCE_NOT_FOUND);
+                        return;
+                    }
+                    if (token.equals(owner.value())) {
+                        // the local instance still owns its Sling identifier (previous announce elapsed or failed)
+                        etcdService.refreshOwnership(slingId, token, maxAnnounceTtl);
+                        // the announce of the current run may still be live (e.g. reset while running)
+                        previousAnnounce = currentRunAnnounce(ownership);
+                    } else if ((previousAnnounce = takeOverPreviousRun(ownership, owner)) != null) {
+                        LOG.info("Took over the ownership left over by the previous run of the local instance: {}", slingId);
+                    } else {
+                        LOG.info("Found an existing owner for the same slingId as the local instance: {} with ttl: {}.", new Object[]{slingId, owner.ttl()});
+                        // determine the time to wait as the remaining ttl
+                        // set in the existing ownership
+                        Long ttl = owner.ttl();
+                        remainingAnnounceTtl = (ttl != null && ttl > 0) ? ttl : maxAnnounceTtl;
+                        context.next(Event.ANNOUNCE_DUPLICATED);
+                        return;
+                    }
+                }
+                LOG.debug("Owning the local slingId: {}", slingId);
+                AnnounceData annData = new AnnounceData(slingId, serverInfo, clusterId, 0);
+                EtcdNode annNode = null;
+                if (previousAnnounce != null) {
+                    // take over the announce of the previous (or current) run, which keeps
+                    // its position in the leader ordering.
+                    annNode = etcdService.takeOverAnnounce(previousAnnounce.key(), annData.toString(),
+                            previousAnnounce.modifiedIndex(), maxAnnounceTtl);
+                    if (annNode == null && previousAnnounce.key().equals(ownership.getAnnounceKey())) {
+                        // the announce of the current run has been modified meanwhile,
+                        // retry rather than creating a second announce for the same slingId.
+                        LOG.info("The announce: {} of the current run was modified, retry", previousAnnounce.key());
+                        return;
                     }
                 }
+                if (annNode == null) {
+                    // create an announce for the local instance, the ordered
+                    // announce keys define the leader ordering.
+                    annNode = etcdService.createAnnounce(annData.toString(), maxAnnounceTtl);
+                }
+                String annKey = annNode.key();
+                ownership.acquired(annKey);
+                LOG.info("Successfully announced the local instance: {} with key: {}", new Object[]{slingId, annKey});
+                topologyState.setLocalAnnounce(new Announce(annData, annKey, annNode.ttl()));
+                context.next(Event.ANNOUNCED);
             } else {
                 LOG.error("Undefined cluster identifier");
                 context.next(Event.RESET);
@@ -274,6 +281,54 @@ public class StateRunner extends BaseRunner {
         }
     }
 
+    /**
+     * Get the announce created by the current run of the local instance.
+     *
+     * @param ownership the local ownership.
+     * @return the announce node of the current run if it still exists ; or {@code null}.
+     */
+    @Nullable
+    private EtcdNode currentRunAnnounce(@Nonnull Ownership ownership)
+            throws IOException, EtcdServiceException {
+        String announceKey = ownership.getAnnounceKey();
+        EtcdNode announce = (announceKey != null) ? etcdService.getAnnounce(announceKey) : null;
+        if (announce != null) {
+            LOG.info("Found the announce: {} of the current run of the local instance: {}", new Object[]{announceKey, slingId});
+        }
+        return announce;
+    }
+
+    /**
+     * Take over the ownership left over by the previous run of the local instance.
+     * The ownership is taken over only if it is held with the persisted token of the previous run
+     * and the announce of the previous run still exists with the local Sling identifier and server info.
+     *
+     * @param ownership the local ownership.
+     * @param owner the current ownership node.
+     * @return the announce node of the previous run if the ownership has been taken over ; or {@code null}.
+     */
+    @Nullable
+    private EtcdNode takeOverPreviousRun(@Nonnull Ownership ownership, @Nonnull EtcdNode owner)
+            throws IOException, EtcdServiceException {
+        String previousToken = ownership.getPreviousToken();
+        String previousKey = ownership.getPreviousAnnounceKey();
+        if (previousToken == null || previousKey == null || ! previousToken.equals(owner.value())) {
+            return null;
+        }
+        EtcdNode announce = etcdService.getAnnounce(previousKey);
+        String value = (announce != null) ? announce.value() : null;
+        if (value == null) {
+            return null;
+        }
+        AnnounceData data = new AnnounceData(value);
+        if (! slingId.equals(data.slingId()) || ! serverInfo.equals(data.serverInfo())) {
+            LOG.info("The announce: {} of the previous run does not match the local instance", announce.key());
+            return null;
+        }
+        return etcdService.takeOverOwnership(slingId, previousToken, ownership.getToken(), maxAnnounceTtl)
+                ? announce : null;
+    }
+
     protected void sleep(long ms) {
         LOG.trace("wait {} ms before proceeding.", ms);
         super.sleep(ms);
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.ring;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The {@code HashRing} holds the virtual nodes of the instances sorted by hash.
+ * Updating the ring only hashes the virtual nodes of the changed instances, the virtual
+ * nodes of the other instances are merged as they are.
+ * Instances of this class are immutable.
+ */
+public final class HashRing {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /**
+     * The ring without virtual nodes.
+     */
+    public static final HashRing EMPTY = new HashRing(new long[0], new String[0], Collections.<String, long[]>emptyMap());
+
+    /**
+     * The virtual node hashes, sorted.
+     */
+    private final long[] hashes;
+
+    /**
+     * The Sling identifier owning the virtual node at the same index.
+     */
+    private final String[] owners;
+
+    /**
+     * The virtual node hashes by Sling identifier, in virtual node order.
+     */
+    private final Map<String, long[]> nodes;
+
+    private HashRing(@Nonnull long[] hashes, @Nonnull String[] owners, @Nonnull Map<String, long[]> nodes) {
+        this.hashes = hashes;
+        this.owners = owners;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Build the ring with the given instances only.
+     *
+     * @param virtualNodes the number of virtual nodes by Sling identifier.
+     * @return the updated ring.
+     */
+    @Nonnull
+    public HashRing withInstances(@Nonnull Map<String, Integer> virtualNodes) {
+        Map<String, Integer> changes = new HashMap<String, Integer>();
+        for (Map.Entry<String, Integer> entry : virtualNodes.entrySet()) {
+            long[] current = nodes.get(entry.getKey());
+            if (current == null || current.length != entry.getValue()) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String slingId : nodes.keySet()) {
+            if (! virtualNodes.containsKey(slingId)) {
+                changes.put(slingId, 0);
+            }
+        }
+        return withChanges(changes);
+    }
+
+    /**
+     * Build the ring with the given instances changed.
+     *
+     * @param changes the number of virtual nodes by Sling identifier, {@code 0} to remove the instance.
+     * @return the updated ring.
+     */
+    @Nonnull
+    public HashRing withChanges(@Nonnull Map<String, Integer> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+        Map<String, long[]> nextNodes = new HashMap<String, long[]>(nodes);
+        List<Node> added = new ArrayList<Node>();
+        for (Map.Entry<String, Integer> entry : changes.entrySet()) {
+            String slingId = entry.getKey();
+            int count = Math.max(entry.getValue(), 0);
+            long[] current = nextNodes.remove(slingId);
+            if (count > 0) {
+                long[] next = virtualNodes(slingId, current, count);
+                nextNodes.put(slingId, next);
+                for (long hash : next) {
+                    added.add(new Node(hash, slingId));
+                }
+            }
+        }
+        Collections.sort(added);
+        // merge the unchanged virtual nodes with the added ones
+        int size = 0;
+        for (long[] instanceNodes : nextNodes.values()) {
+            size += instanceNodes.length;
+        }
+        long[] nextHashes = new long[size];
+        String[] nextOwners = new String[size];
+        int index = 0;
+        int addedIndex = 0;
+        for (int i = 0 ; i < hashes.length ; i++) {
+            if (changes.containsKey(owners[i])) {
+                continue;
+            }
+            for ( ; addedIndex < added.size() && added.get(addedIndex).hash < hashes[i] ; addedIndex++) {
+                nextHashes[index] = added.get(addedIndex).hash;
+                nextOwners[index++] = added.get(addedIndex).slingId;
+            }
+            nextHashes[index] = hashes[i];
+            nextOwners[index++] = owners[i];
+        }
+        for ( ; addedIndex < added.size() ; addedIndex++) {
+            nextHashes[index] = added.get(addedIndex).hash;
+            nextOwners[index++] = added.get(addedIndex).slingId;
+        }
+        return new HashRing(nextHashes, nextOwners, Collections.unmodifiableMap(nextNodes));
+    }
+
+    /**
+     * @param key the key to be located
+     * @return the Sling identifier of the instance owning the key or {@code null} if the ring is empty.
+     */
+    @Nullable
+    public String getOwner(@Nonnull String key) {
+        if (hashes.length == 0) {
+            return null;
+        }
+        return owners[index(hash(key))];
+    }
+
+    /**
+     * @param key the key to be located
+     * @param count the maximum number of instances to return
+     * @return the Sling identifiers of the distinct instances following the key on the ring, starting with its owner.
+     */
+    @Nonnull
+    public List<String> getOwners(@Nonnull String key, int count) {
+        int max = Math.min(count, nodes.size());
+        if (max <= 0) {
+            return Collections.emptyList();
+        }
+        Set<String> found = new LinkedHashSet<String>();
+        int start = index(hash(key));
+        for (int i = 0 ; i < hashes.length && found.size() < max ; i++) {
+            found.add(owners[(start + i) % hashes.length]);
+        }
+        return new ArrayList<String>(found);
+    }
+
+    /**
+     * @return the Sling identifiers of the instances on the ring.
+     */
+    @Nonnull
+    public Set<String> getSlingIds() {
+        return nodes.keySet();
+    }
+
+    /**
+     * @return the number of virtual nodes on the ring.
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    /**
+     * @param value the value to be hashed
+     * @return the 64 bits hash of the value.
+     */
+    public static long hash(@Nonnull String value) {
+        byte[] digest = MD5.get().digest(value.getBytes(UTF_8));
+        long hash = 0;
+        for (int i = 0 ; i < 8 ; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    //
+
+    /**
+     * @return the index of the first virtual node following the hash.
+     */
+    private int index(long hash) {
+        int index = Arrays.binarySearch(hashes, hash);
+        if (index < 0) {
+            index = - (index + 1);
+        }
+        return (index == hashes.length) ? 0 : index;
+    }
+
+    /**
+     * Compute the virtual nodes of an instance, reusing the already computed ones.
+     */
+    @Nonnull
+    private static long[] virtualNodes(@Nonnull String slingId, @Nullable long[] current, int count) {
+        long[] next = new long[count];
+        int reused = (current != null) ? Math.min(current.length, count) : 0;
+        if (reused > 0) {
+            System.arraycopy(current, 0, next, 0, reused);
+        }
+        for (int i = reused ; i < count ; i++) {
+            next[i] = hash(slingId + "#" + i);
+        }
+        return next;
+    }
+
+    private static final class Node implements Comparable<Node> {
+
+        final long hash;
+
+        final String slingId;
+
+        Node(long hash, @Nonnull String slingId) {
+            this.hash = hash;
+            this.slingId = slingId;
+        }
+
+        public int compareTo(@Nonnull Node that) {
+            return (hash < that.hash) ? -1 : (hash == that.hash) ? slingId.compareTo(that.slingId) : 1;
+        }
+    }
+
+}
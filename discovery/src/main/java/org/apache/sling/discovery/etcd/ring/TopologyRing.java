@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.ring;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.discovery.InstanceDescription;
+import org.apache.sling.discovery.TopologyView;
+
+/**
+ * The {@code TopologyRing} partitions keys across the instances of the topology by consistent hashing.
+ * Each instance owns a number of virtual nodes on the ring, proportional to its weight.
+ * A key is owned by the instance of the first virtual node following the key hash, such that
+ * a change of membership only moves the keys of the ranges adjacent to the added or removed virtual nodes.
+ * The lookups are lock free and cost O(log N) in the number of virtual nodes.
+ */
+public interface TopologyRing {
+
+    /**
+     * @param key the key to be located
+     * @return the instance owning the key or {@code null} if the ring is empty.
+     */
+    @Nullable
+    InstanceDescription getOwner(@Nonnull String key);
+
+    /**
+     * @param key the key to be located
+     * @param count the maximum number of instances to return
+     * @return the distinct instances following the key on the ring, starting with its owner.
+     */
+    @Nonnull
+    List<InstanceDescription> getOwners(@Nonnull String key, int count);
+
+    /**
+     * @return the view the ring is derived from or {@code null} if the ring is empty.
+     */
+    @Nullable
+    TopologyView getView();
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.ring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.discovery.InstanceDescription;
+import org.apache.sling.discovery.TopologyEvent;
+import org.apache.sling.discovery.TopologyEventListener;
+import org.apache.sling.discovery.TopologyView;
+import org.apache.sling.discovery.etcd.EtcdTopologyEvent;
+import org.apache.sling.discovery.etcd.EtcdTopologyView;
+import org.apache.sling.discovery.etcd.TopologyDiff;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code TopologyRingService} maintains the {@link TopologyRing} from the topology events.
+ * The ring is updated from the diff carried by the events, only the virtual nodes of the
+ * added, removed or re-weighted instances are computed. Each update publishes a new immutable
+ * ring, such that the lookups never lock.
+ */
+@Component(immediate = true, metatype = true, label = "CoreOS etcd discovery topology ring",
+        description = "Consistent hashing ring over the instances of the topology")
+@Service({TopologyRing.class, TopologyEventListener.class})
+public class TopologyRingService implements TopologyRing, TopologyEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TopologyRingService.class);
+
+    private static final int DEFAULT_VIRTUAL_NODES = 100;
+
+    @Property(label = "Virtual nodes", description = "The number of virtual nodes of an instance with weight 1.",
+            intValue = DEFAULT_VIRTUAL_NODES)
+    protected static final String VIRTUAL_NODES = "virtualNodes";
+
+    private static final String DEFAULT_WEIGHT_PROPERTY = "org.apache.sling.discovery.etcd.ring.weight";
+
+    @Property(label = "Weight property", description = "The name of the instance property holding the instance weight " +
+            "(decimal, 1 when undefined or invalid). The number of virtual nodes of an instance is proportional to " +
+            "its weight, instances with weight 0 own no key.", value = DEFAULT_WEIGHT_PROPERTY)
+    protected static final String WEIGHT_PROPERTY = "weightProperty";
+
+    private int virtualNodes = DEFAULT_VIRTUAL_NODES;
+
+    private String weightProperty = DEFAULT_WEIGHT_PROPERTY;
+
+    /**
+     * The ring and the view it is derived from.
+     */
+    private volatile State state = new State(HashRing.EMPTY, null);
+
+    @Activate
+    protected void activate(ComponentContext cc) {
+        Dictionary props = cc.getProperties();
+        virtualNodes = Math.max(PropertiesUtil.toInteger(props.get(VIRTUAL_NODES), DEFAULT_VIRTUAL_NODES), 1);
+        weightProperty = PropertiesUtil.toString(props.get(WEIGHT_PROPERTY), DEFAULT_WEIGHT_PROPERTY);
+        LOG.debug("virtual nodes: {}, weight property: {}", virtualNodes, weightProperty);
+    }
+
+    public void handleTopologyEvent(TopologyEvent event) {
+        switch (event.getType()) {
+            case TOPOLOGY_INIT:
+                update(event.getNewView(), null);
+                break;
+            case TOPOLOGY_CHANGED:
+            case PROPERTIES_CHANGED:
+                TopologyDiff diff = null;
+                if (event instanceof EtcdTopologyEvent && event.getOldView() == state.view) {
+                    diff = ((EtcdTopologyEvent) event).getDiff();
+                }
+                update(event.getNewView(), diff);
+                break;
+            default:
+                // the ring keeps serving the last view until the change completes
+                break;
+        }
+    }
+
+    @Nullable
+    public InstanceDescription getOwner(@Nonnull String key) {
+        State current = state;
+        String slingId = current.ring.getOwner(key);
+        return (slingId != null && current.view != null) ? current.view.getInstance(slingId) : null;
+    }
+
+    @Nonnull
+    public List<InstanceDescription> getOwners(@Nonnull String key, int count) {
+        State current = state;
+        if (current.view == null) {
+            return Collections.emptyList();
+        }
+        List<String> slingIds = current.ring.getOwners(key, count);
+        List<InstanceDescription> owners = new ArrayList<InstanceDescription>(slingIds.size());
+        for (String slingId : slingIds) {
+            owners.add(current.view.getInstance(slingId));
+        }
+        return owners;
+    }
+
+    @Nullable
+    public TopologyView getView() {
+        return state.view;
+    }
+
+    //
+
+    private void update(@Nullable TopologyView view, @Nullable TopologyDiff diff) {
+        if (! (view instanceof EtcdTopologyView)) {
+            LOG.debug("Ignoring view not provided by the etcd discovery: {}", view);
+            return;
+        }
+        EtcdTopologyView etcdView = (EtcdTopologyView) view;
+        HashRing ring = state.ring;
+        if (diff != null) {
+            ring = ring.withChanges(changes(etcdView, diff));
+        } else {
+            Map<String, Integer> all = new HashMap<String, Integer>();
+            for (InstanceDescription instance : etcdView.getInstances()) {
+                all.put(instance.getSlingId(), virtualNodes(instance));
+            }
+            ring = ring.withInstances(all);
+        }
+        state = new State(ring, etcdView);
+        LOG.debug("Updated the topology ring with {} virtual nodes", ring.size());
+    }
+
+    @Nonnull
+    private Map<String, Integer> changes(@Nonnull EtcdTopologyView view, @Nonnull TopologyDiff diff) {
+        Map<String, Integer> changes = new HashMap<String, Integer>();
+        for (String slingId : diff.getRemovedSlingIds()) {
+            changes.put(slingId, 0);
+        }
+        for (String slingId : diff.getAddedSlingIds()) {
+            changes.put(slingId, virtualNodes(view.getInstance(slingId)));
+        }
+        for (Map.Entry<String, Set<String>> entry : diff.getChangedPropertyKeys().entrySet()) {
+            if (entry.getValue().contains(weightProperty)) {
+                changes.put(entry.getKey(), virtualNodes(view.getInstance(entry.getKey())));
+            }
+        }
+        return changes;
+    }
+
+    private int virtualNodes(@Nullable InstanceDescription instance) {
+        if (instance == null) {
+            return 0;
+        }
+        String value = instance.getProperty(weightProperty);
+        double weight = 1;
+        if (value != null) {
+            try {
+                weight = Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                LOG.debug("Invalid weight: {} for instance: {}", value, instance.getSlingId());
+            }
+        }
+        if (Double.isNaN(weight) || Double.isInfinite(weight) || weight < 0) {
+            weight = 1;
+        }
+        return (int) Math.round(virtualNodes * weight);
+    }
+
+    private static final class State {
+
+        final HashRing ring;
+
+        final EtcdTopologyView view;
+
+        State(@Nonnull HashRing ring, @Nullable EtcdTopologyView view) {
+            this.ring = ring;
+            this.view = view;
+        }
+    }
+
+}
@@ -21,14 +21,16 @@ package org.apache.sling.discovery.etcd.run;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Map;
+import java.util.Random;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.sling.discovery.etcd.Announce;
-import org.apache.sling.discovery.etcd.AnnouncesMap;
 import org.apache.sling.discovery.etcd.EtcdDiscoveryService;
 import org.apache.sling.discovery.etcd.EtcdServiceException;
-import org.apache.sling.discovery.etcd.PropertiesMap;
+import org.apache.sling.discovery.etcd.TopologyState;
+import org.apache.sling.discovery.etcd.TopologyStateHolder;
 import org.apache.sling.discovery.etcd.backoff.BackOff;
 import org.apache.sling.discovery.etcd.fsm.BaseRunner;
 import org.apache.sling.discovery.etcd.fsm.Context;
@@ -36,6 +38,8 @@ import org.apache.sling.discovery.etcd.fsm.Event;
 import org.apache.sling.discovery.etcd.fsm.States;
 import org.apache.sling.discovery.etcd.AnnounceData;
 import org.apache.sling.discovery.etcd.EtcdService;
+import org.apache.sling.etcd.client.EtcdException;
+import org.apache.sling.etcd.client.EtcdNode;
 import org.apache.sling.etcd.client.KeyError;
 import org.apache.sling.etcd.common.ErrorCodes;
 import org.slf4j.Logger;
@@ -44,8 +48,13 @@ import org.slf4j.LoggerFactory;
 /**
  * The {@code Announcer} refresh the local instance announce on the cluster by extending the ttl of the announce key.
  * The announce contain the latest modified date for the local instance properties.
+ * The ownership key of the local Sling identifier is refreshed along with the announce.
  * Prior to sending the announce, it sends the local properties to etcd if they changed.
  * The {@code Announcer} runs periodically (defined by announce renewal period) unless stopped.
+ * The {@code Announcer} tracks the expiry of the announce key. A renewal failing with an I/O error or
+ * a transient etcd error is retried after a short jittered delay, as long as the retry can complete
+ * before the announce expires. The announce ttl covers the renewal period plus a margin derived from
+ * the observed renewal latency.
  */
 public class Announcer extends BaseRunner {
 
@@ -54,6 +63,38 @@ public class Announcer extends BaseRunner {
      */
     private static final Logger LOG = LoggerFactory.getLogger(Announcer.class);
 
+    /**
+     * The delay (in ms) before the first retry of a failed renewal.
+     */
+    private static final long MIN_RETRY_DELAY = 100;
+
+    /**
+     * The maximum delay (in ms) between two retries of a failed renewal.
+     */
+    private static final long MAX_RETRY_DELAY = 2000;
+
+    /**
+     * The number of observed renewal latencies kept as margin for the announce ttl and the retries.
+     */
+    private static final int LATENCY_MARGIN_FACTOR = 2;
+
+    private final Random random = new Random();
+
+    /**
+     * The time (in ms since epoch) at which the current announce key expires, {@code 0} if unknown.
+     */
+    private long expiry;
+
+    /**
+     * The number of consecutive failed renewals.
+     */
+    private int retries;
+
+    /**
+     * The moving average of the renewal latency (in ms).
+     */
+    private long latency;
+
     /**
      * The discovery protocol context
      */
@@ -75,14 +116,9 @@ public class Announcer extends BaseRunner {
     private final BackOff renewalPeriod;
 
     /**
-     * The local and remote announces
-     */
-    private final AnnouncesMap announcesMap;
-
-    /**
-     * The local and remote properties.
+     * The local and remote announces and properties
      */
-    private final PropertiesMap propertiesMap;
+    private final TopologyStateHolder topologyState;
 
     /**
      * Keeps track of the last local properties sent to etcd.
@@ -94,6 +130,28 @@ public class Announcer extends BaseRunner {
      */
     private long lastModifiedIndex;
 
+    /**
+     * Keeps track of the last announce sent to etcd,
+     * {@code null} if the announce must be written in full.
+     */
+    private volatile String lastAnnounceSent;
+
+    /**
+     * The key of the last announce sent to etcd.
+     */
+    private volatile String lastAnnounceKey;
+
+    /**
+     * {@code true} to renew the announce by refreshing its ttl only, as long as it did not change.
+     */
+    private boolean refreshTtl;
+
+    /**
+     * {@code true} if all the etcd members support ttl refreshes (etcd 2.3 and later),
+     * {@code false} if they do not and {@code null} until the etcd version could be checked.
+     */
+    private Boolean ttlRefreshSupported;
+
     /**
      * Service to communicate with the etcd machines.
      */
@@ -101,23 +159,23 @@ public class Announcer extends BaseRunner {
 
 
     public Announcer(@Nonnull Context context, @Nonnull EtcdService etcdService,
-                     @Nonnull AnnouncesMap announcesMap, @Nonnull PropertiesMap propertiesMap, @Nonnull String slingId,
-                     @Nonnull String serverInfo, @Nonnull BackOff renewalPeriod) {
+                     @Nonnull TopologyStateHolder topologyState, @Nonnull String slingId,
+                     @Nonnull String serverInfo, @Nonnull BackOff renewalPeriod, boolean refreshTtl) {
         super();
         this.slingId = slingId;
         this.context = context;
         this.etcdService = etcdService;
-        this.propertiesMap = propertiesMap;
-        this.announcesMap = announcesMap;
+        this.topologyState = topologyState;
         this.renewalPeriod = renewalPeriod;
         this.serverInfo = serverInfo;
+        this.refreshTtl = refreshTtl;
     }
 
     public void run() {
         for ( ; running ; ) {
             long waitTime = renewalPeriod.value();
             try {
-                internalRun(waitTime);
+                waitTime = internalRun(waitTime);
             } catch (Exception e) {
                 long oldPeriod = renewalPeriod.reset();
                 LOG.error("Error while refreshing the announce", e);
@@ -129,18 +187,23 @@ public class Announcer extends BaseRunner {
         LOG.debug("Stopped announcer thread.");
     }
 
-    private void internalRun(long waitTime) {
+    /**
+     * @param waitTime the renewal period.
+     * @return the time to wait (in ms) before the next renewal.
+     */
+    private long internalRun(long waitTime) {
         if (context.is(States.RUNNING)) {
 
-            Announce local = announcesMap.getLocal();
+            TopologyState state = topologyState.get();
+            Announce local = state.getLocalAnnounce();
             String key = local.getAnnounceKey();
             try {
 
                 // send local properties if changed
 
-                final Map<String, String> localProps = propertiesMap.getLocal();
+                final Map<String, String> localProps = state.getLocalProperties();
                 if (! localProps.equals(lastPropertiesSent)) {
-                    lastModifiedIndex = etcdService.sendInstanceProperties(propertiesMap.getLocal(), slingId);
+                    lastModifiedIndex = etcdService.sendInstanceProperties(localProps, slingId);
                     lastPropertiesSent = localProps;
                 }
 
@@ -148,9 +211,18 @@ public class Announcer extends BaseRunner {
                 String clusterId = context.getClusterId();
                 if(clusterId != null) {
                     AnnounceData annData = new AnnounceData(slingId, serverInfo, clusterId, lastModifiedIndex);
-                    int ttl = new BigDecimal((waitTime * EtcdDiscoveryService.ANNOUNCE_TTL_LEEWAY) / 1000.0D)
+                    int ttl = new BigDecimal((waitTime * EtcdDiscoveryService.ANNOUNCE_TTL_LEEWAY + latencyMargin()) / 1000.0D)
                             .setScale(0, BigDecimal.ROUND_UP).intValue();
-                    etcdService.refreshAnnounce(key, annData.toString(), ttl);
+                    String announce = annData.toString();
+                    long start = System.currentTimeMillis();
+                    renew(key, announce, ttl);
+                    renewOwnership(context.getOwnerToken(), ttl);
+                    long end = System.currentTimeMillis();
+                    latency = (latency == 0) ? end - start : (latency * 7 + (end - start)) / 8;
+                    expiry = start + ttl * 1000L;
+                    retries = 0;
+                    lastAnnounceSent = announce;
+                    lastAnnounceKey = key;
                     long oldPeriod = renewalPeriod.increment();
                     LOG.debug("Successfully refreshed the announce with key: {} and ttl: {} (renewalPeriod: {} to {})", new Object[]{key, ttl, oldPeriod, renewalPeriod.value()});
                 } else {
@@ -158,9 +230,18 @@ public class Announcer extends BaseRunner {
                     context.next(Event.RESET);
                 }
             } catch (EtcdServiceException e) {
-                long oldPeriod = renewalPeriod.reset();
+                lastAnnounceSent = null;
                 KeyError error = e.getError();
                 int code = error.errorCode();
+                if (code >= 300) {
+                    // etcd related error (raft, watcher), likely transient
+                    long retryDelay = retryDelay(key);
+                    if (retryDelay >= 0) {
+                        LOG.info("Failed to refresh announce key: {}, {}, retry in {} ms", new Object[]{key, error, retryDelay});
+                        return retryDelay;
+                    }
+                }
+                long oldPeriod = renewalPeriod.reset();
                 LOG.info("Failed to refresh announce key: {}, {}", new Object[]{key, error});
                 LOG.debug("renewalPeriod: {} to {}", new Object[]{oldPeriod, renewalPeriod.value()});
                 if (code == ErrorCodes.KEY_NOT_FOUND) {
@@ -171,6 +252,12 @@ public class Announcer extends BaseRunner {
                     context.next(Event.ANNOUNCE_REFRESH_FAILED_WITH_KEY);
                 }
             } catch (IOException e) {
+                lastAnnounceSent = null;
+                long retryDelay = retryDelay(key);
+                if (retryDelay >= 0) {
+                    LOG.info("Announce refresh failed with I/O error: {}, retry in {} ms", new Object[]{e.getMessage(), retryDelay});
+                    return retryDelay;
+                }
                 long oldPeriod = renewalPeriod.reset();
                 LOG.info("Announce refresh failed with I/O error: {}", e.getMessage());
                 LOG.debug("renewalPeriod: {} to {}", new Object[]{oldPeriod, renewalPeriod.value()});
@@ -182,6 +269,114 @@ public class Announcer extends BaseRunner {
                 LOG.debug("Nothing to do in state {} (renewalPeriod: {} to {})", new Object[]{oldPeriod, renewalPeriod.value(), context.getState()});
             }
         }
+        retries = 0;
+        return renewalPeriod.value();
+    }
+
+    /**
+     * Compute the delay before retrying a failed renewal of the given announce key.
+     * The delay grows exponentially with the number of consecutive failures and is jittered
+     * in order to spread the retries of the instances hitting the same etcd failure.
+     *
+     * @param key the announce key which failed to be renewed.
+     * @return the delay (in ms) before retrying or {@code -1} if the retry would not complete
+     *         before the announce key expires.
+     */
+    private long retryDelay(@Nonnull String key) {
+        if (! key.equals(lastAnnounceKey) || expiry == 0) {
+            // the expiry of the announce key is unknown
+            return -1;
+        }
+        long delay = Math.min(MAX_RETRY_DELAY, MIN_RETRY_DELAY << Math.min(retries, 16));
+        delay = delay / 2 + (long) (random.nextDouble() * (delay / 2));
+        if (System.currentTimeMillis() + delay + latencyMargin() < expiry) {
+            retries++;
+            return delay;
+        }
+        retries = 0;
+        return -1;
+    }
+
+    /**
+     * @return the margin (in ms) for the renewal latency.
+     */
+    private long latencyMargin() {
+        return LATENCY_MARGIN_FACTOR * latency;
+    }
+
+    /**
+     * @return the key of the last announce sent to etcd, {@code null} if no announce has been sent yet.
+     */
+    @Nullable
+    public String getLastAnnounceKey() {
+        return lastAnnounceKey;
+    }
+
+    /**
+     * @return the last announce sent to etcd, {@code null} if the last renewal failed.
+     */
+    @Nullable
+    public String getLastAnnounceSent() {
+        return lastAnnounceSent;
+    }
+
+    /**
+     * Renew the announce by refreshing its ttl if the announce did not change since
+     * the last renewal, or by writing it in full otherwise.
+     */
+    private void renew(@Nonnull String key, @Nonnull String announce, int ttl)
+            throws IOException, EtcdServiceException {
+        if (refreshTtl && key.equals(lastAnnounceKey) && announce.equals(lastAnnounceSent) && isTtlRefreshSupported()) {
+            EtcdNode node = etcdService.refreshAnnounceTtl(key, ttl);
+            if (announce.equals(node.value())) {
+                return;
+            }
+            // not expected once the version has been checked, restore the announce right away
+            LOG.warn("etcd overwrote the announce upon refreshing its ttl, falling back to writing the announce in full");
+            refreshTtl = false;
+        }
+        etcdService.refreshAnnounce(key, announce, ttl);
+    }
+
+    /**
+     * Renew the ownership of the local Sling identifier, refreshing its ttl
+     * without resending the token when etcd supports it.
+     */
+    private void renewOwnership(@Nonnull String token, int ttl)
+            throws IOException, EtcdServiceException {
+        if (refreshTtl && isTtlRefreshSupported()) {
+            EtcdNode node = etcdService.refreshOwnershipTtl(slingId, token, ttl);
+            if (token.equals(node.value())) {
+                return;
+            }
+            // not expected once the version has been checked, the conditional write
+            // below fails and the local instance announces itself again.
+            LOG.warn("etcd overwrote the ownership upon refreshing its ttl, falling back to writing the ownership in full");
+            refreshTtl = false;
+        }
+        etcdService.refreshOwnership(slingId, token, ttl);
+    }
+
+    /**
+     * Check (once) whether the etcd cluster supports refreshing the announce ttl.
+     * The announce is written in full until the etcd version could be checked.
+     */
+    private boolean isTtlRefreshSupported() {
+        if (ttlRefreshSupported == null) {
+            try {
+                ttlRefreshSupported = etcdService.isTtlRefreshSupported();
+                if (! ttlRefreshSupported) {
+                    LOG.info("etcd does not support refreshing the announce ttl (prior to 2.3), the announce is written in full");
+                }
+            } catch (IOException e) {
+                LOG.debug("I/O error while checking the etcd version: {}", e.getMessage());
+                return false;
+            } catch (EtcdException e) {
+                LOG.debug("Unexpected response while checking the etcd version: {}", e.getMessage());
+                return false;
+            }
+        }
+        return ttlRefreshSupported;
     }
 
     protected void sleep(long ms) {
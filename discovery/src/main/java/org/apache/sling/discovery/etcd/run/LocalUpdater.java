@@ -21,15 +21,16 @@ package org.apache.sling.discovery.etcd.run;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
 import org.apache.sling.discovery.etcd.Announce;
 import org.apache.sling.discovery.etcd.AnnounceData;
 import org.apache.sling.discovery.etcd.Announces;
-import org.apache.sling.discovery.etcd.AnnouncesMap;
 import org.apache.sling.discovery.etcd.EtcdTopologyView;
-import org.apache.sling.discovery.etcd.PropertiesMap;
+import org.apache.sling.discovery.etcd.TopologyState;
+import org.apache.sling.discovery.etcd.TopologyStateHolder;
 import org.apache.sling.discovery.etcd.PropertiesService;
 import org.apache.sling.discovery.etcd.ViewManager;
 import org.apache.sling.discovery.etcd.backoff.BackOff;
@@ -41,7 +42,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The {@code LocalUpdater} loads local properties and update the topology view if it changed.
- * The {@code LocalUpdater} runs periodically (defined by view update period) unless stopped.
+ * The view is rebuilt only when the version of the topology state moved, or when
+ * the protocol state changed.
+ * The {@code LocalUpdater} runs periodically (defined by view update period) unless stopped,
+ * and immediately when signaled about a change of the announces or properties.
+ * A view pending stabilization is published as soon as it is due.
  */
 public class LocalUpdater extends BaseRunner {
     /**
@@ -70,14 +75,9 @@ public class LocalUpdater extends BaseRunner {
     private final PropertiesService propertiesService;
 
     /**
-     * The local and remote announces
+     * The local and remote announces and properties
      */
-    private final AnnouncesMap announcesMap;
-
-    /**
-     * The local and remote properties
-     */
-    private final PropertiesMap propertiesMap;
+    private final TopologyStateHolder topologyState;
 
     /**
      * The local instance hostname.
@@ -89,17 +89,23 @@ public class LocalUpdater extends BaseRunner {
      */
     private final BackOff viewUpdatePeriod;
 
+    /**
+     * The version of the topology state and the protocol state used to build the last view.
+     */
+    private long lastVersion = -1;
+
+    private boolean lastRunning;
+
 
     public LocalUpdater(@Nonnull Context context, @Nonnull PropertiesService propertiesService, @Nonnull ViewManager viewManager,
-                        @Nonnull BackOff viewUpdatePeriod, @Nonnull AnnouncesMap announcesMap, @Nonnull PropertiesMap propertiesMap,
+                        @Nonnull BackOff viewUpdatePeriod, @Nonnull TopologyStateHolder topologyState,
                         @Nonnull String slingId, @Nonnull String serverInfo) {
         super();
         this.slingId = slingId;
         this.context = context;
         this.viewManager = viewManager;
-        this.announcesMap = announcesMap;
+        this.topologyState = topologyState;
         this.viewUpdatePeriod = viewUpdatePeriod;
-        this.propertiesMap = propertiesMap;
         this.propertiesService = propertiesService;
         this.serverInfo = serverInfo;
     }
@@ -109,6 +115,10 @@ public class LocalUpdater extends BaseRunner {
             long waitTime = viewUpdatePeriod.value();
             try {
                 internalRun();
+                long pendingDelay = viewManager.publishPendingView();
+                if (pendingDelay >= 0) {
+                    waitTime = Math.min(waitTime, pendingDelay);
+                }
             } catch (Exception e) {
                 LOG.error("Error while updating view", e);
             } finally {
@@ -118,30 +128,50 @@ public class LocalUpdater extends BaseRunner {
         LOG.debug("Stopped local updater thread.");
     }
 
+    /**
+     * Signal a change of the announces or properties, the view is updated without waiting for the view update period.
+     */
+    public void signal() {
+        wakeUp();
+    }
+
     private void internalRun() {
 
         // update local properties
 
         Map<String, String> newLocal = propertiesService.load();
-        propertiesMap.setLocal(newLocal);
+        topologyState.setLocalProperties(newLocal);
+
+        // skip the view if none of its inputs changed.
+
+        final TopologyState state = topologyState.get();
+        final boolean running = context.is(States.RUNNING);
+        if (state.getVersion() == lastVersion && running == lastRunning) {
+            LOG.trace("No change of the view inputs");
+            return;
+        }
 
         // build new view
 
         final Announces anns;
         final Map<String, Map<String, String>> props;
         final EtcdTopologyView newView;
-        if (context.is(States.RUNNING)) {
-            anns = announcesMap.getAll();
-            props = propertiesMap.getAll();
-            newView = new EtcdTopologyView(anns, props, slingId, true);
+        if (running) {
+            anns = state.getAnnounces();
+            props = state.getProperties();
+            EtcdTopologyView previous = viewManager.getView();
+            Set<String> changed = EtcdTopologyView.changedSlingIds(previous, anns, props, slingId);
+            newView = new EtcdTopologyView(previous, anns, props, slingId, changed, true);
         } else {
             AnnounceData data = new AnnounceData(slingId, serverInfo, "isolated", 0);
             anns = new Announces(new Announce(data, "/isolated/0"));
-            props = Collections.singletonMap(slingId, newLocal);
+            props = Collections.singletonMap(slingId, state.getLocalProperties());
             newView = new EtcdTopologyView(anns, props, slingId, false);
         }
 
         viewManager.updateView(newView);
+        lastVersion = state.getVersion();
+        lastRunning = running;
         long oldPeriod = viewUpdatePeriod.increment();
         LOG.debug("Updated view (viewUpdatePeriod: {} to {})", new Object[]{oldPeriod, viewUpdatePeriod.value()});
     }
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.run;
+
+import javax.annotation.Nonnull;
+
+import org.apache.sling.discovery.etcd.PropertiesService;
+import org.apache.sling.discovery.etcd.fsm.BaseRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code PropertiesPoller} refreshes the properties of the providers which reached the properties maximum age.
+ * It runs on its own schedule, so that polling expensive providers does not delay the view updates.
+ */
+public class PropertiesPoller extends BaseRunner {
+
+    /**
+     * Default logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(PropertiesPoller.class);
+
+    /**
+     * The service allowing to load the properties for the local instance.
+     */
+    private final PropertiesService propertiesService;
+
+    public PropertiesPoller(@Nonnull PropertiesService propertiesService) {
+        this.propertiesService = propertiesService;
+    }
+
+    public void run() {
+        for ( ; running ; ) {
+            long waitTime = propertiesService.getMaxAge();
+            try {
+                waitTime = propertiesService.poll();
+            } catch (Exception e) {
+                LOG.error("Error while polling the property providers", e);
+            } finally {
+                sleep(Math.max(waitTime, 1));
+            }
+        }
+        LOG.debug("Stopped properties poller thread.");
+    }
+}
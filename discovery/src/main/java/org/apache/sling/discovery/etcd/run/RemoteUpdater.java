@@ -19,32 +19,46 @@
 package org.apache.sling.discovery.etcd.run;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.annotation.Nonnull;
 
 import org.apache.sling.discovery.etcd.Announce;
 import org.apache.sling.discovery.etcd.Announces;
-import org.apache.sling.discovery.etcd.AnnouncesMap;
 import org.apache.sling.discovery.etcd.EtcdService;
 import org.apache.sling.discovery.etcd.EtcdServiceException;
-import org.apache.sling.discovery.etcd.PropertiesMap;
+import org.apache.sling.discovery.etcd.IndexedAction;
+import org.apache.sling.discovery.etcd.IndexedNodes;
+import org.apache.sling.discovery.etcd.TopologyState;
+import org.apache.sling.discovery.etcd.TopologyStateHolder;
 import org.apache.sling.discovery.etcd.backoff.BackOff;
 import org.apache.sling.discovery.etcd.fsm.BaseRunner;
 import org.apache.sling.discovery.etcd.fsm.Context;
 import org.apache.sling.discovery.etcd.fsm.Event;
 import org.apache.sling.discovery.etcd.fsm.States;
+import org.apache.sling.etcd.client.EtcdNode;
+import org.apache.sling.etcd.client.KeyAction;
+import org.apache.sling.etcd.common.ErrorCodes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * The RemoteUpdater fetches the announces for all remote instances from etcd.
- * It computes the announce changes and load changed properties from etcd as required.
- * The {@code RemoteUpdater} runs periodically (defined by topology update period) unless stopped.
+ * It computes the announce changes and load changed properties from etcd as required.<p>
+ *
+ * In polling mode, the {@code RemoteUpdater} runs periodically (defined by topology update period) unless stopped.<p>
+ *
+ * In watch mode, the {@code RemoteUpdater} fetches the announces once and then watches the announces
+ * from the etcd index of the fetch, applying the changes incrementally. The announces are fetched
+ * again whenever the watch can't be resumed (history cleared or connection lost). The topology update
+ * period only applies between failed attempts.
  */
 public class RemoteUpdater extends BaseRunner {
 
@@ -53,6 +67,39 @@ public class RemoteUpdater extends BaseRunner {
      */
     private static final Logger LOG = LoggerFactory.getLogger(RemoteUpdater.class);
 
+    /**
+     * Delay (in ms) before watching again after a change has been received. This bounds
+     * the watch requests sent while changes keep coming (typically announce renewals),
+     * the changes accumulated meanwhile are fetched at once.
+     */
+    private static final long WATCH_PACING = 100;
+
+    private static final String DELETE = "delete";
+
+    private static final String EXPIRE = "expire";
+
+    private static final String COMPARE_AND_DELETE = "compareAndDelete";
+
+    /**
+     * Order the announce keys according to their creation order, as the
+     * sorted announces listing does. In case of duplicated announces, the
+     * first created announce is kept.
+     */
+    private static final Comparator<String> CREATION_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String key1, String key2) {
+            try {
+                return Long.valueOf(name(key1)).compareTo(Long.valueOf(name(key2)));
+            } catch (NumberFormatException e) {
+                return key1.compareTo(key2);
+            }
+        }
+
+        private String name(String key) {
+            return key.substring(key.lastIndexOf('/') + 1);
+        }
+    };
+
     /**
      * The discovery protocol context
      */
@@ -69,47 +116,162 @@ public class RemoteUpdater extends BaseRunner {
     private final EtcdService etcdService;
 
     /**
-     * The local and remote announces
+     * The local and remote announces and properties
      */
-    private final AnnouncesMap announcesMap;
+    private final TopologyStateHolder topologyState;
 
     /**
-     * The local and remote properties
+     * The topology update period.
      */
-    private final PropertiesMap propertiesMap;
+    private final BackOff topologyUpdatePeriod;
 
     /**
-     * The topology update period.
+     * {@code true} to watch the announces, {@code false} to poll them.
      */
-    private final BackOff topologyUpdatePeriod;
+    private final boolean watchAnnounces;
 
+    /**
+     * The announce nodes (including the local instance ones) kept up to date
+     * by the watch, mapped by key.
+     */
+    private final Map<String, EtcdNode> watchedNodes = new TreeMap<String, EtcdNode>(CREATION_ORDER);
+
+    /**
+     * The etcd index from which to resume the watch or {@code null} if the
+     * announces must be fetched again.
+     */
+    private Long waitIndex;
 
     public RemoteUpdater(@Nonnull Context context, @Nonnull EtcdService etcdService,
-                         @Nonnull BackOff topologyUpdatePeriod, @Nonnull AnnouncesMap announcesMap,
-                         @Nonnull PropertiesMap propertiesMap, @Nonnull String slingId) {
+                         @Nonnull BackOff topologyUpdatePeriod, @Nonnull TopologyStateHolder topologyState,
+                         @Nonnull String slingId) {
+        this(context, etcdService, topologyUpdatePeriod, topologyState, slingId, false);
+    }
+
+    public RemoteUpdater(@Nonnull Context context, @Nonnull EtcdService etcdService,
+                         @Nonnull BackOff topologyUpdatePeriod, @Nonnull TopologyStateHolder topologyState,
+                         @Nonnull String slingId, boolean watchAnnounces) {
         super();
         this.slingId = slingId;
         this.context = context;
         this.etcdService = etcdService;
-        this.announcesMap = announcesMap;
+        this.topologyState = topologyState;
         this.topologyUpdatePeriod = topologyUpdatePeriod;
-        this.propertiesMap = propertiesMap;
+        this.watchAnnounces = watchAnnounces;
     }
 
     public void run() {
         for ( ; running ; ) {
             long waitTime = topologyUpdatePeriod.value();
             try {
-                internalRun();
+                if (watchAnnounces && context.is(States.RUNNING)) {
+                    waitTime = internalWatch(waitTime);
+                } else {
+                    waitIndex = null;
+                    internalRun();
+                }
             } catch (Exception e) {
+                waitIndex = null;
                 LOG.error("Error while fetching state for remote instances", e);
-            } finally {
-                sleep(waitTime);
             }
+            sleep(waitTime);
         }
         LOG.debug("Stopped remote updater thread.");
     }
 
+    /**
+     * Fetch the announces or wait for the next announce change.
+     *
+     * @param waitTime the topology update period
+     * @return the time to wait before the next iteration ; {@code 0} if the watch can proceed right away ;
+     *         {@code #WATCH_PACING} if a change has been received ; {@code #waitTime} if the updater
+     *         must wait for the topology update period.
+     */
+    private long internalWatch(long waitTime) {
+        try {
+            if (waitIndex == null) {
+                resync();
+            } else {
+                IndexedAction indexed = etcdService.watchAnnounces(waitIndex);
+                if (indexed != null) {
+                    apply(indexed);
+                    return WATCH_PACING;
+                }
+            }
+            return 0;
+        } catch (EtcdServiceException e) {
+            waitIndex = null;
+            if (e.getError().errorCode() == ErrorCodes.EVENT_INDEX_CLEARED) {
+                LOG.info("Announce changes no longer available in etcd history, fetch the announces again.");
+                return 0;
+            }
+            long oldPeriod = topologyUpdatePeriod.reset();
+            LOG.info("Failed to watch remote announces {}", e.getError());
+            LOG.debug("topologyUpdatePeriod: {} to {}", new Object[]{oldPeriod, topologyUpdatePeriod});
+            context.next(Event.RESET);
+        } catch (IOException e) {
+            if (waitIndex != null) {
+                // the watch connection was lost,
+                // fetch the announces again
+                waitIndex = null;
+                LOG.debug("Watching remote announces failed with I/O error: {}", e.getMessage());
+                return 0;
+            }
+            long oldPeriod = topologyUpdatePeriod.reset();
+            LOG.info("Fetching remote announces failed with I/O error: {}", e.getMessage());
+            LOG.debug("topologyUpdatePeriod: {} to {}", new Object[]{oldPeriod, topologyUpdatePeriod});
+            context.next(Event.RESET);
+        }
+        return waitTime;
+    }
+
+    /**
+     * Fetch all announces and set the index from which to watch the subsequent changes.
+     */
+    private void resync() throws IOException, EtcdServiceException {
+        IndexedNodes announces = etcdService.getIndexedAnnounces();
+        watchedNodes.clear();
+        for (EtcdNode node : announces.getNodes()) {
+            watchedNodes.put(node.key(), node);
+        }
+        update(buildRemoteAnnounces(), announces.getEtcdIndex());
+        waitIndex = announces.getEtcdIndex() + 1;
+        LOG.debug("Fetched {} announces, watch from index: {}", new Object[]{watchedNodes.size(), waitIndex});
+    }
+
+    /**
+     * Apply an announce change received from the watch.
+     */
+    private void apply(@Nonnull IndexedAction indexed) throws IOException, EtcdServiceException {
+        KeyAction action = indexed.getAction();
+        EtcdNode node = action.node();
+        String type = action.action();
+        LOG.debug("Received action: {} for announce key: {}", new Object[]{type, node.key()});
+        if (node.dir()) {
+            // the announces folder itself has changed,
+            // fetch the announces again
+            waitIndex = null;
+            return;
+        }
+        if (DELETE.equals(type) || EXPIRE.equals(type) || COMPARE_AND_DELETE.equals(type)) {
+            watchedNodes.remove(node.key());
+        } else {
+            watchedNodes.put(node.key(), node);
+        }
+        // the etcd index is cluster wide and moves with any write,
+        // the state is current as of the change modified index
+        waitIndex = node.modifiedIndex() + 1;
+        update(buildRemoteAnnounces(), node.modifiedIndex());
+    }
+
+    @Nonnull
+    private Announces buildRemoteAnnounces() {
+        // only keep the announces for the remote instances
+        // (filter out local instance announce). We remove
+        // announces with (ttl <= 0).
+        return new Announces(new ArrayList<EtcdNode>(watchedNodes.values()), true).filterBySlingId(slingId);
+    }
+
     private void internalRun() {
         if (context.is(States.RUNNING)) {
 
@@ -119,66 +281,13 @@ public class RemoteUpdater extends BaseRunner {
                 // the remote instances (filter out local instance announce)
                 // We remove announces with (ttl <= 0). Those ttl may be emit by etcd
                 // in case the cluster quorum is lost (majority of the etcd peers are down).
-                Announces newAnns = new Announces(etcdService.getAnnounces(), true).filterBySlingId(slingId);
-
-                // check for change in the remote announces
-                Announces oldAnns = announcesMap.getRemote();
-                if (! newAnns.equals(oldAnns)) {
-
-                    // compute which remote instance properties must be loaded
-
-                    Set<String> loadIds = new HashSet<String>();
-                    Set<String> addedIds = new HashSet<String>(newAnns.getSlingIds());
-                    addedIds.removeAll(oldAnns.getSlingIds());
-                    loadIds.addAll(addedIds);
-                    LOG.debug("Instances with ids: {} have been added", addedIds);
-
-                    Set<String> retainedIds = new HashSet<String>(newAnns.getSlingIds());
-                    retainedIds.retainAll(oldAnns.getSlingIds());
-                    LOG.debug("Instances with ids: {} have been retained", retainedIds);
-                    for (String retainedId : retainedIds) {
-                        // check if properties have changed
-                        Announce newAnn = newAnns.getBySlingId(retainedId);
-                        Announce oldAnn = oldAnns.getBySlingId(retainedId);
-                        if (newAnn == null || oldAnn == null) {
-                            LOG.warn("Could not find announce for slingId: {} new announce: {} old announce: {}", new Object[]{retainedId, oldAnn, newAnn});
-                            loadIds.add(retainedId);
-                        } else if (newAnn.getData().propertiesModifiedIndex() != oldAnn.getData().propertiesModifiedIndex()) {
-                            LOG.debug("Detected property change for instance with slingId: {}", retainedId);
-                            loadIds.add(retainedId);
-                        } else {
-                            LOG.debug("No change detected for instance with slingId: {}", retainedId);
-                        }
-                    }
-                    // Load the required properties, minimizing the number of requests
-                    // If the properties for only one instance are required, we issue an
-                    // instance specific request. If the properties for more than one
-                    // instance are required, we fetch the properties for all instances in one request
-                    final Map<String, Map<String, String>> remoteProps;
-                    if (loadIds.size() == 0) {
-                        LOG.debug("No remote instance requires property loading");
-                        remoteProps = Collections.emptyMap();
-                    } else if (loadIds.size() == 1) {
-                        LOG.debug("One remote instance requires property loading: {}", loadIds);
-                        String slingId = loadIds.iterator().next();
-                        Map<String, String> props = etcdService.getProperties(slingId);
-                        remoteProps = Collections.singletonMap(slingId, props);
-                    } else {
-                        LOG.debug("More than one remote instance requires loading its properties: {}", loadIds);
-                        remoteProps = etcdService.getInstancesProperties();
-                    }
-
-                    // Build the new properties with the remote changes
-                    Map<String, Map<String, String>> newProps =
-                            new HashMap<String, Map<String, String>>(propertiesMap.getRemote());
-                    newProps.putAll(remoteProps);
-
-                    propertiesMap.setRemote(newProps);
-                    announcesMap.setRemote(newAnns);
-                    long oldPeriod = topologyUpdatePeriod.increment();
+                IndexedNodes announces = etcdService.getIndexedAnnounces();
+                Announces newAnns = new Announces(announces.getNodes(), true).filterBySlingId(slingId);
+
+                long oldPeriod = topologyUpdatePeriod.increment();
+                if (update(newAnns, announces.getEtcdIndex())) {
                     LOG.debug("Successfully fetched state for remote instances (topologyUpdatePeriod: {} to {})", new Object[]{oldPeriod, topologyUpdatePeriod.value()});
                 } else {
-                    long oldPeriod = topologyUpdatePeriod.increment();
                     LOG.debug("Remote announces have not changed (topologyUpdatePeriod: {} to {})", new Object[]{oldPeriod, topologyUpdatePeriod.value()});
                 }
 
@@ -201,6 +310,76 @@ public class RemoteUpdater extends BaseRunner {
         }
     }
 
+    /**
+     * Update the remote announces and load the changed properties.
+     * The remote announces and properties are published together in the topology state.
+     *
+     * @param newAnns the new remote announces
+     * @param etcdIndex the etcd index at which the announces have been read
+     * @return {@code true} if the remote announces have changed ; {@code false} otherwise.
+     */
+    private boolean update(@Nonnull Announces newAnns, long etcdIndex) throws IOException, EtcdServiceException {
+        // check for change in the remote announces
+        // (the remote state is only written by this updater)
+        TopologyState state = topologyState.get();
+        Announces oldAnns = state.getRemoteAnnounces();
+        if (newAnns.sameAs(oldAnns)) {
+            topologyState.setRemote(oldAnns, state.getRemoteProperties(), etcdIndex);
+            return false;
+        }
+
+        // compute which remote instance properties must be loaded
+
+        Set<String> loadIds = new HashSet<String>();
+        Set<String> addedIds = new HashSet<String>(newAnns.getSlingIds());
+        addedIds.removeAll(oldAnns.getSlingIds());
+        loadIds.addAll(addedIds);
+        LOG.debug("Instances with ids: {} have been added", addedIds);
+
+        Set<String> retainedIds = new HashSet<String>(newAnns.getSlingIds());
+        retainedIds.retainAll(oldAnns.getSlingIds());
+        LOG.debug("Instances with ids: {} have been retained", retainedIds);
+        for (String retainedId : retainedIds) {
+            // check if properties have changed
+            Announce newAnn = newAnns.getBySlingId(retainedId);
+            Announce oldAnn = oldAnns.getBySlingId(retainedId);
+            if (newAnn == null || oldAnn == null) {
+                LOG.warn("Could not find announce for slingId: {} new announce: {} old announce: {}", new Object[]{retainedId, oldAnn, newAnn});
+                loadIds.add(retainedId);
+            } else if (newAnn.getData().propertiesModifiedIndex() != oldAnn.getData().propertiesModifiedIndex()) {
+                LOG.debug("Detected property change for instance with slingId: {}", retainedId);
+                loadIds.add(retainedId);
+            } else {
+                LOG.debug("No change detected for instance with slingId: {}", retainedId);
+            }
+        }
+        // Load the required properties, minimizing the number of requests
+        // If the properties for only one instance are required, we issue an
+        // instance specific request. If the properties for more than one
+        // instance are required, we fetch the properties for all instances in one request
+        final Map<String, Map<String, String>> remoteProps;
+        if (loadIds.size() == 0) {
+            LOG.debug("No remote instance requires property loading");
+            remoteProps = Collections.emptyMap();
+        } else if (loadIds.size() == 1) {
+            LOG.debug("One remote instance requires property loading: {}", loadIds);
+            String slingId = loadIds.iterator().next();
+            Map<String, String> props = etcdService.getProperties(slingId);
+            remoteProps = Collections.singletonMap(slingId, props);
+        } else {
+            LOG.debug("More than one remote instance requires loading its properties: {}", loadIds);
+            remoteProps = etcdService.getInstancesProperties();
+        }
+
+        // Build the new properties with the remote changes
+        Map<String, Map<String, String>> newProps =
+                new HashMap<String, Map<String, String>>(state.getRemoteProperties());
+        newProps.putAll(remoteProps);
+
+        topologyState.setRemote(newAnns, newProps, etcdIndex);
+        return true;
+    }
+
     protected void sleep(long ms) {
         LOG.trace("wait {} ms before proceeding.", ms);
         super.sleep(ms);
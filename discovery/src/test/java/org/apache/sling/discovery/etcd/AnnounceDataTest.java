@@ -18,8 +18,11 @@
  */
 package org.apache.sling.discovery.etcd;
 
+import java.io.ByteArrayInputStream;
+
 import junit.framework.Assert;
 import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.etcd.client.impl.JsonReader;
 import org.junit.Test;
 
 public class AnnounceDataTest {
@@ -43,6 +46,16 @@ public class AnnounceDataTest {
         Assert.assertEquals(annData.propertiesModifiedIndex(), annData2.propertiesModifiedIndex());
     }
 
+    @Test
+    public void testDecode() throws Exception {
+        AnnounceData annData = new AnnounceData("sling-id", "server-info", "default-cluster", 10);
+        JsonReader reader = new JsonReader(new ByteArrayInputStream(annData.toString().getBytes("UTF-8")));
+        AnnounceData decoded = AnnounceData.DECODER.decode(reader);
+        reader.close();
+        Assert.assertEquals(annData, decoded);
+        Assert.assertEquals("default-cluster", decoded.clusterId());
+    }
+
     @Test(expected = EtcdDiscoveryRuntimeException.class)
     public void testWrongFormat() {
         new AnnounceData("miss-formatted");
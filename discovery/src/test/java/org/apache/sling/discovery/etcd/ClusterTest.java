@@ -29,24 +29,36 @@ import javax.servlet.http.HttpServlet;
 
 import org.apache.sling.etcd.testing.Etcd;
 import org.apache.sling.etcd.testing.EtcdHandler;
+import org.apache.sling.etcd.testing.tree.Folder;
+import org.apache.sling.etcd.testing.tree.Node;
 import org.apache.sling.etcd.common.ErrorCodes;
 import junit.framework.Assert;
 import org.apache.sling.discovery.TopologyView;
+import org.apache.sling.discovery.etcd.fsm.Context;
+import org.apache.sling.discovery.etcd.fsm.Event;
+import org.apache.sling.discovery.etcd.fsm.States;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.nio.SelectChannelConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 public class ClusterTest {
 
+    private static final int MAX_SERVER_THREADS = 1000;
+
+    private static final long WATCH_TIMEOUT = 300;
+
     private Server server;
 
     private volatile ExecutorService executor;
 
+    private Etcd etcd;
+
     private EtcdHandler handler;
 
     private List<Instance> instances;
@@ -54,7 +66,10 @@ public class ClusterTest {
     @Before
     public void setUp() throws Exception {
         executor = Executors.newCachedThreadPool();
-        handler = new EtcdHandler(new Etcd());
+        etcd = new Etcd();
+        handler = new EtcdHandler(etcd);
+        // release the watches shortly after the instances socket timeout elapses
+        handler.setWatchTimeout(WATCH_TIMEOUT);
         server = startServer(handler, "/v2/keys/*");
         instances = new ArrayList<Instance>();
     }
@@ -138,6 +153,54 @@ public class ClusterTest {
         Assert.assertEquals(nbEvents, i1.getListeners().get(0).getHistory().size());
     }
 
+    @Test(timeout = 10000L)
+    public void testRestartInstanceTakesOverPreviousAnnounce() throws Exception {
+        String slingId = UUID.randomUUID().toString();
+        // the announce ttl (7s) is larger than the test timeout
+        Instance i1 = startInstance(slingId, "default-cluster", 9000, "250", "5000");
+        waitForEstablishedView(Collections.singletonList(i1));
+        instances.remove(i1);
+        i1.crash();
+        // restart the instance with the same Sling identifier and data area
+        Instance i2 = startInstance(slingId, "default-cluster", 9000, "250", "5000");
+        waitForEstablishedView(Collections.singletonList(i2));
+        Assert.assertTrue(i2.instancesInView(1));
+    }
+
+    @Test(timeout = 10000L)
+    public void testResetWhileRunningKeepsSingleAnnounce() throws Exception {
+        String slingId = UUID.randomUUID().toString();
+        // the announce ttl (7s) is larger than the test timeout
+        Instance i1 = startInstance(slingId, "default-cluster", 9000, "250", "5000");
+        waitForEstablishedView(Collections.singletonList(i1));
+        Context context = i1.getEtcdDiscoveryService().getContext();
+        context.next(Event.RESET);
+        while (! context.is(States.RUNNING)) {
+            Thread.sleep(100);
+        }
+        // the announce of the running instance is taken over, not duplicated
+        Folder announces = (Folder) etcd.getNode("/discovery/announces");
+        Assert.assertEquals(1, Node.filterByTtl(announces.children(false)).size());
+        waitForEstablishedView(Collections.singletonList(i1));
+        Assert.assertTrue(i1.instancesInView(1));
+    }
+
+    @Test(timeout = 10000L)
+    public void testDeactivatedInstanceRemovesAnnounce() throws Exception {
+        // the announce ttl (7s) is larger than the test timeout
+        for (int i = 0 ; i < 2 ; i++) {
+            startInstance(UUID.randomUUID().toString(), "default-cluster", 9000 + i, "250", "5000");
+        }
+        waitForEstablishedView(instances);
+        Instance first = instances.remove(0);
+        first.getEtcdDiscoveryService().deactivate();
+        // the remaining instance sees the instance leaving before the announce ttl elapses
+        Instance second = instances.get(0);
+        while (! second.instancesInView(1)) {
+            Thread.sleep(100);
+        }
+    }
+
     @Test(timeout = 10000L)
     public void testRemovingOneInstance() throws Exception {
         // start instances
@@ -257,6 +320,18 @@ public class ClusterTest {
         }
     }
 
+    @Test(timeout = 10000L)
+    public void testJoiningInstanceNoticedBeforeTopologyUpdatePeriod() throws Exception {
+        // the topology update period grows to one minute after two successful updates
+        Instance i1 = startInstance(UUID.randomUUID().toString(), "default-cluster", 9000, "250:60000:2");
+        waitForEstablishedView(instances);
+        Thread.sleep(1000);
+        // the joining instance must be noticed from the announce changes
+        startInstance(UUID.randomUUID().toString(), "default-cluster", 9001, "250:60000:2");
+        waitForEstablishedView(instances);
+        Assert.assertTrue(i1.instancesInView(2));
+    }
+
     @Test(timeout = 10000L)
     public void testStartTenInstancesWithIoTimeout() throws Exception {
         handler.setProcessingDelay(300); // greater than the connection timeout
@@ -387,14 +462,23 @@ public class ClusterTest {
     }
 
     private Instance startInstance(String slingId, String clusterId, int instancePort) throws Exception {
+        return startInstance(slingId, clusterId, instancePort, "250");
+    }
+
+    private Instance startInstance(String slingId, String clusterId, int instancePort, String topologyUpdatePeriod) throws Exception {
+        return startInstance(slingId, clusterId, instancePort, topologyUpdatePeriod, "250");
+    }
+
+    private Instance startInstance(String slingId, String clusterId, int instancePort, String topologyUpdatePeriod,
+                                   String announceRenewalPeriod) throws Exception {
         Instance instance = new Instance(
                 instancePort,
                 null,
                 null,
                 clusterId,
                 "/discovery",
-                "250",           /* announce renewal period */
-                "250",           /* topology update period  */
+                announceRenewalPeriod, /* announce renewal period */
+                topologyUpdatePeriod, /* topology update period  */
                 "200",           /* view update period      */
                 250,             /* connection timeout      */
                 250,             /* socket timeout          */
@@ -442,7 +526,11 @@ public class ClusterTest {
     private static Server startServer(HttpServlet servlet, String pathSpec)
             throws Exception {
         Server server = new Server();
-        server.setConnectors(new Connector[]{new SelectChannelConnector()});
+        // each instance holds a thread and reopens a connection while watching the announces
+        server.setThreadPool(new QueuedThreadPool(MAX_SERVER_THREADS));
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setAcceptQueueSize(MAX_SERVER_THREADS);
+        server.setConnectors(new Connector[]{connector});
         ServletContextHandler sch = new ServletContextHandler(null, "/", false, false);
         sch.addServlet(new ServletHolder(servlet), pathSpec);
         server.setHandler(sch);
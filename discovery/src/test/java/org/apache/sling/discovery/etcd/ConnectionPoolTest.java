@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+    private static final HttpRoute ROUTE = new HttpRoute(new HttpHost("localhost", 4001));
+
+    @Test
+    public void testLeases() throws Exception {
+        ConnectionPool pool = new ConnectionPool("test", registry(), 2);
+        try {
+            Assert.assertEquals("test", pool.getName());
+            Assert.assertEquals(2, pool.getMaxConnections());
+            HttpClientConnection connection = pool.requestConnection(ROUTE, null).get(100, TimeUnit.MILLISECONDS);
+            Assert.assertEquals(1, pool.getLeases());
+            Assert.assertEquals(1, pool.getLeased());
+            Assert.assertEquals(0, pool.getSaturatedLeases());
+            pool.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+            Assert.assertEquals(0, pool.getLeased());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSaturatedPool() throws Exception {
+        ConnectionPool pool = new ConnectionPool("test", registry(), 1);
+        try {
+            pool.requestConnection(ROUTE, null).get(100, TimeUnit.MILLISECONDS);
+            try {
+                pool.requestConnection(ROUTE, null).get(50, TimeUnit.MILLISECONDS);
+                Assert.fail("Expected lease timeout");
+            } catch (ConnectionPoolTimeoutException e) {
+                // expected
+            }
+            Assert.assertEquals(1, pool.getLeases());
+            Assert.assertEquals(1, pool.getLeaseTimeouts());
+            Assert.assertEquals(1, pool.getLeased());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSaturatedLease() throws Exception {
+        final ConnectionPool pool = new ConnectionPool("test", registry(), 1);
+        try {
+            final HttpClientConnection connection = pool.requestConnection(ROUTE, null).get(100, TimeUnit.MILLISECONDS);
+            Thread releaser = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    pool.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+                }
+            });
+            releaser.start();
+            pool.requestConnection(ROUTE, null).get(5000, TimeUnit.MILLISECONDS);
+            releaser.join();
+            Assert.assertEquals(2, pool.getLeases());
+            Assert.assertEquals(1, pool.getSaturatedLeases());
+            Assert.assertTrue(pool.getMaxLeaseWait() >= 50);
+            Assert.assertTrue(pool.getAverageLeaseWait() <= pool.getMaxLeaseWait());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Registry<ConnectionSocketFactory> registry() {
+        return RegistryBuilder.<ConnectionSocketFactory> create()
+                .register("http", PlainConnectionSocketFactory.INSTANCE).build();
+    }
+}
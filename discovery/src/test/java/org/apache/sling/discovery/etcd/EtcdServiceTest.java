@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -40,12 +41,22 @@ import org.apache.sling.etcd.client.EtcdClient;
 import org.apache.sling.etcd.client.LeaderStatsResponse;
 import org.apache.sling.etcd.client.MemberStatsResponse;
 import org.apache.sling.etcd.client.MembersResponse;
+import org.apache.sling.etcd.client.NodeVisitor;
+import org.apache.sling.etcd.client.ValueDecoder;
 import org.apache.sling.etcd.client.VersionResponse;
+import org.apache.sling.etcd.client.WatchListener;
 import org.apache.sling.etcd.client.impl.LeaderStatsResponseImpl;
 import org.apache.sling.etcd.client.impl.MemberStatsResponseImpl;
 import org.apache.sling.etcd.client.impl.MembersResponseImpl;
 import org.apache.sling.etcd.client.impl.VersionResponseImpl;
 import org.apache.sling.etcd.common.ErrorCodes;
+import org.apache.sling.etcd.common.EtcdHeaders;
+import org.apache.sling.etcd.client.EtcdWatch;
+import org.apache.sling.etcd.client.KeyAction;
+import org.apache.sling.etcd.testing.Etcd;
+import org.apache.sling.etcd.testing.EtcdException;
+import org.apache.sling.etcd.testing.EtcdHandler;
+import org.apache.sling.etcd.testing.tree.Key;
 import org.apache.sling.etcd.client.EtcdNode;
 import org.apache.sling.etcd.client.KeyResponse;
 import org.apache.sling.etcd.client.impl.EtcdClientImpl;
@@ -244,6 +255,61 @@ public class EtcdServiceTest {
         Assert.assertEquals(0, announces.size());
     }
 
+    @Test
+    public void testGetIndexedAnnounces() throws Exception {
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res)
+                    throws ServletException, IOException {
+                res.setStatus(200);
+                res.setHeader(EtcdHeaders.ETCD_INDEX, "1042");
+                res.getWriter().write(IOUtils.toString(
+                        getClass().getResourceAsStream(
+                                "/get-announces.json")));
+            }
+        };
+        server = startServer(servlet, "/v2/keys/discovery/announces");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        IndexedNodes announces = etcdService.getIndexedAnnounces();
+        Assert.assertEquals(2, announces.getNodes().size());
+        Assert.assertEquals(1042, announces.getEtcdIndex());
+    }
+
+    @Test
+    public void testGetIndexedAnnouncesKeyNotFound() throws Exception {
+        EtcdService etcdService = new EtcdService(new IoExceptionEtcdClient(ErrorCodes.KEY_NOT_FOUND), "/discovery");
+        IndexedNodes announces = etcdService.getIndexedAnnounces();
+        Assert.assertEquals(0, announces.getNodes().size());
+        Assert.assertEquals(12, announces.getEtcdIndex());
+    }
+
+    @Test
+    public void testWatchAnnounces() throws Exception {
+        Etcd etcd = new Etcd();
+        server = startServer(new EtcdHandler(etcd), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        IndexedNodes announces = etcdService.getIndexedAnnounces();
+        Key created = etcd.createKey("/discovery/announces", "announce", 10, null);
+        IndexedAction indexed = etcdService.watchAnnounces(announces.getEtcdIndex() + 1);
+        Assert.assertNotNull(indexed);
+        Assert.assertEquals(etcd.index(), indexed.getEtcdIndex());
+        KeyAction action = indexed.getAction();
+        Assert.assertEquals("create", action.action());
+        Assert.assertEquals(created.path(), action.node().key());
+        Assert.assertEquals(created.modifiedIndex(), action.node().modifiedIndex());
+    }
+
+    @Test
+    public void testWatchAnnouncesIndexCleared() throws Exception {
+        EtcdService etcdService = new EtcdService(new IoExceptionEtcdClient(ErrorCodes.EVENT_INDEX_CLEARED), "/discovery");
+        try {
+            etcdService.watchAnnounces(1);
+            Assert.fail("Expected the event index to be cleared");
+        } catch (EtcdServiceException e) {
+            Assert.assertEquals(ErrorCodes.EVENT_INDEX_CLEARED, e.getError().errorCode());
+        }
+    }
+
     @Test
     public void testGetProperties() throws Exception {
         HttpServlet servlet = new HttpServlet() {
@@ -380,6 +446,221 @@ public class EtcdServiceTest {
         etcdService.refreshAnnounce("/discovery/announces/265", annData.toString(), 20000);
     }
 
+    @Test
+    public void testRefreshAnnounceTtl() throws Exception {
+        Etcd etcd = new Etcd();
+        server = startServer(new EtcdHandler(etcd), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        AnnounceData annData = new AnnounceData("sling-id-2", "server-info-2", "default-cluster", 1928);
+        Key created = etcd.createKey("/discovery/announces", annData.toString(), 1, null);
+        long index = etcd.index();
+        EtcdNode node = etcdService.refreshAnnounceTtl(created.path(), 20);
+        Assert.assertEquals(annData.toString(), node.value());
+        Assert.assertTrue(node.ttl() > 1);
+        // the refresh is not notified to watchers
+        Key other = etcd.createKey("/discovery/announces", "other", 10, null);
+        IndexedAction indexed = etcdService.watchAnnounces(index + 1);
+        Assert.assertEquals("create", indexed.getAction().action());
+        Assert.assertEquals(other.path(), indexed.getAction().node().key());
+    }
+
+    @Test
+    public void testWatchAnnouncesIdleLongerThanSocketTimeout() throws Exception {
+        final Etcd etcd = new Etcd();
+        EtcdHandler handler = new EtcdHandler(etcd);
+        handler.setWatchTimeout(5000);
+        server = startServer(handler, "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server), 300, 5000);
+        final AnnounceData annData = new AnnounceData("sling-id-2", "server-info-2", "default-cluster", 1928);
+        Key first = etcd.createKey("/discovery/announces", annData.toString(), 10, null);
+        long index = etcd.index();
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(1000);
+                    etcd.createKey("/discovery/announces", annData.toString(), 10, null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (EtcdException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        writer.start();
+        try {
+            // the watch stays idle longer than the socket timeout
+            IndexedAction indexed = etcdService.watchAnnounces(index + 1);
+            Assert.assertNotNull(indexed);
+            Assert.assertEquals("create", indexed.getAction().action());
+            Assert.assertFalse(first.path().equals(indexed.getAction().node().key()));
+            Assert.assertTrue(indexed.getAction().node().createdIndex() > index);
+        } finally {
+            writer.join();
+        }
+    }
+
+    @Test
+    public void testRefreshAnnounceTtlNoKey() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd()), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        try {
+            etcdService.refreshAnnounceTtl("/discovery/announces/265", 20);
+            Assert.fail("Expected the announce key not to be found");
+        } catch (EtcdServiceException e) {
+            Assert.assertEquals(ErrorCodes.KEY_NOT_FOUND, e.getError().errorCode());
+        }
+    }
+
+    @Test
+    public void testTtlRefreshSupported() throws Exception {
+        server = startServer(new VersionServlet("{\"etcdserver\":\"2.3.7\",\"etcdcluster\":\"2.3.0\"}"), "/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        Assert.assertTrue(etcdService.isTtlRefreshSupported());
+    }
+
+    @Test
+    public void testTtlRefreshNotSupported() throws Exception {
+        server = startServer(new VersionServlet("etcd 2.0.8"), "/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        Assert.assertFalse(etcdService.isTtlRefreshSupported());
+    }
+
+    @Test
+    public void testTtlRefreshSupportedVersions() throws Exception {
+        Assert.assertFalse(EtcdService.isTtlRefreshSupported("etcd 2.0.13"));
+        Assert.assertFalse(EtcdService.isTtlRefreshSupported("{\"etcdserver\":\"2.2.5\",\"etcdcluster\":\"2.2.0\"}"));
+        // the cluster version prevails during rolling upgrades
+        Assert.assertFalse(EtcdService.isTtlRefreshSupported("{\"etcdserver\":\"2.3.0\",\"etcdcluster\":\"2.2.0\"}"));
+        Assert.assertFalse(EtcdService.isTtlRefreshSupported("{\"etcdserver\":\"2.1.3\"}"));
+        Assert.assertFalse(EtcdService.isTtlRefreshSupported("unknown"));
+        Assert.assertTrue(EtcdService.isTtlRefreshSupported("{\"etcdserver\":\"2.3.0\",\"etcdcluster\":\"2.3.0\"}"));
+        Assert.assertTrue(EtcdService.isTtlRefreshSupported("{\"etcdserver\":\"3.0.1\",\"etcdcluster\":\"3.0.0\"}"));
+        Assert.assertTrue(EtcdService.isTtlRefreshSupported("{\"etcdserver\":\"2.3.1\"}"));
+    }
+
+    @Test
+    public void testClaimOwnership() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd()), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        Assert.assertNull(etcdService.getOwnership("sling-id"));
+        Assert.assertTrue(etcdService.claimOwnership("sling-id", "token-1", 20));
+        // the Sling identifier is owned
+        Assert.assertFalse(etcdService.claimOwnership("sling-id", "token-2", 20));
+        EtcdNode owner = etcdService.getOwnership("sling-id");
+        Assert.assertNotNull(owner);
+        Assert.assertEquals("/discovery/owners/sling-id", owner.key());
+        Assert.assertEquals("token-1", owner.value());
+        Assert.assertTrue(owner.ttl() > 0);
+        // other Sling identifiers are independent
+        Assert.assertTrue(etcdService.claimOwnership("other-sling-id", "token-2", 20));
+    }
+
+    @Test
+    public void testRefreshOwnership() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd()), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        try {
+            etcdService.refreshOwnership("sling-id", "token-1", 20);
+            Assert.fail("Expected the ownership key not to be found");
+        } catch (EtcdServiceException e) {
+            Assert.assertEquals(ErrorCodes.KEY_NOT_FOUND, e.getError().errorCode());
+        }
+        Assert.assertTrue(etcdService.claimOwnership("sling-id", "token-1", 1));
+        etcdService.refreshOwnership("sling-id", "token-1", 20);
+        Assert.assertTrue(etcdService.getOwnership("sling-id").ttl() > 1);
+        try {
+            etcdService.refreshOwnership("sling-id", "token-2", 20);
+            Assert.fail("Expected the ownership to be held with another token");
+        } catch (EtcdServiceException e) {
+            Assert.assertEquals(ErrorCodes.TEST_FAILED, e.getError().errorCode());
+        }
+    }
+
+    @Test
+    public void testRefreshOwnershipTtl() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd()), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        try {
+            etcdService.refreshOwnershipTtl("sling-id", "token-1", 20);
+            Assert.fail("Expected the ownership key not to be found");
+        } catch (EtcdServiceException e) {
+            Assert.assertEquals(ErrorCodes.KEY_NOT_FOUND, e.getError().errorCode());
+        }
+        Assert.assertTrue(etcdService.claimOwnership("sling-id", "token-1", 1));
+        EtcdNode node = etcdService.refreshOwnershipTtl("sling-id", "token-1", 20);
+        Assert.assertEquals("token-1", node.value());
+        Assert.assertTrue(etcdService.getOwnership("sling-id").ttl() > 1);
+        try {
+            etcdService.refreshOwnershipTtl("sling-id", "token-2", 20);
+            Assert.fail("Expected the ownership to be held with another token");
+        } catch (EtcdServiceException e) {
+            Assert.assertEquals(ErrorCodes.TEST_FAILED, e.getError().errorCode());
+        }
+    }
+
+    @Test
+    public void testTakeOverOwnership() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd()), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        Assert.assertFalse(etcdService.takeOverOwnership("sling-id", "token-1", "token-2", 20));
+        Assert.assertTrue(etcdService.claimOwnership("sling-id", "token-1", 20));
+        Assert.assertFalse(etcdService.takeOverOwnership("sling-id", "token-0", "token-2", 20));
+        Assert.assertTrue(etcdService.takeOverOwnership("sling-id", "token-1", "token-2", 20));
+        Assert.assertEquals("token-2", etcdService.getOwnership("sling-id").value());
+    }
+
+    @Test
+    public void testReleaseOwnership() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd()), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        Assert.assertFalse(etcdService.releaseOwnership("sling-id", "token-1"));
+        Assert.assertTrue(etcdService.claimOwnership("sling-id", "token-1", 20));
+        Assert.assertFalse(etcdService.releaseOwnership("sling-id", "token-2"));
+        Assert.assertNotNull(etcdService.getOwnership("sling-id"));
+        Assert.assertTrue(etcdService.releaseOwnership("sling-id", "token-1"));
+        Assert.assertNull(etcdService.getOwnership("sling-id"));
+    }
+
+    @Test
+    public void testDeleteAnnounceAndProperties() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd()), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        AnnounceData annData = new AnnounceData("sling-id", "server-info", "default-cluster", 0);
+        EtcdNode created = etcdService.createAnnounce(annData.toString(), 20);
+        etcdService.sendInstanceProperties(Collections.singletonMap("name", "value"), "sling-id");
+        // the announce is not deleted once changed
+        AnnounceData other = new AnnounceData("sling-id", "server-info", "default-cluster", 1);
+        Assert.assertFalse(etcdService.deleteAnnounce(created.key(), other.toString()));
+        Assert.assertNotNull(etcdService.getAnnounce(created.key()));
+        Assert.assertTrue(etcdService.deleteAnnounce(created.key(), annData.toString()));
+        etcdService.deleteInstanceProperties("sling-id");
+        Assert.assertNull(etcdService.getAnnounce(created.key()));
+        Assert.assertTrue(etcdService.getProperties("sling-id").isEmpty());
+        // deleting missing keys is not an error
+        Assert.assertTrue(etcdService.deleteAnnounce(created.key(), annData.toString()));
+        etcdService.deleteInstanceProperties("sling-id");
+    }
+
+    @Test
+    public void testTakeOverAnnounce() throws Exception {
+        Etcd etcd = new Etcd();
+        server = startServer(new EtcdHandler(etcd), "/v2/keys/*");
+        EtcdService etcdService = buildEtcdService(serverPort(server));
+        Assert.assertNull(etcdService.getAnnounce("/discovery/announces/265"));
+        AnnounceData previous = new AnnounceData("sling-id", "server-info", "default-cluster", 1928);
+        EtcdNode created = etcdService.createAnnounce(previous.toString(), 20);
+        EtcdNode node = etcdService.getAnnounce(created.key());
+        Assert.assertNotNull(node);
+        Assert.assertEquals(previous.toString(), node.value());
+        AnnounceData next = new AnnounceData("sling-id", "server-info", "default-cluster", 0);
+        // the announce was modified since the index
+        Assert.assertNull(etcdService.takeOverAnnounce(created.key(), next.toString(), node.modifiedIndex() - 1, 20));
+        EtcdNode taken = etcdService.takeOverAnnounce(created.key(), next.toString(), node.modifiedIndex(), 20);
+        Assert.assertNotNull(taken);
+        Assert.assertEquals(created.key(), taken.key());
+        Assert.assertEquals(next.toString(), taken.value());
+    }
+
     @Test(expected = IOException.class)
     public void testRefreshAnnounceIOError() throws Exception {
         EtcdService etcdService = new EtcdService(new IoExceptionEtcdClient(), "/discovery");
@@ -456,6 +737,18 @@ public class EtcdServiceTest {
             return throwOrReturnError();
         }
 
+        @Nonnull
+        public <T> KeyResponse getKey(@Nonnull String s, @Nonnull Map<String, String> map, @Nonnull ValueDecoder<T> decoder)
+                throws IOException {
+            return throwOrReturnError();
+        }
+
+        @Nonnull
+        public KeyResponse list(@Nonnull String s, boolean recursive, @Nonnull NodeVisitor visitor)
+                throws IOException {
+            return throwOrReturnError();
+        }
+
         @Nonnull
         public KeyResponse putKey(@Nonnull String s, String s1, @Nonnull Map<String, String> map)
                 throws IOException {
@@ -486,6 +779,11 @@ public class EtcdServiceTest {
             return throwOrReturnError();
         }
 
+        @Nonnull
+        public EtcdWatch watch(@Nonnull String key, boolean recursive, @Nullable Long fromIndex, @Nonnull WatchListener listener) {
+            throw new UnsupportedOperationException();
+        }
+
         @Nonnull
         public MembersResponse getMembers() throws IOException {
             if (throwIoException) {
@@ -571,9 +869,13 @@ public class EtcdServiceTest {
     }
 
     private EtcdService buildEtcdService(int port) throws Exception {
+        return buildEtcdService(port, 10000, 10000);
+    }
+
+    private EtcdService buildEtcdService(int port, int socketTimeout, int watchTimeout) throws Exception {
         connectionManager = new PoolingHttpClientConnectionManager();
         final RequestConfig requestConfig = RequestConfig.custom()
-                .setSocketTimeout(10000)
+                .setSocketTimeout(socketTimeout)
                 .setConnectTimeout(10000)
                 .setRedirectsEnabled(true)
                 .setStaleConnectionCheckEnabled(true)
@@ -585,10 +887,41 @@ public class EtcdServiceTest {
                 .setConnectionManager(connectionManager)
                 .setDefaultRequestConfig(requestConfig)
                 .build();
-        etcdClient = new EtcdClientImpl(httpClient, new URI("http://localhost:" + port));
+        RequestConfig watchConfig = RequestConfig.copy(requestConfig)
+                .setSocketTimeout(watchTimeout)
+                .build();
+        etcdClient = new EtcdClientImpl(httpClient, new URI("http://localhost:" + port), watchConfig);
         return new EtcdService(etcdClient, "/discovery");
     }
 
+    /**
+     * Serves a single member cluster, the member client url pointing back to the server.
+     */
+    private static class VersionServlet extends HttpServlet {
+
+        private final String version;
+
+        private VersionServlet(String version) {
+            this.version = version;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse res)
+                throws ServletException, IOException {
+            String path = req.getRequestURI();
+            res.setStatus(200);
+            if ("/v2/members".equals(path)) {
+                String clientUrl = "http://localhost:" + req.getLocalPort();
+                res.getWriter().write("{\"members\":[{\"id\":\"492733e293f5a27b\",\"name\":\"c1\"," +
+                        "\"peerURLs\":[\"http://localhost:2380\"],\"clientURLs\":[\"" + clientUrl + "\"]}]}");
+            } else if ("/version".equals(path)) {
+                res.getWriter().write(version);
+            } else {
+                res.setStatus(404);
+            }
+        }
+    }
+
     private static Server startServer(HttpServlet servlet, String pathSpec)
             throws Exception {
         Server server = new Server();
@@ -283,6 +283,115 @@ public class EtcdTopologyViewTest {
 
     }
 
+    @Test
+    public void testIncrementalBuild() throws Exception {
+        String sid1 = "sling-id-1";
+        String sid2 = "sling-id-2";
+        String sid3 = "sling-id-3";
+        List<EtcdNode> announcements = new ArrayList<EtcdNode>();
+        announcements.add(buildAnnounceNode(sid1, "cluster-1", "/announces/3"));
+        announcements.add(buildAnnounceNode(sid2, "cluster-2", "/announces/2"));
+        announcements.add(buildAnnounceNode(sid3, "cluster-2", "/announces/1"));
+        Announces announces = new Announces(announcements, false);
+        Map<String, Map<String, String>> props = new HashMap<String, Map<String, String>>();
+        props.put(sid1, Collections.singletonMap("p1", "v1"));
+        props.put(sid2, Collections.singletonMap("p2", "v2"));
+        props.put(sid3, Collections.singletonMap("p3", "v3"));
+        EtcdTopologyView previous = new EtcdTopologyView(announces, props, sid2, true);
+
+        // no change
+
+        Assert.assertTrue(EtcdTopologyView.changedSlingIds(previous, announces, props, sid2).isEmpty());
+
+        // change the properties of an instance in cluster-2
+
+        Map<String, Map<String, String>> newProps = new HashMap<String, Map<String, String>>(props);
+        newProps.put(sid3, Collections.singletonMap("p3", "v4"));
+        Set<String> changed = EtcdTopologyView.changedSlingIds(previous, announces, newProps, sid2);
+        Assert.assertEquals(Collections.singleton(sid3), changed);
+        EtcdTopologyView view = new EtcdTopologyView(previous, announces, newProps, sid2, changed, true);
+
+        Assert.assertEquals(3, view.getInstances().size());
+        Assert.assertEquals(2, view.getClusterViews().size());
+        Assert.assertSame(findInstance(previous, sid1), findInstance(view, sid1));
+        Assert.assertNotSame(findInstance(previous, sid2), findInstance(view, sid2));
+        Assert.assertEquals("v4", findInstance(view, sid3).getProperty("p3"));
+        Assert.assertTrue(findInstance(view, sid3).isLeader());
+        Assert.assertSame(findInstance(view, sid2).getClusterView(), findInstance(view, sid3).getClusterView());
+        Assert.assertEquals(sid2, view.getLocalInstance().getSlingId());
+
+        // move an instance to cluster-1
+
+        List<EtcdNode> moved = new ArrayList<EtcdNode>();
+        moved.add(buildAnnounceNode(sid1, "cluster-1", "/announces/3"));
+        moved.add(buildAnnounceNode(sid2, "cluster-2", "/announces/2"));
+        moved.add(buildAnnounceNode(sid3, "cluster-1", "/announces/1"));
+        Announces movedAnnounces = new Announces(moved, false);
+        changed = EtcdTopologyView.changedSlingIds(view, movedAnnounces, newProps, sid2);
+        Assert.assertEquals(Collections.singleton(sid3), changed);
+        EtcdTopologyView movedView = new EtcdTopologyView(view, movedAnnounces, newProps, sid2, changed, true);
+        Assert.assertEquals(2, movedView.getClusterViews().size());
+        Assert.assertTrue(findInstance(movedView, sid3).isLeader());
+        Assert.assertFalse(findInstance(movedView, sid1).isLeader());
+        Assert.assertTrue(findInstance(movedView, sid2).isLeader());
+        Assert.assertEquals(1, findInstance(movedView, sid2).getClusterView().getInstances().size());
+    }
+
+    @Test
+    public void testIndexedLookups() throws Exception {
+        String sid1 = "sling-id-1";
+        String sid2 = "sling-id-2";
+        String sid3 = "sling-id-3";
+        List<EtcdNode> announcements = new ArrayList<EtcdNode>();
+        announcements.add(buildAnnounceNode(sid1, "cluster-1", "/announces/3"));
+        announcements.add(buildAnnounceNode(sid2, "cluster-2", "/announces/2"));
+        announcements.add(buildAnnounceNode(sid3, "cluster-2", "/announces/1"));
+        Map<String, Map<String, String>> props = new HashMap<String, Map<String, String>>();
+        props.put(sid1, Collections.singletonMap("role", "author"));
+        props.put(sid2, Collections.singletonMap("role", "publish"));
+        props.put(sid3, Collections.singletonMap("role", "publish"));
+        EtcdTopologyView view = new EtcdTopologyView(new Announces(announcements, false), props, sid2, true);
+
+        Assert.assertEquals(sid1, view.getInstance(sid1).getSlingId());
+        Assert.assertSame(view.getInstance(sid1), view.getInstance(sid1));
+        Assert.assertNull(view.getInstance("unknown"));
+
+        List<InstanceDescription> cluster2 = view.getClusterInstances("cluster-2");
+        Assert.assertEquals(2, cluster2.size());
+        Assert.assertEquals(sid3, cluster2.get(0).getSlingId());
+        Assert.assertTrue(view.getClusterInstances("unknown").isEmpty());
+
+        Assert.assertEquals(2, view.findInstances("role", "publish").size());
+        Assert.assertEquals(Collections.singleton(view.getInstance(sid1)), view.findInstances("role", "author"));
+        Assert.assertTrue(view.findInstances("role", "unknown").isEmpty());
+        Assert.assertTrue(view.findInstances("unknown", "publish").isEmpty());
+
+        CountingFilter filter = new CountingFilter("publish");
+        Set<InstanceDescription> match = view.findInstances(filter);
+        Assert.assertEquals(2, match.size());
+        // the filters are evaluated on each call, the returned set is a modifiable copy
+        Assert.assertEquals(match, view.findInstances(filter));
+        Assert.assertEquals(6, filter.calls);
+        match.clear();
+        Assert.assertEquals(2, view.findInstances(filter).size());
+    }
+
+    private static class CountingFilter implements InstanceFilter {
+
+        private final String role;
+
+        int calls;
+
+        CountingFilter(String role) {
+            this.role = role;
+        }
+
+        public boolean accept(InstanceDescription instance) {
+            calls++;
+            return role.equals(instance.getProperty("role"));
+        }
+    }
+
     private EtcdNode buildAnnounceNode(String slingId, String clusterId, String announceKey) {
         return new EtcdNodeBuilder()
                 .value(new AnnounceData(slingId, "localhost:4502", clusterId, 1001L).json().toString())
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.discovery.etcd;
 
+import java.io.File;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Dictionary;
@@ -125,6 +126,10 @@ public class Instance implements Runnable {
         BundleContext bc = Mockito.mock(BundleContext.class);
         Mockito.when(bc.getProperty("org.osgi.service.http.port"))
                 .thenReturn(String.valueOf(instancePort));
+        // the instances started with the same Sling identifier and port share their data area
+        File dataArea = new File("target/instances/" + slingId + "-" + instancePort);
+        Mockito.when(bc.getDataFile(Mockito.anyString()))
+                .thenReturn(new File(dataArea, "ownership.properties"));
 
         ComponentContext cc = Mockito.mock(ComponentContext.class);
         Mockito.when(cc.getProperties())
@@ -151,7 +156,9 @@ public class Instance implements Runnable {
 
     public void bindTopologyEventListener(AssertTopologyEventListener listener, int serviceId) {
         getListeners().add(listener);
-        getEtcdDiscoveryService().bindTopologyEventListener(listener);
+        Map<String, Object> serviceConfig = new HashMap<String, Object>();
+        serviceConfig.put("service.id", (long) serviceId);
+        getEtcdDiscoveryService().bindTopologyEventListener(listener, serviceConfig);
     }
 
     public EtcdDiscoveryService getEtcdDiscoveryService() {
@@ -211,6 +218,14 @@ public class Instance implements Runnable {
         exec.shutdownNow();
     }
 
+    /**
+     * Deactivate the instance without removing its announce from etcd, as a crashed instance would.
+     */
+    public void crash() throws Exception {
+        setField(etcdDiscoveryService, "removeAnnounceTimeout", 0L);
+        etcdDiscoveryService.deactivate();
+    }
+
     //
 
     private String dumpState() {
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import org.apache.sling.etcd.client.EtcdNode;
+import org.junit.Test;
+
+public class ListenerFilterTest {
+
+    private static final String SID1 = "sling-id-1";
+
+    private static final String SID2 = "sling-id-2";
+
+    @Test
+    public void testNoFilter() throws Exception {
+        Assert.assertSame(ListenerFilter.ALL, ListenerFilter.fromProperties(null));
+        Assert.assertSame(ListenerFilter.ALL, ListenerFilter.fromProperties(Collections.<String, Object>singletonMap("service.id", 1L)));
+    }
+
+    @Test
+    public void testPropertyNames() throws Exception {
+        ListenerFilter filter = ListenerFilter.fromProperties(Collections.<String, Object>singletonMap(
+                ListenerFilter.PROPERTY_NAMES, new String[]{"org.example.*", "endpoint"}));
+        EtcdTopologyView oldView = buildView("cluster-2", "p1", "v1");
+        Assert.assertTrue(accept(filter, oldView, buildView("cluster-2", "org.example.weight", "v2")));
+        Assert.assertTrue(accept(filter, oldView, buildView("cluster-2", "endpoint", "v2")));
+        Assert.assertFalse(accept(filter, oldView, buildView("cluster-2", "p1", "v2")));
+        Assert.assertFalse(accept(filter, oldView, buildView("cluster-2", "endpoints", "v2")));
+        // topology changes match whatever the property names
+        Assert.assertTrue(accept(filter, oldView, buildView("cluster-1", "p1", "v1")));
+    }
+
+    @Test
+    public void testClusterIds() throws Exception {
+        ListenerFilter filter = ListenerFilter.fromProperties(Collections.<String, Object>singletonMap(
+                ListenerFilter.CLUSTER_IDS, "cluster-2"));
+        EtcdTopologyView oldView = buildView("cluster-2", "p1", "v1");
+        Assert.assertTrue(accept(filter, oldView, buildView("cluster-2", "p1", "v2")));
+        // cluster-2 lost an instance
+        Assert.assertTrue(accept(filter, oldView, buildView("cluster-1", "p1", "v1")));
+        Assert.assertFalse(accept(filter, buildView("cluster-3", "p1", "v1"), buildView("cluster-3", "p1", "v2")));
+    }
+
+    @Test
+    public void testLocalClusterOnly() throws Exception {
+        ListenerFilter filter = ListenerFilter.fromProperties(Collections.<String, Object>singletonMap(
+                ListenerFilter.LOCAL_CLUSTER_ONLY, true));
+        // SID2 is local, in cluster-1
+        EtcdTopologyView oldView = buildView("cluster-2", "p1", "v1");
+        Assert.assertFalse(accept(filter, oldView, buildView("cluster-2", "p1", "v2")));
+        // SID1 joins the local cluster
+        Assert.assertTrue(accept(filter, oldView, buildView("cluster-1", "p1", "v1")));
+    }
+
+    @Test
+    public void testCombined() throws Exception {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(ListenerFilter.CLUSTER_IDS, new String[]{"cluster-2"});
+        props.put(ListenerFilter.PROPERTY_NAMES, "p2");
+        ListenerFilter filter = ListenerFilter.fromProperties(props);
+        EtcdTopologyView oldView = buildView("cluster-2", "p1", "v1");
+        Assert.assertFalse(accept(filter, oldView, buildView("cluster-2", "p1", "v2")));
+        Assert.assertTrue(accept(filter, oldView, buildView("cluster-2", "p2", "v2")));
+    }
+
+    private boolean accept(ListenerFilter filter, EtcdTopologyView oldView, EtcdTopologyView newView) {
+        return filter.accept(TopologyDiff.compute(oldView, newView), oldView, newView);
+    }
+
+    /**
+     * @return a view with the local instance SID2 in cluster-1 and SID1 in the given cluster with the given property.
+     */
+    private EtcdTopologyView buildView(String clusterId, String name, String value) {
+        List<EtcdNode> nodes = new ArrayList<EtcdNode>();
+        nodes.add(buildAnnounceNode(SID1, clusterId, "/announces/1"));
+        nodes.add(buildAnnounceNode(SID2, "cluster-1", "/announces/2"));
+        Map<String, Map<String, String>> props = new HashMap<String, Map<String, String>>();
+        props.put(SID1, Collections.singletonMap(name, value));
+        return new EtcdTopologyView(new Announces(nodes, false), props, SID2, true);
+    }
+
+    private EtcdNode buildAnnounceNode(String slingId, String clusterId, String announceKey) {
+        return new EtcdNodeBuilder()
+                .value(new AnnounceData(slingId, "localhost:4502", clusterId, 1001L).json().toString())
+                .modifiedIndex(10)
+                .createdIndex(10)
+                .ttl(10)
+                .key(announceKey)
+                .build();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+import junit.framework.Assert;
+import org.apache.sling.discovery.TopologyEvent;
+import org.apache.sling.discovery.TopologyEventListener;
+import org.apache.sling.discovery.TopologyView;
+import org.junit.Test;
+
+public class ListenerQueueTest {
+
+    @Test
+    public void testDeliverInOrder() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        TeL tel = new TeL();
+        ListenerQueue queue = new ListenerQueue(tel, executor, 10, 1000);
+        TopologyView view1 = buildView("cluster-1");
+        TopologyView view2 = buildView("cluster-2");
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_INIT, null, view1));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view1, null));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, view1, view2));
+        Assert.assertEquals(1, executor.tasks.size());
+        Assert.assertEquals(3, queue.getSize());
+        executor.runAll();
+        Assert.assertEquals(3, tel.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_INIT, tel.events.get(0).getType());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel.events.get(1).getType());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGED, tel.events.get(2).getType());
+        Assert.assertEquals(0, queue.getSize());
+        Assert.assertEquals(3, queue.getMaxSize());
+        Assert.assertEquals(3, queue.getDispatched());
+        Assert.assertFalse(queue.isSlow());
+    }
+
+    @Test
+    public void testCoalescePropertiesChanged() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        TeL tel = new TeL();
+        ListenerQueue queue = new ListenerQueue(tel, executor, 10, 1000);
+        TopologyView view1 = buildView("cluster-1");
+        TopologyView view2 = buildView("cluster-1");
+        TopologyView view3 = buildView("cluster-1");
+        queue.offer(new TopologyEvent(TopologyEvent.Type.PROPERTIES_CHANGED, view1, view2));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.PROPERTIES_CHANGED, view2, view3));
+        executor.runAll();
+        Assert.assertEquals(1, tel.events.size());
+        Assert.assertEquals(TopologyEvent.Type.PROPERTIES_CHANGED, tel.events.get(0).getType());
+        Assert.assertSame(view1, tel.events.get(0).getOldView());
+        Assert.assertSame(view3, tel.events.get(0).getNewView());
+        Assert.assertEquals(1, queue.getCoalesced());
+    }
+
+    @Test
+    public void testCoalesceChanges() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        TeL tel = new TeL();
+        ListenerQueue queue = new ListenerQueue(tel, executor, 10, 1000);
+        TopologyView view1 = buildView("cluster-1");
+        TopologyView view2 = buildView("cluster-2");
+        TopologyView view3 = buildView("cluster-2");
+        TopologyView view4 = buildView("cluster-3");
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_INIT, null, view1));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view1, null));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, view1, view2));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view2, null));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.PROPERTIES_CHANGED, view2, view3));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view3, null));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, view3, view4));
+        Assert.assertEquals(3, queue.getSize());
+        executor.runAll();
+        Assert.assertEquals(3, tel.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_INIT, tel.events.get(0).getType());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel.events.get(1).getType());
+        Assert.assertSame(view1, tel.events.get(1).getOldView());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGED, tel.events.get(2).getType());
+        Assert.assertSame(view1, tel.events.get(2).getOldView());
+        Assert.assertSame(view4, tel.events.get(2).getNewView());
+        Assert.assertEquals(4, queue.getCoalesced());
+        Assert.assertFalse(queue.isSlow());
+    }
+
+    @Test
+    public void testCoalescePropertiesChanges() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        TeL tel = new TeL();
+        ListenerQueue queue = new ListenerQueue(tel, executor, 10, 1000);
+        List<TopologyView> views = new ArrayList<TopologyView>();
+        for (int i = 0 ; i < 6 ; i++) {
+            views.add(buildView("cluster-1"));
+        }
+        for (int i = 1 ; i < views.size() ; i++) {
+            queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, views.get(i - 1), null));
+            queue.offer(new TopologyEvent(TopologyEvent.Type.PROPERTIES_CHANGED, views.get(i - 1), views.get(i)));
+        }
+        Assert.assertEquals(3, queue.getMaxSize());
+        executor.runAll();
+        Assert.assertEquals(2, tel.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel.events.get(0).getType());
+        Assert.assertSame(views.get(0), tel.events.get(0).getOldView());
+        Assert.assertEquals(TopologyEvent.Type.PROPERTIES_CHANGED, tel.events.get(1).getType());
+        Assert.assertSame(views.get(0), tel.events.get(1).getOldView());
+        Assert.assertSame(views.get(5), tel.events.get(1).getNewView());
+        Assert.assertEquals(8, queue.getCoalesced());
+    }
+
+    @Test
+    public void testDeliveredChangesNotCoalesced() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        TeL tel = new TeL();
+        ListenerQueue queue = new ListenerQueue(tel, executor, 10, 1000);
+        TopologyView view1 = buildView("cluster-1");
+        TopologyView view2 = buildView("cluster-2");
+        TopologyView view3 = buildView("cluster-3");
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view1, null));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, view1, view2));
+        executor.runAll();
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view2, null));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, view2, view3));
+        executor.runAll();
+        Assert.assertEquals(4, tel.events.size());
+        Assert.assertSame(view2, tel.events.get(3).getOldView());
+        Assert.assertSame(view3, tel.events.get(3).getNewView());
+        Assert.assertEquals(0, queue.getCoalesced());
+    }
+
+    @Test
+    public void testFoldWhenFull() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        TeL tel = new TeL();
+        ListenerQueue queue = new ListenerQueue(tel, executor, 3, 1000);
+        TopologyView view1 = buildView("cluster-1");
+        TopologyView view2 = buildView("cluster-2");
+        TopologyView view3 = buildView("cluster-3");
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view1, null));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, view1, view2));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view2, null));
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, view2, view3));
+        Assert.assertTrue(queue.isSlow());
+        executor.runAll();
+        Assert.assertEquals(2, tel.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel.events.get(0).getType());
+        Assert.assertSame(view1, tel.events.get(0).getOldView());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGED, tel.events.get(1).getType());
+        Assert.assertSame(view1, tel.events.get(1).getOldView());
+        Assert.assertSame(view3, tel.events.get(1).getNewView());
+    }
+
+    @Test
+    public void testSlowListener() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        TopologyEventListener listener = new TopologyEventListener() {
+            public void handleTopologyEvent(TopologyEvent event) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ListenerQueue queue = new ListenerQueue(listener, executor, 10, 5);
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_INIT, null, buildView("cluster-1")));
+        executor.runAll();
+        Assert.assertTrue(queue.isSlow());
+        Assert.assertTrue(queue.getMaxLatency() >= 5);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        TeL tel = new TeL();
+        ListenerQueue queue = new ListenerQueue(tel, executor, 10, 1000);
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_INIT, null, buildView("cluster-1")));
+        queue.close();
+        queue.offer(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, buildView("cluster-1"), null));
+        executor.runAll();
+        Assert.assertEquals(0, tel.events.size());
+    }
+
+    private TopologyView buildView(@Nonnull String clusterId) {
+        AnnounceData data = new AnnounceData("sling-id", "server-info", clusterId, 21);
+        Announce announce = new Announce(data, "/announces/1");
+        return new EtcdTopologyView(new Announces(announce), Collections.<String, Map<String, String>>emptyMap(), "sling-id", true);
+    }
+
+    private static class ManualExecutor implements Executor {
+
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        public void execute(@Nonnull Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (! tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static class TeL implements TopologyEventListener {
+        final List<TopologyEvent> events = new ArrayList<TopologyEvent>();
+        public void handleTopologyEvent(TopologyEvent event) {
+            events.add(event);
+        }
+    }
+
+}
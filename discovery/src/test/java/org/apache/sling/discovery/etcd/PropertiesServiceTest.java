@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 import org.apache.sling.discovery.PropertyProvider;
@@ -176,6 +177,81 @@ public class PropertiesServiceTest {
         Assert.assertFalse(same);
     }
 
+    @Test
+    public void testCachedProperties() throws Exception {
+        PropertiesService service = new PropertiesService();
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("name", "value");
+        PropProv prov = new PropProv(props);
+        service.bind(prov, buildServiceConfig(prov.getPropertyNames(), 1, 10));
+        Map<String, String> p1 = service.load();
+        Assert.assertEquals(1, prov.calls);
+        // the polling provider is not invoked while loading the cached properties
+        props.put("name", "new value");
+        Map<String, String> p2 = service.load();
+        Assert.assertSame(p1, p2);
+        Assert.assertEquals(1, prov.calls);
+        Assert.assertEquals("value", p2.get("name"));
+    }
+
+    @Test
+    public void testPollProperties() throws Exception {
+        PropertiesService service = new PropertiesService();
+        service.setMaxAge(0);
+        final AtomicInteger signals = new AtomicInteger();
+        service.setChangeListener(new Runnable() {
+            public void run() {
+                signals.incrementAndGet();
+            }
+        });
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("name", "value");
+        PropProv prov = new PropProv(props);
+        service.bind(prov, buildServiceConfig(prov.getPropertyNames(), 1, 10));
+        Assert.assertEquals(1, signals.get());
+        Assert.assertEquals("value", service.load().get("name"));
+        // unchanged properties do not signal
+        Assert.assertEquals(0, service.poll());
+        Assert.assertEquals(1, signals.get());
+        // changed properties are picked up by the poll
+        props.put("name", "new value");
+        service.poll();
+        Assert.assertEquals(2, signals.get());
+        Assert.assertEquals("new value", service.load().get("name"));
+    }
+
+    @Test
+    public void testPollDelay() throws Exception {
+        PropertiesService service = new PropertiesService();
+        service.setMaxAge(60000);
+        Assert.assertEquals(60000, service.poll());
+        PropProv prov = new PropProv(Collections.singletonMap("name", "value"));
+        service.bind(prov, buildServiceConfig(prov.getPropertyNames(), 1, 10));
+        service.load();
+        long delay = service.poll();
+        Assert.assertTrue(delay > 0 && delay <= 60000);
+        Assert.assertEquals(1, prov.calls);
+    }
+
+    @Test
+    public void testVersionedProvider() throws Exception {
+        PropertiesService service = new PropertiesService();
+        VersionedProv prov = new VersionedProv();
+        prov.publish(Collections.singletonMap("name", "value"));
+        service.bind(prov, buildServiceConfig(Collections.<String>emptySet(), 1, 10));
+        Map<String, String> p1 = service.load();
+        Assert.assertEquals("value", p1.get("name"));
+        Assert.assertEquals(1, prov.calls);
+        // the properties are not reloaded while the version does not move
+        Assert.assertSame(p1, service.load());
+        Assert.assertEquals(1, prov.calls);
+        // the properties are reloaded once the version moved
+        prov.publish(Collections.singletonMap("name", "new value"));
+        Map<String, String> p2 = service.load();
+        Assert.assertEquals("new value", p2.get("name"));
+        Assert.assertEquals(2, prov.calls);
+    }
+
     private Map<String, Object> buildServiceConfig(Set<String> propertyNames, int ranking, long serviceId) {
         Map<String, Object> configs = new HashMap<String, Object>();
         if (propertyNames.size() == 1) {
@@ -192,11 +268,14 @@ public class PropertiesServiceTest {
 
         final Map<String, String> properties;
 
+        int calls;
+
         PropProv(Map<String, String> properties) {
             this.properties = properties;
         }
 
         public String getProperty(String propName) {
+            calls++;
             return properties.get(propName);
         }
 
@@ -205,4 +284,31 @@ public class PropertiesServiceTest {
         }
     }
 
-}
\ No newline at end of file
+    private class VersionedProv implements VersionedPropertyProvider {
+
+        Map<String, String> properties = Collections.emptyMap();
+
+        long version;
+
+        int calls;
+
+        void publish(Map<String, String> properties) {
+            this.properties = properties;
+            version++;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Map<String, String> getProperties() {
+            calls++;
+            return properties;
+        }
+
+        public String getProperty(String propName) {
+            return properties.get(propName);
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+import org.apache.sling.etcd.client.EtcdNode;
+import org.junit.Test;
+
+public class TopologyDiffTest {
+
+    private static final String SID1 = "sling-id-1";
+
+    private static final String SID2 = "sling-id-2";
+
+    private static final String SID3 = "sling-id-3";
+
+    private static final String SID4 = "sling-id-4";
+
+    @Test
+    public void testNoChange() throws Exception {
+        EtcdTopologyView view = buildView();
+        Assert.assertTrue(TopologyDiff.compute(view, buildView()).isEmpty());
+    }
+
+    @Test
+    public void testPropertiesChanged() throws Exception {
+        EtcdTopologyView previous = buildView();
+        Announces announces = previous.getAnnounces();
+        Map<String, Map<String, String>> props = new HashMap<String, Map<String, String>>(previous.getProperties());
+        Map<String, String> sid3Props = new HashMap<String, String>();
+        sid3Props.put("p3", "v4");
+        sid3Props.put("p4", "v4");
+        props.put(SID3, sid3Props);
+        Set<String> changed = EtcdTopologyView.changedSlingIds(previous, announces, props, SID2);
+        EtcdTopologyView view = new EtcdTopologyView(previous, announces, props, SID2, changed, true);
+        TopologyDiff diff = TopologyDiff.compute(previous, view);
+        Assert.assertEquals(Collections.singleton(SID3), diff.getChangedPropertyKeys().keySet());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("p3", "p4")), diff.getChangedPropertyKeys().get(SID3));
+        Assert.assertTrue(diff.getAddedSlingIds().isEmpty());
+        Assert.assertTrue(diff.getRemovedSlingIds().isEmpty());
+        Assert.assertTrue(diff.getLeaderChangedSlingIds().isEmpty());
+        Assert.assertTrue(diff.getAddedClusterIds().isEmpty());
+        Assert.assertTrue(diff.getRemovedClusterIds().isEmpty());
+    }
+
+    @Test
+    public void testLeaderChanged() throws Exception {
+        EtcdTopologyView previous = buildView();
+        List<EtcdNode> moved = new ArrayList<EtcdNode>();
+        moved.add(buildAnnounceNode(SID1, "cluster-1", "/announces/3"));
+        moved.add(buildAnnounceNode(SID2, "cluster-2", "/announces/2"));
+        moved.add(buildAnnounceNode(SID3, "cluster-1", "/announces/1"));
+        Announces announces = new Announces(moved, false);
+        Set<String> changed = EtcdTopologyView.changedSlingIds(previous, announces, previous.getProperties(), SID2);
+        EtcdTopologyView view = new EtcdTopologyView(previous, announces, previous.getProperties(), SID2, changed, true);
+        TopologyDiff diff = TopologyDiff.compute(previous, view);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(SID1, SID2, SID3)), diff.getLeaderChangedSlingIds());
+        Assert.assertTrue(diff.getAddedSlingIds().isEmpty());
+        Assert.assertTrue(diff.getRemovedSlingIds().isEmpty());
+        Assert.assertTrue(diff.getChangedPropertyKeys().isEmpty());
+    }
+
+    @Test
+    public void testInstancesAndClustersChanged() throws Exception {
+        EtcdTopologyView previous = buildView();
+        List<EtcdNode> nodes = new ArrayList<EtcdNode>();
+        nodes.add(buildAnnounceNode(SID2, "cluster-2", "/announces/2"));
+        nodes.add(buildAnnounceNode(SID3, "cluster-2", "/announces/1"));
+        nodes.add(buildAnnounceNode(SID4, "cluster-3", "/announces/4"));
+        Announces announces = new Announces(nodes, false);
+        Map<String, Map<String, String>> props = new HashMap<String, Map<String, String>>(previous.getProperties());
+        props.remove(SID1);
+        Set<String> changed = EtcdTopologyView.changedSlingIds(previous, announces, props, SID2);
+        EtcdTopologyView view = new EtcdTopologyView(previous, announces, props, SID2, changed, true);
+        TopologyDiff diff = TopologyDiff.compute(previous, view);
+        Assert.assertEquals(Collections.singleton(SID4), diff.getAddedSlingIds());
+        Assert.assertEquals(Collections.singleton(SID1), diff.getRemovedSlingIds());
+        Assert.assertEquals(Collections.singleton("cluster-3"), diff.getAddedClusterIds());
+        Assert.assertEquals(Collections.singleton("cluster-1"), diff.getRemovedClusterIds());
+        Assert.assertTrue(diff.getLeaderChangedSlingIds().isEmpty());
+        Assert.assertTrue(diff.getChangedPropertyKeys().isEmpty());
+    }
+
+    private EtcdTopologyView buildView() {
+        List<EtcdNode> nodes = new ArrayList<EtcdNode>();
+        nodes.add(buildAnnounceNode(SID1, "cluster-1", "/announces/3"));
+        nodes.add(buildAnnounceNode(SID2, "cluster-2", "/announces/2"));
+        nodes.add(buildAnnounceNode(SID3, "cluster-2", "/announces/1"));
+        Map<String, Map<String, String>> props = new HashMap<String, Map<String, String>>();
+        props.put(SID1, Collections.singletonMap("p1", "v1"));
+        props.put(SID2, Collections.singletonMap("p2", "v2"));
+        props.put(SID3, Collections.singletonMap("p3", "v3"));
+        return new EtcdTopologyView(new Announces(nodes, false), props, SID2, true);
+    }
+
+    private EtcdNode buildAnnounceNode(String slingId, String clusterId, String announceKey) {
+        return new EtcdNodeBuilder()
+                .value(new AnnounceData(slingId, "localhost:4502", clusterId, 1001L).json().toString())
+                .modifiedIndex(10)
+                .createdIndex(10)
+                .ttl(10)
+                .key(announceKey)
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class TopologyStateTest {
+
+    @Test
+    public void testGetAnnounces() throws Exception {
+        AnnounceData annData = new AnnounceData("sling-id", "server-info", "default-cluster", 10);
+        TopologyState state = new TopologyState("sling-id", new Announce(annData, "/announces/1"));
+        Assert.assertEquals(1, state.getAnnounces().size());
+        state = state.withRemote(new Announces(new Announce(new AnnounceData("sling-id2", "server-info2", "default-cluster", 12), "/announces/2")),
+                Collections.<String, Map<String, String>>emptyMap(), 20);
+        Assert.assertEquals(2, state.getAnnounces().size());
+        Assert.assertEquals(1, state.getRemoteAnnounces().size());
+        Assert.assertEquals(20, state.getEtcdIndex());
+    }
+
+    @Test
+    public void testGetAnnouncesWithDuplicates() throws Exception {
+        AnnounceData annData = new AnnounceData("sling-id", "server-info", "default-cluster", 10);
+        TopologyState state = new TopologyState("sling-id", new Announce(annData, "/announces/1"));
+        state = state.withRemote(new Announces(new Announce(new AnnounceData("sling-id", "server-info", "default-cluster", 10), "/announces/1")),
+                Collections.<String, Map<String, String>>emptyMap(), 20);
+        Assert.assertEquals(1, state.getAnnounces().size());
+    }
+
+    @Test
+    public void testWithLocalAnnounce() throws Exception {
+        AnnounceData annData = new AnnounceData("sling-id", "server-info", "default-cluster", 10);
+        TopologyState state = new TopologyState("sling-id", new Announce(annData, "/announces/1"));
+        Assert.assertSame(state, state.withLocalAnnounce(new Announce(annData, "/announces/1")));
+        TopologyState next = state.withLocalAnnounce(new Announce(annData, "/announces/2"));
+        Assert.assertEquals("/announces/2", next.getLocalAnnounce().getAnnounceKey());
+        Assert.assertEquals("/announces/1", state.getLocalAnnounce().getAnnounceKey());
+        Assert.assertEquals(state.getVersion() + 1, next.getVersion());
+        // the cluster identifier is part of the state
+        next = next.withLocalAnnounce(new Announce(new AnnounceData("sling-id", "server-info", "other-cluster", 10), "/announces/2"));
+        Assert.assertEquals(state.getVersion() + 2, next.getVersion());
+    }
+
+    @Test
+    public void testGetProperties() throws Exception {
+        AnnounceData annData = new AnnounceData("sling-id", "server-info", "default-cluster", 10);
+        TopologyState state = new TopologyState("sling-id", new Announce(annData, "/announces/1"));
+        Assert.assertEquals(0, state.getLocalProperties().size());
+        state = state.withLocalProperties(Collections.singletonMap("k1", "v1"));
+        state = state.withRemote(new Announces(), Collections.singletonMap("remote-1", Collections.singletonMap("k2", "v2")), 20);
+        Assert.assertEquals(1, state.getLocalProperties().size());
+        Assert.assertEquals(1, state.getRemoteProperties().size());
+        Assert.assertEquals(2, state.getProperties().size());
+        Assert.assertEquals("v1", state.getProperties().get("sling-id").get("k1"));
+    }
+
+    @Test
+    public void testVersion() throws Exception {
+        AnnounceData annData = new AnnounceData("sling-id", "server-info", "default-cluster", 10);
+        TopologyState state = new TopologyState("sling-id", new Announce(annData, "/announces/1"));
+        long version = state.getVersion();
+        Assert.assertSame(state, state.withLocalProperties(Collections.<String, String>emptyMap()));
+        state = state.withLocalProperties(Collections.singletonMap("k1", "v1"));
+        Assert.assertEquals(version + 1, state.getVersion());
+        // a new etcd index alone does not change the version
+        state = state.withRemote(new Announces(), Collections.<String, Map<String, String>>emptyMap(), 30);
+        Assert.assertEquals(version + 1, state.getVersion());
+        Assert.assertEquals(30, state.getEtcdIndex());
+        state = state.withRemote(new Announces(), Collections.singletonMap("remote-1", Collections.singletonMap("k2", "v2")), 31);
+        Assert.assertEquals(version + 2, state.getVersion());
+    }
+
+    @Test
+    public void testHolder() throws Exception {
+        AnnounceData annData = new AnnounceData("sling-id", "server-info", "default-cluster", 10);
+        TopologyStateHolder holder = new TopologyStateHolder(new TopologyState("sling-id", new Announce(annData, "/announces/1")));
+        final AtomicInteger changes = new AtomicInteger();
+        holder.setChangeListener(new Runnable() {
+            public void run() {
+                changes.incrementAndGet();
+            }
+        });
+        TopologyState initial = holder.get();
+        holder.setLocalAnnounce(new Announce(annData, "/announces/1"));
+        holder.setLocalProperties(Collections.<String, String>emptyMap());
+        Assert.assertSame(initial, holder.get());
+        Assert.assertEquals(0, changes.get());
+        Announces remote = new Announces(new Announce(new AnnounceData("sling-id2", "server-info2", "default-cluster", 12), "/announces/2"));
+        holder.setRemote(remote, Collections.singletonMap("sling-id2", Collections.singletonMap("k2", "v2")), 40);
+        TopologyState state = holder.get();
+        Assert.assertEquals(1, changes.get());
+        Assert.assertEquals(initial.getVersion() + 1, state.getVersion());
+        Assert.assertEquals(remote, state.getRemoteAnnounces());
+        Assert.assertEquals(1, state.getRemoteProperties().size());
+        Assert.assertEquals(40, state.getEtcdIndex());
+        holder.setLocalProperties(Collections.singletonMap("k1", "v1"));
+        Assert.assertEquals(2, changes.get());
+        Assert.assertEquals("v1", holder.get().getLocalProperties().get("k1"));
+    }
+}
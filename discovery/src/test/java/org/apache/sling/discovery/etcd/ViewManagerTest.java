@@ -22,6 +22,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
@@ -162,6 +166,24 @@ public class ViewManagerTest {
         Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_INIT, tel1.events.get(0).getType());
         Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel1.events.get(1).getType());
         Assert.assertEquals(TopologyEvent.Type.PROPERTIES_CHANGED, tel1.events.get(2).getType());
+        TopologyDiff diff = ((EtcdTopologyEvent) tel1.events.get(2)).getDiff();
+        Assert.assertEquals(Collections.singleton("p1"), diff.getChangedPropertyKeys().get("sling-id"));
+    }
+
+    @Test
+    public void testFilteredListener() throws Exception {
+        ViewManager viewManager = new ViewManager();
+        TeL tel1 = new TeL();
+        viewManager.bind(tel1, ListenerFilter.fromProperties(Collections.<String, Object>singletonMap(
+                ListenerFilter.PROPERTY_NAMES, "p2")));
+        viewManager.updateView(buildView("cluster-id", true));
+        viewManager.updateView(buildView("cluster-id", Collections.singletonMap("sling-id", Collections.singletonMap("p1", "v1")), true));
+        Assert.assertEquals(1, tel1.events.size());
+        Assert.assertEquals(2, viewManager.getListenerQueues().get(0).getFiltered());
+        viewManager.updateView(buildView("cluster-id", Collections.singletonMap("sling-id", Collections.singletonMap("p2", "v2")), true));
+        Assert.assertEquals(3, tel1.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel1.events.get(1).getType());
+        Assert.assertEquals(TopologyEvent.Type.PROPERTIES_CHANGED, tel1.events.get(2).getType());
     }
 
     @Test
@@ -175,6 +197,150 @@ public class ViewManagerTest {
         Assert.assertEquals(0, tel1.events.size());
     }
 
+    @Test
+    public void testSlowListenerDoesNotBlock() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            ViewManager viewManager = new ViewManager(executor, 10, 1000);
+            final CountDownLatch release = new CountDownLatch(1);
+            viewManager.bind(new TopologyEventListener() {
+                public void handleTopologyEvent(TopologyEvent event) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final CountDownLatch delivered = new CountDownLatch(3);
+            viewManager.bind(new TopologyEventListener() {
+                public void handleTopologyEvent(TopologyEvent event) {
+                    delivered.countDown();
+                }
+            });
+            viewManager.updateView(buildView("cluster-id", true));
+            viewManager.updateView(buildView("another-cluster-id", true));
+            Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(2, viewManager.getListenerQueues().size());
+            release.countDown();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStabilizationCollapsesChanges() throws Exception {
+        ViewManager viewManager = new ViewManager();
+        viewManager.setStabilization(200, 10000);
+        TeL tel1 = new TeL();
+        viewManager.bind(tel1);
+        viewManager.updateView(buildView("cluster-1", true));
+        EtcdTopologyView initView = viewManager.getView();
+        viewManager.updateView(buildView("cluster-2", true));
+        viewManager.updateView(buildView("cluster-3", true));
+        Assert.assertEquals(2, tel1.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel1.events.get(1).getType());
+        Assert.assertFalse(viewManager.getView().isCurrent());
+        Assert.assertTrue(viewManager.publishPendingView() > 0);
+        Thread.sleep(250);
+        Assert.assertEquals(-1, viewManager.publishPendingView());
+        Assert.assertEquals(3, tel1.events.size());
+        TopologyEvent changed = tel1.events.get(2);
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGED, changed.getType());
+        Assert.assertSame(initView, changed.getOldView());
+        Assert.assertEquals("cluster-3", changed.getNewView().getClusterViews().iterator().next().getId());
+        Assert.assertTrue(viewManager.getView().isCurrent());
+        Assert.assertEquals(1, viewManager.getSuppressedEvents());
+    }
+
+    @Test
+    public void testStabilizationChangedBack() throws Exception {
+        ViewManager viewManager = new ViewManager();
+        viewManager.setStabilization(200, 10000);
+        TeL tel1 = new TeL();
+        viewManager.bind(tel1);
+        viewManager.updateView(buildView("cluster-1", true));
+        viewManager.updateView(buildView("cluster-2", true));
+        viewManager.updateView(buildView("cluster-1", true));
+        Assert.assertEquals(2, tel1.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel1.events.get(1).getType());
+        Thread.sleep(250);
+        Assert.assertEquals(-1, viewManager.publishPendingView());
+        Assert.assertEquals(3, tel1.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGED, tel1.events.get(2).getType());
+        Assert.assertTrue(viewManager.getView().isCurrent());
+    }
+
+    @Test
+    public void testStabilizationMaxDelay() throws Exception {
+        ViewManager viewManager = new ViewManager();
+        viewManager.setStabilization(300, 400);
+        TeL tel1 = new TeL();
+        viewManager.bind(tel1);
+        viewManager.updateView(buildView("cluster-1", true));
+        viewManager.updateView(buildView("cluster-2", true));
+        Thread.sleep(200);
+        viewManager.updateView(buildView("cluster-3", true));
+        Thread.sleep(250);
+        // still changing within the window, but pending for longer than the max delay
+        viewManager.updateView(buildView("cluster-4", true));
+        Assert.assertEquals(3, tel1.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGED, tel1.events.get(2).getType());
+        Assert.assertEquals("cluster-4", viewManager.getView().getClusterViews().iterator().next().getId());
+        Assert.assertEquals(2, viewManager.getSuppressedEvents());
+    }
+
+    @Test
+    public void testStabilizationDroppedWhenNotCurrent() throws Exception {
+        ViewManager viewManager = new ViewManager();
+        viewManager.setStabilization(10000, 10000);
+        TeL tel1 = new TeL();
+        viewManager.bind(tel1);
+        viewManager.updateView(buildView("cluster-1", true));
+        viewManager.updateView(buildView("cluster-2", true));
+        viewManager.updateView(buildView("isolated", false));
+        Assert.assertEquals(-1, viewManager.publishPendingView());
+        Assert.assertEquals(2, tel1.events.size());
+        Assert.assertEquals("isolated", viewManager.getView().getClusterViews().iterator().next().getId());
+    }
+
+    @Test
+    public void testStabilizationWithFilteredListeners() throws Exception {
+        ViewManager viewManager = new ViewManager();
+        viewManager.setStabilization(200, 10000);
+        TeL tel1 = new TeL();
+        viewManager.bind(tel1);
+        TeL tel2 = new TeL();
+        viewManager.bind(tel2, ListenerFilter.fromProperties(Collections.<String, Object>singletonMap(
+                ListenerFilter.CLUSTER_IDS, "cluster-9")));
+        TeL tel3 = new TeL();
+        viewManager.bind(tel3, ListenerFilter.fromProperties(Collections.<String, Object>singletonMap(
+                ListenerFilter.CLUSTER_IDS, "cluster-3")));
+        viewManager.updateView(buildView("cluster-1", true));
+        viewManager.updateView(buildView("cluster-2", true));
+        viewManager.updateView(buildView("cluster-3", true));
+        // the filtered listeners are held until the collapsed change is known
+        Assert.assertEquals(2, tel1.events.size());
+        Assert.assertEquals(1, tel2.events.size());
+        Assert.assertEquals(1, tel3.events.size());
+        Thread.sleep(250);
+        Assert.assertEquals(-1, viewManager.publishPendingView());
+        Assert.assertEquals(3, tel1.events.size());
+        Assert.assertEquals(1, tel2.events.size());
+        Assert.assertEquals(3, tel3.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel3.events.get(1).getType());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGED, tel3.events.get(2).getType());
+        Assert.assertEquals("cluster-3", tel3.events.get(2).getNewView().getClusterViews().iterator().next().getId());
+        // a pending view dropped since the protocol stopped running is notified to the held listeners
+        viewManager.updateView(buildView("cluster-4", true));
+        viewManager.updateView(buildView("isolated", false));
+        Assert.assertEquals(4, tel1.events.size());
+        Assert.assertEquals(2, tel2.events.size());
+        Assert.assertEquals(4, tel3.events.size());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel2.events.get(1).getType());
+        Assert.assertEquals(TopologyEvent.Type.TOPOLOGY_CHANGING, tel3.events.get(3).getType());
+    }
+
     public EtcdTopologyView buildView(@Nonnull String clusterId, @Nonnull Map<String, Map<String, String>> properties, boolean current) {
         AnnounceData data = new AnnounceData("sling-id", "server-info", clusterId, 21);
         Announce announce = new Announce(data, "/announces/1");
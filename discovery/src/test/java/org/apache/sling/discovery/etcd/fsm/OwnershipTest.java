@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.fsm;
+
+import java.io.File;
+import java.util.UUID;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class OwnershipTest {
+
+    @Test
+    public void testTransientOwnership() throws Exception {
+        Ownership ownership = Ownership.transientOwnership();
+        Assert.assertNotNull(ownership.getToken());
+        Assert.assertNull(ownership.getPreviousToken());
+        Assert.assertNull(ownership.getPreviousAnnounceKey());
+        ownership.acquired("/discovery/announces/1");
+        Assert.assertNull(ownership.getPreviousAnnounceKey());
+    }
+
+    @Test
+    public void testPersistedOwnership() throws Exception {
+        File file = new File("target/ownership/" + UUID.randomUUID() + "/ownership.properties");
+        Ownership first = Ownership.load(file);
+        Assert.assertNull(first.getPreviousToken());
+        Assert.assertNull(first.getPreviousAnnounceKey());
+        // the token is persisted once the ownership is acquired
+        Ownership notAcquired = Ownership.load(file);
+        Assert.assertNull(notAcquired.getPreviousToken());
+        first.acquired("/discovery/announces/1");
+        Ownership second = Ownership.load(file);
+        Assert.assertEquals(first.getToken(), second.getPreviousToken());
+        Assert.assertEquals("/discovery/announces/1", second.getPreviousAnnounceKey());
+        // each run has its own token
+        Assert.assertFalse(second.getToken().equals(first.getToken()));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.ring;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class HashRingTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        Assert.assertNull(HashRing.EMPTY.getOwner("key"));
+        Assert.assertTrue(HashRing.EMPTY.getOwners("key", 3).isEmpty());
+    }
+
+    @Test
+    public void testSameMembershipSameRing() throws Exception {
+        HashRing ring1 = HashRing.EMPTY.withInstances(counts(100, "id-1", "id-2", "id-3"));
+        HashRing ring2 = HashRing.EMPTY.withInstances(counts(100, "id-3"))
+                .withChanges(counts(100, "id-1", "id-2"));
+        Assert.assertEquals(300, ring1.size());
+        for (int i = 0 ; i < 1000 ; i++) {
+            Assert.assertEquals(ring1.getOwner("key-" + i), ring2.getOwner("key-" + i));
+        }
+    }
+
+    @Test
+    public void testMinimalReshuffling() throws Exception {
+        HashRing ring = HashRing.EMPTY.withInstances(counts(100, "id-1", "id-2", "id-3"));
+        HashRing grown = ring.withChanges(counts(100, "id-4"));
+        int moved = 0;
+        for (int i = 0 ; i < 10000 ; i++) {
+            String key = "key-" + i;
+            String before = ring.getOwner(key);
+            String after = grown.getOwner(key);
+            if (! before.equals(after)) {
+                // keys only move to the added instance
+                Assert.assertEquals("id-4", after);
+                moved++;
+            }
+        }
+        Assert.assertTrue(moved > 1500 && moved < 3500);
+
+        HashRing shrunk = grown.withChanges(counts(0, "id-4"));
+        for (int i = 0 ; i < 1000 ; i++) {
+            Assert.assertEquals(ring.getOwner("key-" + i), shrunk.getOwner("key-" + i));
+        }
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        Map<String, Integer> counts = counts(100, "id-1");
+        counts.put("id-2", 300);
+        HashRing ring = HashRing.EMPTY.withInstances(counts);
+        int owned = 0;
+        for (int i = 0 ; i < 10000 ; i++) {
+            if ("id-2".equals(ring.getOwner("key-" + i))) {
+                owned++;
+            }
+        }
+        Assert.assertTrue(owned > 6500 && owned < 8500);
+    }
+
+    @Test
+    public void testGetOwners() throws Exception {
+        HashRing ring = HashRing.EMPTY.withInstances(counts(10, "id-1", "id-2", "id-3"));
+        List<String> owners = ring.getOwners("key", 5);
+        Assert.assertEquals(3, owners.size());
+        Assert.assertEquals(ring.getOwner("key"), owners.get(0));
+        Assert.assertEquals(2, ring.getOwners("key", 2).size());
+    }
+
+    private Map<String, Integer> counts(int count, String... slingIds) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String slingId : slingIds) {
+            counts.put(slingId, count);
+        }
+        return counts;
+    }
+}
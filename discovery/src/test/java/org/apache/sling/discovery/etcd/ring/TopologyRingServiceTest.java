@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.ring;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import junit.framework.Assert;
+import org.apache.sling.discovery.TopologyEvent;
+import org.apache.sling.discovery.etcd.Announce;
+import org.apache.sling.discovery.etcd.AnnounceData;
+import org.apache.sling.discovery.etcd.Announces;
+import org.apache.sling.discovery.etcd.EtcdTopologyEvent;
+import org.apache.sling.discovery.etcd.EtcdTopologyView;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.service.component.ComponentContext;
+
+public class TopologyRingServiceTest {
+
+    @Test
+    public void testNoView() throws Exception {
+        TopologyRingService service = activate();
+        Assert.assertNull(service.getOwner("key"));
+        Assert.assertTrue(service.getOwners("key", 2).isEmpty());
+        Assert.assertNull(service.getView());
+    }
+
+    @Test
+    public void testInitAndChanges() throws Exception {
+        TopologyRingService service = activate();
+        EtcdTopologyView view1 = buildView(Collections.<String, Map<String, String>>emptyMap(), "id-1", "id-2");
+        service.handleTopologyEvent(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_INIT, null, view1));
+        Assert.assertSame(view1, service.getView());
+        Assert.assertNotNull(service.getOwner("key"));
+        Assert.assertSame(view1.getInstance(service.getOwner("key").getSlingId()), service.getOwner("key"));
+
+        // add an instance
+        EtcdTopologyView view2 = buildView(Collections.<String, Map<String, String>>emptyMap(), "id-1", "id-2", "id-3");
+        service.handleTopologyEvent(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGING, view1, null));
+        Assert.assertSame(view1, service.getView());
+        service.handleTopologyEvent(new EtcdTopologyEvent(TopologyEvent.Type.TOPOLOGY_CHANGED, view1, view2));
+        Assert.assertSame(view2, service.getView());
+        Assert.assertEquals(3, service.getOwners("key", 3).size());
+
+        // exclude an instance with weight 0
+        Map<String, Map<String, String>> props = new HashMap<String, Map<String, String>>();
+        props.put("id-3", Collections.singletonMap("org.apache.sling.discovery.etcd.ring.weight", "0"));
+        EtcdTopologyView view3 = buildView(props, "id-1", "id-2", "id-3");
+        service.handleTopologyEvent(new EtcdTopologyEvent(TopologyEvent.Type.PROPERTIES_CHANGED, view2, view3));
+        Assert.assertEquals(2, service.getOwners("key", 3).size());
+        for (int i = 0 ; i < 100 ; i++) {
+            Assert.assertFalse("id-3".equals(service.getOwner("key-" + i).getSlingId()));
+        }
+
+        // the same ring is built without diff
+        TopologyRingService other = activate();
+        other.handleTopologyEvent(new TopologyEvent(TopologyEvent.Type.TOPOLOGY_INIT, null, view3));
+        for (int i = 0 ; i < 100 ; i++) {
+            Assert.assertEquals(other.getOwner("key-" + i).getSlingId(), service.getOwner("key-" + i).getSlingId());
+        }
+    }
+
+    private TopologyRingService activate() {
+        ComponentContext cc = Mockito.mock(ComponentContext.class);
+        Mockito.when(cc.getProperties()).thenReturn(new Hashtable<String, Object>());
+        TopologyRingService service = new TopologyRingService();
+        service.activate(cc);
+        return service;
+    }
+
+    private EtcdTopologyView buildView(Map<String, Map<String, String>> properties, String... slingIds) {
+        Announce[] announces = new Announce[slingIds.length];
+        for (int i = 0 ; i < slingIds.length ; i++) {
+            AnnounceData data = new AnnounceData(slingIds[i], "server-info", "cluster-id", 21);
+            announces[i] = new Announce(data, "/announces/" + i);
+        }
+        return new EtcdTopologyView(new Announces(announces), properties, slingIds[0], true);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.etcd.run;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.discovery.etcd.Announce;
+import org.apache.sling.discovery.etcd.AnnounceData;
+import org.apache.sling.discovery.etcd.EtcdService;
+import org.apache.sling.discovery.etcd.TopologyState;
+import org.apache.sling.discovery.etcd.TopologyStateHolder;
+import org.apache.sling.discovery.etcd.backoff.ConstantBackOff;
+import org.apache.sling.discovery.etcd.fsm.Context;
+import org.apache.sling.discovery.etcd.fsm.RunnerFactory;
+import org.apache.sling.discovery.etcd.fsm.States;
+import org.apache.sling.etcd.client.impl.EtcdClientImpl;
+import org.apache.sling.etcd.testing.Etcd;
+import org.apache.sling.etcd.testing.EtcdHandler;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class RemoteUpdaterTest {
+
+    private static final String ANNOUNCES_PATH = "/v2/keys/discovery/announces";
+
+    private Etcd etcd;
+
+    private CountingHandler handler;
+
+    private Server server;
+
+    private CloseableHttpClient httpClient;
+
+    private RemoteUpdater updater;
+
+    @Before
+    public void setUp() throws Exception {
+        etcd = new Etcd();
+        handler = new CountingHandler(etcd);
+        handler.setWatchTimeout(500);
+        server = new Server();
+        server.setConnectors(new Connector[]{new SelectChannelConnector()});
+        ServletContextHandler sch = new ServletContextHandler(null, "/", false, false);
+        sch.addServlet(new ServletHolder(handler), "/v2/keys/*");
+        server.setHandler(sch);
+        server.start();
+        httpClient = HttpClients.custom()
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(5000).setConnectTimeout(5000).build())
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (updater != null) {
+            updater.stop();
+        }
+        IOUtils.closeQuietly(httpClient);
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testUnrelatedWriteDoesNotFetchAnnounces() throws Exception {
+        etcd.putKey("/discovery/announces/1", announce("remote-1"), 60, null);
+        TopologyStateHolder topologyState = new TopologyStateHolder(new TopologyState("local",
+                new Announce(new AnnounceData("local", "local-server", "isolated", 0), "/isolated/0")));
+        final AtomicBoolean written = new AtomicBoolean();
+        final CountDownLatch updated = new CountDownLatch(1);
+        final TopologyStateHolder state = topologyState;
+        topologyState.setChangeListener(new Runnable() {
+            public void run() {
+                int remotes = state.get().getRemoteAnnounces().getSlingIds().size();
+                if (remotes == 1 && written.compareAndSet(false, true)) {
+                    // an announce change followed by an unrelated write before the next watch,
+                    // the X-Etcd-Index returned by the watch is ahead of the announce change
+                    try {
+                        etcd.putKey("/discovery/announces/2", announce("remote-2"), 60, null);
+                        etcd.putKey("/discovery/unrelated", "value", null, null);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                } else if (remotes == 2) {
+                    updated.countDown();
+                }
+            }
+        });
+        Context context = new Context(States.RUNNING, Mockito.mock(RunnerFactory.class), Mockito.mock(ThreadPool.class));
+        EtcdService etcdService = new EtcdService(new EtcdClientImpl(httpClient,
+                new URI("http://localhost:" + server.getConnectors()[0].getLocalPort())), "/discovery");
+        updater = new RemoteUpdater(context, etcdService, new ConstantBackOff(1000), topologyState, "local", true);
+        new Thread(updater).start();
+        Assert.assertTrue(updated.await(5, TimeUnit.SECONDS));
+        // let the updater watch again
+        Thread.sleep(300);
+        Assert.assertTrue(written.get());
+        Assert.assertEquals(1, handler.announcesFetches.get());
+    }
+
+    private String announce(String slingId) {
+        return new AnnounceData(slingId, slingId + "-server", "cluster", 0).toString();
+    }
+
+    private static class CountingHandler extends EtcdHandler {
+
+        final AtomicInteger announcesFetches = new AtomicInteger();
+
+        CountingHandler(Etcd etcd) {
+            super(etcd);
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse res)
+                throws ServletException, IOException {
+            if (req.getRequestURI().equals(ANNOUNCES_PATH) && req.getParameter("wait") == null) {
+                announcesFetches.incrementAndGet();
+            }
+            super.doGet(req, res);
+        }
+    }
+}
@@ -18,12 +18,19 @@
  */
 package org.apache.sling.etcd.testing;
 
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
 import org.apache.sling.etcd.testing.condition.Condition;
+import org.apache.sling.etcd.testing.condition.PrevExists;
+import org.apache.sling.etcd.testing.condition.PrevIndex;
+import org.apache.sling.etcd.testing.condition.PrevValue;
 import org.apache.sling.etcd.testing.tree.Folder;
 import org.apache.sling.etcd.testing.tree.Key;
 import org.apache.sling.etcd.testing.tree.Node;
@@ -35,12 +42,36 @@ import org.apache.sling.etcd.common.ErrorCodes;
  */
 public class Etcd {
 
+    /**
+     * The number of events kept in the history, as per etcd default.
+     */
+    private static final int DEFAULT_HISTORY_SIZE = 1000;
+
+    /**
+     * Interval at which the waiting watchers check for elapsed ttl.
+     */
+    private static final long EXPIRE_CHECK_INTERVAL = 100;
+
     private long index = 0;
 
     private final Object lock = new Object();
 
     private Folder root;
 
+    /**
+     * The recorded events, ordered by index.
+     */
+    private final List<WatchEvent> history = new ArrayList<WatchEvent>();
+
+    private int historySize = DEFAULT_HISTORY_SIZE;
+
+    /**
+     * The index of the last event removed from the history.
+     */
+    private long clearedIndex = 0;
+
+    private long lastExpireCheck = 0;
+
     public Etcd(@Nonnull Folder root) {
         this.root = root;
     }
@@ -100,11 +131,51 @@ public class Etcd {
             // put new key
             Key current = new Key(name, value, ttl, nextIndex());
             parent.putChild(current, nextIndex());
+            record(putAction(condition), current, node, current.modifiedIndex());
 
             return new Change<Key>((Key) node, current);
         }
     }
 
+    /**
+     * Refresh the ttl of an existing key, keeping its value.
+     * As with etcd, the refresh advances the index but does not notify the watchers.
+     *
+     * @param key the key's key
+     * @param ttl the time to live in second
+     * @param condition the optional pre-condition
+     * @return the previous and refreshed key
+     * @throws EtcdException in case a exception occurs
+     */
+    @Nonnull
+    public Change<Key> refreshKey(@Nonnull String key, @Nullable Integer ttl, @Nullable Condition condition)
+            throws EtcdException {
+        synchronized (lock) {
+
+            if (ttl == null) {
+                throw new EtcdException(ErrorCodes.REFRESH_TTL_REQUIRED, "", index());
+            }
+
+            Node node = getNode(key);
+            if (node == null) {
+                throw new EtcdException(ErrorCodes.KEY_NOT_FOUND, key, index());
+            }
+            checkCondition(key, node, condition);
+
+            if (node.isFolder()) {
+                throw new EtcdException(ErrorCodes.NOT_FILE, node.path(), index());
+            }
+
+            // replace the key with the same value and new ttl
+            Key previous = (Key) node;
+            Folder parent = (Folder) previous.parent();
+            Key current = new Key(previous.name(), previous.value(), ttl, nextIndex());
+            parent.putChild(current, parent.modifiedIndex());
+
+            return new Change<Key>(previous, current);
+        }
+    }
+
     /**
      * Put a folder in the tree.
      *
@@ -139,6 +210,7 @@ public class Etcd {
             // put new folder
             Folder current = new Folder(name, ttl, nextIndex());
             parent.putChild(current, nextIndex());
+            record("set", current, node, current.modifiedIndex());
 
             return new Change<Node>(node, current);
         }
@@ -182,6 +254,7 @@ public class Etcd {
             // put new key
             Key created = new Key(name, value, ttl, nextIndex());
             parent.putChild(created, nextIndex());
+            record("create", created, null, created.modifiedIndex());
 
             return created;
         }
@@ -220,7 +293,9 @@ public class Etcd {
             String name = Node.name(key);
 
             if (parent != null) {
-                parent.removeChild(name, nextIndex());
+                long index = nextIndex();
+                parent.removeChild(name, index);
+                record(deleteAction(condition), node, index);
             }
 
             return (Key)node;
@@ -270,13 +345,70 @@ public class Etcd {
             String name = Node.name(key);
 
             if (parent != null) {
-                parent.removeChild(name, nextIndex());
+                long index = nextIndex();
+                parent.removeChild(name, index);
+                record(deleteAction(condition), folder, index);
             }
 
             return folder;
         }
     }
 
+    /**
+     * Wait for the first change applied to the given key (or its children if #recursive)
+     * from the given index.
+     *
+     * @param key the key to watch
+     * @param recursive {@code true} in order to watch the children of the key as well
+     * @param waitIndex the index from which to watch (inclusive) or {@code null} to watch
+     *                  for the next change only
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the first matching change or {@code null} if no change happened before the timeout elapsed
+     * @throws EtcdException if the history for the required index has been cleared
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    @Nullable
+    public WatchEvent watch(@Nonnull String key, boolean recursive, @Nullable Long waitIndex, long timeout)
+            throws EtcdException, InterruptedException {
+        synchronized (lock) {
+            long from = (waitIndex != null) ? waitIndex : index + 1;
+            long end = System.currentTimeMillis() + timeout;
+            for ( ; ; ) {
+                expire();
+                if (from <= clearedIndex) {
+                    String cause = String.format("the requested history has been cleared [%s/%s]", clearedIndex + 1, from);
+                    throw new EtcdException(ErrorCodes.EVENT_INDEX_CLEARED, cause, index);
+                }
+                for (int i = firstEvent(from) ; i < history.size() ; i++) {
+                    WatchEvent event = history.get(i);
+                    if (event.matches(key, recursive)) {
+                        return event;
+                    }
+                }
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                lock.wait(Math.min(remaining, EXPIRE_CHECK_INTERVAL));
+            }
+        }
+    }
+
+    /**
+     * Set the number of events kept in the history.
+     *
+     * @param historySize the maximum number of events kept in the history
+     */
+    public void setHistorySize(int historySize) {
+        if (historySize < 1) {
+            throw new IllegalArgumentException("historySize must be greater than 0");
+        }
+        synchronized (lock) {
+            this.historySize = historySize;
+            trimHistory();
+        }
+    }
+
     /**
      * @return the current etcd index
      */
@@ -299,6 +431,108 @@ public class Etcd {
         return ++index;
     }
 
+    private void expire() {
+        long now = System.currentTimeMillis();
+        if (now - lastExpireCheck >= EXPIRE_CHECK_INTERVAL) {
+            lastExpireCheck = now;
+            expire(root);
+        }
+    }
+
+    private void expire(@Nonnull Folder folder) {
+        for (Node child : folder.elapsedChildren()) {
+            long index = nextIndex();
+            folder.removeChild(child.name(), index);
+            record("expire", child, index);
+        }
+        for (Node child : folder.children(true)) {
+            if (child.isFolder()) {
+                expire((Folder) child);
+            }
+        }
+    }
+
+    private void record(@Nonnull String action, @Nonnull Node node, @Nullable Node prevNode, long index) {
+        record(new WatchEvent(action, node.path(), index, snapshot(node), snapshot(prevNode)));
+    }
+
+    private void record(@Nonnull String action, @Nonnull Node removed, long index) {
+        try {
+            JSONObject node = new JSONObject();
+            node.put("key", removed.path());
+            node.put("createdIndex", removed.modifiedIndex());
+            node.put("modifiedIndex", index);
+            if (removed.isFolder()) {
+                node.put("dir", true);
+            }
+            record(new WatchEvent(action, removed.path(), index, node, snapshot(removed)));
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void record(@Nonnull WatchEvent event) {
+        history.add(event);
+        trimHistory();
+        lock.notifyAll();
+    }
+
+    private void trimHistory() {
+        int excess = history.size() - historySize;
+        if (excess > 0) {
+            clearedIndex = history.get(excess - 1).index();
+            history.subList(0, excess).clear();
+        }
+    }
+
+    /**
+     * @return the position of the first event in the history which index is greater or equal to #from
+     */
+    private int firstEvent(long from) {
+        int low = 0;
+        int high = history.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (history.get(mid).index() < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Nullable
+    private JSONObject snapshot(@Nullable Node node) {
+        if (node == null) {
+            return null;
+        }
+        try {
+            JSONObject json = node.toJson(false, false);
+            json.remove("nodes");
+            return json;
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nonnull
+    private String putAction(@Nullable Condition condition) {
+        if (condition instanceof PrevExists) {
+            return ((PrevExists) condition).exists() ? "update" : "create";
+        } else if (condition instanceof PrevIndex) {
+            return ((PrevIndex) condition).index() == 0 ? "set" : "compareAndSwap";
+        } else if (condition instanceof PrevValue) {
+            return "compareAndSwap";
+        }
+        return "set";
+    }
+
+    @Nonnull
+    private String deleteAction(@Nullable Condition condition) {
+        return (condition != null) ? "compareAndDelete" : "delete";
+    }
+
     private Node getNode(@Nonnull Node node, @Nonnull Deque<String> names, @Nonnull String key) {
         if (! node.ttlElapsed()) {
             if (node.path().equals(key)) {
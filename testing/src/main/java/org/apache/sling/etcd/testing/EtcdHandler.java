@@ -44,12 +44,14 @@ import org.apache.sling.commons.json.JSONObject;
 
 /**
  * HTTP servlet that mocks the etcd REST service for
- * GET, POST, PUT and DELETE under the path: /v2/keys.
+ * GET (including watches), POST, PUT and DELETE under the path: /v2/keys.
  */
 public class EtcdHandler extends HttpServlet {
 
     private static final String CONTEXT = "/v2/keys";
 
+    private static final long DEFAULT_WATCH_TIMEOUT = 1000;
+
     private final Etcd etcd;
 
     private final List<Integer> errors = new ArrayList<Integer>();
@@ -62,6 +64,8 @@ public class EtcdHandler extends HttpServlet {
 
     private Random random = new Random();
 
+    private volatile long watchTimeout = DEFAULT_WATCH_TIMEOUT;
+
     public EtcdHandler(Etcd etcd) {
         this.etcd = etcd;
     }
@@ -76,7 +80,7 @@ public class EtcdHandler extends HttpServlet {
         }
 
         if (parseBoolean(req, "wait")) {
-            res.setStatus(501);
+            watch(path, req, res);
             return;
         }
 
@@ -112,6 +116,7 @@ public class EtcdHandler extends HttpServlet {
         }
 
         boolean dir = parseBoolean(req, "dir");
+        boolean refresh = parseBoolean(req, "refresh");
         String value = req.getParameter("value");
         Integer ttl = parseTtl(req);
 
@@ -124,7 +129,13 @@ public class EtcdHandler extends HttpServlet {
 
         try {
             final JSONObject action;
-            if (dir) {
+            if (refresh) {
+                if (value != null) {
+                    throw new EtcdException(ErrorCodes.REFRESH_VALUE, "", etcd.index());
+                }
+                Change<Key> change = etcd.refreshKey(path, ttl, condition);
+                action = action("update", change, res);
+            } else if (dir) {
                 Change<Node> change = etcd.putFolder(path, ttl, condition);
                 action = action("set", change, res);
             } else {
@@ -145,7 +156,7 @@ public class EtcdHandler extends HttpServlet {
             }
             res.getWriter().write(action.toString());
         } catch (EtcdException e) {
-            res.setStatus(403);
+            res.setStatus(putErrorStatus(e));
             res.getWriter().write(error(e).toString());
         }
     }
@@ -221,6 +232,17 @@ public class EtcdHandler extends HttpServlet {
         minDelay = delay;
     }
 
+    /**
+     * Set the maximum time a watch request is held before being answered without content.
+     * The default timeout is kept short in order to release the servlet threads held by
+     * clients which stopped waiting.
+     *
+     * @param watchTimeout the watch timeout in milliseconds
+     */
+    public void setWatchTimeout(long watchTimeout) {
+        this.watchTimeout = watchTimeout;
+    }
+
     public void setErrors(int frequency, Integer... errorCodes) {
         if (frequency < 0 || frequency > 100) {
             throw new IllegalArgumentException("frequency must be greater or equal to 0 and smaller or equal to 100");
@@ -232,14 +254,43 @@ public class EtcdHandler extends HttpServlet {
 
     //
 
+    /**
+     * Hold the request until a matching change occurs or the watch timeout elapses.
+     * As with etcd, the headers are sent when the watch starts and the response
+     * is closed without content if no change occurred.
+     */
+    private void watch(@Nonnull String path, @Nonnull HttpServletRequest req, @Nonnull HttpServletResponse res)
+            throws ServletException, IOException {
+
+        boolean recursive = parseBoolean(req, "recursive");
+        Long waitIndex = parseWaitIndex(req);
+
+        setResponseHeaders(res);
+
+        try {
+            WatchEvent event = etcd.watch(path, recursive, waitIndex, watchTimeout);
+            res.setStatus(200);
+            if (event != null) {
+                res.getWriter().write(event.toJson().toString());
+            }
+        } catch (EtcdException e) {
+            res.setStatus(400);
+            res.getWriter().write(error(e).toString());
+        } catch (InterruptedException e) {
+            res.setStatus(200);
+        } catch (JSONException e) {
+            throw new ServletException(e);
+        }
+    }
+
     private void setResponseHeaders(@Nonnull HttpServletResponse res) {
-        setIfUndefined(res, EtcdHeaders.ETCD_INDEX, "35");
+        res.setHeader(EtcdHeaders.ETCD_INDEX, String.valueOf(etcd.index()));
         setIfUndefined(res, EtcdHeaders.RAFT_INDEX, "5398");
         setIfUndefined(res, EtcdHeaders.RAFT_TERM, "0");
     }
 
     private void setIfUndefined(@Nonnull HttpServletResponse res, @Nonnull String name, @Nullable String value) {
-        if (res.containsHeader(name)) {
+        if (! res.containsHeader(name)) {
             res.setHeader(name, value);
         }
     }
@@ -249,6 +300,21 @@ public class EtcdHandler extends HttpServlet {
         return (! path.startsWith(CONTEXT)) ? null : path.substring(CONTEXT.length());
     }
 
+    /**
+     * @return the HTTP status returned by etcd for a failed PUT request.
+     */
+    private int putErrorStatus(@Nonnull EtcdException e) {
+        int code = e.code();
+        if (code == ErrorCodes.KEY_NOT_FOUND) {
+            return 404;
+        } else if (code == ErrorCodes.TEST_FAILED || code == ErrorCodes.NODE_EXITS) {
+            return 412;
+        } else if (code >= 200 && code < 300) {
+            return 400;
+        }
+        return 403;
+    }
+
     @Nonnull
     private JSONObject error(@Nonnull EtcdException e)
             throws ServletException {
@@ -355,6 +421,10 @@ public class EtcdHandler extends HttpServlet {
         return req.getParameter(name) != null && Boolean.parseBoolean(req.getParameter(name));
     }
 
+    private Long parseWaitIndex(@Nonnull HttpServletRequest req) {
+        return req.getParameter("waitIndex") != null ? Long.parseLong(req.getParameter("waitIndex")) : null;
+    }
+
     private Integer parseTtl(@Nonnull HttpServletRequest req) {
         return req.getParameter("ttl") != null ? Integer.parseInt(req.getParameter("ttl")) : null;
     }
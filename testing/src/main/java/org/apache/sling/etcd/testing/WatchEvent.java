@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.etcd.testing;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+
+/**
+ * A change applied to the in memory tree, as delivered to the etcd watchers.
+ * The node and previous node are snapshots taken when the change was applied.
+ */
+public class WatchEvent {
+
+    private final String action;
+
+    private final String key;
+
+    private final long index;
+
+    private final JSONObject node;
+
+    private final JSONObject prevNode;
+
+    public WatchEvent(@Nonnull String action, @Nonnull String key, long index,
+                      @Nonnull JSONObject node, @Nullable JSONObject prevNode) {
+        this.action = action;
+        this.key = key;
+        this.index = index;
+        this.node = node;
+        this.prevNode = prevNode;
+    }
+
+    /**
+     * @return the etcd action (set, create, update, compareAndSwap, delete, compareAndDelete or expire)
+     */
+    @Nonnull
+    public String action() {
+        return action;
+    }
+
+    /**
+     * @return the key of the changed node
+     */
+    @Nonnull
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @return the etcd index at which the change was applied
+     */
+    public long index() {
+        return index;
+    }
+
+    /**
+     * @param key the watched key
+     * @param recursive {@code true} if the children of the watched key are watched as well
+     * @return {@code true} if the event must be delivered to a watcher of the given key
+     */
+    public boolean matches(@Nonnull String key, boolean recursive) {
+        if (this.key.equals(key)) {
+            return true;
+        }
+        if (recursive) {
+            String prefix = key.endsWith("/") ? key : key + "/";
+            return this.key.startsWith(prefix);
+        }
+        return false;
+    }
+
+    @Nonnull
+    public JSONObject toJson()
+            throws JSONException {
+        JSONObject action = new JSONObject();
+        action.put("action", this.action);
+        action.put("node", node);
+        action.putOpt("prevNode", prevNode);
+        return action;
+    }
+
+    @Override
+    public String toString() {
+        return "WatchEvent{" +
+                "action='" + action + '\'' +
+                ", key='" + key + '\'' +
+                ", index=" + index +
+                '}';
+    }
+}
@@ -52,6 +52,20 @@ public class Folder extends Node {
         return Collections.unmodifiableList(filterByTtl(nodes));
     }
 
+    /**
+     * @return the children which ttl has elapsed but have not been removed yet.
+     */
+    @Nonnull
+    public List<Node> elapsedChildren() {
+        List<Node> elapsed = new ArrayList<Node>();
+        for (Node node : children.values()) {
+            if (node.ttlElapsed()) {
+                elapsed.add(node);
+            }
+        }
+        return elapsed;
+    }
+
     @Nullable
     public Node child(@Nonnull String name) {
         return filterByTtl(children.get(name));
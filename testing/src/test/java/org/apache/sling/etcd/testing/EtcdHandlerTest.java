@@ -24,6 +24,7 @@ import javax.annotation.Nonnull;
 import javax.servlet.http.HttpServlet;
 
 import org.apache.sling.etcd.common.ErrorCodes;
+import org.apache.sling.etcd.common.EtcdHeaders;
 import junit.framework.Assert;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.config.RequestConfig;
@@ -176,6 +177,29 @@ public class EtcdHandlerTest {
         Assert.assertEquals("value-k1", body.getJSONObject("prevNode").getString("value"));
     }
 
+    @Test
+    public void testDoPutRefreshKey() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd(TestContent.build())), "/v2/keys/*");
+        HttpPut put = new HttpPut("http://localhost:" + serverPort(server) + "/v2/keys/a/k1?refresh=true&prevExist=true&ttl=10");
+        CloseableHttpResponse response = httpClient.execute(put);
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        JSONObject body = body(response);
+        assertAction(body, "update");
+        Assert.assertEquals("value-k1", body.getJSONObject("node").getString("value"));
+        Assert.assertEquals(10, body.getJSONObject("node").getInt("ttl"));
+        Assert.assertEquals("value-k1", body.getJSONObject("prevNode").getString("value"));
+    }
+
+    @Test
+    public void testDoPutRefreshKeyWithValueFails() throws Exception {
+        server = startServer(new EtcdHandler(new Etcd(TestContent.build())), "/v2/keys/*");
+        HttpPut put = new HttpPut("http://localhost:" + serverPort(server) + "/v2/keys/a/k1?refresh=true&ttl=10&value=v");
+        CloseableHttpResponse response = httpClient.execute(put);
+        Assert.assertEquals(400, response.getStatusLine().getStatusCode());
+        JSONObject body = body(response);
+        assertError(body, ErrorCodes.REFRESH_VALUE);
+    }
+
     @Test
     public void testDoPostCreateNewKey() throws Exception {
         server = startServer(new EtcdHandler(new Etcd(TestContent.build())), "/v2/keys/*");
@@ -292,6 +316,48 @@ public class EtcdHandlerTest {
         assertError(body2, ErrorCodes.KEY_NOT_FOUND);
     }
 
+    @Test
+    public void testWatchChange() throws Exception {
+        Etcd etcd = new Etcd();
+        server = startServer(new EtcdHandler(etcd), "/v2/keys/*");
+        long index = etcd.index();
+        etcd.createKey("/some/folder", "value", null, null);
+
+        HttpGet get = new HttpGet("http://localhost:" + serverPort(server) + "/v2/keys/some/folder?wait=true&recursive=true&waitIndex=" + (index + 1));
+        CloseableHttpResponse response = httpClient.execute(get);
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        Assert.assertEquals(String.valueOf(etcd.index()), response.getFirstHeader(EtcdHeaders.ETCD_INDEX).getValue());
+        JSONObject body = body(response);
+        assertAction(body, "create");
+        Assert.assertEquals("value", body.getJSONObject("node").getString("value"));
+    }
+
+    @Test
+    public void testWatchIndexCleared() throws Exception {
+        Etcd etcd = new Etcd();
+        etcd.setHistorySize(1);
+        server = startServer(new EtcdHandler(etcd), "/v2/keys/*");
+        etcd.createKey("/some/folder", "value1", null, null);
+        etcd.createKey("/some/folder", "value2", null, null);
+
+        HttpGet get = new HttpGet("http://localhost:" + serverPort(server) + "/v2/keys/some/folder?wait=true&recursive=true&waitIndex=1");
+        CloseableHttpResponse response = httpClient.execute(get);
+        Assert.assertEquals(400, response.getStatusLine().getStatusCode());
+        assertError(body(response), ErrorCodes.EVENT_INDEX_CLEARED);
+    }
+
+    @Test
+    public void testWatchTimeout() throws Exception {
+        EtcdHandler handler = new EtcdHandler(new Etcd());
+        handler.setWatchTimeout(100);
+        server = startServer(handler, "/v2/keys/*");
+
+        HttpGet get = new HttpGet("http://localhost:" + serverPort(server) + "/v2/keys/some/folder?wait=true");
+        CloseableHttpResponse response = httpClient.execute(get);
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        Assert.assertEquals("", IOUtils.toString(response.getEntity().getContent()));
+    }
+
     @Nonnull
     private JSONObject body(CloseableHttpResponse response)
             throws IOException, JSONException {
@@ -20,6 +20,7 @@ package org.apache.sling.etcd.testing;
 
 import java.util.List;
 
+import org.apache.sling.etcd.common.ErrorCodes;
 import org.apache.sling.etcd.testing.condition.PrevExists;
 import org.apache.sling.etcd.testing.condition.PrevIndex;
 import org.apache.sling.etcd.testing.condition.PrevValue;
@@ -182,6 +183,41 @@ public class EtcdTest {
         etcd.putKey("/some/key", "value", 10, new PrevValue("value"));
     }
 
+    @Test
+    public void testRefreshKey() throws Exception {
+        Etcd etcd = new Etcd();
+        etcd.putKey("/some/key", "value", 1, null);
+        Change<Key> change = etcd.refreshKey("/some/key", 10, new PrevExists(true));
+        Assert.assertEquals("value", change.getPrevious().value());
+        Key node = (Key) etcd.getNode("/some/key");
+        Assert.assertEquals("value", node.value());
+        Assert.assertTrue(node.ttl() > 1);
+        Assert.assertTrue(node.modifiedIndex() > change.getPrevious().modifiedIndex());
+    }
+
+    @Test
+    public void testRefreshKeyNotFound() throws Exception {
+        Etcd etcd = new Etcd();
+        try {
+            etcd.refreshKey("/some/key", 10, null);
+            Assert.fail("Expected EtcdException");
+        } catch (EtcdException e) {
+            Assert.assertEquals(ErrorCodes.KEY_NOT_FOUND, e.code());
+        }
+    }
+
+    @Test
+    public void testRefreshKeyTtlRequired() throws Exception {
+        Etcd etcd = new Etcd();
+        etcd.putKey("/some/key", "value", 10, null);
+        try {
+            etcd.refreshKey("/some/key", null, null);
+            Assert.fail("Expected EtcdException");
+        } catch (EtcdException e) {
+            Assert.assertEquals(ErrorCodes.REFRESH_TTL_REQUIRED, e.code());
+        }
+    }
+
     @Test(expected = EtcdException.class)
     public void testPutKeyParentIsAKey() throws Exception {
         Etcd etcd = new Etcd();
@@ -283,4 +319,80 @@ public class EtcdTest {
         Assert.assertNull(etcd.getNode("/a"));
     }
 
-}
\ No newline at end of file
+    // WATCH
+
+    @Test
+    public void testWatchReturnsPastChange() throws Exception {
+        Etcd etcd = new Etcd();
+        Key created = etcd.createKey("/w", "v", null, null);
+        WatchEvent event = etcd.watch("/w", true, created.modifiedIndex(), 0);
+        Assert.assertNotNull(event);
+        Assert.assertEquals("create", event.action());
+        Assert.assertEquals(created.path(), event.key());
+        Assert.assertEquals(created.modifiedIndex(), event.index());
+    }
+
+    @Test
+    public void testWatchNonRecursiveIgnoresChildren() throws Exception {
+        Etcd etcd = new Etcd();
+        long index = etcd.index();
+        etcd.createKey("/w", "v", null, null);
+        Assert.assertNull(etcd.watch("/w", false, index, 0));
+    }
+
+    @Test
+    public void testWatchTimeout() throws Exception {
+        Etcd etcd = new Etcd();
+        Assert.assertNull(etcd.watch("/w", true, null, 50));
+    }
+
+    @Test
+    public void testWatchDelete() throws Exception {
+        Etcd etcd = new Etcd(TestContent.build());
+        long index = etcd.index();
+        etcd.deleteKey("/a/k1", null);
+        WatchEvent event = etcd.watch("/a", true, index + 1, 0);
+        Assert.assertNotNull(event);
+        Assert.assertEquals("delete", event.action());
+        Assert.assertEquals("/a/k1", event.key());
+        Assert.assertNotNull(event.toJson().optJSONObject("prevNode"));
+    }
+
+    @Test
+    public void testWatchExpire() throws Exception {
+        Etcd etcd = new Etcd();
+        etcd.putKey("/w/k", "v", 1, null);
+        long index = etcd.index();
+        WatchEvent event = etcd.watch("/w", true, index + 1, 3000);
+        Assert.assertNotNull(event);
+        Assert.assertEquals("expire", event.action());
+        Assert.assertEquals("/w/k", event.key());
+        Assert.assertNull(etcd.getNode("/w/k"));
+    }
+
+    @Test
+    public void testWatchIgnoresRefresh() throws Exception {
+        Etcd etcd = new Etcd();
+        etcd.putKey("/w/k", "v", 10, null);
+        long index = etcd.index();
+        etcd.refreshKey("/w/k", 10, null);
+        Assert.assertNull(etcd.watch("/w", true, index + 1, 50));
+    }
+
+    @Test
+    public void testWatchHistoryCleared() throws Exception {
+        Etcd etcd = new Etcd();
+        etcd.setHistorySize(2);
+        long index = etcd.index();
+        for (int i = 0 ; i < 3 ; i++) {
+            etcd.createKey("/w", "v", null, null);
+        }
+        try {
+            etcd.watch("/w", true, index + 1, 0);
+            Assert.fail("Expected the history to be cleared");
+        } catch (EtcdException e) {
+            Assert.assertEquals(ErrorCodes.EVENT_INDEX_CLEARED, e.code());
+        }
+    }
+
+}